@@ -0,0 +1,74 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Looks up the metadata of many keys through single key lookups, a bounded number of them at a time, for the
+ * JBlobs whose store has no batch lookup of its own.
+ */
+public final class BatchMetadata {
+    static final int IN_FLIGHT = 16;
+
+    // lookups block on I/O, keep them off the common pool
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "jblob-metadata");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private BatchMetadata() {}
+
+    static Map<String, Optional<JBlobMeta>> downloadMetadata(JBlob jblob, Collection<String> keys) throws IOException {
+        return downloadMetadata(jblob, keys, EXECUTOR, IN_FLIGHT);
+    }
+
+    /**
+     * Calls jblob.downloadMetadata(key) for every key on executor, at most inFlight at once, and returns the
+     * results in the order of keys. jblob must not itself batch through here, or every lookup would recurse.
+     */
+    public static Map<String, Optional<JBlobMeta>> downloadMetadata(JBlob jblob, Collection<String> keys, ExecutorService executor, int inFlight) throws IOException {
+        final Map<String, Optional<JBlobMeta>> metas = new LinkedHashMap<>();
+        if (keys.size() <= 1) {
+            for (String key : keys) {
+                metas.put(key, jblob.downloadMetadata(key));
+            }
+            return metas;
+        }
+        final Iterator<String> it = keys.iterator();
+        final Deque<String> windowKeys = new ArrayDeque<>();
+        final Deque<Future<Optional<JBlobMeta>>> window = new ArrayDeque<>();
+        try {
+            while (true) {
+                while (window.size() < inFlight && it.hasNext()) {
+                    final String key = it.next();
+                    windowKeys.add(key);
+                    window.add(executor.submit(() -> jblob.downloadMetadata(key)));
+                }
+                if (window.isEmpty()) {
+                    break;
+                }
+                metas.put(windowKeys.remove(), window.remove().get());
+            }
+        } catch (ExecutionException e) {
+            window.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            window.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return metas;
+    }
+}
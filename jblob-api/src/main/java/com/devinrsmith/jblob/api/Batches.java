@@ -0,0 +1,46 @@
+package com.devinrsmith.jblob.api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Groups a stream into lists, so per-element requests can be sent in batches
+ */
+class Batches {
+    static final int METADATA_BATCH_SIZE = 1000;
+
+    private Batches() {}
+
+    /**
+     * Lists of up to size consecutive elements of stream, closing stream when closed
+     */
+    static <T> Stream<List<T>> of(Stream<T> stream, int size) {
+        final Iterator<T> it = stream.iterator();
+        final Iterator<List<T>> batches = new Iterator<List<T>>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                if (!it.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final List<T> batch = new ArrayList<>(size);
+                while (batch.size() < size && it.hasNext()) {
+                    batch.add(it.next());
+                }
+                return batch;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(stream::close);
+    }
+}
@@ -0,0 +1,159 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed size ring buffer connecting one writing thread to one reading thread.
+ *
+ * Unlike java.io.PipedInputStream, a failure on the writing side is handed to the reader (so a consumer
+ * never mistakes a failed producer for a short stream), and closing the reading side unblocks the writer.
+ */
+class BoundedPipe {
+    private final byte[] buffer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // guarded by lock
+    private int readPos;
+    private int count;
+    private boolean sinkClosed;
+    private boolean sourceClosed;
+    private Throwable failure;
+
+    BoundedPipe(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Makes the reading side throw instead of returning end of stream.
+     */
+    void fail(Throwable t) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = t;
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    OutputStream sink() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                lock.lock();
+                try {
+                    while (len > 0) {
+                        while (count == buffer.length && !sourceClosed) {
+                            await(notFull);
+                        }
+                        if (sourceClosed) {
+                            throw new IOException("Pipe closed by reader");
+                        }
+                        final int writePos = (readPos + count) % buffer.length;
+                        final int n = Math.min(len, Math.min(buffer.length - count, buffer.length - writePos));
+                        System.arraycopy(b, off, buffer, writePos, n);
+                        count += n;
+                        off += n;
+                        len -= n;
+                        notEmpty.signal();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void close() {
+                lock.lock();
+                try {
+                    sinkClosed = true;
+                    notEmpty.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
+    InputStream source() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                lock.lock();
+                try {
+                    while (count == 0 && !sinkClosed && failure == null) {
+                        await(notEmpty);
+                    }
+                    if (failure != null) {
+                        throw new IOException("Pipe writer failed", failure);
+                    }
+                    if (count == 0) {
+                        return -1;
+                    }
+                    final int n = Math.min(len, Math.min(count, buffer.length - readPos));
+                    System.arraycopy(buffer, readPos, b, off, n);
+                    readPos = (readPos + n) % buffer.length;
+                    count -= n;
+                    notFull.signal();
+                    return n;
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public int available() {
+                lock.lock();
+                try {
+                    return count;
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void close() {
+                lock.lock();
+                try {
+                    sourceClosed = true;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+
+    private static void await(Condition condition) throws InterruptedIOException {
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * How far a bulk copy got: the number of keys, in listing order, that were copied without a gap, plus one
+ * of those keys and its position so a resumed copy can tell whether the listing order still matches.
+ *
+ * Memory doesn't grow with the number of keys copied, only with how far the copies in flight finish out of
+ * order. A key that fails holds the watermark where it is for the rest of the run, so the keys after it are
+ * copied again on resume. The file is replaced atomically, a crash only loses what was done since the last
+ * save.
+ */
+class CopyCheckpoint {
+    /**
+     * The checkpoint saved at path, or an empty one if there is none
+     */
+    static CopyCheckpoint read(Path path) throws IOException {
+        try (final InputStream stream = Files.newInputStream(path)) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            final long count = in.readLong();
+            final long markOrdinal = in.readLong();
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new CopyCheckpoint(count, markOrdinal, new String(bytes, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return new CopyCheckpoint(0, -1, "");
+        }
+    }
+
+    private long count;
+    private long markOrdinal;
+    private String markKey;
+    private boolean stuck;
+
+    /**
+     * Ordinals past count that are done, bit 0 is ordinal count
+     */
+    private BitSet done = new BitSet();
+
+    CopyCheckpoint(long count, long markOrdinal, String markKey) {
+        this.count = count;
+        this.markOrdinal = markOrdinal;
+        this.markKey = markKey;
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    /**
+     * Throws if the key listed at ordinal isn't the one this checkpoint saw there
+     */
+    synchronized void verify(long ordinal, String key) throws IOException {
+        if (ordinal == markOrdinal && !key.equals(markKey)) {
+            throw new IOException(String.format("Expected key %s at position %d of the listing but found %s, the listing " +
+                    "order changed since the checkpoint was saved", markKey, ordinal, key));
+        }
+    }
+
+    synchronized void done(long ordinal, String key) {
+        if (stuck) {
+            return;
+        }
+        final int offset = Math.toIntExact(ordinal - count);
+        done.set(offset);
+        final int advance = done.nextClearBit(0);
+        if (advance == 0) {
+            return;
+        }
+        done = done.get(advance, Math.max(advance, done.length()));
+        count += advance;
+        if (offset == advance - 1) {
+            markOrdinal = ordinal;
+            markKey = key;
+        }
+    }
+
+    /**
+     * A key failed, count can't move past it anymore
+     */
+    synchronized void failed() {
+        stuck = true;
+        done = new BitSet();
+    }
+
+    void save(Path path) throws IOException {
+        final long count;
+        final long markOrdinal;
+        final String markKey;
+        synchronized (this) {
+            count = this.count;
+            markOrdinal = this.markOrdinal;
+            markKey = this.markKey;
+        }
+        final Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (final OutputStream stream = Files.newOutputStream(tmp)) {
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+                final byte[] bytes = markKey.getBytes(StandardCharsets.UTF_8);
+                out.writeLong(count);
+                out.writeLong(markOrdinal);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.flush();
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -4,11 +4,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
@@ -68,6 +69,28 @@ public interface JBlob {
         upload(key, in, Collections.emptyMap());
     }
 
+    /**
+     * Writes length bytes of key starting at offset to out, fewer if the blob ends first and none if offset is
+     * past its end. Returns the BlobMeta of the whole blob, empty if it doesn't exist.
+     *
+     * The default implementation downloads the whole blob and drops what is outside the range,
+     * implementations that can read a range directly should override this.
+     */
+    default Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative");
+        }
+        return download(key, new RangeOutputStream(out, offset, length));
+    }
+
+    /**
+     * A read-only channel over key, or empty if it doesn't exist. Reads are served by
+     * {@link #download(String, long, long, OutputStream)}, reading ahead further while they stay sequential.
+     */
+    default Optional<SeekableByteChannel> openChannel(String key) throws IOException {
+        return downloadMetadata(key).map(meta -> new JBlobReadChannel(this, key, meta.getContentLength()));
+    }
+
     /**
      * This is the preferred method of consuming keys as it throws the properly
      * If the Consumer throws an UncheckedIOException, the appropriate IOException will be rethrown
@@ -80,75 +103,128 @@ public interface JBlob {
         }
     }
 
-    default JBlobStatistics stats() throws IOException {
-        final LongAdder size = new LongAdder();
-        final LongAdder count = new LongAdder();
-        final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
-        final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    /**
+     * The metadata of every key, empty for the keys that don't exist, in the order of keys. Throws the
+     * IOException of the first lookup that failed.
+     *
+     * The default implementation looks up to 16 keys up at a time on a shared pool of daemon threads,
+     * implementations with a batch lookup, or their own way of overlapping lookups, should override this.
+     */
+    default Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        Objects.requireNonNull(keys);
+        return BatchMetadata.downloadMetadata(this, keys);
+    }
+
+    /**
+     * Deletes every key, the same as calling delete for each one but potentially with far fewer requests.
+     * Keys that fail don't stop the others, they are reported together in a {@link JBlobDeleteException}.
+     *
+     * The default implementation deletes one key at a time, implementations with batch deletes should override
+     * this. If keys throws UncheckedIOException, the IOException is rethrown.
+     */
+    default void deleteAll(Stream<String> keys) throws IOException {
+        final Map<String, IOException> failures = new LinkedHashMap<>();
         try {
-            keys().parallel().forEach(k -> {
-                final Optional<JBlobMeta> meta;
+            keys.sequential().forEach(key -> {
                 try {
-                    meta = downloadMetadata(k);
+                    delete(key);
                 } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-                if (meta.isPresent()) {
-                    count.increment();
-                    final long contentLength = meta.get().getContentLength();
-                    size.add(contentLength);
-
-                    // we could keep a thread local min around too to avoid unnecessary calls to get
-                    long minn;
-                    do {
-                        minn = min.get();
-                    } while (contentLength < minn && !min.compareAndSet(minn, contentLength));
-
-                    // we could keep a thread local max around to avoid unnecessary calls to get
-                    long maxx;
-                    do {
-                        maxx = max.get();
-                    } while (contentLength > maxx && !max.compareAndSet(maxx, contentLength));
+                    failures.put(key, e);
                 }
             });
         } catch (UncheckedIOException e) {
             throw e.getCause();
         }
-        return JBlobStatistics.of(count.sum(), size.sum(), min.get(), max.get());
+        if (!failures.isEmpty()) {
+            throw new JBlobDeleteException(failures);
+        }
     }
 
-    default void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
-        final Path tmp = Files.createTempFile("blob-copy", null);
-        final Optional<JBlobMeta> meta;
-        try (final OutputStream out = Files.newOutputStream(tmp)) {
-            meta = other.download(otherKey, out);
-        }
-        if (!meta.isPresent()) {
-            return;
-        }
-        try (final InputStream in = Files.newInputStream(tmp, StandardOpenOption.DELETE_ON_CLOSE)) {
-            upload(key, in, meta.get().getProperties());
-        }
+    default void deleteAll(Collection<String> keys) throws IOException {
+        deleteAll(keys.stream());
     }
 
-    default void copy(JBlob other, Function<String, String> keyFunction) throws IOException, InterruptedException {
+    /**
+     * The keys that start with prefix, throws UncheckedIOException on evaluation
+     *
+     * The default implementation filters keys(), implementations that can list by prefix should override this.
+     */
+    default Stream<String> keys(String prefix) {
+        Objects.requireNonNull(prefix);
+        return prefix.isEmpty() ? keys() : keys().filter(k -> k.startsWith(prefix));
+    }
+
+    /**
+     * The keys that start with prefix along with their length, and ETag and last modified time when known.
+     * Throws UncheckedIOException on evaluation
+     *
+     * The default implementation looks up the metadata of the keys in batches through
+     * {@link #downloadMetadata(Collection)}, implementations whose listings already carry this information
+     * should override this.
+     */
+    default Stream<JBlobEntry> entries(String prefix) {
+        return Batches.of(keys(prefix), Batches.METADATA_BATCH_SIZE).flatMap(batch -> {
+            final Map<String, Optional<JBlobMeta>> metas;
+            try {
+                metas = downloadMetadata(batch);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return metas.entrySet().stream()
+                    .filter(e -> e.getValue().isPresent())
+                    .map(e -> JBlobEntry.of(e.getKey(), e.getValue().get().getContentLength(), null, null));
+        });
+    }
+
+    default JBlobStatistics stats() throws IOException {
+        final LongAdder size = new LongAdder();
+        final LongAdder count = new LongAdder();
+        final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        final JBlobSizeHistogram.Recorder histogram = new JBlobSizeHistogram.Recorder();
         try {
-            other.keys().parallel().forEach(otherKey -> {
-                try {
-                    copy(keyFunction.apply(otherKey), otherKey, other);
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+            entries("").parallel().forEach(entry -> {
+                count.increment();
+                final long contentLength = entry.getContentLength();
+                size.add(contentLength);
+                histogram.add(contentLength);
+
+                // we could keep a thread local min around too to avoid unnecessary calls to get
+                long minn;
+                do {
+                    minn = min.get();
+                } while (contentLength < minn && !min.compareAndSet(minn, contentLength));
+
+                // we could keep a thread local max around to avoid unnecessary calls to get
+                long maxx;
+                do {
+                    maxx = max.get();
+                } while (contentLength > maxx && !max.compareAndSet(maxx, contentLength));
             });
         } catch (UncheckedIOException e) {
             throw e.getCause();
-        } catch (RuntimeException e) {
-            if (e.getCause() != null && e.getCause() instanceof InterruptedException) {
-                throw (InterruptedException)e.getCause();
-            }
-            throw e;
         }
+        return JBlobStatistics.of(count.sum(), size.sum(), min.get(), max.get(), histogram.snapshot(), Collections.emptyMap());
+    }
+
+    /**
+     * Copies otherKey from other into key. Does nothing if otherKey doesn't exist.
+     *
+     * The default implementation streams the download into the upload through a bounded in-memory buffer.
+     * Implementations are encouraged to override this when they can copy without moving the bytes
+     * through this process.
+     */
+    default void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        StreamingCopy.copy(this, key, other, otherKey);
+    }
+
+    /**
+     * Copies every key of other into this, under the key keyFunction maps it to.
+     *
+     * Uses {@link JBlobBulkCopy} with its defaults; use it directly to tune concurrency and retries, follow
+     * progress, or make the copy resumable.
+     */
+    default void copy(JBlob other, Function<String, String> keyFunction) throws IOException, InterruptedException {
+        JBlobBulkCopy.builder().build().copy(other, this, keyFunction);
     }
 }
@@ -0,0 +1,111 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The asynchronous counterpart of {@link JBlob}: the same operations, but they return right away and their
+ * futures complete when the operation does.
+ *
+ * Futures fail with the IOException (or InterruptedException) the blocking call would have thrown. Streams
+ * passed in belong to the operation until its future completes, and may be used from another thread.
+ */
+public interface JBlobAsync {
+    /**
+     * Adapts a blocking JBlob, every operation occupies a thread of executor while it runs. Backends that can
+     * wait without a thread, such as JBlobS3Async, should be preferred when many operations are in flight.
+     */
+    static JBlobAsync of(JBlob jblob, Executor executor) {
+        return new JBlobAsyncImpl(jblob, executor);
+    }
+
+    CompletableFuture<Void> upload(String key, InputStream in, Map<String, String> properties);
+
+    /**
+     * Completes with BlobMeta on success, empty if resource doesn't exist
+     */
+    CompletableFuture<Optional<JBlobMeta>> download(String key, OutputStream out);
+
+    /**
+     * Completes with BlobMeta on success, empty if resource doesn't exist
+     */
+    CompletableFuture<Optional<JBlobMeta>> downloadMetadata(String key);
+
+    /**
+     * Completes on success or if the resource doesn't exist
+     */
+    CompletableFuture<Void> delete(String key);
+
+    // ------------------------------------------------------------------------------------------------
+
+    default CompletableFuture<Void> upload(String key, InputStream in) {
+        return upload(key, in, Collections.emptyMap());
+    }
+
+    static class JBlobAsyncImpl implements JBlobAsync {
+        private interface Call<T> {
+            T call() throws IOException, InterruptedException;
+        }
+
+        private final JBlob jblob;
+        private final Executor executor;
+
+        private JBlobAsyncImpl(JBlob jblob, Executor executor) {
+            this.jblob = Objects.requireNonNull(jblob);
+            this.executor = Objects.requireNonNull(executor);
+        }
+
+        @Override
+        public CompletableFuture<Void> upload(String key, InputStream in, Map<String, String> properties) {
+            return submit(() -> {
+                jblob.upload(key, in, properties);
+                return null;
+            });
+        }
+
+        @Override
+        public CompletableFuture<Optional<JBlobMeta>> download(String key, OutputStream out) {
+            return submit(() -> jblob.download(key, out));
+        }
+
+        @Override
+        public CompletableFuture<Optional<JBlobMeta>> downloadMetadata(String key) {
+            return submit(() -> jblob.downloadMetadata(key));
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(String key) {
+            return submit(() -> {
+                jblob.delete(key);
+                return null;
+            });
+        }
+
+        private <T> CompletableFuture<T> submit(Call<T> call) {
+            final CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.complete(call.call());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        future.completeExceptionally(e);
+                    } catch (IOException | RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // rejected
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Copies every key of one JBlob into another with a bounded number of copies in flight.
+ *
+ * Copies run on their own executor (never the common ForkJoinPool), each key is retried with exponential
+ * backoff, and progress is reported to a {@link Listener}. With a checkpoint file, the number of keys copied
+ * without a gap in listing order is saved, and a later run with the same checkpoint skips that many keys, so an
+ * interrupted copy of millions of keys picks up where it stopped without holding those keys in memory. Keys
+ * after the first failed key are copied again by the next run.
+ *
+ * A failed key doesn't stop the others, unless more than maxFailures have failed; once the copy is done, an
+ * IOException with the number of failures and the first few of them is thrown, {@link Listener#onFailed}
+ * sees every one. A copy interrupted while backing off stops scheduling keys, lets the others in flight
+ * finish, and the copy throws InterruptedException.
+ */
+public class JBlobBulkCopy {
+    /**
+     * How many of the failures are attached to the IOException a failed copy throws
+     */
+    private static final int FAILURE_SAMPLES = 10;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Callbacks are invoked from the copying threads and must be thread-safe.
+     */
+    public interface Listener {
+        default void onCopied(String key) {}
+        default void onRetry(String key, int attempt, IOException e) {}
+        default void onFailed(String key, Exception e) {}
+        default void onProgress(Progress progress) {}
+    }
+
+    public static class Progress {
+        private final long copied;
+        private final long skipped;
+        private final long failed;
+        private final long elapsedNanos;
+
+        private Progress(long copied, long skipped, long failed, long elapsedNanos) {
+            this.copied = copied;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long copied() {
+            return copied;
+        }
+
+        /**
+         * Keys skipped because the checkpoint already had them
+         */
+        public long skipped() {
+            return skipped;
+        }
+
+        public long failed() {
+            return failed;
+        }
+
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double keysPerSecond() {
+            return elapsedNanos == 0 ? 0 : copied * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("copied=%d skipped=%d failed=%d keys/s=%.1f", copied, skipped, failed, keysPerSecond());
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long progressIntervalNanos;
+    private final Listener listener;
+    private final Path checkpoint;
+    private final long maxFailures;
+
+    private JBlobBulkCopy(Builder builder) {
+        this.executor = builder.executor;
+        this.concurrency = builder.concurrency;
+        this.maxAttempts = builder.maxAttempts;
+        this.backoffMillis = builder.backoffMillis;
+        this.progressIntervalNanos = builder.progressIntervalNanos;
+        this.listener = builder.listener;
+        this.checkpoint = builder.checkpoint;
+        this.maxFailures = builder.maxFailures;
+    }
+
+    /**
+     * Copies every key of from into to, under the key keyFunction maps it to.
+     */
+    public Progress copy(JBlob from, JBlob to, Function<String, String> keyFunction) throws IOException, InterruptedException {
+        Objects.requireNonNull(from);
+        Objects.requireNonNull(to);
+        Objects.requireNonNull(keyFunction);
+
+        final CopyCheckpoint watermark = checkpoint == null ? null : CopyCheckpoint.read(checkpoint);
+        final ExecutorService pool = executor == null ? Executors.newFixedThreadPool(concurrency, r -> {
+            final Thread thread = new Thread(r, "jblob-bulk-copy");
+            thread.setDaemon(true);
+            return thread;
+        }) : executor;
+        final Run run = new Run(System.nanoTime());
+        final long resumeAt = watermark == null ? 0 : watermark.count();
+        IOException listingFailure = null;
+        try (final Stream<String> keys = from.keys()) {
+            final Semaphore permits = new Semaphore(concurrency);
+            try {
+                final Iterator<String> it = keys.iterator();
+                for (long ordinal = 0; it.hasNext(); ++ordinal) {
+                    final String key = it.next();
+                    if (ordinal < resumeAt) {
+                        watermark.verify(ordinal, key);
+                        run.skipped.increment();
+                        continue;
+                    }
+                    permits.acquire();
+                    if (run.interrupted || run.aborted) {
+                        permits.release();
+                        break;
+                    }
+                    final long position = ordinal;
+                    try {
+                        pool.execute(() -> {
+                            try {
+                                copy(from, to, key, keyFunction.apply(key));
+                                if (watermark != null) {
+                                    watermark.done(position, key);
+                                }
+                                run.copied.increment();
+                                listener.onCopied(key);
+                            } catch (InterruptedException e) {
+                                // the watermark doesn't move past the key, so a later run with the checkpoint copies it
+                                Thread.currentThread().interrupt();
+                                run.interrupted = true;
+                            } catch (Exception e) {
+                                if (watermark != null) {
+                                    watermark.failed();
+                                }
+                                run.failed(e);
+                                listener.onFailed(key, e);
+                            } finally {
+                                // before the release, so no save is still running once every permit is back
+                                run.maybeReport(watermark);
+                                permits.release();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        permits.release();
+                        throw e;
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                listingFailure = e.getCause();
+            } finally {
+                // let whatever is in flight finish, even when listing failed or we were interrupted
+                permits.acquireUninterruptibly(concurrency);
+                if (watermark != null) {
+                    watermark.save(checkpoint);
+                }
+            }
+        } finally {
+            if (executor == null) {
+                pool.shutdown();
+            }
+        }
+
+        final Progress progress = run.progress();
+        listener.onProgress(progress);
+        if (run.interrupted) {
+            throw new InterruptedException(String.format("Bulk copy interrupted (%s)", progress));
+        }
+        final IOException e;
+        if (listingFailure != null) {
+            e = new IOException(String.format("Bulk copy failed listing keys (%s)", progress), listingFailure);
+        } else if (run.aborted) {
+            e = new IOException(String.format("Bulk copy aborted after %d keys failed (%s)", progress.failed(), progress));
+        } else if (progress.failed() > 0) {
+            e = new IOException(String.format("Bulk copy failed for %d keys (%s)", progress.failed(), progress));
+        } else {
+            return progress;
+        }
+        run.failures().forEach(e::addSuppressed);
+        throw e;
+    }
+
+    private void copy(JBlob from, JBlob to, String key, String toKey) throws IOException, InterruptedException {
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                to.copy(toKey, key, from);
+                return;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                listener.onRetry(key, attempt, e);
+                TimeUnit.MILLISECONDS.sleep(backoffMillis << Math.min(attempt - 1, 16));
+            }
+        }
+    }
+
+    private class Run {
+        private final long start;
+        private final AtomicLong lastReport;
+        private final LongAdder copied = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final List<Exception> failures = new ArrayList<>();
+        private volatile boolean interrupted;
+        private volatile boolean aborted;
+
+        private Run(long start) {
+            this.start = start;
+            this.lastReport = new AtomicLong(start);
+        }
+
+        private Progress progress() {
+            return new Progress(copied.sum(), skipped.sum(), failed.sum(), System.nanoTime() - start);
+        }
+
+        /**
+         * Counts every failure, but only keeps the first few
+         */
+        private void failed(Exception e) {
+            failed.increment();
+            synchronized (failures) {
+                if (failures.size() < FAILURE_SAMPLES) {
+                    failures.add(e);
+                }
+            }
+            if (failed.sum() > maxFailures) {
+                aborted = true;
+            }
+        }
+
+        private List<Exception> failures() {
+            synchronized (failures) {
+                return new ArrayList<>(failures);
+            }
+        }
+
+        private void maybeReport(CopyCheckpoint watermark) {
+            final long now = System.nanoTime();
+            final long last = lastReport.get();
+            if (now - last < progressIntervalNanos || !lastReport.compareAndSet(last, now)) {
+                return;
+            }
+            if (watermark != null) {
+                try {
+                    watermark.save(checkpoint);
+                } catch (IOException e) {
+                    // best effort, the save at the end of the copy throws
+                }
+            }
+            listener.onProgress(progress());
+        }
+    }
+
+    public static class Builder {
+        private ExecutorService executor;
+        private int concurrency = 16;
+        private int maxAttempts = 3;
+        private long backoffMillis = 100;
+        private long progressIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private Listener listener = new Listener() {};
+        private Path checkpoint;
+        private long maxFailures = Long.MAX_VALUE;
+
+        private Builder() {}
+
+        /**
+         * The executor copies run on; it is not shut down. Defaults to a pool of concurrency threads
+         * created for each copy. Any executor works, including one that starts a virtual thread per task.
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = Objects.requireNonNull(executor);
+            return this;
+        }
+
+        /**
+         * The maximum number of keys being copied at once
+         */
+        public Builder concurrency(int concurrency) {
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("concurrency must be positive");
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * How many times each key is tried before it counts as failed
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts <= 0) {
+                throw new IllegalArgumentException("maxAttempts must be positive");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * The pause before the first retry of a key, doubled for every retry after that
+         */
+        public Builder backoff(long duration, TimeUnit unit) {
+            this.backoffMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder progressInterval(long duration, TimeUnit unit) {
+            this.progressIntervalNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            this.listener = Objects.requireNonNull(listener);
+            return this;
+        }
+
+        /**
+         * Records in this file how many keys, in listing order, were copied without a gap, and skips that many
+         * keys when it already exists. The keys of the source must be listed in the same order on every run.
+         */
+        public Builder checkpoint(Path checkpoint) {
+            this.checkpoint = Objects.requireNonNull(checkpoint);
+            return this;
+        }
+
+        /**
+         * Stops scheduling keys once more than this many have failed. Defaults to no limit.
+         */
+        public Builder maxFailures(long maxFailures) {
+            if (maxFailures < 0) {
+                throw new IllegalArgumentException("maxFailures must not be negative");
+            }
+            this.maxFailures = maxFailures;
+            return this;
+        }
+
+        public JBlobBulkCopy build() {
+            return new JBlobBulkCopy(this);
+        }
+    }
+}
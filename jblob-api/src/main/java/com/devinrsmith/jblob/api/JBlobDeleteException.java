@@ -0,0 +1,28 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thrown by {@link JBlob#deleteAll(java.util.stream.Stream)} when some of the keys couldn't be deleted.
+ * Every key not in {@link #getFailures()} was deleted (or didn't exist).
+ */
+public class JBlobDeleteException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, IOException> failures;
+
+    public JBlobDeleteException(Map<String, IOException> failures) {
+        super(String.format("%d keys failed to delete", failures.size()), failures.isEmpty() ? null : failures.values().iterator().next());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    /**
+     * The keys that failed, with why
+     */
+    public Map<String, IOException> getFailures() {
+        return failures;
+    }
+}
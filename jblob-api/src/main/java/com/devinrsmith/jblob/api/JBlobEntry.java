@@ -0,0 +1,58 @@
+package com.devinrsmith.jblob.api;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A key along with what a listing knows about it, without downloading the blob or its metadata
+ */
+public interface JBlobEntry {
+    static JBlobEntry of(String key, long contentLength, String etag, Instant lastModified) {
+        return new JBlobEntryImpl(key, contentLength, etag, lastModified);
+    }
+
+    String getKey();
+    long getContentLength();
+    Optional<String> getETag();
+    Optional<Instant> getLastModified();
+
+    static class JBlobEntryImpl implements JBlobEntry {
+        private final String key;
+        private final long contentLength;
+        private final String etag;
+        private final Instant lastModified;
+
+        private JBlobEntryImpl(String key, long contentLength, String etag, Instant lastModified) {
+            this.key = Objects.requireNonNull(key);
+            this.contentLength = contentLength;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public Optional<String> getETag() {
+            return Optional.ofNullable(etag);
+        }
+
+        @Override
+        public Optional<Instant> getLastModified() {
+            return Optional.ofNullable(lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return key + " (" + contentLength + " bytes)";
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A read-only channel over one blob, served by ranged downloads.
+ *
+ * Each download reads ahead of the position; the read-ahead doubles while reads continue where the last
+ * download ended, and falls back to the minimum after a seek. The size is the blob's size when the channel
+ * was opened. Reads of a blob that is overwritten while the channel is open may mix the two versions.
+ */
+class JBlobReadChannel implements SeekableByteChannel {
+    static final int MIN_READ_AHEAD = 64 * 1024;
+    static final int MAX_READ_AHEAD = 8 * 1024 * 1024;
+
+    private final JBlob jblob;
+    private final String key;
+    private final long size;
+
+    private long position;
+    private byte[] buffer = new byte[0];
+    private long bufferStart;
+    private int bufferLength;
+    private int readAhead = MIN_READ_AHEAD;
+    private boolean open = true;
+
+    JBlobReadChannel(JBlob jblob, String key, long size) {
+        this.jblob = jblob;
+        this.key = key;
+        this.size = size;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (position < bufferStart || position >= bufferStart + bufferLength) {
+            fill(dst.remaining());
+            if (bufferLength == 0) {
+                // the blob shrank since the channel was opened
+                return -1;
+            }
+        }
+        final int n = (int) Math.min(dst.remaining(), bufferStart + bufferLength - position);
+        dst.put(buffer, (int) (position - bufferStart), n);
+        position += n;
+        return n;
+    }
+
+    private void fill(int wanted) throws IOException {
+        final boolean sequential = bufferLength > 0 && position == bufferStart + bufferLength;
+        readAhead = sequential ? Math.min(readAhead * 2, MAX_READ_AHEAD) : MIN_READ_AHEAD;
+        final int count = (int) Math.min(Math.max(readAhead, Math.min(wanted, MAX_READ_AHEAD)), size - position);
+        if (buffer.length < count) {
+            buffer = new byte[count];
+        }
+        bufferStart = position;
+        bufferLength = 0;
+        final OutputStream into = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len > buffer.length - bufferLength) {
+                    // the blob grew since the channel was opened
+                    buffer = Arrays.copyOf(buffer, bufferLength + len);
+                }
+                System.arraycopy(b, off, buffer, bufferLength, len);
+                bufferLength += len;
+            }
+        };
+        final boolean found;
+        try {
+            found = jblob.download(key, position, count, into).isPresent();
+        } catch (InterruptedException e) {
+            open = false;
+            Thread.currentThread().interrupt();
+            throw new ClosedByInterruptException();
+        }
+        if (!found) {
+            throw new IOException(String.format("%s was deleted while open", key));
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("newPosition must not be negative");
+        }
+        ensureOpen();
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        buffer = null;
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.devinrsmith.jblob.api;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of blobs by size, in power of two buckets: bucket 0 holds empty blobs, and bucket i blobs of
+ * 2^(i-1) to 2^i - 1 bytes. 65 buckets cover every size, so the histogram is small whatever the number of
+ * blobs, and percentiles read from it are within a factor of two.
+ */
+public final class JBlobSizeHistogram {
+    public static final int BUCKETS = 65;
+
+    public static final JBlobSizeHistogram EMPTY = new JBlobSizeHistogram(new long[BUCKETS]);
+
+    public static JBlobSizeHistogram of(long[] counts) {
+        if (counts.length != BUCKETS) {
+            throw new IllegalArgumentException(String.format("Expected %d buckets, got %d", BUCKETS, counts.length));
+        }
+        return new JBlobSizeHistogram(counts.clone());
+    }
+
+    public static int bucket(long size) {
+        return size <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(size);
+    }
+
+    public static long lowerBound(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    public static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    private final long[] counts;
+    private final long total;
+
+    private JBlobSizeHistogram(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        this.total = total;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long count(int bucket) {
+        return counts[bucket];
+    }
+
+    public long[] counts() {
+        return counts.clone();
+    }
+
+    /**
+     * The size below which percentile percent of blobs fall, interpolated within its bucket; -1 when empty
+     */
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        if (total == 0) {
+            return -1;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (seen + counts[i] >= rank) {
+                // the middle of the rank's share of the bucket
+                final double within = (rank - seen - 0.5) / counts[i];
+                final long lower = lowerBound(i);
+                return lower + (long) (within * (upperBound(i) - lower));
+            }
+            seen += counts[i];
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * The smallest size the non-empty buckets allow; -1 when empty
+     */
+    public long minBound() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            if (counts[i] > 0) {
+                return lowerBound(i);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The largest size the non-empty buckets allow; -1 when empty
+     */
+    public long maxBound() {
+        for (int i = BUCKETS - 1; i >= 0; --i) {
+            if (counts[i] > 0) {
+                return upperBound(i);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JBlobSizeHistogram && Arrays.equals(counts, ((JBlobSizeHistogram) o).counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counts);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("JBlobSizeHistogram{count=%d, p50=%d, p99=%d}", total, percentile(50), percentile(99));
+    }
+
+    /**
+     * A histogram that blobs can be added to and removed from concurrently
+     */
+    public static class Recorder {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        public void add(long size) {
+            counts.incrementAndGet(bucket(size));
+        }
+
+        public void remove(long size) {
+            counts.decrementAndGet(bucket(size));
+        }
+
+        public void addAll(JBlobSizeHistogram histogram) {
+            for (int i = 0; i < BUCKETS; ++i) {
+                counts.addAndGet(i, histogram.counts[i]);
+            }
+        }
+
+        public JBlobSizeHistogram snapshot() {
+            final long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; ++i) {
+                snapshot[i] = Math.max(0, counts.get(i));
+            }
+            return new JBlobSizeHistogram(snapshot);
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package com.devinrsmith.jblob.api;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
 * Created by dsmith on 2/24/15.
 */
 public interface JBlobStatistics {
     static JBlobStatistics of(long count, long size, long min, long max) {
-        return new JBlobStatisticsImpl(count, size, min, max);
+        return of(count, size, min, max, JBlobSizeHistogram.EMPTY, Collections.emptyMap());
+    }
+
+    static JBlobStatistics of(long count, long size, long min, long max, JBlobSizeHistogram histogram, Map<String, JBlobStatistics> byContentType) {
+        return new JBlobStatisticsImpl(count, size, min, max, histogram, byContentType);
     }
 
     long count();
@@ -17,17 +25,50 @@ public interface JBlobStatistics {
         return size() / count();
     }
 
+    /**
+     * Blob sizes by power of two; empty when whoever gathered these didn't keep one
+     */
+    default JBlobSizeHistogram histogram() {
+        return JBlobSizeHistogram.EMPTY;
+    }
+
+    /**
+     * Estimated from the histogram, and kept within min and max, which are the 0th and 100th; -1 without a
+     * histogram
+     */
+    default long percentile(double percentile) {
+        final long estimate = histogram().percentile(percentile);
+        if (estimate >= 0 && percentile == 0) {
+            return min();
+        }
+        if (estimate >= 0 && percentile == 100) {
+            return max();
+        }
+        return estimate < 0 ? estimate : Math.max(min(), Math.min(max(), estimate));
+    }
+
+    /**
+     * The same statistics for each Content-Type, when they were kept
+     */
+    default Map<String, JBlobStatistics> byContentType() {
+        return Collections.emptyMap();
+    }
+
     static class JBlobStatisticsImpl implements JBlobStatistics {
         private final long count;
         private final long size;
         private final long min;
         private final long max;
+        private final JBlobSizeHistogram histogram;
+        private final Map<String, JBlobStatistics> byContentType;
 
-        private JBlobStatisticsImpl(long count, long size, long min, long max) {
+        private JBlobStatisticsImpl(long count, long size, long min, long max, JBlobSizeHistogram histogram, Map<String, JBlobStatistics> byContentType) {
             this.count = count;
             this.size = size;
             this.min = min;
             this.max = max;
+            this.histogram = histogram;
+            this.byContentType = Collections.unmodifiableMap(new LinkedHashMap<>(byContentType));
         }
 
         @Override
@@ -49,5 +90,20 @@ public interface JBlobStatistics {
         public long max() {
             return max;
         }
+
+        @Override
+        public JBlobSizeHistogram histogram() {
+            return histogram;
+        }
+
+        @Override
+        public Map<String, JBlobStatistics> byContentType() {
+            return byContentType;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("JBlobStatistics{count=%d, size=%d, min=%d, max=%d}", count, size, min, max);
+        }
     }
 }
@@ -0,0 +1,51 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes on only the bytes written between offset and offset + length, for ranged downloads over
+ * backends that can only download whole blobs, or that store blobs in some other form
+ */
+public class RangeOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final long offset;
+    private final long end;
+    private long position;
+
+    public RangeOutputStream(OutputStream out, long offset, long length) {
+        this.out = out;
+        this.offset = offset;
+        this.end = length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length;
+    }
+
+    /**
+     * The bytes passed on so far
+     */
+    public long written() {
+        return Math.max(0, Math.min(position, end) - offset);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position >= offset && position < end) {
+            out.write(b);
+        }
+        ++position;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        final long start = Math.max(position, offset);
+        final long stop = Math.min(position + len, end);
+        if (start < stop) {
+            out.write(b, off + (int) (start - position), (int) (stop - start));
+        }
+        position += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,68 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies a blob between two JBlobs without a temporary file: the download runs on its own thread and feeds
+ * the upload through a bounded in-memory pipe, so both sides make progress at the same time.
+ */
+class StreamingCopy {
+    static final int PIPE_SIZE = 1024 * 1024;
+
+    // copies block on network I/O, keep them off the common pool
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        final Thread thread = new Thread(r, "jblob-copy");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static void copy(JBlob to, String toKey, JBlob from, String fromKey) throws IOException, InterruptedException {
+        final Optional<JBlobMeta> meta = from.downloadMetadata(fromKey);
+        if (!meta.isPresent()) {
+            return;
+        }
+
+        final BoundedPipe pipe = new BoundedPipe(PIPE_SIZE);
+        final AtomicBoolean missing = new AtomicBoolean();
+        final Future<?> download = EXECUTOR.submit(() -> {
+            final OutputStream out = pipe.sink();
+            try {
+                if (!from.download(fromKey, out).isPresent()) {
+                    // deleted since we looked at the metadata, fail the upload rather than let it finish empty
+                    missing.set(true);
+                    pipe.fail(new IOException(String.format("%s disappeared during copy", fromKey)));
+                    return;
+                }
+                // only a successful download may end the stream, anything else has to reach the reader as a failure
+                out.close();
+            } catch (Throwable t) {
+                pipe.fail(t);
+            }
+        });
+
+        try (final InputStream in = pipe.source()) {
+            to.upload(toKey, in, meta.get().getProperties());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            // closing the source above unblocks the download if it is still writing
+            download.cancel(true);
+            if (missing.get()) {
+                return;
+            }
+            throw e;
+        }
+
+        try {
+            download.get();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.devinrsmith.jblob.api;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchMetadataTest extends TestCase {
+    private final JBlob memory = new MapJBlob();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    // a JBlob without a batch lookup of its own, whose lookups are slow
+    private final JBlob jblob = new FlakyJBlob(memory) {
+        @Override
+        public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(5);
+                if (key.equals("broken")) {
+                    throw new IOException("Lookup failed");
+                }
+                return super.downloadMetadata(key);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    };
+
+    public void testLookupsOverlap() throws Exception {
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            keys.add("key-" + i);
+            if (i % 2 == 0) {
+                memory.upload("key-" + i, new ByteArrayInputStream(new byte[i]));
+            }
+        }
+        final Map<String, Optional<JBlobMeta>> metas = jblob.downloadMetadata(keys);
+        assertEquals(keys, new ArrayList<>(metas.keySet()));
+        for (int i = 0; i < 100; ++i) {
+            final Optional<JBlobMeta> meta = metas.get("key-" + i);
+            assertEquals(i % 2 == 0, meta.isPresent());
+            if (meta.isPresent()) {
+                assertEquals(i, meta.get().getContentLength());
+            }
+        }
+        assertTrue(maxActive.get() > 1);
+        assertTrue(maxActive.get() <= BatchMetadata.IN_FLIGHT);
+    }
+
+    public void testFailedLookup() throws Exception {
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            keys.add(i == 20 ? "broken" : "key-" + i);
+        }
+        try {
+            jblob.downloadMetadata(keys);
+            fail("Expected the lookup to fail");
+        } catch (IOException e) {
+            assertEquals("Lookup failed", e.getMessage());
+        }
+    }
+}
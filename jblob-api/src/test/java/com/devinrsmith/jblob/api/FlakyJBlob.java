@@ -0,0 +1,88 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Forwards to another JBlob, failing the first uploads of chosen keys, and optionally cutting downloads
+ * short with a failure.
+ */
+class FlakyJBlob implements JBlob {
+    private final JBlob jblob;
+    private final Map<String, AtomicInteger> uploadFailures = new ConcurrentHashMap<>();
+    private volatile long failDownloadsAfter = -1;
+
+    FlakyJBlob(JBlob jblob) {
+        this.jblob = jblob;
+    }
+
+    /**
+     * Fails the next times uploads of key
+     */
+    void failUploads(String key, int times) {
+        uploadFailures.put(key, new AtomicInteger(times));
+    }
+
+    /**
+     * Fails every download once this many bytes have been written out
+     */
+    void failDownloadsAfter(long bytes) {
+        failDownloadsAfter = bytes;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        final AtomicInteger failures = uploadFailures.get(key);
+        if (failures != null && failures.getAndDecrement() > 0) {
+            throw new IOException(String.format("Upload of %s failed", key));
+        }
+        jblob.upload(key, in, properties);
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        final long limit = failDownloadsAfter;
+        if (limit < 0) {
+            return jblob.download(key, out);
+        }
+        return jblob.download(key, new OutputStream() {
+            private long written;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                final int n = (int) Math.min(len, limit - written);
+                out.write(b, off, n);
+                written += n;
+                if (n < len) {
+                    throw new IOException(String.format("Download of %s failed", key));
+                }
+            }
+        });
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        return jblob.downloadMetadata(key);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        jblob.delete(key);
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return jblob.keys();
+    }
+}
@@ -0,0 +1,251 @@
+package com.devinrsmith.jblob.api;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class JBlobBulkCopyTest extends TestCase {
+    private static final int KEYS = 50;
+
+    private JBlob from;
+    private JBlob to;
+    private Path checkpoint;
+
+    @Override
+    protected void setUp() throws Exception {
+        from = new MapJBlob();
+        for (int i = 0; i < KEYS; ++i) {
+            from.upload(key(i), new ByteArrayInputStream(content(i)), Collections.singletonMap("Content-Type", "text/plain"));
+        }
+        to = new MapJBlob();
+        checkpoint = Files.createTempFile("jblob-checkpoint", ".log");
+        Files.delete(checkpoint);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(checkpoint);
+    }
+
+    public void testCopiesEveryKey() throws Exception {
+        final JBlobBulkCopy.Progress progress = JBlobBulkCopy.builder()
+                .concurrency(4)
+                .build()
+                .copy(from, to, k -> "copy/" + k);
+        assertEquals(KEYS, progress.copied());
+        assertEquals(0, progress.skipped());
+        assertEquals(0, progress.failed());
+        for (int i = 0; i < KEYS; ++i) {
+            assertContent(to, "copy/" + key(i), content(i));
+            assertEquals(Optional.of("text/plain"), to.downloadMetadata("copy/" + key(i)).get().getContentType());
+        }
+    }
+
+    public void testResumesFromCheckpoint() throws Exception {
+        final List<String> listed = from.keys().collect(Collectors.toList());
+        new CopyCheckpoint(10, 9, listed.get(9)).save(checkpoint);
+
+        final JBlobBulkCopy.Progress progress = JBlobBulkCopy.builder()
+                .checkpoint(checkpoint)
+                .build()
+                .copy(from, to, Function.identity());
+        assertEquals(10, progress.skipped());
+        assertEquals(KEYS - 10, progress.copied());
+        for (int i = 0; i < KEYS; ++i) {
+            assertEquals(i >= 10, to.downloadMetadata(listed.get(i)).isPresent());
+        }
+        assertEquals(KEYS, CopyCheckpoint.read(checkpoint).count());
+
+        final JBlobBulkCopy.Progress again = JBlobBulkCopy.builder()
+                .checkpoint(checkpoint)
+                .build()
+                .copy(from, to, Function.identity());
+        assertEquals(KEYS, again.skipped());
+        assertEquals(0, again.copied());
+    }
+
+    public void testCheckpointFromAnotherListingOrder() throws Exception {
+        new CopyCheckpoint(10, 9, "not-listed").save(checkpoint);
+        try {
+            JBlobBulkCopy.builder()
+                    .checkpoint(checkpoint)
+                    .build()
+                    .copy(from, to, Function.identity());
+            fail("Expected the copy to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("listing order changed"));
+        }
+        assertEquals(0, to.keys().count());
+    }
+
+    public void testWatermarkOnlyMovesPastContiguousKeys() {
+        final CopyCheckpoint watermark = new CopyCheckpoint(0, -1, "");
+        watermark.done(2, "c");
+        watermark.done(1, "b");
+        assertEquals(0, watermark.count());
+        watermark.done(0, "a");
+        assertEquals(3, watermark.count());
+        watermark.done(4, "e");
+        watermark.done(3, "d");
+        assertEquals(5, watermark.count());
+
+        // nothing gets past a failed key
+        watermark.failed();
+        watermark.done(6, "g");
+        watermark.done(7, "h");
+        assertEquals(5, watermark.count());
+    }
+
+    public void testRetriesTransientFailures() throws Exception {
+        final FlakyJBlob flaky = new FlakyJBlob(to);
+        flaky.failUploads(key(3), 2);
+        final AtomicInteger retries = new AtomicInteger();
+        final JBlobBulkCopy.Progress progress = JBlobBulkCopy.builder()
+                .maxAttempts(3)
+                .backoff(1, TimeUnit.MILLISECONDS)
+                .listener(new JBlobBulkCopy.Listener() {
+                    @Override
+                    public void onRetry(String key, int attempt, IOException e) {
+                        assertEquals(key(3), key);
+                        retries.incrementAndGet();
+                    }
+                })
+                .build()
+                .copy(from, flaky, Function.identity());
+        assertEquals(2, retries.get());
+        assertEquals(KEYS, progress.copied());
+        assertContent(to, key(3), content(3));
+    }
+
+    public void testFailsAfterMaxAttempts() throws Exception {
+        final FlakyJBlob flaky = new FlakyJBlob(to);
+        flaky.failUploads(key(3), 3);
+        final Set<String> failed = new HashSet<>();
+        final JBlobBulkCopy copy = JBlobBulkCopy.builder()
+                .maxAttempts(3)
+                .backoff(1, TimeUnit.MILLISECONDS)
+                .checkpoint(checkpoint)
+                .listener(new JBlobBulkCopy.Listener() {
+                    @Override
+                    public synchronized void onFailed(String key, Exception e) {
+                        failed.add(key);
+                    }
+                })
+                .build();
+        try {
+            copy.copy(from, flaky, Function.identity());
+            fail("Expected the copy to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("failed=1"));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(key(3))), failed);
+        assertFalse(to.downloadMetadata(key(3)).isPresent());
+        assertEquals(KEYS - 1, to.keys().count());
+
+        // the checkpoint stops short of the failed key, so the next run picks it up
+        final long position = from.keys().collect(Collectors.toList()).indexOf(key(3));
+        assertTrue(CopyCheckpoint.read(checkpoint).count() <= position);
+        final JBlobBulkCopy.Progress progress = JBlobBulkCopy.builder()
+                .checkpoint(checkpoint)
+                .build()
+                .copy(from, flaky, Function.identity());
+        assertEquals(KEYS, progress.copied() + progress.skipped());
+        assertTrue(progress.skipped() <= position);
+        assertContent(to, key(3), content(3));
+        assertEquals(KEYS, CopyCheckpoint.read(checkpoint).count());
+    }
+
+    public void testKeepsASampleOfFailures() throws Exception {
+        final FlakyJBlob flaky = new FlakyJBlob(to);
+        for (int i = 0; i < 15; ++i) {
+            flaky.failUploads(key(i), 1);
+        }
+        try {
+            JBlobBulkCopy.builder()
+                    .maxAttempts(1)
+                    .build()
+                    .copy(from, flaky, Function.identity());
+            fail("Expected the copy to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("failed for 15 keys"));
+            assertEquals(10, e.getSuppressed().length);
+        }
+        assertEquals(KEYS - 15, to.keys().count());
+    }
+
+    public void testAbortsPastMaxFailures() throws Exception {
+        final FlakyJBlob flaky = new FlakyJBlob(to);
+        from.keys().limit(3).forEach(key -> flaky.failUploads(key, 1));
+        try {
+            JBlobBulkCopy.builder()
+                    .concurrency(1)
+                    .maxAttempts(1)
+                    .maxFailures(1)
+                    .build()
+                    .copy(from, flaky, Function.identity());
+            fail("Expected the copy to abort");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("aborted after 2 keys failed"));
+        }
+        // with one copy at a time, nothing is scheduled after the second failure
+        assertEquals(0, to.keys().count());
+    }
+
+    public void testInterruptedBackoffStopsTheCopy() throws Exception {
+        final String first = from.keys().findFirst().get();
+        final FlakyJBlob flaky = new FlakyJBlob(to);
+        flaky.failUploads(first, Integer.MAX_VALUE);
+        final JBlobBulkCopy copy = JBlobBulkCopy.builder()
+                .concurrency(1)
+                .maxAttempts(Integer.MAX_VALUE)
+                .backoff(1, TimeUnit.HOURS)
+                .checkpoint(checkpoint)
+                .listener(new JBlobBulkCopy.Listener() {
+                    @Override
+                    public void onRetry(String key, int attempt, IOException e) {
+                        // the backoff sleep that follows is interrupted straight away
+                        Thread.currentThread().interrupt();
+                    }
+                })
+                .build();
+        try {
+            copy.copy(from, flaky, Function.identity());
+            fail("Expected the copy to be interrupted");
+        } catch (InterruptedException e) {
+            // expected
+        }
+        // with one copy at a time, nothing is scheduled after the first key
+        assertEquals(0, to.keys().count());
+        assertEquals(0, CopyCheckpoint.read(checkpoint).count());
+    }
+
+    private static String key(int i) {
+        return String.format("key-%03d", i);
+    }
+
+    private static byte[] content(int i) {
+        final byte[] bytes = new byte[i * 100];
+        Arrays.fill(bytes, (byte) i);
+        return bytes;
+    }
+
+    private static void assertContent(JBlob jblob, String key, byte[] expected) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(jblob.download(key, out).isPresent());
+        assertTrue(Arrays.equals(expected, out.toByteArray()));
+    }
+}
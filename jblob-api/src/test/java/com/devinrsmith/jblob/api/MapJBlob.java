@@ -0,0 +1,71 @@
+package com.devinrsmith.jblob.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * The least a JBlob has to be, on the heap, so the default methods and the helpers behind them can be
+ * tested without a backend module.
+ */
+class MapJBlob implements JBlob {
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    private static class Blob {
+        final byte[] data;
+        final Map<String, String> properties;
+
+        Blob(byte[] data, Map<String, String> properties) {
+            this.data = data;
+            this.properties = properties;
+        }
+    }
+
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        blobs.put(key, new Blob(out.toByteArray(), new HashMap<>(properties)));
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        final Blob blob = blobs.get(key);
+        if (blob == null) {
+            return Optional.empty();
+        }
+        out.write(blob.data);
+        return Optional.of(meta(blob));
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        return Optional.ofNullable(blobs.get(key)).map(MapJBlob::meta);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        blobs.remove(key);
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return blobs.keySet().stream();
+    }
+
+    private static JBlobMeta meta(Blob blob) {
+        return JBlobMeta.of(blob.data.length, blob.properties.get(CONTENT_TYPE), blob.properties);
+    }
+}
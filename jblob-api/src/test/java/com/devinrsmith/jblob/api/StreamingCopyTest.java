@@ -0,0 +1,155 @@
+package com.devinrsmith.jblob.api;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class StreamingCopyTest extends TestCase {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Override
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testCopy() throws Exception {
+        final JBlob from = new MapJBlob();
+        final JBlob to = new MapJBlob();
+        // several times the pipe, so the download has to wait on the upload
+        final byte[] data = random(3 * StreamingCopy.PIPE_SIZE + 17);
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("Content-Type", "image/png");
+        properties.put("foo", "bar");
+        from.upload("a", new ByteArrayInputStream(data), properties);
+
+        StreamingCopy.copy(to, "b", from, "a");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JBlobMeta meta = to.download("b", out).get();
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertEquals("bar", meta.getProperties().get("foo"));
+        assertEquals("image/png", meta.getContentType().get());
+    }
+
+    public void testCopyMissing() throws Exception {
+        final JBlob to = new MapJBlob();
+        StreamingCopy.copy(to, "b", new MapJBlob(), "a");
+        assertFalse(to.downloadMetadata("b").isPresent());
+    }
+
+    public void testFailedDownloadFailsTheUpload() throws Exception {
+        final JBlob memory = new MapJBlob();
+        memory.upload("a", new ByteArrayInputStream(random(2 * StreamingCopy.PIPE_SIZE)));
+        final FlakyJBlob from = new FlakyJBlob(memory);
+        from.failDownloadsAfter(StreamingCopy.PIPE_SIZE / 2);
+        final JBlob to = new MapJBlob();
+        try {
+            StreamingCopy.copy(to, "b", from, "a");
+            fail("Expected the copy to fail");
+        } catch (IOException e) {
+            // expected
+        }
+        // never a truncated blob
+        assertFalse(to.downloadMetadata("b").isPresent());
+    }
+
+    public void testFailedUploadStopsTheDownload() throws Exception {
+        final JBlob from = new MapJBlob();
+        from.upload("a", new ByteArrayInputStream(random(4 * StreamingCopy.PIPE_SIZE)));
+        final JBlob to = new FlakyJBlob(new MapJBlob()) {
+            @Override
+            public void upload(String key, InputStream in, Map<String, String> properties) throws IOException {
+                // reads a little, then gives up with the download still writing
+                in.read(new byte[1024]);
+                throw new IOException("Upload failed");
+            }
+        };
+        final Future<?> copy = executor.submit(() -> {
+            StreamingCopy.copy(to, "b", from, "a");
+            return null;
+        });
+        try {
+            copy.get(10, TimeUnit.SECONDS);
+            fail("Expected the copy to fail");
+        } catch (ExecutionException e) {
+            assertEquals("Upload failed", e.getCause().getMessage());
+        }
+    }
+
+    public void testPipeRoundTrip() throws Exception {
+        final BoundedPipe pipe = new BoundedPipe(1000);
+        final byte[] data = random(100000);
+        final Future<?> writer = executor.submit(() -> {
+            try (OutputStream out = pipe.sink()) {
+                for (int off = 0; off < data.length; off += 777) {
+                    out.write(data, off, Math.min(777, data.length - off));
+                }
+            }
+            return null;
+        });
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = pipe.source()) {
+            final byte[] buffer = new byte[333];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        writer.get(10, TimeUnit.SECONDS);
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+    }
+
+    public void testPipeConsumerStopsEarly() throws Exception {
+        final BoundedPipe pipe = new BoundedPipe(1000);
+        final Future<?> writer = executor.submit(() -> {
+            try (OutputStream out = pipe.sink()) {
+                final byte[] chunk = new byte[4096];
+                for (int i = 0; i < 1000; ++i) {
+                    out.write(chunk);
+                }
+            }
+            return null;
+        });
+        try (InputStream in = pipe.source()) {
+            assertEquals(100, in.read(new byte[100]));
+        }
+        // the writer is blocked on a full pipe, closing the reading side has to release it
+        try {
+            writer.get(10, TimeUnit.SECONDS);
+            fail("Expected the writer to fail");
+        } catch (ExecutionException e) {
+            assertEquals("Pipe closed by reader", e.getCause().getMessage());
+        }
+    }
+
+    public void testPipeHandsFailureToReader() throws Exception {
+        final BoundedPipe pipe = new BoundedPipe(1000);
+        final OutputStream out = pipe.sink();
+        out.write(new byte[10]);
+        pipe.fail(new IllegalStateException("boom"));
+        try (InputStream in = pipe.source()) {
+            in.read(new byte[100]);
+            fail("Expected the failure to reach the reader");
+        } catch (IOException e) {
+            assertEquals("boom", e.getCause().getMessage());
+        }
+    }
+
+    private static byte[] random(int size) {
+        final byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,83 @@
+package com.devinrsmith.jblob.benchmarks;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.file.JBlobFile;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.devinrsmith.jblob.memory.MemoryOptions;
+import com.devinrsmith.jblob.s3.FakeS3;
+import com.devinrsmith.jblob.s3.JBlobS3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+/**
+ * A JBlob to benchmark against, by name, along with whatever it needs torn down afterwards:
+ * "memory", "file" (in a temporary directory) or "s3" (against an in-process {@link FakeS3}).
+ */
+final class BenchmarkBackend implements Closeable {
+    static final String BUCKET = "jblob-benchmarks";
+
+    private final JBlob jblob;
+    private final Path dir;
+    private final FakeS3 s3;
+    private final TransferManager tx;
+
+    private BenchmarkBackend(JBlob jblob, Path dir, FakeS3 s3, TransferManager tx) {
+        this.jblob = jblob;
+        this.dir = dir;
+        this.s3 = s3;
+        this.tx = tx;
+    }
+
+    /**
+     * capacity is only used by the memory backend, which needs to be told up front
+     */
+    static BenchmarkBackend open(String name, long capacity) throws IOException {
+        switch (name) {
+            case "memory":
+                return new BenchmarkBackend(new JBlobMemory(MemoryOptions.builder().capacity(capacity).build()), null, null, null);
+            case "file": {
+                final Path dir = Files.createTempDirectory("jblob-benchmarks");
+                return new BenchmarkBackend(new JBlobFile(dir), dir, null, null);
+            }
+            case "s3": {
+                final FakeS3 s3 = new FakeS3();
+                s3.createBucket(BUCKET);
+                final AmazonS3Client client = new AmazonS3Client(new BasicAWSCredentials("benchmark", "benchmark"));
+                client.setEndpoint(s3.getEndpoint());
+                client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+                final TransferManager tx = new TransferManager(client);
+                return new BenchmarkBackend(new JBlobS3(BUCKET, tx), null, s3, tx);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown backend " + name);
+        }
+    }
+
+    JBlob jblob() {
+        return jblob;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tx != null) {
+            tx.shutdownNow();
+        }
+        if (s3 != null) {
+            s3.close();
+        }
+        if (dir != null) {
+            try (final Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.devinrsmith.jblob.benchmarks;
+
+import com.google.common.io.ByteSource;
+
+import java.io.InputStream;
+
+/**
+ * Reproducible blob contents of any size. Bytes are generated as they are read, so even 1GB blobs cost no
+ * memory, and they are pseudo-random, so neither compression nor chunk-level dedup gets a free ride.
+ */
+final class Blobs {
+    private Blobs() {}
+
+    /**
+     * size bytes determined by seed; equal seeds give equal bytes
+     */
+    static InputStream stream(long size, long seed) {
+        return new GeneratedStream(size, seed);
+    }
+
+    static ByteSource source(long size, long seed) {
+        return new ByteSource() {
+            @Override
+            public InputStream openStream() {
+                return stream(size, seed);
+            }
+
+            @Override
+            public long size() {
+                return size;
+            }
+        };
+    }
+
+    private static class GeneratedStream extends InputStream {
+        private final long size;
+        private long position;
+        private long state;
+        private long word;
+
+        private GeneratedStream(long size, long seed) {
+            this.size = size;
+            // splitmix64 of the seed, xorshift must not start from zero
+            long z = seed + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            this.state = (z ^ (z >>> 31)) | 1;
+        }
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            return next() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            final int n = (int) Math.min(len, size - position);
+            for (int i = 0; i < n; ++i) {
+                b[off + i] = next();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0, Math.min(n, size - position));
+            for (long i = 0; i < skipped; ++i) {
+                next();
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, size - position);
+        }
+
+        private byte next() {
+            if ((position & 7) == 0) {
+                state ^= state << 13;
+                state ^= state >>> 7;
+                state ^= state << 17;
+                word = state;
+            }
+            ++position;
+            final byte b = (byte) word;
+            word >>>= 8;
+            return b;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.devinrsmith.jblob.benchmarks;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.keyless.IngestMode;
+import com.devinrsmith.jblob.api.keyless.JBlobContentTyper;
+import com.devinrsmith.jblob.api.keyless.JBlobDeduper;
+import com.devinrsmith.jblob.api.keyless.JBlobHasher;
+import com.devinrsmith.jblob.api.keyless.JBlobKeyGenerator;
+import com.devinrsmith.jblob.api.keyless.JBlobKeyless;
+import com.devinrsmith.jblob.api.keyless.JBlobKeylessImpl;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JBlobKeylessImpl.upload over the memory backend, so the hashing, dedup and typing overhead is what shows:
+ * once with content it hasn't seen (which is deleted again afterwards), once with content it has, in each
+ * ingest mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-XX:MaxDirectMemorySize=8g" })
+public class KeylessBenchmark {
+    @Param({ "1024", "1048576", "67108864", "1073741824" })
+    public long size;
+
+    @Param({ "MULTI_PASS", "SPOOL", "STAGED" })
+    public IngestMode mode;
+
+    private BenchmarkBackend bench;
+    private JBlobKeyless keyless;
+    private long seed;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        bench = BenchmarkBackend.open("memory", 2 * size + 64 * 1024 * 1024);
+        final JBlob jblob = bench.jblob();
+        final JBlobKeyGenerator generator = HashCode::toString;
+        keyless = new JBlobKeylessImpl(
+                jblob,
+                JBlobHasher.of(Hashing.sha256()),
+                new HeadDeduper(jblob, generator),
+                generator,
+                JBlobContentTyper.Null.NULL,
+                mode);
+        keyless.upload(Blobs.source(size, 0));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    @Benchmark
+    public String uploadNew() throws IOException, InterruptedException {
+        final String key = keyless.upload(Blobs.source(size, ++seed), new HashMap<>());
+        keyless.delete(key);
+        return key;
+    }
+
+    @Benchmark
+    public String uploadExisting() throws IOException, InterruptedException {
+        return keyless.upload(Blobs.source(size, 0), new HashMap<>());
+    }
+
+    /**
+     * Content is known when its key exists
+     */
+    private static class HeadDeduper implements JBlobDeduper {
+        private final JBlob jblob;
+        private final JBlobKeyGenerator generator;
+
+        private HeadDeduper(JBlob jblob, JBlobKeyGenerator generator) {
+            this.jblob = jblob;
+            this.generator = generator;
+        }
+
+        @Override
+        public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) throws IOException {
+            final String key = generator.generateKey(hashCode);
+            return jblob.downloadMetadata(key).isPresent() ? Optional.of(key) : Optional.empty();
+        }
+
+        @Override
+        public void putNewKey(HashCode hashCode, String key) {
+            // the blob itself is the record
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.devinrsmith.jblob.benchmarks;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walking every key of a backend holding count small blobs, spread over 16 "directories" so that listings
+ * which split on a delimiter have something to split.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+    private static final int BLOB_SIZE = 1024;
+
+    @Param({ "memory", "file", "s3" })
+    public String backend;
+
+    @Param({ "1000", "10000" })
+    public int count;
+
+    private BenchmarkBackend bench;
+    private JBlob jblob;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        bench = BenchmarkBackend.open(backend, 2L * count * BLOB_SIZE + 64 * 1024 * 1024);
+        jblob = bench.jblob();
+        for (int i = 0; i < count; ++i) {
+            jblob.upload(String.format("dir-%02d/blob-%d", i % 16, i), Blobs.stream(BLOB_SIZE, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    @Benchmark
+    public long keys() {
+        return jblob.keys().count();
+    }
+
+    @Benchmark
+    public JBlobStatistics stats() throws IOException {
+        return jblob.stats();
+    }
+}
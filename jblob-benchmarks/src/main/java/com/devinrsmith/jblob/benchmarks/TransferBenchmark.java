@@ -0,0 +1,82 @@
+package com.devinrsmith.jblob.benchmarks;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving one blob in, out, and within each backend, from 1KB to 1GB.
+ *
+ * The 1GB runs need the heap and direct memory given to the fork; narrow them down with, for example,
+ * {@code -p size=1024,1048576 -p backend=s3}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g", "-XX:MaxDirectMemorySize=8g" })
+public class TransferBenchmark {
+    private static final long RANGE_LENGTH = 64 * 1024;
+
+    @Param({ "memory", "file", "s3" })
+    public String backend;
+
+    @Param({ "1024", "1048576", "67108864", "1073741824" })
+    public long size;
+
+    private BenchmarkBackend bench;
+    private JBlob jblob;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        // the source, an upload and a copy may all be held at once
+        bench = BenchmarkBackend.open(backend, 3 * size + 64 * 1024 * 1024);
+        jblob = bench.jblob();
+        jblob.upload("source", Blobs.stream(size, 0));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    @Benchmark
+    public void upload() throws IOException, InterruptedException {
+        jblob.upload("upload", Blobs.stream(size, 1));
+    }
+
+    @Benchmark
+    public Optional<JBlobMeta> download() throws IOException, InterruptedException {
+        return jblob.download("source", ByteStreams.nullOutputStream());
+    }
+
+    /**
+     * 64KB from the middle of the blob
+     */
+    @Benchmark
+    public Optional<JBlobMeta> downloadRange() throws IOException, InterruptedException {
+        return jblob.download("source", size / 2, RANGE_LENGTH, ByteStreams.nullOutputStream());
+    }
+
+    @Benchmark
+    public void copy() throws IOException, InterruptedException {
+        jblob.copy("copy", "source", jblob);
+    }
+}
@@ -0,0 +1,15 @@
+package com.devinrsmith.jblob.benchmarks;
+
+import com.google.common.io.ByteStreams;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class BlobsTest extends TestCase {
+    public void testBlobsAreReproducible() throws Exception {
+        final byte[] a = ByteStreams.toByteArray(Blobs.stream(1001, 7));
+        assertEquals(1001, a.length);
+        assertTrue(Arrays.equals(a, ByteStreams.toByteArray(Blobs.stream(1001, 7))));
+        assertFalse(Arrays.equals(a, ByteStreams.toByteArray(Blobs.stream(1001, 8))));
+    }
+}
@@ -0,0 +1,97 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListeners;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.Striped;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * One level of a {@link JBlobCache}: a JBlob holding cached copies, and an LRU index of what it holds,
+ * weighed by blob length.
+ *
+ * The store is only changed while holding the key's lock, and an evicted blob is only deleted if the key
+ * wasn't filled again in the meantime. Evictions are handled on another thread, so the key locks are never
+ * nested.
+ */
+class CacheTier {
+    private final JBlob store;
+    private final long maxBlobSize;
+    private final Striped<Lock> locks;
+    private final Cache<String, Long> index;
+
+    CacheTier(JBlob store, long maxWeight, long maxBlobSize, Striped<Lock> locks, Executor executor) {
+        this.store = store;
+        this.maxBlobSize = Math.min(maxBlobSize, maxWeight);
+        this.locks = locks;
+        this.index = CacheBuilder.newBuilder()
+                // one segment, so maxWeight bounds the whole tier and eviction is LRU over all of it
+                .concurrencyLevel(1)
+                .maximumWeight(maxWeight)
+                .<String, Long>weigher((key, length) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1, length)))
+                .removalListener(RemovalListeners.asynchronous(this::onRemoval, executor))
+                .build();
+    }
+
+    JBlob store() {
+        return store;
+    }
+
+    long maxBlobSize() {
+        return maxBlobSize;
+    }
+
+    boolean accepts(long length) {
+        return length <= maxBlobSize;
+    }
+
+    /**
+     * The length of key if this tier holds it, or null. Counts as a use of key.
+     */
+    Long lookup(String key) {
+        return index.getIfPresent(key);
+    }
+
+    /**
+     * To be called holding the key's lock (or before the tier is in use), once key has been stored
+     */
+    void filled(String key, long length) {
+        index.put(key, length);
+    }
+
+    /**
+     * To be called holding the key's lock
+     */
+    void invalidate(String key) throws IOException {
+        if (index.asMap().remove(key) != null) {
+            store.delete(key);
+        }
+    }
+
+    private void onRemoval(RemovalNotification<String, Long> notification) {
+        if (notification.getCause() == RemovalCause.REPLACED) {
+            // the store holds the replacement
+            return;
+        }
+        final String key = notification.getKey();
+        final Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            if (index.asMap().containsKey(key)) {
+                // filled again since it was evicted
+                return;
+            }
+            store.delete(key);
+        } catch (IOException e) {
+            // the blob stays behind, a later fill overwrites it
+        } finally {
+            lock.unlock();
+        }
+    }
+}
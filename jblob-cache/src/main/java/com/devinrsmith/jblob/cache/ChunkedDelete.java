@@ -0,0 +1,56 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobDeleteException;
+import com.google.common.collect.Iterators;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * deleteAll for the caching decorators: keys are forwarded to the origin's deleteAll a chunk at a time, so
+ * its batching still applies, and each chunk is invalidated once the origin is done with it.
+ */
+class ChunkedDelete {
+    interface Invalidator {
+        void invalidate(String key) throws IOException;
+    }
+
+    // several S3 batches worth, so they can still be in flight together
+    private static final int CHUNK_SIZE = 16000;
+
+    private ChunkedDelete() {}
+
+    static void deleteAll(JBlob origin, Stream<String> keys, Invalidator invalidator) throws IOException {
+        final Map<String, IOException> failures = new LinkedHashMap<>();
+        final Iterator<List<String>> chunks = Iterators.partition(keys.sequential().iterator(), CHUNK_SIZE);
+        try {
+            while (chunks.hasNext()) {
+                final List<String> chunk = chunks.next();
+                try {
+                    origin.deleteAll(chunk);
+                } catch (JBlobDeleteException e) {
+                    failures.putAll(e.getFailures());
+                } finally {
+                    for (String key : chunk) {
+                        try {
+                            invalidator.invalidate(key);
+                        } catch (IOException e) {
+                            failures.putIfAbsent(key, e);
+                        }
+                    }
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!failures.isEmpty()) {
+            throw new JBlobDeleteException(failures);
+        }
+    }
+}
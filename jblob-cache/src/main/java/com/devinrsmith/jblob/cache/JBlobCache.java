@@ -0,0 +1,466 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.api.JBlobStatistics;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * A read-through cache in front of a slow JBlob (the origin), made of one or more tiers, fastest first.
+ * Each tier is itself a JBlob, typically a JBlobMemory for small blobs followed by a JBlobFile, bounded by
+ * the total length of the blobs it holds and evicted least recently used first.
+ *
+ * A download is served by the first tier holding the key, and copied into the faster tiers that accept it.
+ * On a miss the origin's bytes are streamed to the caller while being recorded, then stored in every tier
+ * that accepts them. Concurrent misses for the same key share one fetch from the origin, as long as the blob
+ * could be cached: once it turns out larger than any tier takes, the others fetch it themselves.
+ *
+ * Uploads, deletes and copies through the cache go to the origin and invalidate the key in every tier.
+ * A fetch that raced with one of those is not stored, so the cache never holds bytes older than the last
+ * change made through it. Changes made to the origin directly are not noticed.
+ */
+public class JBlobCache implements JBlob {
+    public static Builder builder(JBlob origin) {
+        return new Builder(origin);
+    }
+
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final int STRIPES = 1024;
+    // misses are recorded in memory up to this size, and in a temporary file beyond it
+    private static final int SPOOL_MEMORY_LIMIT = 1024 * 1024;
+
+    private final JBlob origin;
+    private final List<CacheTier> tiers;
+    private final long maxBlobSize;
+    private final Striped<Lock> locks;
+    // bumped on every change to a key made through the cache, a fetch only fills if its stripe's didn't move
+    private final AtomicLongArray epochs = new AtomicLongArray(STRIPES);
+    private final ConcurrentHashMap<String, CompletableFuture<Boolean>> flights = new ConcurrentHashMap<>();
+
+    private JBlobCache(JBlob origin, List<CacheTier> tiers, Striped<Lock> locks) {
+        this.origin = origin;
+        this.tiers = tiers;
+        this.locks = locks;
+        this.maxBlobSize = tiers.stream().mapToLong(CacheTier::maxBlobSize).max().orElse(0);
+    }
+
+    public JBlob getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(out);
+
+        while (true) {
+            final long epoch = epoch(key);
+            final JBlobMeta hit = downloadFromTiers(key, out, epoch);
+            if (hit != null) {
+                return Optional.of(hit);
+            }
+
+            final CompletableFuture<Boolean> flight = new CompletableFuture<>();
+            final CompletableFuture<Boolean> existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                try {
+                    return fetch(key, out, epoch, flight);
+                } finally {
+                    flights.remove(key, flight);
+                }
+            }
+
+            // someone else is fetching key, wait for it to land in a tier and look again
+            final boolean cached;
+            try {
+                cached = existing.get();
+            } catch (ExecutionException e) {
+                // their fetch failed, which may have been their caller's fault, so try ourselves
+                continue;
+            }
+            if (!cached) {
+                // missing, too large to cache, or changed while fetched
+                return origin.download(key, out);
+            }
+        }
+    }
+
+    /**
+     * Served from the first tier holding key, otherwise from the origin. A range alone isn't cached.
+     */
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(out);
+        for (CacheTier tier : tiers) {
+            if (tier.lookup(key) != null) {
+                final Optional<JBlobMeta> meta = tier.store().download(key, offset, length, out);
+                if (meta.isPresent()) {
+                    return meta;
+                }
+                // evicted while we looked
+            }
+        }
+        return origin.download(key, offset, length, out);
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        Preconditions.checkNotNull(key);
+        final Optional<JBlobMeta> meta = metadataFromTiers(key);
+        return meta.isPresent() ? meta : origin.downloadMetadata(key);
+    }
+
+    /**
+     * Keys no tier holds are looked up in the origin, together in one batch
+     */
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        Preconditions.checkNotNull(keys);
+        // the misses hold their place with null until they are looked up
+        final Map<String, Optional<JBlobMeta>> metas = new LinkedHashMap<>();
+        final List<String> misses = new ArrayList<>();
+        for (String key : keys) {
+            final Optional<JBlobMeta> meta = metadataFromTiers(key);
+            metas.put(key, meta.isPresent() ? meta : null);
+            if (!meta.isPresent()) {
+                misses.add(key);
+            }
+        }
+        if (!misses.isEmpty()) {
+            metas.putAll(origin.downloadMetadata(misses));
+        }
+        return metas;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        Preconditions.checkNotNull(key);
+        try {
+            origin.upload(key, in, properties);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Preconditions.checkNotNull(key);
+        try {
+            origin.delete(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        Preconditions.checkNotNull(keys);
+        ChunkedDelete.deleteAll(origin, keys, this::invalidate);
+    }
+
+    /**
+     * Copies within the origin, so a server-side copy is used when other is (or caches) the same kind of JBlob
+     */
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(other);
+        try {
+            origin.copy(key, otherKey, other instanceof JBlobCache ? ((JBlobCache) other).origin : other);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return origin.keys();
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return origin.keys(prefix);
+    }
+
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        return origin.entries(prefix);
+    }
+
+    @Override
+    public JBlobStatistics stats() throws IOException {
+        return origin.stats();
+    }
+
+    /**
+     * Serves key from the first tier holding it, or returns null
+     */
+    private JBlobMeta downloadFromTiers(String key, OutputStream out, long epoch) throws IOException, InterruptedException {
+        for (int i = 0; i < tiers.size(); ++i) {
+            final CacheTier tier = tiers.get(i);
+            final Long length = tier.lookup(key);
+            if (length == null) {
+                continue;
+            }
+            final List<CacheTier> faster = accepting(tiers.subList(0, i), length);
+            final Optional<JBlobMeta> meta;
+            if (faster.isEmpty()) {
+                meta = tier.store().download(key, out);
+            } else {
+                try (final Spool spool = new Spool(SPOOL_MEMORY_LIMIT, length)) {
+                    meta = tier.store().download(key, tee(out, spool));
+                    if (meta.isPresent() && !spool.isOverflowed()) {
+                        fill(key, epoch, spool, meta.get(), faster);
+                    }
+                }
+            }
+            if (meta.isPresent()) {
+                return meta.get();
+            }
+            // evicted while we looked
+        }
+        return null;
+    }
+
+    private Optional<JBlobMeta> fetch(String key, OutputStream out, long epoch, CompletableFuture<Boolean> flight) throws IOException, InterruptedException {
+        try (final Spool spool = new Spool(SPOOL_MEMORY_LIMIT, maxBlobSize)) {
+            // no tier will take it, so there is nothing for the others to wait for
+            final Optional<JBlobMeta> meta = origin.download(key, tee(out, spool, () -> {
+                if (spool.isOverflowed()) {
+                    flight.complete(false);
+                }
+            }));
+            final boolean cached = meta.isPresent() && !spool.isOverflowed() && fill(key, epoch, spool, meta.get(), accepting(tiers, spool.size()));
+            flight.complete(cached);
+            return meta;
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+            throw t;
+        }
+    }
+
+    private boolean fill(String key, long epoch, Spool spool, JBlobMeta meta, List<CacheTier> into) throws IOException, InterruptedException {
+        if (into.isEmpty()) {
+            return false;
+        }
+        final Map<String, String> properties = properties(meta);
+        final Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            if (epoch(key) != epoch) {
+                // changed through us while we were reading, what we have may be stale
+                return false;
+            }
+            boolean filled = false;
+            for (CacheTier tier : into) {
+                try (final InputStream in = spool.openStream()) {
+                    tier.store().upload(key, in, properties);
+                } catch (IOException e) {
+                    // caching is best effort, e.g. a tier that is full
+                    continue;
+                }
+                tier.filled(key, spool.size());
+                filled = true;
+            }
+            return filled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<JBlobMeta> metadataFromTiers(String key) throws IOException {
+        for (CacheTier tier : tiers) {
+            if (tier.lookup(key) != null) {
+                final Optional<JBlobMeta> meta = tier.store().downloadMetadata(key);
+                if (meta.isPresent()) {
+                    return meta;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void invalidate(String key) throws IOException {
+        final Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            epochs.incrementAndGet(stripe(key));
+            IOException failure = null;
+            for (CacheTier tier : tiers) {
+                try {
+                    tier.invalidate(key);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long epoch(String key) {
+        return epochs.get(stripe(key));
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    private static List<CacheTier> accepting(List<CacheTier> tiers, long length) {
+        final List<CacheTier> accepting = new ArrayList<>(tiers.size());
+        for (CacheTier tier : tiers) {
+            if (tier.accepts(length)) {
+                accepting.add(tier);
+            }
+        }
+        return accepting;
+    }
+
+    // tiers learn the content type from the properties, make sure it is there
+    private static Map<String, String> properties(JBlobMeta meta) {
+        final Map<String, String> properties = meta.getProperties();
+        if (!meta.getContentType().isPresent() || properties.keySet().stream().anyMatch(CONTENT_TYPE::equalsIgnoreCase)) {
+            return properties;
+        }
+        final Map<String, String> withType = new HashMap<>(properties);
+        withType.put(CONTENT_TYPE, meta.getContentType().get());
+        return withType;
+    }
+
+    private static OutputStream tee(OutputStream out, Spool spool) {
+        return tee(out, spool, () -> {});
+    }
+
+    /**
+     * afterWrite runs after every write to spool
+     */
+    private static OutputStream tee(OutputStream out, Spool spool, Runnable afterWrite) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                spool.write(b);
+                afterWrite.run();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                spool.write(b, off, len);
+                afterWrite.run();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    public static class Builder {
+        private final JBlob origin;
+        private final List<TierSpec> tiers = new ArrayList<>();
+        private boolean warmStart = false;
+
+        private Builder(JBlob origin) {
+            this.origin = Preconditions.checkNotNull(origin);
+        }
+
+        /**
+         * Adds a tier holding at most maxWeight bytes of blobs. Tiers are looked at in the order they are added.
+         */
+        public Builder tier(JBlob store, long maxWeight) {
+            return tier(store, maxWeight, maxWeight);
+        }
+
+        /**
+         * Adds a tier holding at most maxWeight bytes of blobs, none larger than maxBlobSize. Tiers are looked
+         * at in the order they are added.
+         */
+        public Builder tier(JBlob store, long maxWeight, long maxBlobSize) {
+            Preconditions.checkNotNull(store);
+            Preconditions.checkArgument(maxWeight > 0, "maxWeight must be positive");
+            Preconditions.checkArgument(maxBlobSize > 0, "maxBlobSize must be positive");
+            tiers.add(new TierSpec(store, maxWeight, maxBlobSize));
+            return this;
+        }
+
+        /**
+         * When true, blobs already in the tiers' stores are adopted into the cache (trusting they are still
+         * current). When false, the default, they are deleted. Either way every tier must be dedicated to the cache.
+         */
+        public Builder warmStart(boolean warmStart) {
+            this.warmStart = warmStart;
+            return this;
+        }
+
+        public JBlobCache build() throws IOException {
+            final Striped<Lock> locks = Striped.lock(STRIPES);
+            final List<CacheTier> built = new ArrayList<>(tiers.size());
+            for (TierSpec spec : tiers) {
+                final CacheTier tier = new CacheTier(spec.store, spec.maxWeight, spec.maxBlobSize, locks, Evictions.EXECUTOR);
+                try (final Stream<JBlobEntry> entries = spec.store.entries("")) {
+                    for (JBlobEntry entry : (Iterable<JBlobEntry>) entries::iterator) {
+                        if (warmStart && tier.accepts(entry.getContentLength())) {
+                            tier.filled(entry.getKey(), entry.getContentLength());
+                        } else {
+                            spec.store.delete(entry.getKey());
+                        }
+                    }
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                built.add(tier);
+            }
+            return new JBlobCache(origin, Collections.unmodifiableList(built), locks);
+        }
+    }
+
+    private static class TierSpec {
+        private final JBlob store;
+        private final long maxWeight;
+        private final long maxBlobSize;
+
+        private TierSpec(JBlob store, long maxWeight, long maxBlobSize) {
+            this.store = store;
+            this.maxWeight = maxWeight;
+            this.maxBlobSize = maxBlobSize;
+        }
+    }
+
+    private static class Evictions {
+        // deletes evicted blobs from the tiers, off the threads doing the evicting
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("jblob-cache-%d")
+                .build());
+    }
+}
@@ -0,0 +1,282 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.api.JBlobStatistics;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * Caches downloadMetadata of the JBlob it decorates, including "not found", so repeated lookups don't cost
+ * a request each (a HEAD, for S3).
+ *
+ * Found and not found results are kept in separate bounded caches with their own time to live; not found
+ * usually deserves a much shorter one. Uploads, deletes and copies through this instance invalidate the key,
+ * and a lookup that raced with one of those isn't cached. Changes made to the JBlob directly are only
+ * noticed once the cached result expires, or after {@link #invalidate(String)}.
+ */
+public class JBlobMetaCache implements JBlob {
+    public static Builder builder(JBlob jblob) {
+        return new Builder(jblob);
+    }
+
+    private static final int STRIPES = 1024;
+
+    private final JBlob jblob;
+    private final Cache<String, JBlobMeta> found;
+    private final Cache<String, Boolean> notFound;
+    private final Striped<Lock> locks = Striped.lock(STRIPES);
+    // bumped on every invalidation, a lookup is only cached if its stripe's didn't move
+    private final AtomicLongArray epochs = new AtomicLongArray(STRIPES);
+
+    private JBlobMetaCache(Builder builder) {
+        this.jblob = builder.jblob;
+        this.found = CacheBuilder.newBuilder()
+                .maximumSize(builder.maximumSize)
+                .expireAfterWrite(builder.ttlNanos, TimeUnit.NANOSECONDS)
+                .build();
+        this.notFound = CacheBuilder.newBuilder()
+                .maximumSize(builder.maximumSize)
+                .expireAfterWrite(builder.negativeTtlNanos, TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * Forgets what is cached about key, for changes made around this instance
+     */
+    public void invalidate(String key) {
+        Preconditions.checkNotNull(key);
+        final Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            epochs.incrementAndGet(stripe(key));
+            found.invalidate(key);
+            notFound.invalidate(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; ++i) {
+            epochs.incrementAndGet(i);
+        }
+        found.invalidateAll();
+        notFound.invalidateAll();
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        Preconditions.checkNotNull(key);
+        final Optional<JBlobMeta> hit = cached(key);
+        if (hit != null) {
+            return hit;
+        }
+        final long epoch = epoch(key);
+        final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+        remember(key, epoch, meta);
+        return meta;
+    }
+
+    /**
+     * Only the keys that aren't cached are looked up, together in one batch
+     */
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        Preconditions.checkNotNull(keys);
+        // the misses hold their place with null until they are looked up
+        final Map<String, Optional<JBlobMeta>> metas = new LinkedHashMap<>();
+        final Map<String, Long> misses = new LinkedHashMap<>();
+        for (String key : keys) {
+            final Optional<JBlobMeta> hit = cached(key);
+            metas.put(key, hit);
+            if (hit == null) {
+                misses.put(key, epoch(key));
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (Map.Entry<String, Optional<JBlobMeta>> e : jblob.downloadMetadata(misses.keySet()).entrySet()) {
+                remember(e.getKey(), misses.get(e.getKey()), e.getValue());
+                metas.put(e.getKey(), e.getValue());
+            }
+        }
+        return metas;
+    }
+
+    /**
+     * A download learns the metadata too, so it is cached on the way through
+     */
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        final long epoch = epoch(key);
+        final Optional<JBlobMeta> meta = jblob.download(key, out);
+        remember(key, epoch, meta);
+        return meta;
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        final long epoch = epoch(key);
+        final Optional<JBlobMeta> meta = jblob.download(key, offset, length, out);
+        remember(key, epoch, meta);
+        return meta;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        Preconditions.checkNotNull(key);
+        try {
+            jblob.upload(key, in, properties);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Preconditions.checkNotNull(key);
+        try {
+            jblob.delete(key);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        Preconditions.checkNotNull(keys);
+        ChunkedDelete.deleteAll(jblob, keys, this::invalidate);
+    }
+
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(other);
+        try {
+            jblob.copy(key, otherKey, other instanceof JBlobMetaCache ? ((JBlobMetaCache) other).jblob : other);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return jblob.keys();
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return jblob.keys(prefix);
+    }
+
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        return jblob.entries(prefix);
+    }
+
+    @Override
+    public JBlobStatistics stats() throws IOException {
+        return jblob.stats();
+    }
+
+    /**
+     * What is cached about key, or null if nothing is
+     */
+    private Optional<JBlobMeta> cached(String key) {
+        final JBlobMeta hit = found.getIfPresent(key);
+        if (hit != null) {
+            return Optional.of(hit);
+        }
+        if (notFound.getIfPresent(key) != null) {
+            return Optional.empty();
+        }
+        return null;
+    }
+
+    private void remember(String key, long epoch, Optional<JBlobMeta> meta) {
+        final Lock lock = locks.get(key);
+        lock.lock();
+        try {
+            if (epoch(key) != epoch) {
+                // changed through us while we were asking, the answer may be stale
+                return;
+            }
+            if (meta.isPresent()) {
+                found.put(key, meta.get());
+                notFound.invalidate(key);
+            } else {
+                notFound.put(key, Boolean.TRUE);
+                found.invalidate(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long epoch(String key) {
+        return epochs.get(stripe(key));
+    }
+
+    private static int stripe(String key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    public static class Builder {
+        private final JBlob jblob;
+        private long maximumSize = 100000;
+        private long ttlNanos = TimeUnit.MINUTES.toNanos(5);
+        private long negativeTtlNanos = TimeUnit.SECONDS.toNanos(30);
+
+        private Builder(JBlob jblob) {
+            this.jblob = Preconditions.checkNotNull(jblob);
+        }
+
+        /**
+         * The most keys remembered as found, and separately, as not found
+         */
+        public Builder maximumSize(long maximumSize) {
+            Preconditions.checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * How long metadata that was found is remembered
+         */
+        public Builder ttl(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0, "duration must not be negative");
+            this.ttlNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * How long a key that wasn't found is remembered as not found, zero to not remember at all
+         */
+        public Builder negativeTtl(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0, "duration must not be negative");
+            this.negativeTtlNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public JBlobMetaCache build() {
+            return new JBlobMetaCache(this);
+        }
+    }
+}
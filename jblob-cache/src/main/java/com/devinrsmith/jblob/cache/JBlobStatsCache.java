@@ -0,0 +1,533 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobDeleteException;
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.api.JBlobSizeHistogram;
+import com.devinrsmith.jblob.api.JBlobStatistics;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterators;
+import com.google.common.io.CountingInputStream;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the statistics of the JBlob it decorates up to date as blobs are uploaded, copied and deleted
+ * through it, so {@link #stats()} answers from memory instead of listing every key. Besides count, size,
+ * min and max, the statistics have a size histogram and a breakdown by Content-Type.
+ *
+ * Keeping the totals costs round trips to the decorated JBlob, each a synchronous HEAD on S3: every upload
+ * looks up its key first to take out what it replaces, every copy looks up its key before and after since it
+ * doesn't otherwise know the size copied, every delete looks up what it deletes, and deleteAll does one batch
+ * lookup per chunk of 1000 keys. {@link Builder#assumeNewKeys(boolean)} drops the lookup before upload and
+ * copy, for stores that never overwrite a key.
+ *
+ * The lookup and the write aren't atomic, so two overwrites of the same key racing each other both see the
+ * old blob, both are counted, and the old blob is taken out twice. min and max can't be taken back on
+ * delete; after the smallest or largest blob is deleted they are narrowed to what the histogram allows,
+ * within a factor of two.
+ *
+ * Racing overwrites, changes made around this instance, and changes racing a rescan drift the totals until
+ * the next {@link #rescan()}, which can also be scheduled. With a snapshot file, the totals are saved
+ * periodically and on close, and picked up by the next instance instead of rescanning.
+ */
+public class JBlobStatsCache implements JBlob, Closeable {
+    public static Builder builder(JBlob jblob) {
+        return new Builder(jblob);
+    }
+
+    /**
+     * The type blobs without a Content-Type are counted under
+     */
+    public static final String UNTYPED = "application/octet-stream";
+
+    private static final String HEADER = "jblob-stats 1";
+    private static final String OVERALL = "*";
+    private static final int CHUNK_SIZE = 1000;
+
+    private final JBlob jblob;
+    private final Path snapshot;
+    private final boolean assumeNewKeys;
+    private final boolean rescanContentTypes;
+    private final ScheduledExecutorService scheduler;
+    private final Object rescanLock = new Object();
+    // null until loaded from the snapshot or scanned
+    private final AtomicReference<Totals> totals = new AtomicReference<>();
+
+    private JBlobStatsCache(Builder builder) throws IOException {
+        this.jblob = builder.jblob;
+        this.snapshot = builder.snapshot;
+        this.assumeNewKeys = builder.assumeNewKeys;
+        this.rescanContentTypes = builder.rescanContentTypes;
+        if (snapshot != null && Files.exists(snapshot)) {
+            totals.set(load(snapshot));
+        }
+        if (builder.rescanNanos > 0 || (snapshot != null && builder.snapshotNanos > 0)) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("jblob-stats-%d")
+                    .build());
+            if (builder.rescanNanos > 0) {
+                scheduler.scheduleWithFixedDelay(() -> quietly(this::rescan), builder.rescanNanos, builder.rescanNanos, TimeUnit.NANOSECONDS);
+            }
+            if (snapshot != null && builder.snapshotNanos > 0) {
+                scheduler.scheduleWithFixedDelay(() -> quietly(this::saveSnapshot), builder.snapshotNanos, builder.snapshotNanos, TimeUnit.NANOSECONDS);
+            }
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * From memory, once the totals have been loaded or scanned; the first call may have to rescan
+     */
+    @Override
+    public JBlobStatistics stats() throws IOException {
+        final Totals current = totals.get();
+        return current != null ? current.snapshot() : rescan();
+    }
+
+    /**
+     * Lists every key to replace the totals. The breakdown by type is only rescanned with
+     * {@link Builder#rescanContentTypes(boolean)}, otherwise it carries over.
+     */
+    public JBlobStatistics rescan() throws IOException {
+        synchronized (rescanLock) {
+            final Totals previous = totals.get();
+            final Totals scanned;
+            try {
+                if (rescanContentTypes) {
+                    scanned = new Totals();
+                    try (final Stream<String> keys = jblob.keys()) {
+                        final Iterator<List<String>> chunks = Iterators.partition(keys.iterator(), CHUNK_SIZE);
+                        while (chunks.hasNext()) {
+                            for (Optional<JBlobMeta> meta : jblob.downloadMetadata(chunks.next()).values()) {
+                                if (meta.isPresent()) {
+                                    scanned.add(type(meta.get()), meta.get().getContentLength());
+                                }
+                            }
+                        }
+                    }
+                } else {
+                    scanned = new Totals(new Tally(), previous != null ? previous.byType : new ConcurrentHashMap<>());
+                    try (final Stream<JBlobEntry> entries = jblob.entries("")) {
+                        entries.parallel().forEach(entry -> scanned.overall.add(entry.getContentLength()));
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            totals.set(scanned);
+            if (snapshot != null) {
+                saveSnapshot();
+            }
+            return scanned.snapshot();
+        }
+    }
+
+    /**
+     * Writes the totals to the snapshot file, replacing it atomically
+     */
+    public synchronized void saveSnapshot() throws IOException {
+        Preconditions.checkState(snapshot != null, "No snapshot file was given");
+        final Totals current = totals.get();
+        if (current == null) {
+            return;
+        }
+        final Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (final BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            write(writer, OVERALL, current.overall);
+            for (Map.Entry<String, Tally> e : current.byType.entrySet()) {
+                write(writer, e.getKey(), e.getValue());
+            }
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Stops the scheduled rescans and saves a last snapshot
+     */
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (snapshot != null) {
+            saveSnapshot();
+        }
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(properties);
+        final Optional<JBlobMeta> previous = assumeNewKeys ? Optional.empty() : jblob.downloadMetadata(key);
+        final CountingInputStream counting = new CountingInputStream(in);
+        jblob.upload(key, counting, properties);
+        final Totals current = totals.get();
+        if (current != null) {
+            if (previous.isPresent()) {
+                current.remove(type(previous.get()), previous.get().getContentLength());
+            }
+            current.add(type(properties), counting.getCount());
+        }
+    }
+
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(other);
+        final Optional<JBlobMeta> previous = assumeNewKeys ? Optional.empty() : jblob.downloadMetadata(key);
+        jblob.copy(key, otherKey, other instanceof JBlobStatsCache ? ((JBlobStatsCache) other).jblob : other);
+        final Optional<JBlobMeta> copied = jblob.downloadMetadata(key);
+        final Totals current = totals.get();
+        if (current != null) {
+            if (previous.isPresent()) {
+                current.remove(type(previous.get()), previous.get().getContentLength());
+            }
+            if (copied.isPresent()) {
+                current.add(type(copied.get()), copied.get().getContentLength());
+            }
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Preconditions.checkNotNull(key);
+        final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+        jblob.delete(key);
+        final Totals current = totals.get();
+        if (current != null && meta.isPresent()) {
+            current.remove(type(meta.get()), meta.get().getContentLength());
+        }
+    }
+
+    /**
+     * Looks up the metadata of the keys a chunk at a time, and forwards each chunk to the decorated deleteAll
+     */
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        Preconditions.checkNotNull(keys);
+        final Map<String, IOException> failures = new TreeMap<>();
+        try {
+            final Iterator<List<String>> chunks = Iterators.partition(keys.sequential().iterator(), CHUNK_SIZE);
+            while (chunks.hasNext()) {
+                final List<String> chunk = chunks.next();
+                final Map<String, Optional<JBlobMeta>> metas = jblob.downloadMetadata(chunk);
+                Set<String> failed = Collections.emptySet();
+                try {
+                    jblob.deleteAll(chunk);
+                } catch (JBlobDeleteException e) {
+                    failures.putAll(e.getFailures());
+                    failed = new HashSet<>(e.getFailures().keySet());
+                }
+                final Totals current = totals.get();
+                if (current == null) {
+                    continue;
+                }
+                for (Map.Entry<String, Optional<JBlobMeta>> e : metas.entrySet()) {
+                    if (e.getValue().isPresent() && !failed.contains(e.getKey())) {
+                        current.remove(type(e.getValue().get()), e.getValue().get().getContentLength());
+                    }
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!failures.isEmpty()) {
+            throw new JBlobDeleteException(failures);
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        return jblob.download(key, out);
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        return jblob.download(key, offset, length, out);
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        return jblob.downloadMetadata(key);
+    }
+
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        return jblob.downloadMetadata(keys);
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return jblob.keys();
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return jblob.keys(prefix);
+    }
+
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        return jblob.entries(prefix);
+    }
+
+    private static String type(JBlobMeta meta) {
+        return normalize(meta.getContentType().orElse(null));
+    }
+
+    private static String type(Map<String, String> properties) {
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(e.getKey())) {
+                return normalize(e.getValue());
+            }
+        }
+        return UNTYPED;
+    }
+
+    // charset and other parameters would split a type into many
+    private static String normalize(String contentType) {
+        if (contentType == null) {
+            return UNTYPED;
+        }
+        final String type = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return !type.contains("/") || type.contains(" ") ? UNTYPED : type;
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private static void quietly(Task task) {
+        try {
+            task.run();
+        } catch (IOException | RuntimeException e) {
+            // tried again on the next run
+        }
+    }
+
+    private static void write(BufferedWriter writer, String name, Tally tally) throws IOException {
+        final List<Object> fields = new ArrayList<>();
+        fields.add(name);
+        fields.add(tally.count.sum());
+        fields.add(tally.size.sum());
+        fields.add(tally.min.get());
+        fields.add(tally.max.get());
+        for (long count : tally.histogram.snapshot().counts()) {
+            fields.add(count);
+        }
+        writer.write(Joiner.on(' ').join(fields));
+        writer.newLine();
+    }
+
+    private static Totals load(Path snapshot) throws IOException {
+        try (final BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException(String.format("%s is not a statistics snapshot", snapshot));
+            }
+            Tally overall = null;
+            final ConcurrentMap<String, Tally> byType = new ConcurrentHashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final List<String> fields = Splitter.on(' ').splitToList(line);
+                if (fields.size() != 5 + JBlobSizeHistogram.BUCKETS) {
+                    throw new IOException(String.format("%s has a malformed line: %s", snapshot, line));
+                }
+                final Tally tally = new Tally();
+                try {
+                    tally.count.add(Long.parseLong(fields.get(1)));
+                    tally.size.add(Long.parseLong(fields.get(2)));
+                    tally.min.set(Long.parseLong(fields.get(3)));
+                    tally.max.set(Long.parseLong(fields.get(4)));
+                    final long[] counts = new long[JBlobSizeHistogram.BUCKETS];
+                    for (int i = 0; i < counts.length; ++i) {
+                        counts[i] = Long.parseLong(fields.get(5 + i));
+                    }
+                    tally.histogram.addAll(JBlobSizeHistogram.of(counts));
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("%s has a malformed line: %s", snapshot, line), e);
+                }
+                if (OVERALL.equals(fields.get(0))) {
+                    overall = tally;
+                } else {
+                    byType.put(fields.get(0), tally);
+                }
+            }
+            if (overall == null) {
+                throw new IOException(String.format("%s has no overall totals", snapshot));
+            }
+            return new Totals(overall, byType);
+        }
+    }
+
+    private static class Totals {
+        private final Tally overall;
+        private final ConcurrentMap<String, Tally> byType;
+
+        private Totals() {
+            this(new Tally(), new ConcurrentHashMap<>());
+        }
+
+        private Totals(Tally overall, ConcurrentMap<String, Tally> byType) {
+            this.overall = overall;
+            this.byType = byType;
+        }
+
+        private void add(String type, long size) {
+            overall.add(size);
+            byType.computeIfAbsent(type, t -> new Tally()).add(size);
+        }
+
+        private void remove(String type, long size) {
+            overall.remove(size);
+            byType.computeIfAbsent(type, t -> new Tally()).remove(size);
+        }
+
+        private JBlobStatistics snapshot() {
+            final Map<String, JBlobStatistics> types = new TreeMap<>();
+            for (Map.Entry<String, Tally> e : byType.entrySet()) {
+                final JBlobStatistics stats = e.getValue().snapshot(Collections.emptyMap());
+                if (stats.count() > 0) {
+                    types.put(e.getKey(), stats);
+                }
+            }
+            return overall.snapshot(types);
+        }
+    }
+
+    private static class Tally {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder size = new LongAdder();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        private final JBlobSizeHistogram.Recorder histogram = new JBlobSizeHistogram.Recorder();
+
+        private void add(long length) {
+            count.increment();
+            size.add(length);
+            histogram.add(length);
+            min.accumulateAndGet(length, Math::min);
+            max.accumulateAndGet(length, Math::max);
+        }
+
+        private void remove(long length) {
+            count.decrement();
+            size.add(-length);
+            histogram.remove(length);
+        }
+
+        private JBlobStatistics snapshot(Map<String, JBlobStatistics> byType) {
+            final JBlobSizeHistogram sizes = histogram.snapshot();
+            final long count = this.count.sum();
+            if (count <= 0 || sizes.count() == 0) {
+                return JBlobStatistics.of(0, 0, Long.MAX_VALUE, Long.MIN_VALUE, sizes, byType);
+            }
+            // min and max only ever move outwards, the histogram pulls them back in after deletes
+            final long min = Math.max(this.min.get(), sizes.minBound());
+            final long max = Math.min(this.max.get(), sizes.maxBound());
+            return JBlobStatistics.of(count, Math.max(0, size.sum()), min, max, sizes, byType);
+        }
+    }
+
+    public static class Builder {
+        private final JBlob jblob;
+        private Path snapshot;
+        private boolean assumeNewKeys;
+        private boolean rescanContentTypes;
+        private long rescanNanos;
+        private long snapshotNanos = TimeUnit.MINUTES.toNanos(1);
+
+        private Builder(JBlob jblob) {
+            this.jblob = Preconditions.checkNotNull(jblob);
+        }
+
+        /**
+         * Where the totals are saved, and loaded from on build when the file exists
+         */
+        public Builder snapshot(Path snapshot) {
+            this.snapshot = Preconditions.checkNotNull(snapshot);
+            return this;
+        }
+
+        /**
+         * How often the totals are saved to the snapshot file, zero for only on close and after rescans.
+         * Every minute by default.
+         */
+        public Builder snapshotEvery(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0, "duration must not be negative");
+            this.snapshotNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * How often every key is listed to reconcile the totals, zero for only when asked. Never by default.
+         */
+        public Builder rescanEvery(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0, "duration must not be negative");
+            this.rescanNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Whether rescans look up the metadata of every key for its Content-Type, which listing doesn't give
+         * (on S3, a HEAD per key). false by default, the breakdown by type then carries over rescans.
+         */
+        public Builder rescanContentTypes(boolean rescanContentTypes) {
+            this.rescanContentTypes = rescanContentTypes;
+            return this;
+        }
+
+        /**
+         * Skips the metadata lookup before each upload and copy, for stores that never overwrite a key, a
+         * content addressed one say. false by default. An overwrite is then counted as a new blob, until the
+         * next rescan.
+         */
+        public Builder assumeNewKeys(boolean assumeNewKeys) {
+            this.assumeNewKeys = assumeNewKeys;
+            return this;
+        }
+
+        public JBlobStatsCache build() throws IOException {
+            return new JBlobStatsCache(this);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.devinrsmith.jblob.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Records the bytes written to it so they can be read back: in memory up to memoryLimit bytes, in a
+ * temporary file beyond that. Past maxSize it gives up and stops recording.
+ */
+class Spool extends OutputStream implements Closeable {
+    private final int memoryLimit;
+    private final long maxSize;
+
+    private byte[] bytes = new byte[256];
+    private int count;
+    private Path file;
+    private OutputStream fileOut;
+    private long size;
+    private boolean overflowed;
+
+    Spool(int memoryLimit, long maxSize) {
+        this.memoryLimit = memoryLimit;
+        this.maxSize = maxSize;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * True when more than maxSize bytes were written, the recording is gone
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (overflowed) {
+            return;
+        }
+        size += len;
+        if (size > maxSize) {
+            overflowed = true;
+            close();
+            return;
+        }
+        if (file == null && size <= memoryLimit) {
+            if (size > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(memoryLimit, Math.max(size, bytes.length * 2L)));
+            }
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+            return;
+        }
+        if (file == null) {
+            file = Files.createTempFile("jblob-cache-", null);
+            fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+            fileOut.write(bytes, 0, count);
+            bytes = null;
+        }
+        fileOut.write(b, off, len);
+    }
+
+    InputStream openStream() throws IOException {
+        if (overflowed) {
+            throw new IllegalStateException("overflowed");
+        }
+        if (file == null) {
+            return new ByteArrayInputStream(bytes, 0, count);
+        }
+        fileOut.flush();
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        bytes = null;
+        if (file != null) {
+            try {
+                fileOut.close();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
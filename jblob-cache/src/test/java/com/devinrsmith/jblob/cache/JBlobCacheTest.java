@@ -0,0 +1,265 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.file.JBlobFile;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.devinrsmith.jblob.memory.MemoryOptions;
+import com.google.common.collect.ImmutableMap;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class JBlobCacheTest extends TestCase {
+    private Path dir;
+    private CountingBlob origin;
+    private JBlobMemory memory;
+    private JBlobFile disk;
+    private JBlobCache cache;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("jblob-cache-test");
+        origin = new CountingBlob(new JBlobMemory());
+        memory = new JBlobMemory(MemoryOptions.builder().capacity(1024 * 1024).build());
+        disk = new JBlobFile(dir);
+        cache = JBlobCache.builder(origin)
+                .tier(memory, 64 * 1024, 16 * 1024)
+                .tier(disk, 1024 * 1024)
+                .build();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (final Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public void testHitsAreServedLocally() throws Exception {
+        final byte[] small = random(1000);
+        final byte[] large = random(100000);
+        origin.upload("small", new ByteArrayInputStream(small), ImmutableMap.of("Content-Type", "text/plain"));
+        origin.upload("large", new ByteArrayInputStream(large));
+
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(Arrays.equals(small, download(cache, "small")));
+            assertTrue(Arrays.equals(large, download(cache, "large")));
+        }
+        assertEquals(2, origin.downloads.get());
+        assertTrue(memory.downloadMetadata("small").isPresent());
+        assertFalse(memory.downloadMetadata("large").isPresent());
+        assertTrue(disk.downloadMetadata("large").isPresent());
+        assertEquals(Optional.of("text/plain"), cache.downloadMetadata("small").get().getContentType());
+    }
+
+    public void testUploadAndDeleteInvalidate() throws Exception {
+        cache.upload("key", new ByteArrayInputStream(random(10)));
+        download(cache, "key");
+        final byte[] replacement = random(20);
+        cache.upload("key", new ByteArrayInputStream(replacement));
+        assertTrue(Arrays.equals(replacement, download(cache, "key")));
+
+        cache.delete("key");
+        assertFalse(cache.download("key", new ByteArrayOutputStream()).isPresent());
+        assertFalse(memory.downloadMetadata("key").isPresent());
+        assertFalse(disk.downloadMetadata("key").isPresent());
+    }
+
+    public void testDeleteAllInvalidates() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            cache.upload("key-" + i, new ByteArrayInputStream(random(10)));
+            download(cache, "key-" + i);
+        }
+        cache.deleteAll(cache.keys("key-"));
+        assertEquals(0, origin.keys().count());
+        for (int i = 0; i < 5; ++i) {
+            assertFalse(cache.download("key-" + i, new ByteArrayOutputStream()).isPresent());
+            assertFalse(memory.downloadMetadata("key-" + i).isPresent());
+        }
+    }
+
+    public void testRanges() throws Exception {
+        final byte[] data = random(5000);
+        origin.upload("key", new ByteArrayInputStream(data));
+        final ByteArrayOutputStream miss = new ByteArrayOutputStream();
+        assertEquals(5000, cache.download("key", 1000, 100, miss).get().getContentLength());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 1000, 1100), miss.toByteArray()));
+        assertFalse(memory.downloadMetadata("key").isPresent());
+
+        download(cache, "key");
+        final ByteArrayOutputStream hit = new ByteArrayOutputStream();
+        cache.download("key", 4990, 100, hit);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 4990, 5000), hit.toByteArray()));
+        assertEquals(2, origin.downloads.get());
+    }
+
+    public void testTooLargeIsNotCached() throws Exception {
+        final byte[] huge = random(2 * 1024 * 1024);
+        origin.upload("huge", new ByteArrayInputStream(huge));
+        assertTrue(Arrays.equals(huge, download(cache, "huge")));
+        assertTrue(Arrays.equals(huge, download(cache, "huge")));
+        assertEquals(2, origin.downloads.get());
+    }
+
+    public void testTooLargeIsNotWaitedFor() throws Exception {
+        final byte[] huge = random(2 * 1024 * 1024);
+        origin.upload("huge", new ByteArrayInputStream(huge));
+        final CountDownLatch stall = new CountDownLatch(1);
+        origin.stallFirst = stall;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // the first fetch stalls once it has written every byte, well past what any tier takes
+            final Future<byte[]> first = executor.submit(() -> download(cache, "huge"));
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (origin.downloads.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            final Future<byte[]> second = executor.submit(() -> download(cache, "huge"));
+            assertTrue(Arrays.equals(huge, second.get(5, TimeUnit.SECONDS)));
+
+            stall.countDown();
+            assertTrue(Arrays.equals(huge, first.get()));
+        } finally {
+            stall.countDown();
+            executor.shutdown();
+        }
+        assertEquals(2, origin.downloads.get());
+    }
+
+    public void testEviction() throws Exception {
+        for (int i = 0; i < 10; ++i) {
+            origin.upload("key-" + i, new ByteArrayInputStream(random(10 * 1024)));
+            download(cache, "key-" + i);
+        }
+        // 10 * 10KB doesn't fit in 64KB, the oldest were evicted from memory but are still on disk
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (memory.keys().count() > 6 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(memory.keys().count() <= 6);
+        assertEquals(10, disk.keys().count());
+
+        final int before = origin.downloads.get();
+        download(cache, "key-0");
+        assertEquals(before, origin.downloads.get());
+    }
+
+    public void testConcurrentMissesShareOneFetch() throws Exception {
+        final byte[] data = random(50000);
+        origin.upload("shared", new ByteArrayInputStream(data));
+        origin.gate = new CountDownLatch(1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                futures.add(executor.submit(() -> download(cache, "shared")));
+            }
+            Thread.sleep(200);
+            origin.gate.countDown();
+            for (Future<byte[]> future : futures) {
+                assertTrue(Arrays.equals(data, future.get()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, origin.downloads.get());
+    }
+
+    public void testWarmStart() throws Exception {
+        origin.upload("key", new ByteArrayInputStream(random(10)));
+        download(cache, "key");
+
+        final JBlobCache warm = JBlobCache.builder(origin).tier(new JBlobFile(dir), 1024 * 1024).warmStart(true).build();
+        download(warm, "key");
+        assertEquals(1, origin.downloads.get());
+
+        JBlobCache.builder(origin).tier(new JBlobFile(dir), 1024 * 1024).build();
+        assertEquals(0, disk.keys().count());
+    }
+
+    public void testMissing() throws Exception {
+        assertFalse(cache.download("missing", new ByteArrayOutputStream()).isPresent());
+        assertFalse(cache.downloadMetadata("missing").isPresent());
+    }
+
+    private static byte[] download(JBlob jblob, String key) throws IOException, InterruptedException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(jblob.download(key, out).isPresent());
+        return out.toByteArray();
+    }
+
+    private static byte[] random(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static class CountingBlob implements JBlob {
+        private final JBlob jblob;
+        private final AtomicInteger downloads = new AtomicInteger();
+        private volatile CountDownLatch gate;
+        // awaited by the first download, after it has written the blob
+        private volatile CountDownLatch stallFirst;
+
+        private CountingBlob(JBlob jblob) {
+            this.jblob = jblob;
+        }
+
+        @Override
+        public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+            jblob.upload(key, in, properties);
+        }
+
+        @Override
+        public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+            final int download = downloads.incrementAndGet();
+            if (gate != null) {
+                gate.await();
+            }
+            final Optional<JBlobMeta> meta = jblob.download(key, out);
+            final CountDownLatch stall = stallFirst;
+            if (download == 1 && stall != null) {
+                stall.await();
+            }
+            return meta;
+        }
+
+        @Override
+        public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+            return jblob.downloadMetadata(key);
+        }
+
+        @Override
+        public void delete(String key) throws IOException {
+            jblob.delete(key);
+        }
+
+        @Override
+        public Stream<String> keys() {
+            return jblob.keys();
+        }
+    }
+}
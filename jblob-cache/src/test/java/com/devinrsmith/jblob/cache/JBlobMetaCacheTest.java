@@ -0,0 +1,161 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class JBlobMetaCacheTest extends TestCase {
+    private HeadCountingBlob origin;
+    private JBlobMetaCache cache;
+
+    @Override
+    protected void setUp() {
+        origin = new HeadCountingBlob(new JBlobMemory());
+        cache = JBlobMetaCache.builder(origin).build();
+    }
+
+    public void testHitsAndMisses() throws Exception {
+        origin.upload("key", new ByteArrayInputStream(new byte[10]));
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(10, cache.downloadMetadata("key").get().getContentLength());
+            assertFalse(cache.downloadMetadata("missing").isPresent());
+        }
+        assertEquals(2, origin.heads.get());
+    }
+
+    public void testBatchLooksUpOnlyMisses() throws Exception {
+        origin.upload("a", new ByteArrayInputStream(new byte[1]));
+        origin.upload("b", new ByteArrayInputStream(new byte[2]));
+        cache.downloadMetadata("a");
+        final Map<String, Optional<JBlobMeta>> metas = cache.downloadMetadata(Arrays.asList("b", "a", "missing"));
+        assertEquals(Arrays.asList("b", "a", "missing"), new ArrayList<>(metas.keySet()));
+        assertEquals(2, metas.get("b").get().getContentLength());
+        assertEquals(1, metas.get("a").get().getContentLength());
+        assertFalse(metas.get("missing").isPresent());
+        assertEquals(3, origin.heads.get());
+        cache.downloadMetadata(Arrays.asList("a", "b", "missing"));
+        assertEquals(3, origin.heads.get());
+    }
+
+    public void testUploadAndDeleteInvalidate() throws Exception {
+        assertFalse(cache.downloadMetadata("key").isPresent());
+        cache.upload("key", new ByteArrayInputStream(new byte[10]));
+        assertEquals(10, cache.downloadMetadata("key").get().getContentLength());
+        cache.upload("key", new ByteArrayInputStream(new byte[20]));
+        assertEquals(20, cache.downloadMetadata("key").get().getContentLength());
+        cache.delete("key");
+        assertFalse(cache.downloadMetadata("key").isPresent());
+        assertEquals(4, origin.heads.get());
+    }
+
+    public void testDeleteAllInvalidates() throws Exception {
+        cache.upload("a", new ByteArrayInputStream(new byte[10]));
+        cache.upload("b", new ByteArrayInputStream(new byte[10]));
+        assertTrue(cache.downloadMetadata("a").isPresent());
+        assertTrue(cache.downloadMetadata("b").isPresent());
+        cache.deleteAll(Arrays.asList("a", "b"));
+        assertFalse(cache.downloadMetadata("a").isPresent());
+        assertFalse(cache.downloadMetadata("b").isPresent());
+    }
+
+    public void testDownloadFills() throws Exception {
+        origin.upload("key", new ByteArrayInputStream(new byte[10]));
+        cache.download("key", new ByteArrayOutputStream());
+        assertFalse(cache.download("missing", new ByteArrayOutputStream()).isPresent());
+        assertTrue(cache.downloadMetadata("key").isPresent());
+        assertFalse(cache.downloadMetadata("missing").isPresent());
+        assertEquals(0, origin.heads.get());
+    }
+
+    public void testNegativeTtl() throws Exception {
+        cache = JBlobMetaCache.builder(origin).negativeTtl(0, TimeUnit.SECONDS).build();
+        assertFalse(cache.downloadMetadata("key").isPresent());
+        origin.upload("key", new ByteArrayInputStream(new byte[10]));
+        assertTrue(cache.downloadMetadata("key").isPresent());
+        assertTrue(cache.downloadMetadata("key").isPresent());
+        assertEquals(2, origin.heads.get());
+    }
+
+    public void testRacingLookupIsNotCached() throws Exception {
+        origin.upload("key", new ByteArrayInputStream(new byte[10]));
+        origin.gate = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Optional<JBlobMeta>> lookup = executor.submit(() -> cache.downloadMetadata("key"));
+            while (origin.heads.get() == 0) {
+                Thread.sleep(1);
+            }
+            cache.upload("key", new ByteArrayInputStream(new byte[20]));
+            origin.gate.countDown();
+            assertEquals(10, lookup.get().get().getContentLength());
+        } finally {
+            executor.shutdown();
+        }
+        origin.gate = null;
+        assertEquals(20, cache.downloadMetadata("key").get().getContentLength());
+    }
+
+    private static class HeadCountingBlob implements JBlob {
+        private final JBlob jblob;
+        private final AtomicInteger heads = new AtomicInteger();
+        private volatile CountDownLatch gate;
+
+        private HeadCountingBlob(JBlob jblob) {
+            this.jblob = jblob;
+        }
+
+        @Override
+        public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+            jblob.upload(key, in, properties);
+        }
+
+        @Override
+        public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+            return jblob.download(key, out);
+        }
+
+        @Override
+        public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+            // read before counting, so a gated lookup has its stale answer in hand
+            final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+            heads.incrementAndGet();
+            final CountDownLatch gate = this.gate;
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return meta;
+        }
+
+        @Override
+        public void delete(String key) throws IOException {
+            jblob.delete(key);
+        }
+
+        @Override
+        public Stream<String> keys() {
+            return jblob.keys();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.devinrsmith.jblob.cache;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobSizeHistogram;
+import com.devinrsmith.jblob.api.JBlobStatistics;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class JBlobStatsCacheTest extends TestCase {
+    private JBlob origin;
+    private Path dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        origin = new JBlobMemory();
+        dir = Files.createTempDirectory("jblob-stats-test-");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    public void testTracksUploadsAndDeletes() throws Exception {
+        upload(origin, "existing", 7, null);
+        final JBlobStatsCache stats = JBlobStatsCache.builder(origin).build();
+        assertStats(stats.stats(), 1, 7, 7, 7);
+
+        upload(stats, "a", 100, "text/plain; charset=utf-8");
+        upload(stats, "b", 5000, "image/png");
+        assertStats(stats.stats(), 3, 5107, 7, 5000);
+
+        // an overwrite takes out what it replaces
+        upload(stats, "a", 10, "text/plain");
+        assertStats(stats.stats(), 3, 5017, 7, 5000);
+
+        stats.delete("b");
+        stats.delete("missing");
+        final JBlobStatistics afterDelete = stats.stats();
+        assertEquals(2, afterDelete.count());
+        assertEquals(17, afterDelete.size());
+        assertEquals(7, afterDelete.min());
+        // the largest is gone, so max is only known to its bucket, 8 to 15
+        assertEquals(15, afterDelete.max());
+        assertEquals(stats.rescan().size(), afterDelete.size());
+
+        // existing was only listed, so its type isn't known
+        final Map<String, JBlobStatistics> types = stats.stats().byContentType();
+        assertEquals(Collections.singleton("text/plain"), types.keySet());
+        assertEquals(10, types.get("text/plain").size());
+
+        final JBlobStatsCache typed = JBlobStatsCache.builder(origin).rescanContentTypes(true).build();
+        final Map<String, JBlobStatistics> rescanned = typed.rescan().byContentType();
+        assertEquals(Arrays.asList(JBlobStatsCache.UNTYPED, "text/plain"), Arrays.asList(rescanned.keySet().toArray()));
+        assertEquals(7, rescanned.get(JBlobStatsCache.UNTYPED).size());
+    }
+
+    public void testDeleteAllAndCopy() throws Exception {
+        final JBlobStatsCache stats = JBlobStatsCache.builder(origin).build();
+        stats.stats();
+        for (int i = 0; i < 10; ++i) {
+            upload(stats, "k" + i, 1 << i, "application/json");
+        }
+        stats.copy("copy", "k9", stats);
+        assertStats(stats.stats(), 11, 1023 + 512, 1, 512);
+        stats.deleteAll(Arrays.asList("k0", "k1", "k9", "missing"));
+        assertStats(stats.stats(), 8, 1020, 4, 512);
+        assertEquals(8, stats.stats().byContentType().get("application/json").count());
+        assertEquals(origin.stats().size(), stats.stats().size());
+    }
+
+    public void testHistogramAndPercentiles() throws Exception {
+        final JBlobStatsCache stats = JBlobStatsCache.builder(origin).build();
+        stats.stats();
+        for (int i = 1; i <= 100; ++i) {
+            upload(stats, "k" + i, i * 10, null);
+        }
+        final JBlobStatistics snapshot = stats.stats();
+        assertEquals(100, snapshot.histogram().count());
+        assertEquals(1, snapshot.histogram().count(JBlobSizeHistogram.bucket(10)));
+        // log buckets, so within a factor of two
+        final long p50 = snapshot.percentile(50);
+        assertTrue(p50 >= 250 && p50 <= 1000);
+        assertEquals(10, snapshot.percentile(0));
+        assertEquals(1000, snapshot.percentile(100));
+
+        // the scanning stats keep a histogram too
+        assertEquals(snapshot.histogram(), origin.stats().histogram());
+    }
+
+    public void testMinMaxAfterDeletingExtremes() throws Exception {
+        final JBlobStatsCache stats = JBlobStatsCache.builder(origin).build();
+        stats.stats();
+        upload(stats, "small", 3, null);
+        upload(stats, "mid", 100, null);
+        upload(stats, "large", 100000, null);
+        stats.delete("small");
+        stats.delete("large");
+        final JBlobStatistics snapshot = stats.stats();
+        assertTrue(snapshot.min() >= 64 && snapshot.min() <= 100);
+        assertTrue(snapshot.max() >= 100 && snapshot.max() <= 127);
+    }
+
+    public void testSnapshot() throws Exception {
+        final Path file = dir.resolve("stats");
+        final JBlobStatsCache stats = JBlobStatsCache.builder(origin).snapshot(file).build();
+        stats.stats();
+        upload(stats, "a", 100, "text/plain");
+        upload(stats, "b", 200, null);
+        final JBlobStatistics before = stats.stats();
+        stats.close();
+
+        // changed behind its back, so a rescan would notice
+        upload(origin, "c", 300, null);
+        final JBlobStatsCache reloaded = JBlobStatsCache.builder(origin).snapshot(file).build();
+        final JBlobStatistics after = reloaded.stats();
+        assertStats(after, 2, 300, 100, 200);
+        assertEquals(before.histogram(), after.histogram());
+        assertEquals(before.byContentType().keySet(), after.byContentType().keySet());
+        assertStats(reloaded.rescan(), 3, 600, 100, 300);
+        reloaded.close();
+    }
+
+    private static void assertStats(JBlobStatistics stats, long count, long size, long min, long max) {
+        assertEquals(count, stats.count());
+        assertEquals(size, stats.size());
+        assertEquals(min, stats.min());
+        assertEquals(max, stats.max());
+    }
+
+    private static void upload(JBlob jblob, String key, int size, String type) throws Exception {
+        final Map<String, String> properties = type == null ? Collections.emptyMap() : ImmutableMap.of(HttpHeaders.CONTENT_TYPE, type);
+        jblob.upload(key, new ByteArrayInputStream(new byte[size]), properties);
+    }
+}
@@ -0,0 +1,81 @@
+package com.devinrsmith.jblob.compress;
+
+import java.io.IOException;
+
+/**
+ * How {@link JBlobCompressed} lays out a compressed blob:
+ *
+ * <pre>
+ * block*    raw length (int, &gt; 0), stored length (int), stored bytes
+ * end       0 (int)
+ * index     the size of each block, header included (int each)
+ * footer    block count (int), raw length (long), block size (int), MAGIC (long)
+ * </pre>
+ *
+ * A block whose stored length equals its raw length is stored uncompressed. Every block but the last
+ * holds block size raw bytes, so with the footer and index a range can be read from the blocks that
+ * cover it alone.
+ */
+class BlockFormat {
+    static final int HEADER_SIZE = 8;
+    static final int END_SIZE = 4;
+    static final int FOOTER_SIZE = 24;
+    static final long MAGIC = 0x6a626c6f627a0001L;
+    // decoders refuse bigger blocks rather than allocate whatever a corrupt header asks for
+    static final int MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+    private BlockFormat() {
+    }
+
+    static class Footer {
+        final int blocks;
+        final long rawLength;
+        final int blockSize;
+
+        Footer(int blocks, long rawLength, int blockSize) {
+            this.blocks = blocks;
+            this.rawLength = rawLength;
+            this.blockSize = blockSize;
+        }
+
+        byte[] encode() {
+            final byte[] bytes = new byte[FOOTER_SIZE];
+            putInt(bytes, 0, blocks);
+            putLong(bytes, 4, rawLength);
+            putInt(bytes, 12, blockSize);
+            putLong(bytes, 16, MAGIC);
+            return bytes;
+        }
+
+        static Footer decode(String key, byte[] bytes) throws IOException {
+            if (bytes.length != FOOTER_SIZE || getLong(bytes, 16) != MAGIC) {
+                throw new IOException(String.format("%s is not a compressed blob", key));
+            }
+            final Footer footer = new Footer(getInt(bytes, 0), getLong(bytes, 4), getInt(bytes, 12));
+            if (footer.blocks < 0 || footer.rawLength < 0 || footer.blockSize <= 0 || footer.blockSize > MAX_BLOCK_SIZE) {
+                throw new IOException(String.format("%s has a corrupt footer", key));
+            }
+            return footer;
+        }
+    }
+
+    static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    static void putLong(byte[] bytes, int offset, long value) {
+        putInt(bytes, offset, (int) (value >>> 32));
+        putInt(bytes, offset + 4, (int) value);
+    }
+
+    static long getLong(byte[] bytes, int offset) {
+        return (long) getInt(bytes, offset) << 32 | (getInt(bytes, offset + 4) & 0xffffffffL);
+    }
+}
@@ -0,0 +1,39 @@
+package com.devinrsmith.jblob.compress;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of buffers of one size, so block buffers are reused across uploads and downloads rather
+ * than allocated for each. Buffers beyond the pool's capacity are left to the garbage collector.
+ */
+class BufferPool {
+    private final int size;
+    private final BlockingQueue<byte[]> buffers;
+
+    BufferPool(int size, int capacity) {
+        this.size = size;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * A buffer of at least length bytes; only buffers of the pool's size come from, and go back to, the pool
+     */
+    byte[] acquire(int length) {
+        if (length > size) {
+            return new byte[length];
+        }
+        final byte[] buffer = buffers.poll();
+        return buffer == null ? new byte[size] : buffer;
+    }
+
+    void release(byte[] buffer) {
+        if (buffer != null && buffer.length == size) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.devinrsmith.jblob.compress;
+
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compression codecs of {@link JBlobCompressed}. Every block is compressed on its own, so a block can
+ * be read back without the ones before it.
+ */
+public enum Codec {
+    /**
+     * java.util.zip, the best ratio of the three for text but the slowest
+     */
+    DEFLATE {
+        @Override
+        BlockCodec open() {
+            return new DeflateBlockCodec();
+        }
+    },
+
+    /**
+     * The fastest by far, at a lower ratio
+     */
+    LZ4 {
+        @Override
+        BlockCodec open() {
+            return new Lz4BlockCodec();
+        }
+    },
+
+    /**
+     * Close to deflate's ratio at several times its speed, a good default
+     */
+    ZSTD {
+        @Override
+        BlockCodec open() {
+            return new ZstdBlockCodec();
+        }
+    };
+
+    /**
+     * What the codec is recorded as in the blob's properties
+     */
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Optional<Codec> forName(String name) {
+        for (Codec codec : values()) {
+            if (codec.getName().equals(name)) {
+                return Optional.of(codec);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * A codec for one stream, used from one thread at a time
+     */
+    abstract BlockCodec open();
+
+    interface BlockCodec extends AutoCloseable {
+        int maxCompressedLength(int length);
+
+        /**
+         * Compresses length bytes of src into dst at offset, which has room for maxCompressedLength(length)
+         */
+        int compress(byte[] src, int length, byte[] dst, int offset) throws IOException;
+
+        /**
+         * Decompresses length bytes of src at offset into the first rawLength bytes of dst
+         */
+        void decompress(byte[] src, int offset, int length, byte[] dst, int rawLength) throws IOException;
+
+        @Override
+        void close();
+    }
+
+    private static class DeflateBlockCodec implements BlockCodec {
+        private Deflater deflater;
+        private Inflater inflater;
+
+        @Override
+        public int maxCompressedLength(int length) {
+            // zlib's bound for stored blocks, plus the stream header and checksum
+            return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13 + 6;
+        }
+
+        @Override
+        public int compress(byte[] src, int length, byte[] dst, int offset) throws IOException {
+            if (deflater == null) {
+                deflater = new Deflater();
+            }
+            deflater.reset();
+            deflater.setInput(src, 0, length);
+            deflater.finish();
+            int written = 0;
+            while (!deflater.finished()) {
+                final int n = deflater.deflate(dst, offset + written, dst.length - offset - written);
+                if (n == 0 && !deflater.finished()) {
+                    throw new IOException("deflate output exceeded its bound");
+                }
+                written += n;
+            }
+            return written;
+        }
+
+        @Override
+        public void decompress(byte[] src, int offset, int length, byte[] dst, int rawLength) throws IOException {
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            inflater.reset();
+            inflater.setInput(src, offset, length);
+            try {
+                int read = 0;
+                while (read < rawLength) {
+                    final int n = inflater.inflate(dst, read, rawLength - read);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != rawLength || !inflater.finished()) {
+                    throw new IOException("corrupt deflate block");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static class Lz4BlockCodec implements BlockCodec {
+        private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+        private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+        @Override
+        public int maxCompressedLength(int length) {
+            return COMPRESSOR.maxCompressedLength(length);
+        }
+
+        @Override
+        public int compress(byte[] src, int length, byte[] dst, int offset) {
+            return COMPRESSOR.compress(src, 0, length, dst, offset);
+        }
+
+        @Override
+        public void decompress(byte[] src, int offset, int length, byte[] dst, int rawLength) throws IOException {
+            try {
+                if (DECOMPRESSOR.decompress(src, offset, length, dst, 0, rawLength) != rawLength) {
+                    throw new IOException("corrupt lz4 block");
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("corrupt lz4 block", e);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class ZstdBlockCodec implements BlockCodec {
+        private static final int LEVEL = 3;
+
+        @Override
+        public int maxCompressedLength(int length) {
+            return (int) Zstd.compressBound(length);
+        }
+
+        @Override
+        public int compress(byte[] src, int length, byte[] dst, int offset) throws IOException {
+            final long n = Zstd.compressByteArray(dst, offset, dst.length - offset, src, 0, length, LEVEL);
+            if (Zstd.isError(n)) {
+                throw new IOException(Zstd.getErrorName(n));
+            }
+            return (int) n;
+        }
+
+        @Override
+        public void decompress(byte[] src, int offset, int length, byte[] dst, int rawLength) throws IOException {
+            final long n = Zstd.decompressByteArray(dst, 0, rawLength, src, offset, length);
+            if (Zstd.isError(n) || n != rawLength) {
+                throw new IOException("corrupt zstd block");
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
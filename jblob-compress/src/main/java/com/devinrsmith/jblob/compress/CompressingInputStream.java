@@ -0,0 +1,116 @@
+package com.devinrsmith.jblob.compress;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads as the {@link BlockFormat} compression of another stream, one block at a time: each read past the
+ * current block reads and compresses the next block of the source. Both block buffers are pooled.
+ */
+class CompressingInputStream extends InputStream {
+    private final InputStream in;
+    private final Codec.BlockCodec codec;
+    private final BufferPool rawPool;
+    private final BufferPool storedPool;
+    private final int blockSize;
+    private byte[] raw;
+    private byte[] stored;
+
+    // what is being read out: stored while there are blocks, then the tail
+    private byte[] current;
+    private int position;
+    private int limit;
+
+    private int[] index = new int[64];
+    private int blocks;
+    private long rawLength;
+    private boolean done;
+
+    CompressingInputStream(InputStream in, Codec codec, BufferPool rawPool, BufferPool storedPool) {
+        this.in = in;
+        this.codec = codec.open();
+        this.rawPool = rawPool;
+        this.storedPool = storedPool;
+        this.blockSize = rawPool.size();
+        this.raw = rawPool.acquire(blockSize);
+        this.stored = storedPool.acquire(BlockFormat.HEADER_SIZE + this.codec.maxCompressedLength(blockSize));
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == limit) {
+            if (done) {
+                return -1;
+            }
+            next();
+        }
+        final int n = Math.min(len, limit - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    private void next() throws IOException {
+        if (raw == null) {
+            throw new IOException("closed");
+        }
+        final int n = ByteStreams.read(in, raw, 0, blockSize);
+        if (n == 0) {
+            current = tail();
+            position = 0;
+            limit = current.length;
+            done = true;
+            return;
+        }
+        int length = codec.compress(raw, n, stored, BlockFormat.HEADER_SIZE);
+        if (length >= n) {
+            System.arraycopy(raw, 0, stored, BlockFormat.HEADER_SIZE, n);
+            length = n;
+        }
+        BlockFormat.putInt(stored, 0, n);
+        BlockFormat.putInt(stored, 4, length);
+        if (blocks == index.length) {
+            index = Arrays.copyOf(index, blocks * 2);
+        }
+        index[blocks++] = BlockFormat.HEADER_SIZE + length;
+        rawLength += n;
+        current = stored;
+        position = 0;
+        limit = BlockFormat.HEADER_SIZE + length;
+    }
+
+    private byte[] tail() {
+        final byte[] tail = new byte[BlockFormat.END_SIZE + 4 * blocks + BlockFormat.FOOTER_SIZE];
+        for (int i = 0; i < blocks; ++i) {
+            BlockFormat.putInt(tail, BlockFormat.END_SIZE + 4 * i, index[i]);
+        }
+        final byte[] footer = new BlockFormat.Footer(blocks, rawLength, blockSize).encode();
+        System.arraycopy(footer, 0, tail, tail.length - footer.length, footer.length);
+        return tail;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (raw != null) {
+            rawPool.release(raw);
+            storedPool.release(stored);
+            raw = null;
+            stored = null;
+            current = null;
+            codec.close();
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,120 @@
+package com.devinrsmith.jblob.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Takes the bytes of a {@link BlockFormat} blob, or of a run of its blocks, and writes out what they
+ * decompress to, one block at a time. Everything after the end of the blocks is ignored. Both block buffers
+ * are pooled; closing returns them, but doesn't close out.
+ */
+class DecompressingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final Codec.BlockCodec codec;
+    private final BufferPool rawPool;
+    private final BufferPool storedPool;
+    private byte[] raw;
+    private byte[] stored;
+
+    private final byte[] header = new byte[BlockFormat.HEADER_SIZE];
+    private int headerFill;
+    private int rawLength;
+    private int storedLength;
+    private int storedFill;
+    private boolean ended;
+    private long written;
+
+    DecompressingOutputStream(OutputStream out, Codec codec, BufferPool rawPool, BufferPool storedPool) {
+        this.out = out;
+        this.codec = codec.open();
+        this.rawPool = rawPool;
+        this.storedPool = storedPool;
+    }
+
+    /**
+     * The raw bytes written out so far
+     */
+    long written() {
+        return written;
+    }
+
+    /**
+     * Whether the end of the blocks was reached, a whole blob having been written
+     */
+    boolean ended() {
+        return ended;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0 && !ended) {
+            final int n;
+            if (headerFill < BlockFormat.HEADER_SIZE) {
+                n = Math.min(len, (headerFill < BlockFormat.END_SIZE ? BlockFormat.END_SIZE : BlockFormat.HEADER_SIZE) - headerFill);
+                System.arraycopy(b, off, header, headerFill, n);
+                headerFill += n;
+                if (headerFill == BlockFormat.END_SIZE && BlockFormat.getInt(header, 0) == 0) {
+                    ended = true;
+                } else if (headerFill == BlockFormat.HEADER_SIZE) {
+                    startBlock();
+                }
+            } else {
+                n = Math.min(len, storedLength - storedFill);
+                System.arraycopy(b, off, stored, storedFill, n);
+                storedFill += n;
+            }
+            if (headerFill == BlockFormat.HEADER_SIZE && storedFill == storedLength) {
+                endBlock();
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void startBlock() throws IOException {
+        rawLength = BlockFormat.getInt(header, 0);
+        storedLength = BlockFormat.getInt(header, 4);
+        if (rawLength <= 0 || rawLength > BlockFormat.MAX_BLOCK_SIZE || storedLength <= 0 || storedLength > rawLength) {
+            throw new IOException("corrupt block header");
+        }
+        if (raw == null || raw.length < rawLength) {
+            rawPool.release(raw);
+            raw = rawPool.acquire(rawLength);
+        }
+        if (stored == null || stored.length < storedLength) {
+            storedPool.release(stored);
+            stored = storedPool.acquire(storedLength);
+        }
+        storedFill = 0;
+    }
+
+    private void endBlock() throws IOException {
+        if (storedLength == rawLength) {
+            out.write(stored, 0, rawLength);
+        } else {
+            codec.decompress(stored, 0, storedLength, raw, rawLength);
+            out.write(raw, 0, rawLength);
+        }
+        written += rawLength;
+        headerFill = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        rawPool.release(raw);
+        storedPool.release(stored);
+        raw = null;
+        stored = null;
+        codec.close();
+    }
+}
@@ -0,0 +1,346 @@
+package com.devinrsmith.jblob.compress;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.api.RangeOutputStream;
+import com.google.common.base.Preconditions;
+import com.google.common.net.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Compresses blobs as they are uploaded to the JBlob it decorates, and decompresses them as they are
+ * downloaded, picking the codec by the Content-Type property. By default textual types (text/*, JSON, XML,
+ * JavaScript, CSV) are compressed with zstd and everything else, already compressed media in particular,
+ * is stored as it is.
+ *
+ * The codec is recorded in the blob's properties as {@value #CODEC}, and blobs without it are read as they
+ * are. Compressed blobs are streamed in blocks ({@link BlockFormat}) through pooled buffers, and end with
+ * an index of the blocks and the uncompressed length. A download first looks up the metadata to find the
+ * codec, and the metadata and ranges of a compressed blob cost a couple of small ranged reads of its
+ * end; decorating a {@code JBlobMetaCache} takes the lookups off the network.
+ */
+public class JBlobCompressed implements JBlob {
+    public static Builder builder(JBlob jblob) {
+        return new Builder(jblob);
+    }
+
+    /**
+     * The property naming the codec a blob was compressed with
+     */
+    public static final String CODEC = "jblob-codec";
+
+    private final JBlob jblob;
+    private final Map<String, Optional<Codec>> codecs;
+    private final Optional<Codec> defaultCodec;
+    private final BufferPool rawPool;
+    private final BufferPool storedPool;
+
+    private JBlobCompressed(Builder builder) {
+        this.jblob = builder.jblob;
+        this.codecs = new HashMap<>(builder.codecs);
+        this.defaultCodec = builder.defaultCodec;
+        // only the codecs this compresses with, opening one may load its native library; blobs stored with
+        // any other never need more than blockSize, as blocks that don't shrink are stored as they are
+        final Set<Codec> used = EnumSet.noneOf(Codec.class);
+        builder.codecs.values().forEach(codec -> codec.ifPresent(used::add));
+        defaultCodec.ifPresent(used::add);
+        int bound = builder.blockSize;
+        for (Codec codec : used) {
+            try (final Codec.BlockCodec blockCodec = codec.open()) {
+                bound = Math.max(bound, blockCodec.maxCompressedLength(builder.blockSize));
+            }
+        }
+        this.rawPool = new BufferPool(builder.blockSize, builder.pooledBuffers);
+        this.storedPool = new BufferPool(BlockFormat.HEADER_SIZE + bound, builder.pooledBuffers);
+    }
+
+    /**
+     * The codec content of this type is compressed with, if any. Parameters (charset=...) are ignored, and
+     * +json and +xml types count as JSON and XML.
+     */
+    public Optional<Codec> codecFor(String contentType) {
+        final String mediaType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        Optional<Codec> codec = codecs.get(mediaType);
+        if (codec == null && mediaType.endsWith("+json")) {
+            codec = codecs.get("application/json");
+        }
+        if (codec == null && mediaType.endsWith("+xml")) {
+            codec = codecs.get("application/xml");
+        }
+        if (codec == null) {
+            codec = codecs.get(mediaType.split("/", 2)[0] + "/*");
+        }
+        return codec == null ? defaultCodec : codec;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(properties);
+        final Optional<String> contentType = property(properties, HttpHeaders.CONTENT_TYPE);
+        final Optional<Codec> codec = contentType.isPresent() ? codecFor(contentType.get()) : defaultCodec;
+        if (!codec.isPresent()) {
+            jblob.upload(key, in, properties);
+            return;
+        }
+        final Map<String, String> withCodec = new HashMap<>(properties);
+        withCodec.put(CODEC, codec.get().getName());
+        try (final CompressingInputStream compressed = new CompressingInputStream(in, codec.get(), rawPool, storedPool)) {
+            jblob.upload(key, compressed, withCodec);
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+        if (!meta.isPresent()) {
+            return Optional.empty();
+        }
+        final Optional<Codec> codec = codecOf(key, meta.get());
+        if (!codec.isPresent()) {
+            return jblob.download(key, out);
+        }
+        try (final DecompressingOutputStream decompressing = new DecompressingOutputStream(out, codec.get(), rawPool, storedPool)) {
+            final Optional<JBlobMeta> downloaded = jblob.download(key, decompressing);
+            if (!downloaded.isPresent()) {
+                return Optional.empty();
+            }
+            if (!decompressing.ended()) {
+                throw new IOException(String.format("%s is truncated", key));
+            }
+            return Optional.of(describe(downloaded.get(), decompressing.written()));
+        }
+    }
+
+    /**
+     * Reads the footer and the index of a compressed blob, and then only the blocks covering the range
+     */
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkArgument(offset >= 0, "offset must not be negative");
+        Preconditions.checkArgument(length >= 0, "length must not be negative");
+        final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+        if (!meta.isPresent()) {
+            return Optional.empty();
+        }
+        final Optional<Codec> codec = codecOf(key, meta.get());
+        if (!codec.isPresent()) {
+            return jblob.download(key, offset, length, out);
+        }
+        final long storedLength = meta.get().getContentLength();
+        final BlockFormat.Footer footer = footer(key, storedLength);
+        final long end = length > footer.rawLength - offset ? footer.rawLength : offset + length;
+        if (offset >= end) {
+            return Optional.of(describe(meta.get(), footer.rawLength));
+        }
+
+        final int first = (int) (offset / footer.blockSize);
+        final int last = (int) ((end - 1) / footer.blockSize);
+        final long indexStart = storedLength - BlockFormat.FOOTER_SIZE - 4L * footer.blocks;
+        final byte[] index = read(key, indexStart, 4L * (last + 1));
+        long start = 0;
+        for (int i = 0; i < first; ++i) {
+            start += BlockFormat.getInt(index, 4 * i);
+        }
+        long blocksLength = 0;
+        for (int i = first; i <= last; ++i) {
+            blocksLength += BlockFormat.getInt(index, 4 * i);
+        }
+
+        final RangeOutputStream slice = new RangeOutputStream(out, offset - (long) first * footer.blockSize, end - offset);
+        try (final DecompressingOutputStream decompressing = new DecompressingOutputStream(slice, codec.get(), rawPool, storedPool)) {
+            if (!jblob.download(key, start, blocksLength, decompressing).isPresent()) {
+                return Optional.empty();
+            }
+        }
+        if (slice.written() != end - offset) {
+            throw new IOException(String.format("%s changed during download", key));
+        }
+        return Optional.of(describe(meta.get(), footer.rawLength));
+    }
+
+    /**
+     * The content length of a compressed blob is its uncompressed length, read from its footer
+     */
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        Preconditions.checkNotNull(key);
+        final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+        return meta.isPresent() ? Optional.of(uncompressed(key, meta.get())) : meta;
+    }
+
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        final Map<String, Optional<JBlobMeta>> metas = new LinkedHashMap<>();
+        for (Map.Entry<String, Optional<JBlobMeta>> e : jblob.downloadMetadata(keys).entrySet()) {
+            metas.put(e.getKey(), e.getValue().isPresent() ? Optional.of(uncompressed(e.getKey(), e.getValue().get())) : e.getValue());
+        }
+        return metas;
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        jblob.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        jblob.deleteAll(keys);
+    }
+
+    /**
+     * Within this JBlobCompressed, the compressed bytes are copied as they are
+     */
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        if (other == this) {
+            jblob.copy(key, otherKey, jblob);
+        } else {
+            JBlob.super.copy(key, otherKey, other);
+        }
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return jblob.keys();
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return jblob.keys(prefix);
+    }
+
+    private JBlobMeta uncompressed(String key, JBlobMeta meta) throws IOException {
+        if (!codecOf(key, meta).isPresent()) {
+            return meta;
+        }
+        try {
+            return describe(meta, footer(key, meta.getContentLength()).rawLength);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private BlockFormat.Footer footer(String key, long storedLength) throws IOException, InterruptedException {
+        return BlockFormat.Footer.decode(key, read(key, storedLength - BlockFormat.FOOTER_SIZE, BlockFormat.FOOTER_SIZE));
+    }
+
+    private byte[] read(String key, long offset, long length) throws IOException, InterruptedException {
+        if (offset < 0) {
+            throw new IOException(String.format("%s is not a compressed blob", key));
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+        if (!jblob.download(key, offset, length, out).isPresent()) {
+            throw new IOException(String.format("%s disappeared during download", key));
+        }
+        if (out.size() != length) {
+            throw new IOException(String.format("%s is truncated", key));
+        }
+        return out.toByteArray();
+    }
+
+    private static Optional<Codec> codecOf(String key, JBlobMeta meta) throws IOException {
+        final Optional<String> name = property(meta.getProperties(), CODEC);
+        if (!name.isPresent()) {
+            return Optional.empty();
+        }
+        final Optional<Codec> codec = Codec.forName(name.get());
+        if (!codec.isPresent()) {
+            throw new IOException(String.format("%s is compressed with unknown codec %s", key, name.get()));
+        }
+        return codec;
+    }
+
+    private static JBlobMeta describe(JBlobMeta meta, long length) {
+        return JBlobMeta.of(length, meta.getContentType().orElse(null), meta.getProperties());
+    }
+
+    /**
+     * Property names are matched ignoring case, as some stores lowercase them
+     */
+    private static Optional<String> property(Map<String, String> properties, String name) {
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) {
+                return Optional.ofNullable(e.getValue());
+            }
+        }
+        return Optional.empty();
+    }
+
+    public static class Builder {
+        private final JBlob jblob;
+        private final Map<String, Optional<Codec>> codecs = new HashMap<>();
+        private Optional<Codec> defaultCodec = Optional.empty();
+        private int blockSize = 256 * 1024;
+        private int pooledBuffers = 16;
+
+        private Builder(JBlob jblob) {
+            this.jblob = Preconditions.checkNotNull(jblob);
+            for (String type : new String[] { "text/*", "application/json", "application/xml", "application/javascript", "application/x-ndjson", "application/csv", "image/svg+xml" }) {
+                codecs.put(type, Optional.of(Codec.ZSTD));
+            }
+        }
+
+        /**
+         * Compresses mediaType, a type like application/json or a wildcard like text/*, with codec
+         */
+        public Builder compress(String mediaType, Codec codec) {
+            codecs.put(mediaType.toLowerCase(Locale.ROOT), Optional.of(codec));
+            return this;
+        }
+
+        /**
+         * Stores mediaType, a type like application/json or a wildcard like text/*, as it is
+         */
+        public Builder passThrough(String mediaType) {
+            codecs.put(mediaType.toLowerCase(Locale.ROOT), Optional.empty());
+            return this;
+        }
+
+        /**
+         * The codec for types nothing else matches, and blobs without a type. None by default.
+         */
+        public Builder defaultCodec(Optional<Codec> defaultCodec) {
+            this.defaultCodec = Preconditions.checkNotNull(defaultCodec);
+            return this;
+        }
+
+        /**
+         * How much is compressed at once, and the granularity of ranged reads. 256KB by default.
+         */
+        public Builder blockSize(int blockSize) {
+            Preconditions.checkArgument(blockSize > 0 && blockSize <= BlockFormat.MAX_BLOCK_SIZE, "blockSize must be positive and at most %s", BlockFormat.MAX_BLOCK_SIZE);
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * How many block buffers of each kind are kept for reuse
+         */
+        public Builder pooledBuffers(int pooledBuffers) {
+            Preconditions.checkArgument(pooledBuffers > 0, "pooledBuffers must be positive");
+            this.pooledBuffers = pooledBuffers;
+            return this;
+        }
+
+        public JBlobCompressed build() {
+            return new JBlobCompressed(this);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.devinrsmith.jblob.compress;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.net.HttpHeaders;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+public class JBlobCompressedTest extends TestCase {
+    private JBlob jblob;
+    private JBlobCompressed compressed;
+
+    @Override
+    protected void setUp() {
+        jblob = new JBlobMemory();
+        compressed = JBlobCompressed.builder(jblob)
+                .compress("application/x-deflate-me", Codec.DEFLATE)
+                .compress("application/x-lz4-me", Codec.LZ4)
+                .blockSize(1024)
+                .build();
+    }
+
+    public void testRoundTrip() throws Exception {
+        for (String type : new String[] { "text/plain; charset=utf-8", "application/x-deflate-me", "application/x-lz4-me" }) {
+            for (int size : new int[] { 0, 1, 1023, 1024, 1025, 100000 }) {
+                final byte[] bytes = text(size);
+                final String key = type + "/" + size;
+                compressed.upload(key, new ByteArrayInputStream(bytes), typed(type));
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final JBlobMeta meta = compressed.download(key, out).get();
+                assertTrue(Arrays.equals(bytes, out.toByteArray()));
+                assertEquals(size, meta.getContentLength());
+                assertEquals(size, compressed.downloadMetadata(key).get().getContentLength());
+                assertEquals(size, (long) compressed.downloadMetadata(Collections.singleton(key)).get(key).get().getContentLength());
+                assertTrue(jblob.downloadMetadata(key).get().getProperties().containsKey(JBlobCompressed.CODEC));
+            }
+        }
+    }
+
+    public void testCompresses() throws Exception {
+        final byte[] bytes = text(100000);
+        compressed.upload("a", new ByteArrayInputStream(bytes), typed("application/json"));
+        assertEquals("zstd", jblob.downloadMetadata("a").get().getProperties().get(JBlobCompressed.CODEC));
+        assertTrue(jblob.downloadMetadata("a").get().getContentLength() < bytes.length / 2);
+    }
+
+    public void testPassThrough() throws Exception {
+        final byte[] bytes = new byte[5000];
+        new Random(1).nextBytes(bytes);
+        compressed.upload("image", new ByteArrayInputStream(bytes), typed("image/png"));
+        compressed.upload("untyped", new ByteArrayInputStream(bytes), Collections.emptyMap());
+        for (String key : new String[] { "image", "untyped" }) {
+            final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            final JBlobMeta meta = jblob.download(key, stored).get();
+            assertTrue(Arrays.equals(bytes, stored.toByteArray()));
+            assertFalse(meta.getProperties().containsKey(JBlobCompressed.CODEC));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            compressed.download(key, 100, 200, out);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(bytes, 100, 300), out.toByteArray()));
+        }
+    }
+
+    public void testRanges() throws Exception {
+        final byte[] bytes = text(10000);
+        compressed.upload("a", new ByteArrayInputStream(bytes), typed("text/csv"));
+        final long[][] ranges = { { 0, 1 }, { 0, 10000 }, { 1000, 48 }, { 1020, 10 }, { 1024, 1024 }, { 5000, 3333 }, { 9999, 100 }, { 10000, 5 }, { 3000, 0 } };
+        for (long[] range : ranges) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final JBlobMeta meta = compressed.download("a", range[0], range[1], out).get();
+            final int from = (int) Math.min(range[0], bytes.length);
+            final int to = (int) Math.min(range[0] + range[1], bytes.length);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(bytes, from, to), out.toByteArray()));
+            assertEquals(bytes.length, meta.getContentLength());
+        }
+        assertFalse(compressed.download("missing", 0, 10, new ByteArrayOutputStream()).isPresent());
+    }
+
+    public void testCopyAndCodecRules() throws Exception {
+        final byte[] bytes = text(3000);
+        compressed.upload("a", new ByteArrayInputStream(bytes), typed("application/vnd.api+json"));
+        compressed.copy("b", "a", compressed);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compressed.download("b", out);
+        assertTrue(Arrays.equals(bytes, out.toByteArray()));
+
+        assertEquals(Optional.of(Codec.ZSTD), compressed.codecFor("TEXT/HTML; charset=utf-8"));
+        assertEquals(Optional.of(Codec.ZSTD), compressed.codecFor("application/atom+xml"));
+        assertEquals(Optional.of(Codec.LZ4), compressed.codecFor("application/x-lz4-me"));
+        assertEquals(Optional.empty(), compressed.codecFor("application/zip"));
+        assertEquals(Optional.empty(), compressed.codecFor("image/jpeg"));
+    }
+
+    private static Map<String, String> typed(String type) {
+        return Collections.singletonMap(HttpHeaders.CONTENT_TYPE, type);
+    }
+
+    private static byte[] text(int size) {
+        final Random random = new Random(size);
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < size) {
+            sb.append("line ").append(random.nextInt(1000)).append(",value,").append(random.nextInt(10)).append('\n');
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,144 @@
+package com.devinrsmith.jblob.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What a blob's file holds ahead of the blob's bytes: its key (only when the file name is a hash of it),
+ * content type and properties. Keeping these in the same file as the bytes means the one rename that
+ * commits an upload replaces both at once.
+ *
+ * The format is a magic number and the length of the rest of the header, then length-prefixed UTF-8
+ * strings: key and content type (length -1 when absent), the number of properties, then each property name
+ * and value.
+ */
+class FileHeader {
+    private static final int MAGIC = 0x4A424631; // "JBF1"
+    private static final int PREFIX_SIZE = 8;
+
+    /**
+     * Reads the header at the start of channel, without moving its position
+     */
+    static FileHeader read(FileChannel channel, Path path) throws IOException {
+        final ByteBuffer prefix = ByteBuffer.allocate(PREFIX_SIZE);
+        readFully(channel, prefix, 0, path);
+        if (prefix.getInt(0) != MAGIC) {
+            throw new IOException(String.format("%s is not a blob file", path));
+        }
+        final int length = prefix.getInt(4);
+        if (length < 0 || length > channel.size() - PREFIX_SIZE) {
+            throw new IOException(String.format("%s has a corrupt header", path));
+        }
+        final ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(channel, body, PREFIX_SIZE, path);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+        final String key = readString(in);
+        final String contentType = readString(in);
+        final int count = in.readInt();
+        final Map<String, String> properties = new HashMap<>(count * 2);
+        for (int i = 0; i < count; ++i) {
+            properties.put(readString(in), readString(in));
+        }
+        return new FileHeader(key, contentType, Collections.unmodifiableMap(properties), PREFIX_SIZE + length);
+    }
+
+    private final String key;
+    private final String contentType;
+    private final Map<String, String> properties;
+    private final long size;
+
+    private FileHeader(String key, String contentType, Map<String, String> properties, long size) {
+        this.key = key;
+        this.contentType = contentType;
+        this.properties = properties;
+        this.size = size;
+    }
+
+    FileHeader(String key, String contentType, Map<String, String> properties) {
+        this(key, contentType, properties, -1);
+    }
+
+    /**
+     * Null unless the file is named by a hash of the key
+     */
+    String getKey() {
+        return key;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    Map<String, String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * The length of the header as read, which is where the blob's bytes start
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Writes the header at the channel's position, leaving the position after it
+     */
+    void write(FileChannel channel) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(0);
+        writeString(out, key);
+        writeString(out, contentType);
+        out.writeInt(properties.size());
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+        out.flush();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(4, buffer.remaining() - PREFIX_SIZE);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, Path path) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException(String.format("%s is truncated", path));
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,61 @@
+package com.devinrsmith.jblob.file;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tuning knobs for {@link JBlobFile}.
+ */
+public class FileOptions {
+    public static FileOptions defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final boolean sync;
+    private final long mapThreshold;
+
+    private FileOptions(Builder builder) {
+        this.sync = builder.sync;
+        this.mapThreshold = builder.mapThreshold;
+    }
+
+    /**
+     * When true, an upload is forced to disk (file and directory) before it returns. When false, an
+     * upload is still atomic, but a crash of the machine may lose uploads that had returned.
+     */
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * Blobs at least this large are memory mapped when downloaded to anything other than a file
+     */
+    public long getMapThreshold() {
+        return mapThreshold;
+    }
+
+    public static class Builder {
+        private boolean sync = false;
+        private long mapThreshold = 1024 * 1024;
+
+        private Builder() {}
+
+        public Builder sync(boolean sync) {
+            this.sync = sync;
+            return this;
+        }
+
+        public Builder mapThreshold(long mapThreshold) {
+            Preconditions.checkArgument(mapThreshold >= 0, "mapThreshold must not be negative");
+            this.mapThreshold = mapThreshold;
+            return this;
+        }
+
+        public FileOptions build() {
+            return new FileOptions(this);
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.devinrsmith.jblob.file;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A JBlob kept in a local (or NFS) directory.
+ *
+ * Blobs are spread over two levels of directories by a hash of their key, so no directory grows too large.
+ * A blob's file is named by its key, base32hex encoded so names are safe on case-insensitive file systems;
+ * keys too long for that are named by their hash instead. The file starts with a small header holding the
+ * content type, properties and, for keys named by hash, the key, followed by the blob's bytes.
+ *
+ * Uploads are written to a temporary file and renamed into place. Since the header and the bytes are in the
+ * one file, that rename is the only commit point, and a reader, which reads both through the one open file,
+ * sees either the old blob or the new one, never a partial one nor a mix of the two, even across processes.
+ *
+ * Downloads to a file are copied by the kernel, large downloads to anything else are memory mapped.
+ * Copies between two JBlobFiles on the same file system are hard links, which is safe because a blob's
+ * file is never modified in place.
+ */
+public class JBlobFile implements JBlob {
+    // base32hex names longer than this run into file name limits, those keys are named by their hash instead
+    private static final int MAX_NAME_LENGTH = 200;
+    private static final String HASHED_PREFIX = "~";
+    private static final String TMP_PREFIX = ".tmp-";
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_MAP_SIZE = 1024 * 1024 * 1024;
+
+    private static final BaseEncoding NAME_ENCODING = BaseEncoding.base32Hex().lowerCase().omitPadding();
+
+    private final Path root;
+    private final FileOptions options;
+
+    public JBlobFile(Path root) {
+        this(root, FileOptions.defaults());
+    }
+
+    public JBlobFile(Path root, FileOptions options) {
+        this.root = Preconditions.checkNotNull(root);
+        this.options = Preconditions.checkNotNull(options);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(properties);
+
+        final Location location = locate(key);
+        Files.createDirectories(location.dir);
+        final Path tmp = Files.createTempFile(location.dir, TMP_PREFIX, null);
+        try {
+            try (final FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                header(key, location, contentType(properties), properties).write(out);
+                write(in, out);
+                if (options.isSync()) {
+                    out.force(true);
+                }
+            }
+            commit(location, tmp);
+        } finally {
+            cleanDelete(tmp);
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        return download(key, 0, Long.MAX_VALUE, out);
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(out);
+        Preconditions.checkArgument(offset >= 0 && length >= 0, "offset and length must not be negative");
+
+        final Location location = locate(key);
+        final FileChannel in;
+        try {
+            in = FileChannel.open(location.data(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        try (final FileChannel channel = in) {
+            final FileHeader header = FileHeader.read(channel, location.data());
+            final long size = channel.size() - header.size();
+            final JBlobMeta meta = createBlobMeta(size, header);
+            final long start = header.size() + Math.min(offset, size);
+            final long end = length > channel.size() - start ? channel.size() : start + length;
+            if (out instanceof FileOutputStream) {
+                final FileChannel target = ((FileOutputStream) out).getChannel();
+                for (long position = start; position < end; ) {
+                    position += channel.transferTo(position, end - position, target);
+                }
+            } else if (end - start >= options.getMapThreshold()) {
+                writeMapped(channel, start, end, out);
+            } else {
+                final byte[] buffer = new byte[(int) Math.max(Math.min(end - start, BUFFER_SIZE), 1)];
+                final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                for (long position = start; position < end; ) {
+                    wrapped.limit((int) Math.min(buffer.length, end - position));
+                    final int n = channel.read(wrapped, position);
+                    if (n == -1) {
+                        break;
+                    }
+                    out.write(buffer, 0, n);
+                    position += n;
+                    wrapped.clear();
+                }
+            }
+            return Optional.of(meta);
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        final Location location = locate(key);
+        final FileChannel in;
+        try {
+            in = FileChannel.open(location.data(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        try (final FileChannel channel = in) {
+            final FileHeader header = FileHeader.read(channel, location.data());
+            return Optional.of(createBlobMeta(channel.size() - header.size(), header));
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(locate(key).data());
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return keys("");
+    }
+
+    /**
+     * Keys are spread by hash, so this walks every directory and filters
+     */
+    @Override
+    public Stream<String> keys(String prefix) {
+        Preconditions.checkNotNull(prefix);
+        return dataFiles()
+                .map(this::keyOf)
+                .filter(key -> key.isPresent() && key.get().startsWith(prefix))
+                .map(Optional::get);
+    }
+
+    /**
+     * Keys are spread by hash, so this walks every directory and filters. Entries carry no ETag.
+     */
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        Preconditions.checkNotNull(prefix);
+        return dataFiles()
+                .map(path -> {
+                    final Optional<String> name = nameKey(path);
+                    if (name.isPresent() && !name.get().startsWith(prefix)) {
+                        return Optional.<JBlobEntry>empty();
+                    }
+                    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        final FileHeader header = FileHeader.read(channel, path);
+                        final String key = name.isPresent() ? name.get() : header.getKey();
+                        if (key == null || !key.startsWith(prefix)) {
+                            return Optional.<JBlobEntry>empty();
+                        }
+                        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        return Optional.of(JBlobEntry.of(key, channel.size() - header.size(), null, attributes.lastModifiedTime().toInstant()));
+                    } catch (NoSuchFileException e) {
+                        return Optional.<JBlobEntry>empty();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
+    /**
+     * When other is also a JBlobFile the copy is a hard link if both are on the same file system and neither
+     * key is named by its hash, and a file copy otherwise.
+     */
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(other);
+        if (!(other instanceof JBlobFile)) {
+            JBlob.super.copy(key, otherKey, other);
+            return;
+        }
+
+        final Location from = ((JBlobFile) other).locate(otherKey);
+        final Location to = locate(key);
+        if (from.data().equals(to.data())) {
+            return;
+        }
+
+        Files.createDirectories(to.dir);
+        final Path tmp = to.dir.resolve(TMP_PREFIX + UUID.randomUUID());
+        try {
+            // only a header without a key is right for any key
+            if (from.hashed || to.hashed || !link(from.data(), tmp)) {
+                if (!copyRewritingHeader(key, to, from.data(), tmp)) {
+                    return;
+                }
+            }
+            commit(to, tmp);
+        } finally {
+            cleanDelete(tmp);
+        }
+    }
+
+    /**
+     * Hard links, or else copies, data to tmp; false if data doesn't exist
+     */
+    private static boolean link(Path data, Path tmp) throws IOException {
+        try {
+            Files.createLink(tmp, data);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // different file systems, or no hard links at all
+            try {
+                Files.copy(data, tmp);
+            } catch (NoSuchFileException e2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the blob in data to tmp under a header for key; false if data doesn't exist
+     */
+    private boolean copyRewritingHeader(String key, Location location, Path data, Path tmp) throws IOException {
+        final FileChannel in;
+        try {
+            in = FileChannel.open(data, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        try (final FileChannel channel = in;
+             final FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            final FileHeader header = FileHeader.read(channel, data);
+            header(key, location, header.getContentType(), header.getProperties()).write(out);
+            final long end = channel.size();
+            for (long position = header.size(); position < end; ) {
+                position += channel.transferTo(position, end - position, out);
+            }
+            if (options.isSync()) {
+                out.force(true);
+            }
+        }
+        return true;
+    }
+
+    private void commit(Location location, Path data) throws IOException {
+        Files.move(data, location.data(), StandardCopyOption.ATOMIC_MOVE);
+        if (options.isSync()) {
+            syncDirectory(location.dir);
+        }
+    }
+
+    private static FileHeader header(String key, Location location, String contentType, Map<String, String> properties) {
+        // the file name gives the key back unless it is a hash
+        return new FileHeader(location.hashed ? key : null, contentType, properties);
+    }
+
+    /**
+     * Appends in to out, from out's position
+     */
+    private static void write(InputStream in, FileChannel out) throws IOException {
+        if (in instanceof FileInputStream) {
+            final FileChannel channel = ((FileInputStream) in).getChannel();
+            long position = out.position();
+            long n;
+            while ((n = out.transferFrom(channel, position, MAX_MAP_SIZE)) > 0) {
+                position += n;
+            }
+            return;
+        }
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            final ByteBuffer wrapped = ByteBuffer.wrap(buffer, 0, n);
+            while (wrapped.hasRemaining()) {
+                out.write(wrapped);
+            }
+        }
+    }
+
+    /**
+     * Hands the mapped pages to out as a channel, with no copy through the heap of our own. A stream that is
+     * itself a channel gets the bytes through transferTo, which picks the best way for that channel.
+     */
+    private static void writeMapped(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+        if (out instanceof WritableByteChannel) {
+            for (long position = start; position < end; ) {
+                position += channel.transferTo(position, end - position, (WritableByteChannel) out);
+            }
+            return;
+        }
+        final WritableByteChannel target = Channels.newChannel(out);
+        for (long position = start; position < end; ) {
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(end - position, MAX_MAP_SIZE));
+            position += mapped.remaining();
+            while (mapped.hasRemaining()) {
+                target.write(mapped);
+            }
+        }
+    }
+
+    private Stream<Path> dataFiles() {
+        // callers rarely close what keys() returns, so the few top level directories are read up front and
+        // every listing left open is one flatMap closes once it has gone through it
+        final List<Path> top;
+        try (final Stream<Path> listing = list(root)) {
+            top = listing.filter(Files::isDirectory).collect(Collectors.toList());
+        }
+        return top.stream()
+                .flatMap(JBlobFile::list)
+                .filter(Files::isDirectory)
+                .flatMap(JBlobFile::list)
+                .filter(path -> !path.getFileName().toString().startsWith("."));
+    }
+
+    private Optional<String> keyOf(Path data) {
+        if (!data.getFileName().toString().startsWith(HASHED_PREFIX)) {
+            return nameKey(data);
+        }
+        try (final FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+            return Optional.ofNullable(FileHeader.read(channel, data).getKey());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The key a file is named by, empty for files named by hash and files that aren't ours
+     */
+    private static Optional<String> nameKey(Path data) {
+        final String name = data.getFileName().toString();
+        if (name.startsWith(HASHED_PREFIX)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new String(NAME_ENCODING.decode(name), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            // not one of ours
+            return Optional.empty();
+        }
+    }
+
+    private static Stream<Path> list(Path dir) {
+        try {
+            return Files.list(dir);
+        } catch (NoSuchFileException e) {
+            return Stream.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Location locate(String key) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkArgument(!key.isEmpty(), "key must not be empty");
+
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        final HashCode hash = Hashing.sha256().hashBytes(bytes);
+        final String hex = hash.toString();
+        final Path dir = root.resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4));
+        final String encoded = NAME_ENCODING.encode(bytes);
+        return encoded.length() <= MAX_NAME_LENGTH ? new Location(dir, encoded, false) : new Location(dir, HASHED_PREFIX + hex, true);
+    }
+
+    private static JBlobMeta createBlobMeta(long size, FileHeader header) {
+        return JBlobMeta.of(size, header.getContentType(), header.getProperties());
+    }
+
+    private static String contentType(Map<String, String> properties) {
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            if (CONTENT_TYPE.equalsIgnoreCase(e.getKey())) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static void syncDirectory(Path dir) {
+        try (final FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not every platform can open (or sync) a directory
+        }
+    }
+
+    private static void cleanDelete(Path tmp) {
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException | SecurityException e) {
+            // don't care about these on trying to delete
+        }
+    }
+
+    private static class Location {
+        private final Path dir;
+        private final String name;
+        private final boolean hashed;
+
+        private Location(Path dir, String name, boolean hashed) {
+            this.dir = dir;
+            this.name = name;
+            this.hashed = hashed;
+        }
+
+        private Path data() {
+            return dir.resolve(name);
+        }
+    }
+}
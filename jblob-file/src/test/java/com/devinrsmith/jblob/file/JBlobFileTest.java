@@ -0,0 +1,273 @@
+package com.devinrsmith.jblob.file;
+
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JBlobFileTest extends TestCase {
+    private Path root;
+    private JBlobFile jblob;
+
+    @Override
+    protected void setUp() throws IOException {
+        root = Files.createTempDirectory("jblob-file-test");
+        // a low threshold so the mapped path is exercised too
+        jblob = new JBlobFile(root, FileOptions.builder().mapThreshold(1024).build());
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (final Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Collections.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        for (int size : new int[] { 0, 1, 1023, 1024, 300000 }) {
+            final byte[] data = random(size);
+            jblob.upload("blob-" + size, new ByteArrayInputStream(data), ImmutableMap.of("Content-Type", "image/png", "foo", "bar"));
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final JBlobMeta meta = jblob.download("blob-" + size, out).get();
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+            assertEquals(size, meta.getContentLength());
+            assertEquals(Optional.of("image/png"), meta.getContentType());
+            assertEquals("bar", meta.getProperties().get("foo"));
+        }
+    }
+
+    public void testRanges() throws Exception {
+        final byte[] data = random(5000);
+        jblob.upload("key", new ByteArrayInputStream(data));
+        final long[][] ranges = { { 0, 5000 }, { 0, 1 }, { 1000, 2024 }, { 4000, Long.MAX_VALUE }, { 4999, 10 }, { 5000, 10 }, { 9000, 10 }, { 100, 0 } };
+        for (long[] range : ranges) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(5000, jblob.download("key", range[0], range[1], out).get().getContentLength());
+            final int from = (int) Math.min(range[0], data.length);
+            final int to = (int) Math.min(data.length, from + Math.min(range[1], data.length));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, from, to), out.toByteArray()));
+        }
+        assertFalse(jblob.download("missing", 0, 10, new ByteArrayOutputStream()).isPresent());
+    }
+
+    public void testFileStreams() throws Exception {
+        final byte[] data = random(100000);
+        final Path in = Files.createTempFile(root, "in", null);
+        final Path out = Files.createTempFile(root, "out", null);
+        Files.write(in, data);
+        try (final InputStream stream = new FileInputStream(in.toFile())) {
+            jblob.upload("file", stream);
+        }
+        try (final OutputStream stream = new FileOutputStream(out.toFile())) {
+            jblob.download("file", stream);
+        }
+        assertTrue(Arrays.equals(data, Files.readAllBytes(out)));
+    }
+
+    public void testChannelStreams() throws Exception {
+        final byte[] data = random(100000);
+        jblob.upload("key", new ByteArrayInputStream(data));
+        final ChannelStream out = new ChannelStream();
+        jblob.download("key", 10, 50000, out);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 10, 50010), out.toByteArray()));
+    }
+
+    public void testOverwriteDropsProperties() throws Exception {
+        jblob.upload("key", new ByteArrayInputStream(random(10)), ImmutableMap.of("foo", "bar"));
+        jblob.upload("key", new ByteArrayInputStream(random(20)));
+        final JBlobMeta meta = jblob.downloadMetadata("key").get();
+        assertEquals(20, meta.getContentLength());
+        assertTrue(meta.getProperties().isEmpty());
+    }
+
+    public void testLongKey() throws Exception {
+        final String key = Strings.repeat("long/key/", 100);
+        jblob.upload(key, new ByteArrayInputStream(random(5)));
+        assertEquals(5, jblob.downloadMetadata(key).get().getContentLength());
+        assertEquals(Collections.singletonList(key), jblob.keys().collect(Collectors.toList()));
+    }
+
+    public void testMissing() throws Exception {
+        assertFalse(jblob.download("missing", new ByteArrayOutputStream()).isPresent());
+        assertFalse(jblob.downloadMetadata("missing").isPresent());
+        jblob.delete("missing");
+        assertEquals(0, jblob.keys().count());
+    }
+
+    public void testDelete() throws Exception {
+        jblob.upload("key", new ByteArrayInputStream(random(10)), ImmutableMap.of("foo", "bar"));
+        jblob.delete("key");
+        assertFalse(jblob.downloadMetadata("key").isPresent());
+        try (final Stream<Path> paths = Files.walk(root)) {
+            assertEquals(0, paths.filter(Files::isRegularFile).count());
+        }
+    }
+
+    public void testListing() throws Exception {
+        for (String key : new String[] { "a/1", "a/2", "b/1", "Ab/1" }) {
+            jblob.upload(key, new ByteArrayInputStream(random(key.length())));
+        }
+        assertEquals(ImmutableSet.of("a/1", "a/2", "b/1", "Ab/1"), jblob.keys().parallel().collect(Collectors.toSet()));
+        assertEquals(ImmutableSet.of("a/1", "a/2"), jblob.keys("a/").collect(Collectors.toSet()));
+
+        final JBlobEntry entry = jblob.entries("b/").findFirst().get();
+        assertEquals("b/1", entry.getKey());
+        assertEquals(3, entry.getContentLength());
+        assertTrue(entry.getLastModified().isPresent());
+
+        assertEquals(4, jblob.stats().count());
+    }
+
+    public void testUnclosedListingsDontLeak() throws Exception {
+        final Path fds = Paths.get("/proc/self/fd");
+        if (!Files.isDirectory(fds)) {
+            return;
+        }
+        for (int i = 0; i < 10; ++i) {
+            jblob.upload("key-" + i, new ByteArrayInputStream(random(i)));
+        }
+        final long before = countFiles(fds);
+        for (int i = 0; i < 200; ++i) {
+            // the way stats() and callers written against S3 use it
+            assertEquals(10, jblob.keys().count());
+        }
+        assertTrue(countFiles(fds) - before < 50);
+    }
+
+    public void testCopy() throws Exception {
+        final byte[] data = random(5000);
+        jblob.upload("from", new ByteArrayInputStream(data), ImmutableMap.of("foo", "bar"));
+        final JBlobFile other = new JBlobFile(root.resolve("other"));
+        other.copy("to", "from", jblob);
+        jblob.delete("from");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("bar", other.download("to", out).get().getProperties().get("foo"));
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+
+        other.copy("nothing", "from", jblob);
+        assertFalse(other.downloadMetadata("nothing").isPresent());
+    }
+
+    public void testCopyLongKeys() throws Exception {
+        final String longKey = Strings.repeat("long/key/", 100);
+        final byte[] data = random(5000);
+        jblob.upload(longKey, new ByteArrayInputStream(data), ImmutableMap.of("Content-Type", "image/png"));
+        final JBlobFile other = new JBlobFile(root.resolve("other"));
+        // hashed to short, short to hashed
+        other.copy("short", longKey, jblob);
+        other.copy(longKey + "2", "short", other);
+
+        assertEquals(ImmutableSet.of("short", longKey + "2"), other.keys().collect(Collectors.toSet()));
+        for (String key : new String[] { "short", longKey + "2" }) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(Optional.of("image/png"), other.download(key, out).get().getContentType());
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+        }
+    }
+
+    public void testReadersNeverMixUploads() throws Exception {
+        // each upload's property names the byte its content is made of
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final AtomicBoolean done = new AtomicBoolean();
+            final Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 500; ++i) {
+                    final byte b = (byte) i;
+                    final byte[] data = new byte[100 + i % 7];
+                    Arrays.fill(data, b);
+                    // every other upload without properties, which used to delete a sidecar first
+                    jblob.upload("key", new ByteArrayInputStream(data), i % 2 == 0 ? ImmutableMap.of("byte", Byte.toString(b)) : Collections.emptyMap());
+                }
+                done.set(true);
+                return null;
+            });
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 2; ++r) {
+                readers.add(executor.submit(() -> {
+                    while (!done.get()) {
+                        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        final Optional<JBlobMeta> meta = jblob.download("key", out);
+                        if (!meta.isPresent()) {
+                            continue;
+                        }
+                        final byte[] bytes = out.toByteArray();
+                        assertEquals(meta.get().getContentLength(), bytes.length);
+                        final String b = meta.get().getProperties().get("byte");
+                        assertEquals((bytes[0] & 1) == 0, b != null);
+                        if (b != null) {
+                            assertEquals(Byte.parseByte(b), bytes[0]);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            writer.get(30, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A stream that can also be written to as a channel
+     */
+    private static class ChannelStream extends ByteArrayOutputStream implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            final int n = src.remaining();
+            final byte[] bytes = new byte[n];
+            src.get(bytes);
+            write(bytes, 0, n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (final Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] random(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
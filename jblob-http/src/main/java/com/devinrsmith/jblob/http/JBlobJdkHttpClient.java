@@ -0,0 +1,278 @@
+package com.devinrsmith.jblob.http;
+
+import com.devinrsmith.jblob.api.uri.JBlobHttpClient;
+import com.devinrsmith.jblob.api.uri.JBlobHttpStatusException;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.net.HttpHeaders;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A {@link JBlobHttpClient} on the JDK's {@link HttpClient}. Connections are pooled and kept alive by the
+ * HttpClient, which negotiates HTTP/2 where the server supports it and multiplexes requests to the same
+ * host over one connection. The pool's size and keep-alive are set with the jdk.httpclient.connectionPoolSize
+ * and jdk.httpclient.keepalive.timeout system properties.
+ *
+ * Response header names are canonicalized, to the spelling of Guava's {@link HttpHeaders} constants where
+ * there is one and to capitalized words otherwise, since HTTP/2 sends them in lower case and HTTP/1.1
+ * servers in whatever case they like, while the properties they end up in are looked up by exact name.
+ *
+ * Response bodies are streamed straight from the connection. A gzip encoded body is decoded as it is read,
+ * and its Content-Encoding and Content-Length headers, which describe the encoded body, are dropped. The
+ * connection goes back to the pool once the body has been read or closed, so a caller that doesn't want
+ * the body should still open and close it.
+ *
+ * Statuses of 400 and up throw a {@link JBlobHttpStatusException}; a 304 to a conditional GET is empty.
+ */
+public class JBlobJdkHttpClient implements JBlobHttpClient {
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // the names in HttpHeaders, by their lower case
+    private static final Map<String, String> STANDARD_NAMES = standardNames();
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final boolean acceptGzip;
+    private final Map<String, String> headers;
+
+    private JBlobJdkHttpClient(Builder builder) {
+        this.client = builder.client != null ? builder.client : builder.newClient();
+        this.requestTimeout = builder.requestTimeout;
+        this.acceptGzip = builder.acceptGzip;
+        this.headers = new LinkedHashMap<>(builder.headers);
+    }
+
+    @Override
+    public Results executeGet(URI uri) throws IOException {
+        final Optional<Results> results = executeGet(uri, Collections.emptyMap());
+        if (!results.isPresent()) {
+            throw new IOException(String.format("%s returned 304 to an unconditional GET", uri));
+        }
+        return results.get();
+    }
+
+    @Override
+    public Optional<Results> executeGet(URI uri, Map<String, String> requestHeaders) throws IOException {
+        Preconditions.checkNotNull(uri);
+        Preconditions.checkNotNull(requestHeaders);
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+        if (requestTimeout != null) {
+            request.timeout(requestTimeout);
+        }
+        if (acceptGzip) {
+            request.header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        }
+        headers.forEach(request::header);
+        requestHeaders.forEach(request::header);
+
+        final HttpResponse<InputStream> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException interrupted = new InterruptedIOException(String.format("GET %s interrupted", uri));
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+
+        final int status = response.statusCode();
+        if (status == 304 || status >= 400) {
+            // closing rather than reading it may cost the connection, but error bodies can be large
+            response.body().close();
+            if (status == 304) {
+                return Optional.empty();
+            }
+            throw new JBlobHttpStatusException(uri, status);
+        }
+        return Optional.of(new StreamingResults(uri, response));
+    }
+
+    static String canonicalName(String name) {
+        final String lower = name.toLowerCase(Locale.ROOT);
+        final String standard = STANDARD_NAMES.get(lower);
+        if (standard != null) {
+            return standard;
+        }
+        final StringBuilder canonical = new StringBuilder(lower.length());
+        boolean wordStart = true;
+        for (int i = 0; i < lower.length(); ++i) {
+            final char c = lower.charAt(i);
+            canonical.append(wordStart ? Character.toUpperCase(c) : c);
+            wordStart = c == '-';
+        }
+        return canonical.toString();
+    }
+
+    private static Map<String, String> standardNames() {
+        final Map<String, String> names = new HashMap<>();
+        for (Field field : HttpHeaders.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                try {
+                    final String name = (String) field.get(null);
+                    names.put(name.toLowerCase(Locale.ROOT), name);
+                } catch (IllegalAccessException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static class StreamingResults implements Results {
+        private final URI uri;
+        private final InputStream body;
+        private final Map<String, String> headers;
+        private final boolean gzip;
+        private final AtomicBoolean opened = new AtomicBoolean();
+
+        private StreamingResults(URI uri, HttpResponse<InputStream> response) {
+            this.uri = uri;
+            this.body = response.body();
+            final Map<String, String> headers = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> e : response.headers().map().entrySet()) {
+                // HTTP/2 pseudo headers, like :status
+                if (!e.getKey().startsWith(":")) {
+                    headers.put(canonicalName(e.getKey()), Joiner.on(", ").join(e.getValue()));
+                }
+            }
+            this.gzip = response.headers().firstValue(HttpHeaders.CONTENT_ENCODING)
+                    .map(encoding -> encoding.trim().equalsIgnoreCase("gzip"))
+                    .orElse(false);
+            if (gzip) {
+                headers.remove(HttpHeaders.CONTENT_ENCODING);
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+            }
+            this.headers = Collections.unmodifiableMap(headers);
+        }
+
+        @Override
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * The body can only be read once
+         */
+        @Override
+        public InputStream openStream() throws IOException {
+            if (!opened.compareAndSet(false, true)) {
+                throw new IOException(String.format("The body of %s has already been opened", uri));
+            }
+            if (!gzip) {
+                return body;
+            }
+            try {
+                return new GZIPInputStream(body, 64 * 1024);
+            } catch (IOException e) {
+                body.close();
+                throw e;
+            }
+        }
+    }
+
+    public static class Builder {
+        private HttpClient client;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout;
+        private HttpClient.Version version = HttpClient.Version.HTTP_2;
+        private Executor executor;
+        private boolean acceptGzip = true;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * An HttpClient to share, instead of one built from connectTimeout, version and executor
+         */
+        public Builder client(HttpClient client) {
+            this.client = Preconditions.checkNotNull(client);
+            return this;
+        }
+
+        /**
+         * 10 seconds by default
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = Preconditions.checkNotNull(connectTimeout);
+            return this;
+        }
+
+        /**
+         * How long to wait for the response headers; the body isn't covered. None by default.
+         */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = Preconditions.checkNotNull(requestTimeout);
+            return this;
+        }
+
+        /**
+         * HTTP/2 by default, falling back to HTTP/1.1 for servers that don't support it
+         */
+        public Builder version(HttpClient.Version version) {
+            this.version = Preconditions.checkNotNull(version);
+            return this;
+        }
+
+        /**
+         * The executor the HttpClient does its asynchronous work on. Its own by default.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = Preconditions.checkNotNull(executor);
+            return this;
+        }
+
+        /**
+         * Whether to ask for, and decode, gzip encoded bodies. true by default.
+         */
+        public Builder acceptGzip(boolean acceptGzip) {
+            this.acceptGzip = acceptGzip;
+            return this;
+        }
+
+        /**
+         * A header sent with every request, User-Agent say
+         */
+        public Builder header(String name, String value) {
+            headers.put(Preconditions.checkNotNull(name), Preconditions.checkNotNull(value));
+            return this;
+        }
+
+        public JBlobJdkHttpClient build() {
+            return new JBlobJdkHttpClient(this);
+        }
+
+        private HttpClient newClient() {
+            final HttpClient.Builder builder = HttpClient.newBuilder()
+                    .connectTimeout(connectTimeout)
+                    .version(version)
+                    .followRedirects(HttpClient.Redirect.NORMAL);
+            if (executor != null) {
+                builder.executor(executor);
+            }
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.devinrsmith.jblob.http;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.api.keyless.IngestMode;
+import com.devinrsmith.jblob.api.keyless.JBlobContentTyper;
+import com.devinrsmith.jblob.api.keyless.JBlobDeduper;
+import com.devinrsmith.jblob.api.keyless.JBlobHasher;
+import com.devinrsmith.jblob.api.keyless.JBlobKeylessImpl;
+import com.devinrsmith.jblob.api.uri.JBlobHttpClient;
+import com.devinrsmith.jblob.api.uri.JBlobHttpStatusException;
+import com.devinrsmith.jblob.api.uri.JBlobUri;
+import com.devinrsmith.jblob.api.uri.JBlobUriImpl;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+public class JBlobJdkHttpClientTest extends TestCase {
+    private static final byte[] BODY = body(200000);
+
+    private HttpServer server;
+    private Set<Integer> clientPorts;
+    private JBlobJdkHttpClient client;
+
+    @Override
+    protected void setUp() throws IOException {
+        clientPorts = ConcurrentHashMap.newKeySet();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/blob", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, "application/octet-stream");
+            exchange.getResponseHeaders().add(HttpHeaders.ETAG, "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+                respond(exchange, 304, null);
+            } else {
+                respond(exchange, 200, BODY);
+            }
+        });
+        server.createContext("/gzip", exchange -> {
+            final String accept = exchange.getRequestHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING);
+            if (accept == null || !accept.contains("gzip")) {
+                respond(exchange, 200, BODY);
+                return;
+            }
+            final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write(BODY);
+            }
+            exchange.getResponseHeaders().add(HttpHeaders.CONTENT_ENCODING, "gzip");
+            respond(exchange, 200, gzipped.toByteArray());
+        });
+        server.createContext("/typed", exchange -> {
+            // how some HTTP/1.1 servers spell it, com.sun's HttpServer among them
+            exchange.getResponseHeaders().add("content-TYPE", "image/png");
+            exchange.getResponseHeaders().add("x-custom-header", "custom");
+            respond(exchange, 200, BODY);
+        });
+        server.createContext("/missing", exchange -> respond(exchange, 404, "not here".getBytes()));
+        server.createContext("/unavailable", exchange -> respond(exchange, 503, null));
+        server.start();
+        client = JBlobJdkHttpClient.builder()
+                .header(HttpHeaders.USER_AGENT, "jblob-test")
+                .build();
+    }
+
+    @Override
+    protected void tearDown() {
+        server.stop(0);
+    }
+
+    public void testStreamsBody() throws Exception {
+        final JBlobHttpClient.Results results = client.executeGet(uri("/blob"));
+        assertEquals("application/octet-stream", header(results, HttpHeaders.CONTENT_TYPE));
+        assertEquals(String.valueOf(BODY.length), header(results, HttpHeaders.CONTENT_LENGTH));
+        assertTrue(Arrays.equals(BODY, read(results)));
+        try {
+            results.openStream();
+            fail();
+        } catch (IOException e) {
+            // only once
+        }
+    }
+
+    public void testCanonicalHeaderNames() throws Exception {
+        final JBlobHttpClient.Results results = client.executeGet(uri("/typed"));
+        assertEquals("image/png", results.getHeaders().get(HttpHeaders.CONTENT_TYPE));
+        assertEquals("custom", results.getHeaders().get("X-Custom-Header"));
+        read(results);
+
+        assertEquals(HttpHeaders.ETAG, JBlobJdkHttpClient.canonicalName("etag"));
+        assertEquals(HttpHeaders.CONTENT_MD5, JBlobJdkHttpClient.canonicalName("CONTENT-MD5"));
+        assertEquals("X-Amz-Meta-Owner", JBlobJdkHttpClient.canonicalName("x-amz-meta-owner"));
+    }
+
+    public void testUriKeepsServerContentType() throws Exception {
+        final JBlob jblob = new JBlobMemory();
+        // a typer that would add its own Content-Type if it didn't find the server's
+        final JBlobContentTyper typer = source -> Optional.of("application/octet-stream");
+        final JBlobUri jblobUri = new JBlobUriImpl(
+                new JBlobKeylessImpl(jblob, JBlobHasher.of(Hashing.sha256()), new MapDeduper(), HashCode::toString, typer, IngestMode.SPOOL),
+                client);
+        final String key = jblobUri.upload(uri("/typed"));
+        final JBlobMeta meta = jblob.downloadMetadata(key).get();
+        assertEquals(Optional.of("image/png"), meta.getContentType());
+        assertEquals(1, meta.getProperties().keySet().stream().filter(HttpHeaders.CONTENT_TYPE::equalsIgnoreCase).count());
+        assertEquals("image/png", meta.getProperties().get(HttpHeaders.CONTENT_TYPE));
+    }
+
+    public void testConnectionsAreReused() throws Exception {
+        for (int i = 0; i < 5; ++i) {
+            assertTrue(Arrays.equals(BODY, read(client.executeGet(uri("/blob")))));
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
+    public void testGzip() throws Exception {
+        final JBlobHttpClient.Results results = client.executeGet(uri("/gzip"));
+        assertNull(header(results, HttpHeaders.CONTENT_ENCODING));
+        assertNull(header(results, HttpHeaders.CONTENT_LENGTH));
+        assertTrue(Arrays.equals(BODY, read(results)));
+
+        final JBlobJdkHttpClient identity = JBlobJdkHttpClient.builder().acceptGzip(false).build();
+        assertTrue(Arrays.equals(BODY, read(identity.executeGet(uri("/gzip")))));
+    }
+
+    public void testConditionalGet() throws Exception {
+        assertFalse(client.executeGet(uri("/blob"), ImmutableMap.of(HttpHeaders.IF_NONE_MATCH, "\"v1\"")).isPresent());
+        final Optional<JBlobHttpClient.Results> changed = client.executeGet(uri("/blob"), ImmutableMap.of(HttpHeaders.IF_NONE_MATCH, "\"v0\""));
+        assertTrue(Arrays.equals(BODY, read(changed.get())));
+    }
+
+    public void testStatuses() throws Exception {
+        try {
+            client.executeGet(uri("/missing"));
+            fail();
+        } catch (JBlobHttpStatusException e) {
+            assertEquals(404, e.getStatus());
+            assertFalse(e.isTransient());
+        }
+        try {
+            client.executeGet(uri("/unavailable"));
+            fail();
+        } catch (JBlobHttpStatusException e) {
+            assertEquals(503, e.getStatus());
+            assertTrue(e.isTransient());
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort() + path);
+    }
+
+    private static String header(JBlobHttpClient.Results results, String name) {
+        return results.getHeaders().entrySet().stream()
+                .filter(e -> e.getKey().equalsIgnoreCase(name))
+                .map(e -> e.getValue())
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static byte[] read(JBlobHttpClient.Results results) throws IOException {
+        try (InputStream in = results.openStream()) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+    private static class MapDeduper implements JBlobDeduper {
+        private final Map<HashCode, String> keys = new ConcurrentHashMap<>();
+
+        @Override
+        public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) {
+            return Optional.ofNullable(keys.get(hashCode));
+        }
+
+        @Override
+        public void putNewKey(HashCode hashCode, String key) {
+            keys.put(hashCode, key);
+        }
+    }
+
+    private static byte[] body(int size) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            bytes[i] = (byte) (i % 251);
+        }
+        return bytes;
+    }
+}
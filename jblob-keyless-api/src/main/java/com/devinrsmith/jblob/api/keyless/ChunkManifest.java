@@ -0,0 +1,73 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.google.common.base.Splitter;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The chunks of a {@link JBlobChunked} blob, in order. Stored as text: a header line, then one line per
+ * chunk with its length and hash.
+ */
+class ChunkManifest {
+    private static final String HEADER = "jblob-chunked 1";
+
+    static ChunkManifest parse(String key, byte[] bytes) throws IOException {
+        final List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(new String(bytes, StandardCharsets.UTF_8));
+        if (lines.isEmpty() || !HEADER.equals(lines.get(0))) {
+            throw new IOException(String.format("%s is not a chunk manifest", key));
+        }
+        final List<Chunk> chunks = new ArrayList<>(lines.size() - 1);
+        try {
+            for (String line : lines.subList(1, lines.size())) {
+                final int space = line.indexOf(' ');
+                chunks.add(new Chunk(Integer.parseInt(line.substring(0, space)), HashCode.fromString(line.substring(space + 1))));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException(String.format("%s is not a valid chunk manifest", key), e);
+        }
+        return new ChunkManifest(chunks);
+    }
+
+    private final List<Chunk> chunks;
+    private final long length;
+
+    ChunkManifest(List<Chunk> chunks) {
+        this.chunks = Collections.unmodifiableList(chunks);
+        long length = 0;
+        for (Chunk chunk : chunks) {
+            length += chunk.length;
+        }
+        this.length = length;
+    }
+
+    List<Chunk> chunks() {
+        return chunks;
+    }
+
+    long length() {
+        return length;
+    }
+
+    byte[] encode() {
+        final StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for (Chunk chunk : chunks) {
+            sb.append(chunk.length).append(' ').append(chunk.hash).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static class Chunk {
+        final int length;
+        final HashCode hash;
+
+        Chunk(int length, HashCode hash) {
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+}
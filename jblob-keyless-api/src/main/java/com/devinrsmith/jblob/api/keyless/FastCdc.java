@@ -0,0 +1,96 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cuts a stream into content-defined chunks, FastCDC style: a gear rolling hash is checked against a
+ * stricter mask before the average chunk size and a looser one after it, which keeps chunk sizes close to
+ * the average. Since cut points depend only on nearby bytes, an edit only changes the chunks around it.
+ *
+ * The gear table comes from a fixed seed; changing it would change every cut point, and so every chunk.
+ */
+class FastCdc {
+    private static final long[] GEAR = gear(0x6a426c6f62636463L);
+
+    private final InputStream in;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long smallMask;
+    private final long largeMask;
+    private final byte[] buffer;
+    private int buffered;
+    private boolean eof;
+
+    FastCdc(InputStream in, int minSize, int avgSize, int maxSize) {
+        this.in = in;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        final int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.smallMask = topBits(bits + 2);
+        this.largeMask = topBits(Math.max(1, bits - 2));
+        this.buffer = new byte[maxSize];
+    }
+
+    /**
+     * The next chunk, or null at the end of the stream
+     */
+    byte[] next() throws IOException {
+        if (!eof && buffered < maxSize) {
+            buffered += ByteStreams.read(in, buffer, buffered, maxSize - buffered);
+            eof = buffered < maxSize;
+        }
+        if (buffered == 0) {
+            return null;
+        }
+        final int cut = cut(buffered);
+        final byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, buffered - cut);
+        buffered -= cut;
+        return chunk;
+    }
+
+    private int cut(int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        final int normal = Math.min(avgSize, length);
+        long fingerprint = 0;
+        int i = minSize;
+        for (; i < normal; ++i) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[i] & 0xff];
+            if ((fingerprint & smallMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; ++i) {
+            fingerprint = (fingerprint << 1) + GEAR[buffer[i] & 0xff];
+            if ((fingerprint & largeMask) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The shifts push older bytes to the top of the fingerprint, so the top bits depend on the most bytes
+     */
+    private static long topBits(int bits) {
+        return -1L << (64 - bits);
+    }
+
+    private static long[] gear(long seed) {
+        final Random random = new Random(seed);
+        final long[] gear = new long[256];
+        for (int i = 0; i < gear.length; ++i) {
+            gear[i] = random.nextLong();
+        }
+        return gear;
+    }
+}
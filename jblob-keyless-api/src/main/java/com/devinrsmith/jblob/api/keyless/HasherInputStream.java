@@ -0,0 +1,71 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.google.common.hash.Hasher;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Feeds every byte read, or skipped, to a Hasher
+ */
+class HasherInputStream extends FilterInputStream {
+    private final Hasher hasher;
+
+    HasherInputStream(InputStream in, Hasher hasher) {
+        super(in);
+        this.hasher = hasher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = in.read();
+        if (b != -1) {
+            hasher.putByte((byte) b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int read = in.read(b, off, len);
+        if (read > 0) {
+            hasher.putBytes(b, off, read);
+        }
+        return read;
+    }
+
+    /**
+     * Skipped bytes still have to be hashed, so they are read
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
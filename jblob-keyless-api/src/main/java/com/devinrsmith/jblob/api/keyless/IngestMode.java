@@ -0,0 +1,29 @@
+package com.devinrsmith.jblob.api.keyless;
+
+/**
+ * How {@link JBlobKeylessImpl} reads the content it uploads
+ */
+public enum IngestMode {
+    /**
+     * A ByteSource is read separately to hash it, to type it, and to upload it, and the deduper may read
+     * it too. Best when the source is cheap to read again, like a local file or bytes in memory.
+     */
+    MULTI_PASS,
+
+    /**
+     * The content is read once, hashed as it is copied to a temporary file; the deduper, the typer and
+     * the upload then read the copy. A ByteSource is read in place, like MULTI_PASS, as copying it wouldn't
+     * make it any easier to read again.
+     */
+    SPOOL,
+
+    /**
+     * The content is read once, hashed and typed from its leading bytes as it is uploaded under a temporary
+     * key, which is then copied to its final key (or deleted, if the content turns out to be known). Needs
+     * no local disk, but every upload is paid in full, duplicate or not, and the copy is only cheap when
+     * the JBlob copies natively (S3 server-side copy, say). Falls back to SPOOL when the typer has to see
+     * all of the content. Staging keys an upload fails to delete are left for
+     * {@link JBlobKeylessImpl#sweepStaging}.
+     */
+    STAGED
+}
@@ -0,0 +1,442 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A JBlobKeyless that dedups chunks of content rather than whole blobs, so versions of a large blob that
+ * differ by a few bytes share most of their storage.
+ *
+ * Content is cut into content-defined chunks ({@link FastCdc}), each stored once in the decorated JBlob
+ * under chunkPrefix and its hash. The blob itself is a small manifest listing its chunks, stored under the
+ * key, with the properties given and its full length. Downloads fetch the chunks chunksInFlight at a time
+ * and write them out in order. Blobs of the decorated JBlob that aren't manifests are read as they are.
+ *
+ * Deleting a blob deletes its manifest only, since its chunks may be shared; {@link #sweep()} deletes the
+ * chunks no manifest refers to.
+ */
+public class JBlobChunked implements JBlobKeyless {
+    public static Builder builder(JBlob jblob) {
+        return new Builder(jblob);
+    }
+
+    /**
+     * The manifest property holding the length of the blob it describes
+     */
+    static final String CHUNKED_LENGTH = "jblob-chunked-length";
+
+    private final JBlob jblob;
+    private final HashFunction function;
+    private final JBlobKeyGenerator generator;
+    private final String chunkPrefix;
+    private final int minChunkSize;
+    private final int avgChunkSize;
+    private final int maxChunkSize;
+    private final int chunksInFlight;
+    private final ExecutorService executor;
+
+    private JBlobChunked(Builder builder) {
+        this.jblob = builder.jblob;
+        this.function = builder.function;
+        this.generator = builder.generator;
+        this.chunkPrefix = builder.chunkPrefix;
+        this.minChunkSize = builder.minChunkSize;
+        this.avgChunkSize = builder.avgChunkSize;
+        this.maxChunkSize = builder.maxChunkSize;
+        this.chunksInFlight = builder.chunksInFlight;
+        this.executor = builder.executor == null ? DefaultExecutor.INSTANCE : builder.executor;
+    }
+
+    @Override
+    public String upload(ByteSource source, Map<String, String> properties) throws IOException, InterruptedException {
+        try (final InputStream in = source.openStream()) {
+            return upload(in, properties);
+        }
+    }
+
+    /**
+     * The key is generated from the hash of the whole content. When the manifest already exists, only the
+     * lookups of the chunks were spent.
+     */
+    @Override
+    public String upload(InputStream in, Map<String, String> properties) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(properties);
+        final Hasher hasher = function.newHasher();
+        final ChunkManifest manifest = storeChunks(new HasherInputStream(in, hasher));
+        final String key = generator.generateKey(hasher.hash());
+        if (!jblob.downloadMetadata(key).isPresent()) {
+            storeManifest(key, manifest, properties);
+        }
+        return key;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(properties);
+        storeManifest(key, storeChunks(in), properties);
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        return download(key, 0, Long.MAX_VALUE, out);
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkArgument(offset >= 0, "offset must not be negative");
+        Preconditions.checkArgument(length >= 0, "length must not be negative");
+        final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+        if (!meta.isPresent()) {
+            return Optional.empty();
+        }
+        if (!chunkedLength(meta.get()).isPresent()) {
+            return jblob.download(key, offset, length, out);
+        }
+        final Optional<ChunkManifest> manifest = manifest(key);
+        if (!manifest.isPresent()) {
+            // deleted since the lookup
+            return Optional.empty();
+        }
+        writeChunks(manifest.get(), offset, length, out);
+        return Optional.of(describe(meta.get(), manifest.get().length()));
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        return jblob.downloadMetadata(key).map(this::describe);
+    }
+
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        final Map<String, Optional<JBlobMeta>> metas = new LinkedHashMap<>();
+        for (Map.Entry<String, Optional<JBlobMeta>> e : jblob.downloadMetadata(keys).entrySet()) {
+            metas.put(e.getKey(), e.getValue().map(this::describe));
+        }
+        return metas;
+    }
+
+    /**
+     * Deletes the manifest, the chunks stay until {@link #sweep()}
+     */
+    @Override
+    public void delete(String key) throws IOException {
+        jblob.delete(key);
+    }
+
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        jblob.deleteAll(keys);
+    }
+
+    /**
+     * Within this JBlobChunked, only the manifest is copied
+     */
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        if (other == this) {
+            jblob.copy(key, otherKey, jblob);
+        } else {
+            JBlobKeyless.super.copy(key, otherKey, other);
+        }
+    }
+
+    /**
+     * The keys of the blobs, not of their chunks
+     */
+    @Override
+    public Stream<String> keys() {
+        return jblob.keys().filter(key -> !key.startsWith(chunkPrefix));
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return jblob.keys(prefix).filter(key -> !key.startsWith(chunkPrefix));
+    }
+
+    /**
+     * Deletes the chunks that no manifest refers to, and returns how many. Must not run while blobs are
+     * uploaded, as it would take the chunks of a manifest not yet stored for garbage.
+     */
+    public long sweep() throws IOException, InterruptedException {
+        final Set<String> referenced = new HashSet<>();
+        final List<String> keys;
+        try (final Stream<String> stream = keys()) {
+            keys = stream.collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (Map.Entry<String, Optional<JBlobMeta>> e : jblob.downloadMetadata(keys).entrySet()) {
+            if (e.getValue().isPresent() && chunkedLength(e.getValue().get()).isPresent()) {
+                final Optional<ChunkManifest> manifest = manifest(e.getKey());
+                if (manifest.isPresent()) {
+                    for (ChunkManifest.Chunk chunk : manifest.get().chunks()) {
+                        referenced.add(chunkKey(chunk.hash));
+                    }
+                }
+            }
+        }
+        final List<String> garbage;
+        try (final Stream<String> stream = jblob.keys(chunkPrefix)) {
+            garbage = stream.filter(key -> !referenced.contains(key)).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        jblob.deleteAll(garbage);
+        return garbage.size();
+    }
+
+    private ChunkManifest storeChunks(InputStream in) throws IOException, InterruptedException {
+        final FastCdc chunker = new FastCdc(in, minChunkSize, avgChunkSize, maxChunkSize);
+        final List<ChunkManifest.Chunk> chunks = new ArrayList<>();
+        final Deque<Future<?>> window = new ArrayDeque<>();
+        try {
+            byte[] bytes;
+            while ((bytes = chunker.next()) != null) {
+                final HashCode hash = function.hashBytes(bytes);
+                chunks.add(new ChunkManifest.Chunk(bytes.length, hash));
+                if (window.size() >= chunksInFlight) {
+                    get(window.remove());
+                }
+                final byte[] chunk = bytes;
+                window.add(executor.submit(() -> {
+                    storeChunk(hash, chunk);
+                    return null;
+                }));
+            }
+            while (!window.isEmpty()) {
+                get(window.remove());
+            }
+        } finally {
+            window.forEach(f -> f.cancel(true));
+        }
+        return new ChunkManifest(chunks);
+    }
+
+    private void storeChunk(HashCode hash, byte[] chunk) throws IOException, InterruptedException {
+        final String key = chunkKey(hash);
+        if (!jblob.downloadMetadata(key).isPresent()) {
+            jblob.upload(key, new ByteArrayInputStream(chunk), Collections.emptyMap());
+        }
+    }
+
+    private void storeManifest(String key, ChunkManifest manifest, Map<String, String> properties) throws IOException, InterruptedException {
+        final Map<String, String> withLength = new HashMap<>(properties);
+        withLength.put(CHUNKED_LENGTH, Long.toString(manifest.length()));
+        jblob.upload(key, new ByteArrayInputStream(manifest.encode()), withLength);
+    }
+
+    private Optional<ChunkManifest> manifest(String key) throws IOException, InterruptedException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!jblob.download(key, out).isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(ChunkManifest.parse(key, out.toByteArray()));
+    }
+
+    /**
+     * Writes length bytes of the blob starting at offset, fewer if the blob ends first. The chunks are
+     * fetched ahead, chunksInFlight at a time, only the parts of the first and last that are in range.
+     */
+    private void writeChunks(ChunkManifest manifest, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        final long end = length > manifest.length() - offset ? manifest.length() : offset + length;
+        final Deque<Future<byte[]>> window = new ArrayDeque<>();
+        try {
+            long position = 0;
+            for (ChunkManifest.Chunk chunk : manifest.chunks()) {
+                final long chunkEnd = position + chunk.length;
+                if (chunkEnd > offset && position < end) {
+                    if (window.size() >= chunksInFlight) {
+                        out.write(get(window.remove()));
+                    }
+                    final long from = Math.max(offset, position) - position;
+                    final long to = Math.min(end, chunkEnd) - position;
+                    window.add(executor.submit(() -> fetch(chunk, from, to)));
+                }
+                position = chunkEnd;
+            }
+            while (!window.isEmpty()) {
+                out.write(get(window.remove()));
+            }
+        } finally {
+            window.forEach(f -> f.cancel(true));
+        }
+    }
+
+    /**
+     * A whole chunk is checked against its hash; part of one can't be, only its length is checked
+     */
+    private byte[] fetch(ChunkManifest.Chunk chunk, long from, long to) throws IOException, InterruptedException {
+        final String key = chunkKey(chunk.hash);
+        final boolean whole = from == 0 && to == chunk.length;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream((int) (to - from));
+        final Optional<JBlobMeta> meta = whole ?
+                jblob.download(key, out) :
+                jblob.download(key, from, to - from, out);
+        if (!meta.isPresent()) {
+            throw new IOException(String.format("chunk %s is missing", key));
+        }
+        if (out.size() != to - from) {
+            throw new IOException(String.format("chunk %s gave %d bytes for [%d, %d), expected %d", key, out.size(), from, to, to - from));
+        }
+        final byte[] bytes = out.toByteArray();
+        if (whole) {
+            final HashCode hash = function.hashBytes(bytes);
+            if (!hash.equals(chunk.hash)) {
+                throw new IOException(String.format("chunk %s hashes to %s", key, hash));
+            }
+        }
+        return bytes;
+    }
+
+    private String chunkKey(HashCode hash) {
+        return chunkPrefix + hash;
+    }
+
+    /**
+     * The metadata of the blob a manifest describes, or meta itself if it isn't a manifest's
+     */
+    private JBlobMeta describe(JBlobMeta meta) {
+        final Optional<Long> length = chunkedLength(meta);
+        return length.isPresent() ? describe(meta, length.get()) : meta;
+    }
+
+    private static JBlobMeta describe(JBlobMeta meta, long length) {
+        final Map<String, String> properties = new HashMap<>(meta.getProperties());
+        properties.remove(CHUNKED_LENGTH);
+        return JBlobMeta.of(length, meta.getContentType().orElse(null), properties);
+    }
+
+    private static Optional<Long> chunkedLength(JBlobMeta meta) {
+        final String length = meta.getProperties().get(CHUNKED_LENGTH);
+        try {
+            return length == null ? Optional.empty() : Optional.of(Long.parseLong(length));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public static class Builder {
+        private final JBlob jblob;
+        private HashFunction function = Hashing.sha256();
+        private JBlobKeyGenerator generator = JBlobKeyGenerator.hex("");
+        private String chunkPrefix = ".chunks/";
+        private int minChunkSize = 256 * 1024;
+        private int avgChunkSize = 1024 * 1024;
+        private int maxChunkSize = 4 * 1024 * 1024;
+        private int chunksInFlight = 8;
+        private ExecutorService executor;
+
+        private Builder(JBlob jblob) {
+            this.jblob = Preconditions.checkNotNull(jblob);
+        }
+
+        /**
+         * Hashes the chunks, and the whole content for the keys of keyless uploads
+         */
+        public Builder hashFunction(HashFunction function) {
+            this.function = Preconditions.checkNotNull(function);
+            return this;
+        }
+
+        /**
+         * Generates the keys of keyless uploads
+         */
+        public Builder keyGenerator(JBlobKeyGenerator generator) {
+            this.generator = Preconditions.checkNotNull(generator);
+            return this;
+        }
+
+        /**
+         * Where the chunks are kept in the decorated JBlob, hidden from keys()
+         */
+        public Builder chunkPrefix(String chunkPrefix) {
+            Preconditions.checkArgument(!Preconditions.checkNotNull(chunkPrefix).isEmpty(), "chunkPrefix must not be empty");
+            this.chunkPrefix = chunkPrefix;
+            return this;
+        }
+
+        /**
+         * Chunks are cut between min and max bytes, around avg; each chunk is a blob of its own, so a
+         * smaller average finds more shared content at the cost of more requests. 256KB, 1MB and 4MB by
+         * default.
+         */
+        public Builder chunkSizes(int min, int avg, int max) {
+            Preconditions.checkArgument(min > 0 && min <= avg && avg <= max, "expected 0 < min <= avg <= max");
+            this.minChunkSize = min;
+            this.avgChunkSize = avg;
+            this.maxChunkSize = max;
+            return this;
+        }
+
+        /**
+         * How many chunks are stored or fetched at once, per upload or download
+         */
+        public Builder chunksInFlight(int chunksInFlight) {
+            Preconditions.checkArgument(chunksInFlight > 0, "chunksInFlight must be positive");
+            this.chunksInFlight = chunksInFlight;
+            return this;
+        }
+
+        public Builder executor(ExecutorService executor) {
+            this.executor = Preconditions.checkNotNull(executor);
+            return this;
+        }
+
+        public JBlobChunked build() {
+            return new JBlobChunked(this);
+        }
+    }
+
+    private static class DefaultExecutor {
+        // no upload or download has more than chunksInFlight tasks here at once, so the pool needn't be bounded
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("jblob-chunked-%d")
+                .build());
+    }
+}
@@ -11,11 +11,24 @@ import java.util.Optional;
 public interface JBlobContentTyper {
     Optional<String> computeContentType(ByteSource source) throws IOException;
 
+    /**
+     * How many leading bytes computeContentType looks at, or -1 if it may need all of them. Knowing this
+     * lets a single pass ingest type the content from the bytes it has already seen.
+     */
+    default int sniffLength() {
+        return -1;
+    }
+
     static enum Null implements JBlobContentTyper {
         NULL;
         @Override
         public Optional<String> computeContentType(ByteSource source) throws IOException {
             return Optional.empty();
         }
+
+        @Override
+        public int sniffLength() {
+            return 0;
+        }
     }
 }
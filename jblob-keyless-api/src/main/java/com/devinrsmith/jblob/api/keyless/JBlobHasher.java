@@ -1,13 +1,47 @@
 package com.devinrsmith.jblob.api.keyless;
 
+import com.google.common.base.Preconditions;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
 import com.google.common.io.ByteSource;
 
 import java.io.IOException;
+import java.util.Optional;
 
 /**
  * Created by dsmith on 2/24/15.
  */
 public interface JBlobHasher {
+    static JBlobHasher of(HashFunction function) {
+        return new JBlobHasherImpl(function);
+    }
+
     HashCode computeHash(ByteSource source) throws IOException;
+
+    /**
+     * A Hasher that computes the same hash as computeHash when fed the bytes of a source in order, so the
+     * hash can be taken while the bytes go somewhere else. Empty when the hash can't be computed that way.
+     */
+    default Optional<Hasher> newHasher() {
+        return Optional.empty();
+    }
+
+    static class JBlobHasherImpl implements JBlobHasher {
+        private final HashFunction function;
+
+        private JBlobHasherImpl(HashFunction function) {
+            this.function = Preconditions.checkNotNull(function);
+        }
+
+        @Override
+        public HashCode computeHash(ByteSource source) throws IOException {
+            return source.hash(function);
+        }
+
+        @Override
+        public Optional<Hasher> newHasher() {
+            return Optional.of(function.newHasher());
+        }
+    }
 }
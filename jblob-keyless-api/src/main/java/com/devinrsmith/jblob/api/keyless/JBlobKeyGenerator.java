@@ -1,13 +1,58 @@
 package com.devinrsmith.jblob.api.keyless;
 
+import com.google.common.base.Preconditions;
 import com.google.common.hash.HashCode;
 
+import java.util.Optional;
+
 /**
  * Created by dsmith on 2/24/15.
  */
 public interface JBlobKeyGenerator {
+    /**
+     * Keys are prefix followed by the hash in lowercase hex, and can be parsed back
+     */
+    static JBlobKeyGenerator hex(String prefix) {
+        return new HexKeyGenerator(prefix);
+    }
+
     /**
      * generate a deterministic key based off of the hashCode
      */
     String generateKey(HashCode hashCode);
+
+    /**
+     * The hashCode key was generated from, or empty if it wasn't generated by this, or can't be parsed back
+     */
+    default Optional<HashCode> parseKey(String key) {
+        return Optional.empty();
+    }
+
+    static class HexKeyGenerator implements JBlobKeyGenerator {
+        private final String prefix;
+
+        private HexKeyGenerator(String prefix) {
+            this.prefix = Preconditions.checkNotNull(prefix);
+        }
+
+        @Override
+        public String generateKey(HashCode hashCode) {
+            return prefix + hashCode;
+        }
+
+        @Override
+        public Optional<HashCode> parseKey(String key) {
+            final int length = key.length() - prefix.length();
+            if (!key.startsWith(prefix) || length < 2 || length % 2 != 0) {
+                return Optional.empty();
+            }
+            for (int i = prefix.length(); i < key.length(); ++i) {
+                final char c = key.charAt(i);
+                if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.of(HashCode.fromString(key.substring(prefix.length())));
+        }
+    }
 }
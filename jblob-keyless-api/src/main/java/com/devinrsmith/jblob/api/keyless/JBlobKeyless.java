@@ -2,8 +2,13 @@ package com.devinrsmith.jblob.api.keyless;
 
 import com.devinrsmith.jblob.api.JBlob;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Map;
 
@@ -19,4 +24,26 @@ public interface JBlobKeyless extends JBlob {
     default String upload(ByteSource source) throws IOException, InterruptedException {
         return upload(source, Collections.emptyMap());
     }
+
+    /**
+     * Uploads content that can only be read once.
+     *
+     * The default implementation copies in to a temporary file and uploads that, implementations that can
+     * hash and upload in one pass should override this.
+     */
+    default String upload(InputStream in, Map<String, String> properties) throws IOException, InterruptedException {
+        final Path tmp = Files.createTempFile("jblob-upload-", null);
+        try {
+            try (final OutputStream out = Files.newOutputStream(tmp)) {
+                ByteStreams.copy(in, out);
+            }
+            return upload(com.google.common.io.Files.asByteSource(tmp.toFile()), properties);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    default String upload(InputStream in) throws IOException, InterruptedException {
+        return upload(in, Collections.emptyMap());
+    }
 }
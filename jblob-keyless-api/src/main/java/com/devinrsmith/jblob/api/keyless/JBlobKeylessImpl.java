@@ -1,56 +1,266 @@
 package com.devinrsmith.jblob.api.keyless;
 
 import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
 import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.base.Preconditions;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.net.HttpHeaders;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
 * Created by dsmith on 2/24/15.
 */
 public class JBlobKeylessImpl implements JBlobKeyless {
+    private static final String STAGING_PREFIX = ".jblob-staging/";
+
     private final JBlob jblob;
     private final JBlobHasher hasher;
     private final JBlobDeduper deduper;
     private final JBlobKeyGenerator encoder;
     private final JBlobContentTyper typer;
+    private final IngestMode mode;
+    // the uploads under way, by content, so concurrent uploads of the same content are done once
+    private final ConcurrentMap<HashCode, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
 
     public JBlobKeylessImpl(JBlob jblob, JBlobHasher hasher, JBlobDeduper deduper, JBlobKeyGenerator encoder, JBlobContentTyper typer) {
+        this(jblob, hasher, deduper, encoder, typer, IngestMode.MULTI_PASS);
+    }
+
+    /**
+     * The single pass modes need a hasher that can hash as the bytes go by, see
+     * {@link JBlobHasher#newHasher()}; with one that can't, content is spooled and read again to hash it.
+     */
+    public JBlobKeylessImpl(JBlob jblob, JBlobHasher hasher, JBlobDeduper deduper, JBlobKeyGenerator encoder, JBlobContentTyper typer, IngestMode mode) {
         this.jblob = jblob;
         this.hasher = hasher;
         this.deduper = deduper;
         this.encoder = encoder;
         this.typer = typer;
+        this.mode = Preconditions.checkNotNull(mode);
     }
 
+    /**
+     * A ByteSource can already be read again, so SPOOL reads it in place like MULTI_PASS rather than copy it
+     */
     @Override
     public String upload(ByteSource source, Map<String, String> properties) throws IOException, InterruptedException {
-        final HashCode hashCode = hasher.computeHash(source);
+        if (mode == IngestMode.STAGED) {
+            try (final InputStream in = source.openStream()) {
+                return upload(in, properties);
+            }
+        }
+        return uploadMultiPass(source, properties);
+    }
+
+    /**
+     * The content is read once, whatever the mode; MULTI_PASS spools like SPOOL
+     */
+    @Override
+    public String upload(InputStream in, Map<String, String> properties) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(properties);
+        final Optional<Hasher> streaming = hasher.newHasher();
+        final boolean typed = properties.get(HttpHeaders.CONTENT_TYPE) != null;
+        final int sniffLength = typed ? 0 : typer.sniffLength();
+        if (streaming.isPresent() && mode == IngestMode.STAGED && sniffLength >= 0) {
+            return uploadStaged(in, streaming.get(), sniffLength, properties);
+        }
+        final Path tmp = Files.createTempFile("jblob-ingest-", null);
+        try {
+            try (final OutputStream out = Files.newOutputStream(tmp)) {
+                ByteStreams.copy(streaming.isPresent() ? new HasherInputStream(in, streaming.get()) : in, out);
+            }
+            final ByteSource spool = com.google.common.io.Files.asByteSource(tmp.toFile());
+            if (!streaming.isPresent()) {
+                return uploadMultiPass(spool, properties);
+            }
+            return uploadNew(streaming.get().hash(), spool, properties);
+        } finally {
+            cleanDelete(tmp);
+        }
+    }
+
+    private String uploadMultiPass(ByteSource source, Map<String, String> properties) throws IOException, InterruptedException {
+        return uploadNew(hasher.computeHash(source), source, properties);
+    }
+
+    private String uploadNew(HashCode hashCode, ByteSource source, Map<String, String> properties) throws IOException, InterruptedException {
+        return singleFlight(hashCode, () -> uploadUnlessKnown(hashCode, source, properties));
+    }
+
+    private String uploadUnlessKnown(HashCode hashCode, ByteSource source, Map<String, String> properties) throws IOException, InterruptedException {
         final Optional<String> existingKey = deduper.findExistingKey(hashCode, source);
         if (existingKey.isPresent()) {
             return existingKey.get();
         }
 
-        if (properties.get(HttpHeaders.CONTENT_TYPE) == null) {
-            typer.computeContentType(source).ifPresent(type -> properties.put(HttpHeaders.CONTENT_TYPE, type));
-        }
+        final Map<String, String> typed = properties.get(HttpHeaders.CONTENT_TYPE) == null ?
+                withContentType(properties, typer.computeContentType(source)) :
+                properties;
 
         final String key = encoder.generateKey(hashCode);
         try (final InputStream in = source.openBufferedStream()) {
-            jblob.upload(key, in, properties);
+            jblob.upload(key, in, typed);
         }
         deduper.putNewKey(hashCode, key);
         return key;
     }
 
+    private String uploadStaged(InputStream in, Hasher streaming, int sniffLength, Map<String, String> properties) throws IOException, InterruptedException {
+        final byte[] buffer = new byte[sniffLength];
+        final byte[] head = Arrays.copyOf(buffer, ByteStreams.read(in, buffer, 0, sniffLength));
+        final Map<String, String> typed = sniffLength == 0 ?
+                properties :
+                withContentType(properties, typer.computeContentType(ByteSource.wrap(head)));
+
+        // the time in the key lets sweepStaging tell how old it is, whatever the JBlob lists
+        final String staging = STAGING_PREFIX + System.currentTimeMillis() + "-" + UUID.randomUUID();
+        try {
+            jblob.upload(staging, new HasherInputStream(new SequenceInputStream(new ByteArrayInputStream(head), in), streaming), typed);
+            final HashCode hashCode = streaming.hash();
+            return singleFlight(hashCode, () -> {
+                final Optional<String> existingKey = deduper.findExistingKey(hashCode, staged(staging));
+                if (existingKey.isPresent()) {
+                    return existingKey.get();
+                }
+                final String key = encoder.generateKey(hashCode);
+                jblob.copy(key, staging, jblob);
+                deduper.putNewKey(hashCode, key);
+                return key;
+            });
+        } finally {
+            try {
+                jblob.delete(staging);
+            } catch (IOException e) {
+                // left behind under STAGING_PREFIX, see sweepStaging
+            }
+        }
+    }
+
+    /**
+     * Deletes the staging keys STAGED uploads left behind, when they failed to delete them, that are older
+     * than maxAge, and returns how many. maxAge must be longer than any upload takes, or this deletes the
+     * staging keys of uploads under way.
+     */
+    public long sweepStaging(long maxAge, TimeUnit unit) throws IOException {
+        Preconditions.checkArgument(maxAge >= 0, "maxAge must not be negative");
+        final long before = System.currentTimeMillis() - unit.toMillis(maxAge);
+        final List<String> stale;
+        try (final Stream<String> keys = jblob.keys(STAGING_PREFIX)) {
+            stale = keys.filter(key -> stagedAt(key) < before).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        jblob.deleteAll(stale);
+        return stale.size();
+    }
+
+    private static long stagedAt(String staging) {
+        final String name = staging.substring(STAGING_PREFIX.length());
+        final int dash = name.indexOf('-');
+        try {
+            return Long.parseLong(dash < 0 ? name : name.substring(0, dash));
+        } catch (NumberFormatException e) {
+            // not one of ours, leave it be
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Runs upload unless the same content is already being uploaded through this instance, in which case
+     * this waits for that upload and returns its key. If that upload fails, the waiting callers try again
+     * themselves, as the failure may have been down to its input alone.
+     */
+    private String singleFlight(HashCode hashCode, Upload upload) throws IOException, InterruptedException {
+        while (true) {
+            final CompletableFuture<String> mine = new CompletableFuture<>();
+            final CompletableFuture<String> leader = inFlight.putIfAbsent(hashCode, mine);
+            if (leader == null) {
+                try {
+                    final String key = upload.upload();
+                    mine.complete(key);
+                    return key;
+                } catch (Throwable t) {
+                    mine.completeExceptionally(t);
+                    throw t;
+                } finally {
+                    inFlight.remove(hashCode, mine);
+                }
+            }
+            try {
+                return leader.get();
+            } catch (ExecutionException e) {
+                // go again, maybe as the leader
+            }
+        }
+    }
+
+    private interface Upload {
+        String upload() throws IOException, InterruptedException;
+    }
+
+    /**
+     * The staged content, for a deduper that wants to compare bytes
+     */
+    private ByteSource staged(String staging) {
+        return new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                final Optional<SeekableByteChannel> channel = jblob.openChannel(staging);
+                if (!channel.isPresent()) {
+                    throw new FileNotFoundException(staging);
+                }
+                return Channels.newInputStream(channel.get());
+            }
+        };
+    }
+
+    private static Map<String, String> withContentType(Map<String, String> properties, Optional<String> type) {
+        if (!type.isPresent()) {
+            return properties;
+        }
+        final Map<String, String> typed = new HashMap<>(properties);
+        typed.put(HttpHeaders.CONTENT_TYPE, type.get());
+        return typed;
+    }
+
+    private static void cleanDelete(Path tmp) {
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException | SecurityException e) {
+            // don't care about these on trying to delete
+        }
+    }
+
     @Override
     public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
         jblob.upload(key, in, properties);
@@ -61,18 +271,46 @@ public class JBlobKeylessImpl implements JBlobKeyless {
         return jblob.download(key, out);
     }
 
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        return jblob.download(key, offset, length, out);
+    }
+
     @Override
     public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
         return jblob.downloadMetadata(key);
     }
 
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        return jblob.downloadMetadata(keys);
+    }
+
     @Override
     public void delete(String key) throws IOException {
         jblob.delete(key);
     }
 
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        jblob.deleteAll(keys);
+    }
+
+    /**
+     * The keys of the blobs, not the staging keys of STAGED uploads
+     */
     @Override
     public Stream<String> keys() {
-        return jblob.keys();
+        return jblob.keys().filter(key -> !key.startsWith(STAGING_PREFIX));
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return jblob.keys(prefix).filter(key -> !key.startsWith(STAGING_PREFIX));
+    }
+
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        return jblob.entries(prefix).filter(entry -> !entry.getKey().startsWith(STAGING_PREFIX));
     }
 }
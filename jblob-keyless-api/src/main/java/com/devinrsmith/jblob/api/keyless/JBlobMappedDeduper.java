@@ -0,0 +1,529 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * A JBlobDeduper whose index lives in a memory-mapped file, so it survives restarts and costs next to no
+ * heap.
+ *
+ * The index is an open-addressing table of the hash bytes only; keys are regenerated from the hash with the
+ * JBlobKeyGenerator, so every key put must be the generated one (as JBlobKeylessImpl's are). A Bloom filter
+ * in front lets most new content skip the table. It is saved next to the file on flush and close, and only
+ * rebuilt from the table on open when the saved one is missing, or stale because the index was put to
+ * since. The table doubles when it is half full, by rewriting it next to the file and moving it over.
+ *
+ * Deleting a blob doesn't remove it from the index: after deletes, {@link #rebuild(JBlob)} from the blobs
+ * that remain. Writes reach the file through the page cache, {@link #flush()} to force them to disk.
+ */
+public class JBlobMappedDeduper implements JBlobDeduper, Closeable {
+    public static Builder builder(Path path, JBlobKeyGenerator generator) {
+        return new Builder(path, generator);
+    }
+
+    private static final long MAGIC = 0x4a426c6f62446564L;
+    private static final long BLOOM_MAGIC = 0x4a426c6f62426c6fL;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    // header layout: magic, version, hash bytes, slots, id, dirty
+    private static final int VERSION_OFFSET = 8;
+    private static final int HASH_BYTES_OFFSET = 12;
+    private static final int SLOTS_OFFSET = 16;
+    private static final int ID_OFFSET = 24;
+    private static final int DIRTY_OFFSET = 32;
+    private static final int SEGMENT_BITS = 20;
+    private static final long MIN_SLOTS = 1024;
+
+    private final Path path;
+    private final Path bloomPath;
+    private final JBlobKeyGenerator generator;
+    private final int hashBytes;
+    private final double fpp;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private Table table;
+    private BloomFilter<byte[]> bloom;
+    private long count;
+
+    private JBlobMappedDeduper(Builder builder) throws IOException {
+        this.path = builder.path;
+        this.bloomPath = path.resolveSibling(path.getFileName() + ".bloom");
+        this.generator = builder.generator;
+        this.hashBytes = builder.hashBytes;
+        this.fpp = builder.fpp;
+        this.table = Files.exists(path) && Files.size(path) > 0 ?
+                Table.open(path, hashBytes) :
+                Table.create(path, hashBytes, slotsFor(builder.expectedKeys));
+        if (table.dirty() || !loadBloom()) {
+            load(builder.expectedKeys);
+        }
+    }
+
+    @Override
+    public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) throws IOException {
+        final byte[] hash = bytes(hashCode);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            if (!bloom.mightContain(hash) || !table.occupied(table.find(hash))) {
+                return Optional.empty();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Optional.of(generator.generateKey(hashCode));
+    }
+
+    /**
+     * Throws IllegalArgumentException if key isn't the one the generator makes from hashCode, and
+     * UncheckedIOException if the table had to grow and couldn't
+     */
+    @Override
+    public void putNewKey(HashCode hashCode, String key) {
+        final byte[] hash = bytes(hashCode);
+        Preconditions.checkArgument(generator.generateKey(hashCode).equals(key), "%s wasn't generated from %s", key, hashCode);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            insert(hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * How many hashes the index holds
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the index with the hashes of jblob's keys that the generator can parse back, see
+     * {@link JBlobKeyGenerator#parseKey(String)}. Other keys are skipped.
+     */
+    public void rebuild(JBlob jblob) throws IOException {
+        Preconditions.checkNotNull(jblob);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            table.clear();
+            load(0);
+            try (final Stream<String> keys = jblob.keys()) {
+                keys.forEach(key -> generator.parseKey(key)
+                        .filter(hashCode -> hashCode.bits() == hashBytes * 8)
+                        .ifPresent(hashCode -> {
+                            try {
+                                insert(hashCode.asBytes());
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            table.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces what was put so far to disk, and saves the Bloom filter so the next open needn't rebuild it
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            table.force();
+            saveBloom();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (table != null) {
+                try {
+                    table.force();
+                    saveBloom();
+                } finally {
+                    table.close();
+                    table = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * To be called holding the write lock
+     */
+    private void insert(byte[] hash) throws IOException {
+        final long slot = table.find(hash);
+        if (table.occupied(slot)) {
+            return;
+        }
+        if (count + 1 > table.slots / 2) {
+            grow();
+            insert(hash);
+            return;
+        }
+        table.markDirty();
+        table.write(slot, hash);
+        bloom.put(hash);
+        ++count;
+    }
+
+    /**
+     * To be called holding the write lock
+     */
+    private void grow() throws IOException {
+        final Path tmp = path.resolveSibling(path.getFileName() + ".grow");
+        final Table grown = Table.create(tmp, hashBytes, table.slots * 2);
+        final BloomFilter<byte[]> grownBloom = newBloom(0, grown.slots);
+        final byte[] hash = new byte[hashBytes];
+        for (long slot = 0; slot < table.slots; ++slot) {
+            if (table.occupied(slot)) {
+                table.read(slot, hash);
+                grown.write(grown.find(hash), hash);
+                grownBloom.put(hash);
+            }
+        }
+        grown.force();
+        grown.close();
+        table.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        table = Table.open(path, hashBytes);
+        bloom = grownBloom;
+    }
+
+    /**
+     * Counts the table and fills a new Bloom filter from it
+     */
+    private void load(long expectedKeys) {
+        bloom = newBloom(expectedKeys, table.slots);
+        count = 0;
+        final byte[] hash = new byte[hashBytes];
+        for (long slot = 0; slot < table.slots; ++slot) {
+            if (table.occupied(slot)) {
+                table.read(slot, hash);
+                bloom.put(hash);
+                ++count;
+            }
+        }
+    }
+
+    /**
+     * Reads the saved Bloom filter, false if there is none for this table. To be called with the table clean.
+     */
+    private boolean loadBloom() {
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(bloomPath)))) {
+            if (in.readLong() != BLOOM_MAGIC || in.readLong() != table.id || in.readLong() != table.slots || in.readDouble() != fpp) {
+                return false;
+            }
+            final long savedCount = in.readLong();
+            bloom = BloomFilter.readFrom(in, Funnels.byteArrayFunnel());
+            count = savedCount;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // missing or unreadable, rebuild it
+            return false;
+        }
+    }
+
+    /**
+     * Saves the Bloom filter and marks the table clean, so the next open can read the filter back. To be
+     * called holding the write lock, after forcing the table.
+     */
+    private void saveBloom() throws IOException {
+        if (!table.dirty()) {
+            return;
+        }
+        final Path tmp = bloomPath.resolveSibling(bloomPath.getFileName() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(BLOOM_MAGIC);
+            out.writeLong(table.id);
+            out.writeLong(table.slots);
+            out.writeDouble(fpp);
+            out.writeLong(count);
+            bloom.writeTo(out);
+        }
+        Files.move(tmp, bloomPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        table.markClean();
+    }
+
+    /**
+     * Sized for the table when it is half full
+     */
+    private BloomFilter<byte[]> newBloom(long expectedKeys, long slots) {
+        return BloomFilter.create(Funnels.byteArrayFunnel(), (int) Math.min(Integer.MAX_VALUE, Math.max(expectedKeys, slots / 2)), fpp);
+    }
+
+    private byte[] bytes(HashCode hashCode) {
+        Preconditions.checkNotNull(hashCode);
+        Preconditions.checkArgument(hashCode.bits() == hashBytes * 8, "expected a hash of %s bytes", hashBytes);
+        return hashCode.asBytes();
+    }
+
+    private void checkOpen() {
+        Preconditions.checkState(table != null, "closed");
+    }
+
+    private static long slotsFor(long expectedKeys) {
+        return Math.max(MIN_SLOTS, Long.highestOneBit(Math.max(1, expectedKeys * 2 - 1)) << 1);
+    }
+
+    /**
+     * The mapped file: a header, then slots of a used flag followed by the hash bytes, split into mappings of
+     * 2^SEGMENT_BITS slots each since a single mapping is limited to 2GB
+     */
+    private static class Table {
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private final MappedByteBuffer[] segments;
+        private final int hashBytes;
+        private final int slotSize;
+        private final long slots;
+        private final long id;
+        private boolean dirty;
+
+        static Table create(Path path, int hashBytes, long slots) throws IOException {
+            final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                header.putLong(0, MAGIC);
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(HASH_BYTES_OFFSET, hashBytes);
+                header.putLong(SLOTS_OFFSET, slots);
+                header.putLong(ID_OFFSET, ThreadLocalRandom.current().nextLong());
+                // no Bloom filter has been saved for it yet
+                header.putInt(DIRTY_OFFSET, 1);
+                header.force();
+                return new Table(channel, header, hashBytes, slots);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        static Table open(Path path, int hashBytes) throws IOException {
+            final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (channel.size() < HEADER_SIZE) {
+                    throw new IOException(String.format("%s is not a dedup index", path));
+                }
+                final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                if (header.getLong(0) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                    throw new IOException(String.format("%s is not a dedup index", path));
+                }
+                if (header.getInt(HASH_BYTES_OFFSET) != hashBytes) {
+                    throw new IOException(String.format("%s holds hashes of %d bytes, not %d", path, header.getInt(HASH_BYTES_OFFSET), hashBytes));
+                }
+                final long slots = header.getLong(SLOTS_OFFSET);
+                if (Long.bitCount(slots) != 1 || channel.size() < HEADER_SIZE + slots * (1 + hashBytes)) {
+                    throw new IOException(String.format("%s is truncated", path));
+                }
+                return new Table(channel, header, hashBytes, slots);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private Table(FileChannel channel, MappedByteBuffer header, int hashBytes, long slots) throws IOException {
+            this.channel = channel;
+            this.header = header;
+            this.hashBytes = hashBytes;
+            this.slotSize = 1 + hashBytes;
+            this.slots = slots;
+            this.id = header.getLong(ID_OFFSET);
+            this.dirty = header.getInt(DIRTY_OFFSET) != 0;
+            final long segmentSlots = Math.min(slots, 1L << SEGMENT_BITS);
+            this.segments = new MappedByteBuffer[(int) (slots / segmentSlots)];
+            for (int i = 0; i < segments.length; ++i) {
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * segmentSlots * slotSize, segmentSlots * slotSize);
+            }
+        }
+
+        /**
+         * The slot holding hash, or else the empty slot where it belongs. Linear probing from the hash's
+         * leading bytes, which are as good as random.
+         */
+        long find(byte[] hash) {
+            long start = 0;
+            for (int i = 0; i < Math.min(8, hash.length); ++i) {
+                start = (start << 8) | (hash[i] & 0xff);
+            }
+            final long mask = slots - 1;
+            for (long slot = start & mask; ; slot = (slot + 1) & mask) {
+                if (!occupied(slot) || matches(slot, hash)) {
+                    return slot;
+                }
+            }
+        }
+
+        boolean occupied(long slot) {
+            return segment(slot).get(offset(slot)) != 0;
+        }
+
+        void read(long slot, byte[] hash) {
+            final MappedByteBuffer segment = segment(slot);
+            final int offset = offset(slot) + 1;
+            for (int i = 0; i < hashBytes; ++i) {
+                hash[i] = segment.get(offset + i);
+            }
+        }
+
+        /**
+         * The hash bytes go in before the used flag, so a reader never sees a half written slot as used
+         */
+        void write(long slot, byte[] hash) {
+            final MappedByteBuffer segment = segment(slot);
+            final int offset = offset(slot);
+            for (int i = 0; i < hashBytes; ++i) {
+                segment.put(offset + 1 + i, hash[i]);
+            }
+            segment.put(offset, (byte) 1);
+        }
+
+        boolean dirty() {
+            return dirty;
+        }
+
+        /**
+         * Flags the table as changed since the Bloom filter was last saved, on disk before the change is made
+         */
+        void markDirty() {
+            if (!dirty) {
+                header.putInt(DIRTY_OFFSET, 1);
+                header.force();
+                dirty = true;
+            }
+        }
+
+        void markClean() {
+            header.putInt(DIRTY_OFFSET, 0);
+            header.force();
+            dirty = false;
+        }
+
+        void clear() {
+            markDirty();
+            for (long slot = 0; slot < slots; ++slot) {
+                segment(slot).put(offset(slot), (byte) 0);
+            }
+        }
+
+        void force() {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        private boolean matches(long slot, byte[] hash) {
+            final MappedByteBuffer segment = segment(slot);
+            final int offset = offset(slot) + 1;
+            for (int i = 0; i < hashBytes; ++i) {
+                if (segment.get(offset + i) != hash[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private MappedByteBuffer segment(long slot) {
+            return segments[(int) (slot >>> SEGMENT_BITS)];
+        }
+
+        private int offset(long slot) {
+            return (int) (slot & ((1L << SEGMENT_BITS) - 1)) * slotSize;
+        }
+    }
+
+    public static class Builder {
+        private final Path path;
+        private final JBlobKeyGenerator generator;
+        private int hashBytes = 32;
+        private long expectedKeys = 100000;
+        private double fpp = 0.01;
+
+        private Builder(Path path, JBlobKeyGenerator generator) {
+            this.path = Preconditions.checkNotNull(path);
+            this.generator = Preconditions.checkNotNull(generator);
+        }
+
+        /**
+         * The length of the hashes, 32 (SHA-256) by default
+         */
+        public Builder hashBytes(int hashBytes) {
+            Preconditions.checkArgument(hashBytes >= 8, "hashBytes must be at least 8");
+            this.hashBytes = hashBytes;
+            return this;
+        }
+
+        /**
+         * Sizes a new table and the Bloom filter, so they don't have to grow on the way there
+         */
+        public Builder expectedKeys(long expectedKeys) {
+            Preconditions.checkArgument(expectedKeys > 0, "expectedKeys must be positive");
+            this.expectedKeys = expectedKeys;
+            return this;
+        }
+
+        /**
+         * The Bloom filter's false positive probability, the share of new content that still looks in the table
+         */
+        public Builder fpp(double fpp) {
+            Preconditions.checkArgument(fpp > 0 && fpp < 1, "fpp must be between 0 and 1");
+            this.fpp = fpp;
+            return this;
+        }
+
+        /**
+         * Opens the index at path, or creates it if there is none
+         */
+        public JBlobMappedDeduper build() throws IOException {
+            return new JBlobMappedDeduper(this);
+        }
+    }
+}
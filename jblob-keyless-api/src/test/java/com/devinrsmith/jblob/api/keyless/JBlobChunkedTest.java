@@ -0,0 +1,140 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.net.HttpHeaders;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class JBlobChunkedTest extends TestCase {
+    private JBlob jblob;
+    private JBlobChunked chunked;
+
+    @Override
+    protected void setUp() {
+        jblob = new JBlobMemory();
+        chunked = JBlobChunked.builder(jblob)
+                .chunkSizes(1024, 4096, 16384)
+                .chunksInFlight(3)
+                .build();
+    }
+
+    public void testRoundTrip() throws Exception {
+        for (int size : new int[] { 0, 1, 1023, 4096, 100000, 300001 }) {
+            final byte[] bytes = random(size, size);
+            final String key = chunked.upload(ByteSource.wrap(bytes), Collections.singletonMap(HttpHeaders.CONTENT_TYPE, "image/png"));
+            assertEquals(Hashing.sha256().hashBytes(bytes).toString(), key);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final JBlobMeta meta = chunked.download(key, out).get();
+            assertTrue(Arrays.equals(bytes, out.toByteArray()));
+            assertEquals(size, meta.getContentLength());
+            assertEquals(Optional.of("image/png"), meta.getContentType());
+            assertFalse(meta.getProperties().containsKey(JBlobChunked.CHUNKED_LENGTH));
+            assertEquals(size, chunked.downloadMetadata(key).get().getContentLength());
+        }
+        assertEquals(6, chunked.keys().count());
+        assertFalse(chunked.download("missing", new ByteArrayOutputStream()).isPresent());
+    }
+
+    public void testRanges() throws Exception {
+        final byte[] bytes = random(100000, 1);
+        chunked.upload("key", new ByteArrayInputStream(bytes));
+        final long[][] ranges = { { 0, 10 }, { 5000, 20000 }, { 99990, 100 }, { 100000, 5 }, { 0, Long.MAX_VALUE }, { 40000, 0 } };
+        for (long[] range : ranges) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(100000, chunked.download("key", range[0], range[1], out).get().getContentLength());
+            final int from = (int) Math.min(range[0], bytes.length);
+            final int to = (int) Math.min(bytes.length, range[0] + Math.min(range[1], bytes.length));
+            assertTrue(Arrays.toString(range), Arrays.equals(Arrays.copyOfRange(bytes, from, to), out.toByteArray()));
+        }
+    }
+
+    public void testEditSharesChunks() throws Exception {
+        final byte[] original = random(400000, 2);
+        chunked.upload(ByteSource.wrap(original));
+        final long chunks = chunkCount();
+
+        final byte[] edited = Arrays.copyOf(original, original.length + 3);
+        System.arraycopy(original, 200000, edited, 200003, original.length - 200000);
+        edited[200000] = 1;
+        edited[200001] = 2;
+        edited[200002] = 3;
+        final String key = chunked.upload(ByteSource.wrap(edited));
+        // only the chunks around the insertion are new
+        assertTrue(chunkCount() - chunks <= 3);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chunked.download(key, out);
+        assertTrue(Arrays.equals(edited, out.toByteArray()));
+
+        assertEquals(key, chunked.upload(ByteSource.wrap(edited)));
+        assertEquals(2, chunked.keys().count());
+    }
+
+    public void testSweep() throws Exception {
+        final String a = chunked.upload(ByteSource.wrap(random(50000, 3)));
+        final String b = chunked.upload(ByteSource.wrap(random(50000, 4)));
+        final long chunks = chunkCount();
+        assertEquals(0, chunked.sweep());
+        chunked.delete(a);
+        assertTrue(chunked.sweep() > 0);
+        assertTrue(chunkCount() < chunks);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chunked.download(b, out);
+        assertTrue(Arrays.equals(random(50000, 4), out.toByteArray()));
+    }
+
+    public void testCorruptChunksAreCaught() throws Exception {
+        final String key = chunked.upload(ByteSource.wrap(random(50000, 5)));
+        final String chunk = jblob.keys(".chunks/").findFirst().get();
+        final ByteArrayOutputStream original = new ByteArrayOutputStream();
+        jblob.download(chunk, original);
+
+        final byte[] flipped = original.toByteArray();
+        flipped[0] ^= 1;
+        jblob.upload(chunk, new ByteArrayInputStream(flipped));
+        try {
+            chunked.download(key, new ByteArrayOutputStream());
+            fail("Expected the corrupt chunk to be caught");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("hashes to"));
+        }
+
+        jblob.upload(chunk, new ByteArrayInputStream(Arrays.copyOf(flipped, flipped.length - 1)));
+        try {
+            chunked.download(key, new ByteArrayOutputStream());
+            fail("Expected the short chunk to be caught");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(String.format("gave %d bytes", flipped.length - 1)));
+        }
+    }
+
+    public void testPlainBlobsPassThrough() throws Exception {
+        jblob.upload("plain", new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, chunked.download("plain", out).get().getContentLength());
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, out.toByteArray()));
+        assertEquals(Collections.singletonList("plain"), chunked.keys().collect(Collectors.toList()));
+    }
+
+    private long chunkCount() {
+        return jblob.keys(".chunks/").count();
+    }
+
+    private static byte[] random(int size, long seed) {
+        final byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,342 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.net.HttpHeaders;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JBlobKeylessImplTest extends TestCase {
+    private static final byte[] PNG = new byte[] { (byte) 0x89, 'P', 'N', 'G' };
+
+    private JBlob jblob;
+    private AtomicInteger typerReads;
+
+    @Override
+    protected void setUp() {
+        jblob = new JBlobMemory();
+        typerReads = new AtomicInteger();
+    }
+
+    public void testMultiPass() throws Exception {
+        final CountingSource source = new CountingSource(content(100000));
+        final String key = keyless(IngestMode.MULTI_PASS).upload(source, new HashMap<>());
+        // hashed, typed and uploaded
+        assertEquals(3, source.opens.get());
+        assertContent(key, source.bytes, "image/png");
+    }
+
+    public void testSpoolReadsSourceInPlace() throws Exception {
+        final CountingSource source = new CountingSource(content(100000));
+        final String key = keyless(IngestMode.SPOOL).upload(source, new HashMap<>());
+        // hashed, typed and uploaded, with no copy in between
+        assertEquals(3, source.opens.get());
+        assertEquals(Hashing.sha256().hashBytes(source.bytes).toString(), key);
+        assertContent(key, source.bytes, "image/png");
+    }
+
+    public void testStagedReadsOnce() throws Exception {
+        assertReadsOnce(IngestMode.STAGED);
+        assertEquals(1, jblob.keys().count());
+    }
+
+    public void testStagingKeysAreHiddenAndSwept() throws Exception {
+        final long hourAgo = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        final String stale = ".jblob-staging/" + hourAgo + "-stale";
+        final String recent = ".jblob-staging/" + System.currentTimeMillis() + "-recent";
+        for (String staging : Arrays.asList(stale, recent)) {
+            jblob.upload(staging, new ByteArrayInputStream(content(10)), Collections.emptyMap());
+        }
+        final JBlobKeylessImpl keyless = (JBlobKeylessImpl) keyless(IngestMode.STAGED);
+        final String key = keyless.upload(ByteSource.wrap(content(100)));
+
+        assertEquals(Collections.singletonList(key), keyless.keys().collect(Collectors.toList()));
+        assertEquals(0, keyless.keys(".jblob-staging/").count());
+        assertEquals(Collections.singletonList(key), keyless.entries("").map(JBlobEntry::getKey).collect(Collectors.toList()));
+
+        assertEquals(1, keyless.sweepStaging(1, TimeUnit.MINUTES));
+        assertFalse(jblob.downloadMetadata(stale).isPresent());
+        assertTrue(jblob.downloadMetadata(recent).isPresent());
+    }
+
+    public void testStagedFallsBackWithoutSniffLength() throws Exception {
+        final JBlobContentTyper whole = source -> Optional.of("application/octet-stream");
+        final JBlobKeyless keyless = new JBlobKeylessImpl(jblob, JBlobHasher.of(Hashing.sha256()), new MapDeduper(), HashCode::toString, whole, IngestMode.STAGED);
+        final CountingSource source = new CountingSource(content(1000));
+        final String key = keyless.upload(source);
+        assertEquals(1, source.opens.get());
+        assertContent(key, source.bytes, "application/octet-stream");
+    }
+
+    public void testUploadInputStream() throws Exception {
+        final byte[] bytes = content(70000);
+        for (IngestMode mode : IngestMode.values()) {
+            setUp();
+            final JBlobKeyless keyless = keyless(mode);
+            final String key = keyless.upload(new ByteArrayInputStream(bytes));
+            assertEquals(mode.name(), Hashing.sha256().hashBytes(bytes).toString(), key);
+            assertEquals(key, keyless.upload(new ByteArrayInputStream(bytes)));
+            assertContent(key, bytes, "image/png");
+            assertEquals(Collections.singletonList(key), jblob.keys().collect(Collectors.toList()));
+        }
+    }
+
+    public void testGivenContentTypeIsKept() throws Exception {
+        for (IngestMode mode : IngestMode.values()) {
+            setUp();
+            final Map<String, String> properties = Collections.singletonMap(HttpHeaders.CONTENT_TYPE, "text/plain");
+            final String key = keyless(mode).upload(ByteSource.wrap(content(10)), properties);
+            assertContent(key, content(10), "text/plain");
+            assertEquals(0, typerReads.get());
+        }
+    }
+
+    public void testHasherWithoutStreaming() throws Exception {
+        final JBlobHasher hasher = source -> source.hash(Hashing.sha256());
+        final JBlobKeyless keyless = new JBlobKeylessImpl(jblob, hasher, new MapDeduper(), HashCode::toString, typer(), IngestMode.STAGED);
+        final byte[] bytes = content(5000);
+        final String key = keyless.upload(new ByteArrayInputStream(bytes));
+        assertEquals(Hashing.sha256().hashBytes(bytes).toString(), key);
+        assertContent(key, bytes, "image/png");
+    }
+
+    public void testHasherInputStreamSkip() throws Exception {
+        final byte[] bytes = content(100);
+        final Hasher hasher = Hashing.sha256().newHasher();
+        try (InputStream in = new HasherInputStream(new ByteArrayInputStream(bytes), hasher)) {
+            assertEquals(0, in.skip(-1));
+            assertEquals(0, in.skip(0));
+            assertEquals(40, in.skip(40));
+            assertEquals(60, in.skip(1000));
+            assertEquals(0, in.skip(1));
+        }
+        assertEquals(Hashing.sha256().hashBytes(bytes), hasher.hash());
+    }
+
+    public void testConcurrentUploadsCoalesce() throws Exception {
+        for (IngestMode mode : IngestMode.values()) {
+            final GatedBlob gated = new GatedBlob(new JBlobMemory(), 0);
+            final AtomicInteger hashes = new AtomicInteger();
+            final JBlobHasher hasher = new JBlobHasher() {
+                @Override
+                public HashCode computeHash(ByteSource source) throws IOException {
+                    hashes.incrementAndGet();
+                    return source.hash(Hashing.sha256());
+                }
+
+                @Override
+                public Optional<Hasher> newHasher() {
+                    hashes.incrementAndGet();
+                    return Optional.of(Hashing.sha256().newHasher());
+                }
+            };
+            final JBlobKeyless keyless = new JBlobKeylessImpl(gated, hasher, new MapDeduper(), HashCode::toString, typer(), mode);
+            final ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                final List<Future<String>> keys = new ArrayList<>();
+                for (int i = 0; i < 8; ++i) {
+                    keys.add(executor.submit(() -> keyless.upload(ByteSource.wrap(content(1000)), new HashMap<>())));
+                }
+                while (hashes.get() < 8) {
+                    Thread.sleep(1);
+                }
+                Thread.sleep(50);
+                gated.release.countDown();
+                for (Future<String> key : keys) {
+                    assertEquals(mode.name(), keys.get(0).get(), key.get());
+                }
+                assertEquals(mode.name(), 1, gated.uploads.get());
+                assertEquals(mode.name(), 1, gated.jblob.keys().count());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    public void testFailedUploadIsRetriedByWaiters() throws Exception {
+        final GatedBlob gated = new GatedBlob(new JBlobMemory(), 1);
+        final JBlobKeyless keyless = new JBlobKeylessImpl(gated, JBlobHasher.of(Hashing.sha256()), new MapDeduper(), HashCode::toString, typer());
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> first = executor.submit(() -> keyless.upload(ByteSource.wrap(content(1000)), new HashMap<>()));
+            final Future<String> second = executor.submit(() -> keyless.upload(ByteSource.wrap(content(1000)), new HashMap<>()));
+            Thread.sleep(50);
+            gated.release.countDown();
+            final List<String> keys = new ArrayList<>();
+            for (Future<String> future : Arrays.asList(first, second)) {
+                try {
+                    keys.add(future.get());
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IOException);
+                }
+            }
+            assertEquals(1, keys.size());
+            assertEquals(Hashing.sha256().hashBytes(content(1000)).toString(), keys.get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertReadsOnce(IngestMode mode) throws Exception {
+        final JBlobKeyless keyless = keyless(mode);
+        final CountingSource source = new CountingSource(content(100000));
+        final String key = keyless.upload(source, new HashMap<>());
+        assertEquals(1, source.opens.get());
+        assertEquals(Hashing.sha256().hashBytes(source.bytes).toString(), key);
+        assertContent(key, source.bytes, "image/png");
+
+        final CountingSource again = new CountingSource(source.bytes);
+        assertEquals(key, keyless.upload(again, new HashMap<>()));
+        assertEquals(1, again.opens.get());
+    }
+
+    private void assertContent(String key, byte[] bytes, String type) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(Optional.of(type), jblob.download(key, out).get().getProperties().entrySet().stream()
+                .filter(e -> e.getKey().equalsIgnoreCase(HttpHeaders.CONTENT_TYPE))
+                .map(Map.Entry::getValue)
+                .findFirst());
+        assertTrue(Arrays.equals(bytes, out.toByteArray()));
+    }
+
+    private JBlobKeyless keyless(IngestMode mode) {
+        return new JBlobKeylessImpl(jblob, JBlobHasher.of(Hashing.sha256()), new MapDeduper(), HashCode::toString, typer(), mode);
+    }
+
+    /**
+     * Recognizes PNG from its first 4 bytes
+     */
+    private JBlobContentTyper typer() {
+        return new JBlobContentTyper() {
+            @Override
+            public Optional<String> computeContentType(ByteSource source) throws IOException {
+                typerReads.incrementAndGet();
+                return Arrays.equals(PNG, source.slice(0, PNG.length).read()) ? Optional.of("image/png") : Optional.empty();
+            }
+
+            @Override
+            public int sniffLength() {
+                return PNG.length;
+            }
+        };
+    }
+
+    private static byte[] content(int size) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            bytes[i] = (byte) (i * 31);
+        }
+        System.arraycopy(PNG, 0, bytes, 0, Math.min(size, PNG.length));
+        return bytes;
+    }
+
+    /**
+     * Holds uploads until released, failing the first few. Counts the uploads under final keys; STAGED
+     * uploads every copy to a staging key before it knows the hash, and copies the first to its final key.
+     */
+    private static class GatedBlob implements JBlob {
+        private final JBlob jblob;
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger uploads = new AtomicInteger();
+        private final AtomicInteger failures;
+
+        private GatedBlob(JBlob jblob, int failures) {
+            this.jblob = jblob;
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+            release.await();
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("failed");
+            }
+            if (!key.startsWith(".jblob-staging/")) {
+                uploads.incrementAndGet();
+            }
+            jblob.upload(key, in, properties);
+        }
+
+        @Override
+        public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+            return jblob.download(key, out);
+        }
+
+        @Override
+        public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+            return jblob.download(key, offset, length, out);
+        }
+
+        @Override
+        public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+            return jblob.downloadMetadata(key);
+        }
+
+        @Override
+        public void delete(String key) throws IOException {
+            jblob.delete(key);
+        }
+
+        @Override
+        public Stream<String> keys() {
+            return jblob.keys();
+        }
+    }
+
+    private static class CountingSource extends ByteSource {
+        private final byte[] bytes;
+        private final AtomicInteger opens = new AtomicInteger();
+
+        private CountingSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream openStream() {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private static class MapDeduper implements JBlobDeduper {
+        private final Map<HashCode, String> keys = new ConcurrentHashMap<>();
+
+        @Override
+        public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) {
+            return Optional.ofNullable(keys.get(hashCode));
+        }
+
+        @Override
+        public void putNewKey(HashCode hashCode, String key) {
+            keys.put(hashCode, key);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.devinrsmith.jblob.api.keyless;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public class JBlobMappedDeduperTest extends TestCase {
+    private static final HashFunction SHA256 = Hashing.sha256();
+    private static final JBlobKeyGenerator GENERATOR = JBlobKeyGenerator.hex("blobs/");
+
+    private Path dir;
+    private Path path;
+    private Path bloom;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = Files.createTempDirectory("jblob-dedup-test-");
+        path = dir.resolve("index");
+        bloom = dir.resolve("index.bloom");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(bloom);
+        Files.deleteIfExists(dir);
+    }
+
+    public void testPutAndFind() throws IOException {
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            final HashCode hash = hash(1);
+            assertEquals(Optional.empty(), deduper.findExistingKey(hash, ByteSource.empty()));
+            deduper.putNewKey(hash, GENERATOR.generateKey(hash));
+            deduper.putNewKey(hash, GENERATOR.generateKey(hash));
+            assertEquals(Optional.of(GENERATOR.generateKey(hash)), deduper.findExistingKey(hash, ByteSource.empty()));
+            assertEquals(1, deduper.size());
+            try {
+                deduper.putNewKey(hash, "other");
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                deduper.findExistingKey(Hashing.md5().hashInt(1), ByteSource.empty());
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testGrowsAndPersists() throws IOException {
+        final int n = 5000;
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).expectedKeys(10).build()) {
+            for (int i = 0; i < n; ++i) {
+                deduper.putNewKey(hash(i), GENERATOR.generateKey(hash(i)));
+            }
+            assertEquals(n, deduper.size());
+        }
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            assertEquals(n, deduper.size());
+            for (int i = 0; i < n; ++i) {
+                assertTrue(deduper.findExistingKey(hash(i), ByteSource.empty()).isPresent());
+            }
+            for (int i = n; i < 2 * n; ++i) {
+                assertFalse(deduper.findExistingKey(hash(i), ByteSource.empty()).isPresent());
+            }
+        }
+    }
+
+    public void testSavesBloomFilter() throws IOException {
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            for (int i = 0; i < 100; ++i) {
+                deduper.putNewKey(hash(i), GENERATOR.generateKey(hash(i)));
+            }
+            deduper.flush();
+            assertTrue(Files.exists(bloom));
+            deduper.putNewKey(hash(100), GENERATOR.generateKey(hash(100)));
+        }
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            assertEquals(101, deduper.size());
+            for (int i = 0; i <= 100; ++i) {
+                assertTrue(deduper.findExistingKey(hash(i), ByteSource.empty()).isPresent());
+            }
+            assertFalse(deduper.findExistingKey(hash(101), ByteSource.empty()).isPresent());
+        }
+    }
+
+    public void testRebuildsStaleBloomFilter() throws IOException {
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            deduper.putNewKey(hash(1), GENERATOR.generateKey(hash(1)));
+        }
+        // put to, but never flushed or closed, as if the process died
+        final JBlobMappedDeduper crashed = JBlobMappedDeduper.builder(path, GENERATOR).build();
+        try {
+            crashed.putNewKey(hash(2), GENERATOR.generateKey(hash(2)));
+            try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+                assertEquals(2, deduper.size());
+                assertTrue(deduper.findExistingKey(hash(1), ByteSource.empty()).isPresent());
+                assertTrue(deduper.findExistingKey(hash(2), ByteSource.empty()).isPresent());
+            }
+        } finally {
+            crashed.close();
+        }
+    }
+
+    public void testRebuildsUnreadableBloomFilter() throws IOException {
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            deduper.putNewKey(hash(1), GENERATOR.generateKey(hash(1)));
+        }
+        Files.write(bloom, new byte[] { 1, 2, 3 });
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            assertEquals(1, deduper.size());
+            assertTrue(deduper.findExistingKey(hash(1), ByteSource.empty()).isPresent());
+        }
+    }
+
+    public void testRejectsOtherIndex() throws IOException {
+        JBlobMappedDeduper.builder(path, GENERATOR).build().close();
+        try {
+            JBlobMappedDeduper.builder(path, GENERATOR).hashBytes(16).build();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testRebuild() throws Exception {
+        final JBlob jblob = new JBlobMemory();
+        for (int i = 0; i < 100; ++i) {
+            jblob.upload(GENERATOR.generateKey(hash(i)), new ByteArrayInputStream(new byte[1]));
+        }
+        jblob.upload("unrelated", new ByteArrayInputStream(new byte[1]));
+        jblob.upload("blobs/not-hex", new ByteArrayInputStream(new byte[1]));
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            deduper.putNewKey(hash(1000), GENERATOR.generateKey(hash(1000)));
+            deduper.rebuild(jblob);
+            assertEquals(100, deduper.size());
+            assertTrue(deduper.findExistingKey(hash(50), ByteSource.empty()).isPresent());
+            assertFalse(deduper.findExistingKey(hash(1000), ByteSource.empty()).isPresent());
+        }
+    }
+
+    public void testKeyless() throws Exception {
+        final JBlob jblob = new JBlobMemory();
+        try (final JBlobMappedDeduper deduper = JBlobMappedDeduper.builder(path, GENERATOR).build()) {
+            final JBlobKeyless keyless = new JBlobKeylessImpl(jblob, JBlobHasher.of(SHA256), deduper, GENERATOR, JBlobContentTyper.Null.NULL);
+            final String key = keyless.upload(ByteSource.wrap(new byte[] { 1, 2, 3 }));
+            assertEquals(Optional.of(SHA256.hashBytes(new byte[] { 1, 2, 3 })), GENERATOR.parseKey(key));
+            assertEquals(key, keyless.upload(ByteSource.wrap(new byte[] { 1, 2, 3 })));
+            assertEquals(1, deduper.size());
+        }
+    }
+
+    private static HashCode hash(int i) {
+        return SHA256.hashInt(i);
+    }
+}
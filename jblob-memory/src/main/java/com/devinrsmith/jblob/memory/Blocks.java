@@ -0,0 +1,154 @@
+package com.devinrsmith.jblob.memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed size blocks carved out of direct ByteBuffer slabs, named by int ids.
+ *
+ * Free blocks sit on striped free lists so concurrent writers rarely contend; a writer whose stripe is empty
+ * takes from the others, and only allocates a new slab when every stripe is empty. The number of blocks in
+ * use is reserved up front against the capacity, so an allocation either fails immediately or is
+ * guaranteed to find a block.
+ */
+class Blocks {
+    private final int blockSize;
+    private final int blocksPerSlab;
+    private final long capacityBlocks;
+    private final AtomicReferenceArray<ByteBuffer> slabs;
+    private final FreeList[] stripes;
+    private final AtomicLong used = new AtomicLong();
+
+    private final Object growLock = new Object();
+    // guarded by growLock
+    private int nextSlab;
+
+    Blocks(MemoryOptions options) {
+        this.blockSize = options.getBlockSize();
+        this.blocksPerSlab = options.getSlabSize() / blockSize;
+        final long slabCount = (options.getCapacity() + options.getSlabSize() - 1) / options.getSlabSize();
+        if (slabCount * blocksPerSlab > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity is too large for blockSize");
+        }
+        this.capacityBlocks = slabCount * blocksPerSlab;
+        this.slabs = new AtomicReferenceArray<>((int) slabCount);
+        this.stripes = new FreeList[options.getStripes()];
+        for (int i = 0; i < stripes.length; ++i) {
+            stripes[i] = new FreeList();
+        }
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    long capacity() {
+        return capacityBlocks * blockSize;
+    }
+
+    long used() {
+        return used.get() * blockSize;
+    }
+
+    int allocate() throws IOException {
+        long u;
+        do {
+            u = used.get();
+            if (u >= capacityBlocks) {
+                throw new IOException(String.format("Out of memory blocks, capacity is %d bytes", capacity()));
+            }
+        } while (!used.compareAndSet(u, u + 1));
+
+        try {
+            final int home = stripe();
+            while (true) {
+                for (int i = 0; i < stripes.length; ++i) {
+                    final int id = stripes[(home + i) % stripes.length].pop();
+                    if (id >= 0) {
+                        return id;
+                    }
+                }
+                if (!grow(stripes[home])) {
+                    // every slab is allocated, so the block we reserved is on its way back to a free list
+                    Thread.yield();
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            used.decrementAndGet();
+            throw new IOException("Unable to allocate a slab, is -XX:MaxDirectMemorySize large enough?", e);
+        }
+    }
+
+    void free(int[] ids) {
+        if (ids.length == 0) {
+            return;
+        }
+        stripes[stripe()].pushAll(ids);
+        used.addAndGet(-ids.length);
+    }
+
+    void write(int id, int offset, byte[] src, int off, int len) {
+        final ByteBuffer slab = slab(id);
+        slab.position((id % blocksPerSlab) * blockSize + offset);
+        slab.put(src, off, len);
+    }
+
+    void read(int id, int offset, byte[] dst, int off, int len) {
+        final ByteBuffer slab = slab(id);
+        slab.position((id % blocksPerSlab) * blockSize + offset);
+        slab.get(dst, off, len);
+    }
+
+    // a duplicate, so every caller has its own position
+    private ByteBuffer slab(int id) {
+        return slabs.get(id / blocksPerSlab).duplicate();
+    }
+
+    private boolean grow(FreeList into) {
+        synchronized (growLock) {
+            if (nextSlab == slabs.length()) {
+                return false;
+            }
+            slabs.set(nextSlab, ByteBuffer.allocateDirect(blocksPerSlab * blockSize));
+            into.pushRange(nextSlab * blocksPerSlab, blocksPerSlab);
+            ++nextSlab;
+            return true;
+        }
+    }
+
+    private int stripe() {
+        return (int) (Thread.currentThread().getId() % stripes.length);
+    }
+
+    private static class FreeList {
+        private int[] ids = new int[64];
+        private int size;
+
+        synchronized int pop() {
+            return size == 0 ? -1 : ids[--size];
+        }
+
+        synchronized void pushAll(int[] more) {
+            ensure(more.length);
+            System.arraycopy(more, 0, ids, size, more.length);
+            size += more.length;
+        }
+
+        synchronized void pushRange(int first, int count) {
+            ensure(count);
+            // pushed in reverse so the lowest ids are handed out first
+            for (int id = first + count - 1; id >= first; --id) {
+                ids[size++] = id;
+            }
+        }
+
+        private void ensure(int more) {
+            if (size + more > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + more, ids.length * 2));
+            }
+        }
+    }
+}
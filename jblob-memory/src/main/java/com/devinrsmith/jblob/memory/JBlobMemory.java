@@ -0,0 +1,236 @@
+package com.devinrsmith.jblob.memory;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * An in-process JBlob whose bytes live off-heap, so holding many blobs doesn't cost garbage collection time.
+ *
+ * Blob bytes are stored in fixed size blocks of direct ByteBuffer slabs (see {@link MemoryOptions}); the
+ * index maps each key to the ids of its blocks. There is no global lock: the index is a ConcurrentHashMap,
+ * and blocks come from striped free lists. Each blob is reference counted, so a reader in the middle of a
+ * download keeps its blocks from being reused when the key is overwritten or deleted.
+ *
+ * Uploads that would exceed the capacity fail with an IOException.
+ */
+public class JBlobMemory implements JBlob {
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Blocks blocks;
+    private final ConcurrentHashMap<String, Blob> index = new ConcurrentHashMap<>();
+
+    public JBlobMemory() {
+        this(MemoryOptions.defaults());
+    }
+
+    public JBlobMemory(MemoryOptions options) {
+        this.blocks = new Blocks(Preconditions.checkNotNull(options));
+    }
+
+    /**
+     * The bytes held by blobs, counted in whole blocks
+     */
+    public long getUsed() {
+        return blocks.used();
+    }
+
+    public long getCapacity() {
+        return blocks.capacity();
+    }
+
+    /**
+     * The bytes a blob of length bytes occupies, counted in whole blocks
+     */
+    public long footprint(long length) {
+        final int blockSize = blocks.blockSize();
+        return (length + blockSize - 1) / blockSize * blockSize;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(properties);
+
+        final int blockSize = blocks.blockSize();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int[] ids = new int[4];
+        int count = 0;
+        int fill = blockSize;
+        long length = 0;
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int off = 0; off < n; ) {
+                    if (fill == blockSize) {
+                        if (count == ids.length) {
+                            ids = Arrays.copyOf(ids, count * 2);
+                        }
+                        // allocate before counting, so a failed allocation isn't freed below
+                        final int id = blocks.allocate();
+                        ids[count++] = id;
+                        fill = 0;
+                    }
+                    final int len = Math.min(n - off, blockSize - fill);
+                    blocks.write(ids[count - 1], fill, buffer, off, len);
+                    fill += len;
+                    off += len;
+                    length += len;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            blocks.free(Arrays.copyOf(ids, count));
+            throw e;
+        }
+
+        final Blob blob = new Blob(Arrays.copyOf(ids, count), length, contentType(properties),
+                Collections.unmodifiableMap(new HashMap<>(properties)), Instant.now());
+        final Blob old = index.put(key, blob);
+        if (old != null) {
+            old.release();
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        return download(key, 0, Long.MAX_VALUE, out);
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(out);
+        Preconditions.checkArgument(offset >= 0 && length >= 0, "offset and length must not be negative");
+
+        final Blob blob = acquire(key);
+        if (blob == null) {
+            return Optional.empty();
+        }
+        try {
+            final int blockSize = blocks.blockSize();
+            final long start = Math.min(offset, blob.length);
+            final long end = length > blob.length - start ? blob.length : start + length;
+            final byte[] buffer = new byte[(int) Math.max(Math.min(end - start, BUFFER_SIZE), 1)];
+            for (long position = start; position < end; ) {
+                final int inBlock = (int) (position % blockSize);
+                final int len = (int) Math.min(Math.min(buffer.length, blockSize - inBlock), end - position);
+                blocks.read(blob.ids[(int) (position / blockSize)], inBlock, buffer, 0, len);
+                out.write(buffer, 0, len);
+                position += len;
+            }
+            return Optional.of(blob.meta());
+        } finally {
+            blob.release();
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) {
+        Preconditions.checkNotNull(key);
+        final Blob blob = index.get(key);
+        return blob == null ? Optional.empty() : Optional.of(blob.meta());
+    }
+
+    @Override
+    public void delete(String key) {
+        Preconditions.checkNotNull(key);
+        final Blob old = index.remove(key);
+        if (old != null) {
+            old.release();
+        }
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return index.keySet().stream();
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        Preconditions.checkNotNull(prefix);
+        return keys().filter(k -> k.startsWith(prefix));
+    }
+
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        Preconditions.checkNotNull(prefix);
+        return index.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(prefix))
+                .map(e -> JBlobEntry.of(e.getKey(), e.getValue().length, null, e.getValue().lastModified));
+    }
+
+    private Blob acquire(String key) {
+        Preconditions.checkNotNull(key);
+        while (true) {
+            final Blob blob = index.get(key);
+            if (blob == null || blob.retain()) {
+                return blob;
+            }
+            // released after being replaced or removed, look again
+        }
+    }
+
+    private static String contentType(Map<String, String> properties) {
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            if (CONTENT_TYPE.equalsIgnoreCase(e.getKey())) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private class Blob {
+        private final int[] ids;
+        private final long length;
+        private final String contentType;
+        private final Map<String, String> properties;
+        private final Instant lastModified;
+
+        // one for the index, one per reader in the middle of a download
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Blob(int[] ids, long length, String contentType, Map<String, String> properties, Instant lastModified) {
+            this.ids = ids;
+            this.length = length;
+            this.contentType = contentType;
+            this.properties = properties;
+            this.lastModified = lastModified;
+        }
+
+        private JBlobMeta meta() {
+            return JBlobMeta.of(length, contentType, properties);
+        }
+
+        private boolean retain() {
+            int r;
+            do {
+                r = refs.get();
+                if (r == 0) {
+                    return false;
+                }
+            } while (!refs.compareAndSet(r, r + 1));
+            return true;
+        }
+
+        private void release() {
+            if (refs.decrementAndGet() == 0) {
+                blocks.free(ids);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.devinrsmith.jblob.memory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Tuning knobs for {@link JBlobMemory}.
+ *
+ * Memory is allocated off-heap in slabs of slabSize bytes as it is needed, up to capacity (rounded up to
+ * whole slabs), and handed out to blobs in blocks of blockSize bytes. A blob occupies whole blocks, so
+ * blockSize trades wasted space at the end of each blob against bookkeeping per block.
+ */
+public class MemoryOptions {
+    public static MemoryOptions defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final long capacity;
+    private final int blockSize;
+    private final int slabSize;
+    private final int stripes;
+
+    private MemoryOptions(Builder builder) {
+        Preconditions.checkArgument(builder.slabSize % builder.blockSize == 0, "slabSize must be a multiple of blockSize");
+        this.capacity = builder.capacity;
+        this.blockSize = builder.blockSize;
+        this.slabSize = builder.slabSize;
+        this.stripes = builder.stripes;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * The number of independently locked free lists blocks are allocated from
+     */
+    public int getStripes() {
+        return stripes;
+    }
+
+    public static class Builder {
+        private long capacity = 64 * 1024 * 1024;
+        private int blockSize = 8 * 1024;
+        private int slabSize = 4 * 1024 * 1024;
+        private int stripes = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {}
+
+        public Builder capacity(long capacity) {
+            Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder blockSize(int blockSize) {
+            Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        public Builder slabSize(int slabSize) {
+            Preconditions.checkArgument(slabSize > 0, "slabSize must be positive");
+            this.slabSize = slabSize;
+            return this;
+        }
+
+        public Builder stripes(int stripes) {
+            Preconditions.checkArgument(stripes > 0, "stripes must be positive");
+            this.stripes = stripes;
+            return this;
+        }
+
+        public MemoryOptions build() {
+            return new MemoryOptions(this);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.devinrsmith.jblob.memory;
+
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+public class JBlobMemoryTest extends TestCase {
+    private final JBlobMemory jblob = new JBlobMemory(MemoryOptions.builder()
+            .capacity(1024 * 1024)
+            .blockSize(1024)
+            .slabSize(64 * 1024)
+            .build());
+
+    public void testRoundTrip() throws Exception {
+        for (int size : new int[] { 0, 1, 1023, 1024, 1025, 100000 }) {
+            final byte[] data = random(size);
+            jblob.upload("blob-" + size, new ByteArrayInputStream(data), ImmutableMap.of("Content-Type", "image/png", "foo", "bar"));
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final JBlobMeta meta = jblob.download("blob-" + size, out).get();
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+            assertEquals(size, meta.getContentLength());
+            assertEquals(Optional.of("image/png"), meta.getContentType());
+            assertEquals("bar", meta.getProperties().get("foo"));
+        }
+    }
+
+    public void testRanges() throws Exception {
+        final byte[] data = random(5000);
+        jblob.upload("key", new ByteArrayInputStream(data));
+        final long[][] ranges = { { 0, 5000 }, { 0, 1 }, { 1000, 1024 }, { 1023, 2 }, { 4000, Long.MAX_VALUE }, { 4999, 10 }, { 5000, 10 }, { 9000, 10 }, { 100, 0 } };
+        for (long[] range : ranges) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(5000, jblob.download("key", range[0], range[1], out).get().getContentLength());
+            final int from = (int) Math.min(range[0], data.length);
+            final int to = (int) Math.min(data.length, from + Math.min(range[1], data.length));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, from, to), out.toByteArray()));
+        }
+        assertFalse(jblob.download("missing", 0, 10, new ByteArrayOutputStream()).isPresent());
+    }
+
+    public void testChannel() throws Exception {
+        final byte[] data = random(300000);
+        jblob.upload("key", new ByteArrayInputStream(data));
+        try (final SeekableByteChannel channel = jblob.openChannel("key").get()) {
+            assertEquals(data.length, channel.size());
+            final ByteBuffer all = ByteBuffer.allocate(data.length);
+            while (all.hasRemaining() && channel.read(all) != -1) {
+                // sequential reads, growing the read-ahead
+            }
+            assertTrue(Arrays.equals(data, all.array()));
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+
+            final ByteBuffer some = ByteBuffer.allocate(100);
+            channel.position(123456).read(some);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, 123456, 123556), some.array()));
+        }
+        assertFalse(jblob.openChannel("missing").isPresent());
+    }
+
+    public void testBlocksAreReturned() throws Exception {
+        jblob.upload("key", new ByteArrayInputStream(random(5000)));
+        assertEquals(5 * 1024, jblob.getUsed());
+        jblob.upload("key", new ByteArrayInputStream(random(100)));
+        assertEquals(1024, jblob.getUsed());
+        jblob.delete("key");
+        assertEquals(0, jblob.getUsed());
+        assertFalse(jblob.download("key", new ByteArrayOutputStream()).isPresent());
+        assertFalse(jblob.downloadMetadata("key").isPresent());
+    }
+
+    public void testCapacity() throws Exception {
+        jblob.upload("fits", new ByteArrayInputStream(random(1000 * 1024)));
+        try {
+            jblob.upload("too-much", new ByteArrayInputStream(random(100 * 1024)));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1000 * 1024, jblob.getUsed());
+        assertFalse(jblob.downloadMetadata("too-much").isPresent());
+    }
+
+    public void testReaderKeepsBlocks() throws Exception {
+        final byte[] data = random(10000);
+        jblob.upload("key", new ByteArrayInputStream(data));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                if (size() == 0) {
+                    try {
+                        // overwrite mid-download, the new blob must not land in our blocks
+                        jblob.upload("key", new ByteArrayInputStream(new byte[10000]));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                super.write(b, off, len);
+            }
+        };
+        jblob.download("key", out);
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertEquals(10 * 1024, jblob.getUsed());
+    }
+
+    public void testListing() throws Exception {
+        for (String key : new String[] { "a/1", "a/2", "b/1" }) {
+            jblob.upload(key, new ByteArrayInputStream(random(key.length())));
+        }
+        assertEquals(ImmutableSet.of("a/1", "a/2", "b/1"), jblob.keys().collect(Collectors.toSet()));
+        assertEquals(ImmutableSet.of("a/1", "a/2"), jblob.keys("a/").collect(Collectors.toSet()));
+        assertEquals(3, jblob.entries("b/").findFirst().get().getContentLength());
+        assertEquals(9, jblob.stats().size());
+    }
+
+    public void testConcurrentReadersAndWriters() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    final Random random = new Random(thread);
+                    for (int i = 0; i < 500; ++i) {
+                        final String key = "key-" + random.nextInt(16);
+                        if (random.nextBoolean()) {
+                            jblob.upload(key, selfDescribing(random.nextInt(20000)));
+                        } else {
+                            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            if (jblob.download(key, out).isPresent()) {
+                                checkSelfDescribing(out.toByteArray());
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (String key : jblob.keys().collect(Collectors.toList())) {
+            jblob.delete(key);
+        }
+        assertEquals(0, jblob.getUsed());
+    }
+
+    // every byte is derived from the length, so a blob mixed up with another is noticed
+    private static InputStream selfDescribing(int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            data[i] = (byte) (length * 31 + i);
+        }
+        return new ByteArrayInputStream(data);
+    }
+
+    private static void checkSelfDescribing(byte[] data) {
+        for (int i = 0; i < data.length; ++i) {
+            assertEquals((byte) (data.length * 31 + i), data[i]);
+        }
+    }
+
+    private static byte[] random(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
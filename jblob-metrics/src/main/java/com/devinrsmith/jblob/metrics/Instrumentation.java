@@ -0,0 +1,191 @@
+package com.devinrsmith.jblob.metrics;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.keyless.IngestMode;
+import com.devinrsmith.jblob.api.keyless.JBlobContentTyper;
+import com.devinrsmith.jblob.api.keyless.JBlobDeduper;
+import com.devinrsmith.jblob.api.keyless.JBlobHasher;
+import com.devinrsmith.jblob.api.keyless.JBlobKeyGenerator;
+import com.devinrsmith.jblob.api.keyless.JBlobKeylessImpl;
+import com.devinrsmith.jblob.api.uri.JBlobHttpClient;
+import com.devinrsmith.jblob.api.uri.JBlobUriFingerprints;
+import com.devinrsmith.jblob.api.uri.JBlobUriImpl;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Instrumented versions of the parts of a keyless or URI upload, so the time of one is split between
+ * hashing, deduping, content typing, fetching and uploading (waiting on S3, say).
+ */
+public class Instrumentation {
+    private Instrumentation() {
+    }
+
+    /**
+     * A {@link JBlobKeylessImpl} whose parts, and jblob, all record into metrics, wrapped to record its
+     * keyless uploads end to end
+     */
+    public static InstrumentedJBlobKeyless keyless(JBlob jblob, JBlobHasher hasher, JBlobDeduper deduper, JBlobKeyGenerator generator, JBlobContentTyper typer, JBlobMetrics metrics) {
+        return keyless(jblob, hasher, deduper, generator, typer, IngestMode.MULTI_PASS, metrics);
+    }
+
+    public static InstrumentedJBlobKeyless keyless(JBlob jblob, JBlobHasher hasher, JBlobDeduper deduper, JBlobKeyGenerator generator, JBlobContentTyper typer, IngestMode mode, JBlobMetrics metrics) {
+        Preconditions.checkNotNull(jblob);
+        final JBlobKeylessImpl keyless = new JBlobKeylessImpl(
+                new InstrumentedJBlob(jblob, metrics),
+                hasher(hasher, metrics),
+                deduper(deduper, metrics),
+                Preconditions.checkNotNull(generator),
+                typer(typer, metrics),
+                mode);
+        // the JBlob methods go around keyless, to the uninstrumented jblob, so they aren't recorded twice
+        return new InstrumentedJBlobKeyless(jblob, keyless, metrics);
+    }
+
+    /**
+     * A {@link JBlobUriImpl} over keyless whose client records into keyless' metrics, wrapped to record its
+     * URI uploads end to end
+     */
+    public static InstrumentedJBlobUri uri(InstrumentedJBlobKeyless keyless, JBlobHttpClient client) {
+        return uri(keyless, client, JBlobUriFingerprints.none());
+    }
+
+    public static InstrumentedJBlobUri uri(InstrumentedJBlobKeyless keyless, JBlobHttpClient client, JBlobUriFingerprints fingerprints) {
+        Preconditions.checkNotNull(keyless);
+        final JBlobUriImpl uri = new JBlobUriImpl(keyless, httpClient(client, keyless.metrics), fingerprints);
+        return new InstrumentedJBlobUri(keyless.jblob, keyless.keyless, uri, keyless.metrics);
+    }
+
+    /**
+     * Hashing done through newHasher, as the bytes go by, isn't recorded; it is part of whatever moves them
+     */
+    public static JBlobHasher hasher(JBlobHasher hasher, JBlobMetrics metrics) {
+        Preconditions.checkNotNull(hasher);
+        final OperationMetrics op = metrics.operation(JBlobOperation.HASH);
+        return new JBlobHasher() {
+            @Override
+            public HashCode computeHash(ByteSource source) throws IOException {
+                final long start = op.start();
+                try {
+                    final HashCode hashCode = hasher.computeHash(source);
+                    op.success(start);
+                    return hashCode;
+                } catch (Throwable t) {
+                    op.error(start);
+                    throw t;
+                }
+            }
+
+            @Override
+            public Optional<Hasher> newHasher() {
+                return hasher.newHasher();
+            }
+        };
+    }
+
+    /**
+     * A lookup that finds nothing, new content, is recorded as not found
+     */
+    public static JBlobDeduper deduper(JBlobDeduper deduper, JBlobMetrics metrics) {
+        Preconditions.checkNotNull(deduper);
+        final OperationMetrics op = metrics.operation(JBlobOperation.DEDUP);
+        return new JBlobDeduper() {
+            @Override
+            public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) throws IOException {
+                final long start = op.start();
+                try {
+                    final Optional<String> key = deduper.findExistingKey(hashCode, source);
+                    if (key.isPresent()) {
+                        op.success(start);
+                    } else {
+                        op.notFound(start);
+                    }
+                    return key;
+                } catch (Throwable t) {
+                    op.error(start);
+                    throw t;
+                }
+            }
+
+            @Override
+            public void putNewKey(HashCode hashCode, String key) {
+                deduper.putNewKey(hashCode, key);
+            }
+        };
+    }
+
+    public static JBlobContentTyper typer(JBlobContentTyper typer, JBlobMetrics metrics) {
+        Preconditions.checkNotNull(typer);
+        final OperationMetrics op = metrics.operation(JBlobOperation.CONTENT_TYPE);
+        return new JBlobContentTyper() {
+            @Override
+            public Optional<String> computeContentType(ByteSource source) throws IOException {
+                final long start = op.start();
+                try {
+                    final Optional<String> type = typer.computeContentType(source);
+                    if (type.isPresent()) {
+                        op.success(start);
+                    } else {
+                        op.notFound(start);
+                    }
+                    return type;
+                } catch (Throwable t) {
+                    op.error(start);
+                    throw t;
+                }
+            }
+
+            @Override
+            public int sniffLength() {
+                return typer.sniffLength();
+            }
+        };
+    }
+
+    /**
+     * Records the time to the response headers; the body is read by whoever opens its stream. A conditional
+     * GET answered with Not Modified counts as not found.
+     */
+    public static JBlobHttpClient httpClient(JBlobHttpClient client, JBlobMetrics metrics) {
+        Preconditions.checkNotNull(client);
+        final OperationMetrics op = metrics.operation(JBlobOperation.HTTP_GET);
+        return new JBlobHttpClient() {
+            @Override
+            public Results executeGet(URI uri) throws IOException {
+                final long start = op.start();
+                try {
+                    final Results results = client.executeGet(uri);
+                    op.success(start);
+                    return results;
+                } catch (Throwable t) {
+                    op.error(start);
+                    throw t;
+                }
+            }
+
+            @Override
+            public Optional<Results> executeGet(URI uri, Map<String, String> requestHeaders) throws IOException {
+                final long start = op.start();
+                try {
+                    final Optional<Results> results = client.executeGet(uri, requestHeaders);
+                    if (results.isPresent()) {
+                        op.success(start);
+                    } else {
+                        op.notFound(start);
+                    }
+                    return results;
+                } catch (Throwable t) {
+                    op.error(start);
+                    throw t;
+                }
+            }
+        };
+    }
+}
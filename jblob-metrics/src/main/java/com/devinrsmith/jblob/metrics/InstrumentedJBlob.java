@@ -0,0 +1,199 @@
+package com.devinrsmith.jblob.metrics;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.api.JBlobStatistics;
+import com.google.common.base.Preconditions;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Records every call to the JBlob it decorates into a {@link JBlobMetrics}: latency and outcome by
+ * operation, and the bytes that went through upload and download, those of failed transfers included.
+ *
+ * keys and entries are lazy streams and are forwarded as they are, their cost shows up where they are
+ * consumed. openChannel reads through the ranged download, so each read-ahead is recorded as one.
+ */
+public class InstrumentedJBlob implements JBlob {
+    final JBlob jblob;
+    final JBlobMetrics metrics;
+
+    public InstrumentedJBlob(JBlob jblob, JBlobMetrics metrics) {
+        this.jblob = Preconditions.checkNotNull(jblob);
+        this.metrics = Preconditions.checkNotNull(metrics);
+    }
+
+    public JBlobMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.UPLOAD);
+        final CountingInputStream counting = new CountingInputStream(in);
+        final long start = op.start();
+        try {
+            jblob.upload(key, counting, properties);
+            op.success(start);
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        } finally {
+            metrics.recordUploaded(counting.getCount());
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.DOWNLOAD);
+        final CountingOutputStream counting = new CountingOutputStream(out);
+        final long start = op.start();
+        try {
+            final Optional<JBlobMeta> meta = jblob.download(key, counting);
+            finish(op, start, meta.isPresent());
+            return meta;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        } finally {
+            metrics.recordDownloaded(counting.getCount());
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.DOWNLOAD_RANGE);
+        final CountingOutputStream counting = new CountingOutputStream(out);
+        final long start = op.start();
+        try {
+            final Optional<JBlobMeta> meta = jblob.download(key, offset, length, counting);
+            finish(op, start, meta.isPresent());
+            return meta;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        } finally {
+            metrics.recordDownloaded(counting.getCount());
+        }
+    }
+
+    @Override
+    public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.DOWNLOAD_METADATA);
+        final long start = op.start();
+        try {
+            final Optional<JBlobMeta> meta = jblob.downloadMetadata(key);
+            finish(op, start, meta.isPresent());
+            return meta;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+
+    /**
+     * Recorded as one call, whatever the number of keys
+     */
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.DOWNLOAD_METADATA_BATCH);
+        final long start = op.start();
+        try {
+            final Map<String, Optional<JBlobMeta>> metas = jblob.downloadMetadata(keys);
+            op.success(start);
+            return metas;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.DELETE);
+        final long start = op.start();
+        try {
+            jblob.delete(key);
+            op.success(start);
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.DELETE_ALL);
+        final long start = op.start();
+        try {
+            jblob.deleteAll(keys);
+            op.success(start);
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+
+    /**
+     * An instrumented other is unwrapped, so the decorated JBlob can still copy natively when it knows how
+     */
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(other);
+        final OperationMetrics op = metrics.operation(JBlobOperation.COPY);
+        final long start = op.start();
+        try {
+            jblob.copy(key, otherKey, other instanceof InstrumentedJBlob ? ((InstrumentedJBlob) other).jblob : other);
+            op.success(start);
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+
+    @Override
+    public JBlobStatistics stats() throws IOException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.STATS);
+        final long start = op.start();
+        try {
+            final JBlobStatistics stats = jblob.stats();
+            op.success(start);
+            return stats;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+
+    @Override
+    public Stream<String> keys() {
+        return jblob.keys();
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return jblob.keys(prefix);
+    }
+
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        return jblob.entries(prefix);
+    }
+
+    private static void finish(OperationMetrics op, long start, boolean found) {
+        if (found) {
+            op.success(start);
+        } else {
+            op.notFound(start);
+        }
+    }
+}
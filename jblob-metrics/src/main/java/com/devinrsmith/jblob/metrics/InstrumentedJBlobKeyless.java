@@ -0,0 +1,60 @@
+package com.devinrsmith.jblob.metrics;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.keyless.JBlobKeyless;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * An {@link InstrumentedJBlob} that also records keyless uploads, end to end. Whether the content was new
+ * and what the upload spent its time on is only known when the keyless JBlob was put together from
+ * instrumented parts, see {@link Instrumentation#keyless}.
+ */
+public class InstrumentedJBlobKeyless extends InstrumentedJBlob implements JBlobKeyless {
+    final JBlobKeyless keyless;
+
+    public InstrumentedJBlobKeyless(JBlobKeyless keyless, JBlobMetrics metrics) {
+        this(keyless, keyless, metrics);
+    }
+
+    /**
+     * The JBlob methods go to jblob and keyless uploads to keyless, for when keyless already records into
+     * metrics what it does with jblob
+     */
+    InstrumentedJBlobKeyless(JBlob jblob, JBlobKeyless keyless, JBlobMetrics metrics) {
+        super(jblob, metrics);
+        this.keyless = Preconditions.checkNotNull(keyless);
+    }
+
+    @Override
+    public String upload(ByteSource source, Map<String, String> properties) throws IOException, InterruptedException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.KEYLESS_UPLOAD);
+        final long start = op.start();
+        try {
+            final String key = keyless.upload(source, properties);
+            op.success(start);
+            return key;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+
+    @Override
+    public String upload(InputStream in, Map<String, String> properties) throws IOException, InterruptedException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.KEYLESS_UPLOAD);
+        final long start = op.start();
+        try {
+            final String key = keyless.upload(in, properties);
+            op.success(start);
+            return key;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+}
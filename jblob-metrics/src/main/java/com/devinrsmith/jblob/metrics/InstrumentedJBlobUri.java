@@ -0,0 +1,41 @@
+package com.devinrsmith.jblob.metrics;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.keyless.JBlobKeyless;
+import com.devinrsmith.jblob.api.uri.JBlobUri;
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * An {@link InstrumentedJBlobKeyless} that also records URI uploads, end to end. See
+ * {@link Instrumentation#uri} to split them into the GET and the keyless upload.
+ */
+public class InstrumentedJBlobUri extends InstrumentedJBlobKeyless implements JBlobUri {
+    private final JBlobUri uri;
+
+    public InstrumentedJBlobUri(JBlobUri uri, JBlobMetrics metrics) {
+        this(uri, uri, uri, metrics);
+    }
+
+    InstrumentedJBlobUri(JBlob jblob, JBlobKeyless keyless, JBlobUri uri, JBlobMetrics metrics) {
+        super(jblob, keyless, metrics);
+        this.uri = Preconditions.checkNotNull(uri);
+    }
+
+    @Override
+    public String upload(URI source, Map<String, String> properties) throws IOException, InterruptedException {
+        final OperationMetrics op = metrics.operation(JBlobOperation.URI_UPLOAD);
+        final long start = op.start();
+        try {
+            final String key = uri.upload(source, properties);
+            op.success(start);
+            return key;
+        } catch (Throwable t) {
+            op.error(start);
+            throw t;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.devinrsmith.jblob.metrics;
+
+import com.google.common.base.Preconditions;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latency histograms, outcome counts and in-flight gauges by {@link JBlobOperation}, along with bytes moved
+ * in each direction. Filled in by the Instrumented decorators and {@link Instrumentation}; read through
+ * {@link #snapshot()}, JMX ({@link #registerMBean()}), or a {@link MetricsReporter}.
+ *
+ * Everything is preallocated, so recording doesn't allocate. Latencies are kept since creation.
+ */
+public class JBlobMetrics implements JBlobMetricsMXBean {
+    public static JBlobMetrics create(String name) {
+        return new JBlobMetrics(name);
+    }
+
+    private final String name;
+    private final Map<JBlobOperation, OperationMetrics> operations = new EnumMap<>(JBlobOperation.class);
+    private final RateMeter uploaded = new RateMeter();
+    private final RateMeter downloaded = new RateMeter();
+
+    private JBlobMetrics(String name) {
+        this.name = Preconditions.checkNotNull(name);
+        for (JBlobOperation operation : JBlobOperation.values()) {
+            operations.put(operation, new OperationMetrics(operation));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public OperationMetrics operation(JBlobOperation operation) {
+        return operations.get(operation);
+    }
+
+    public void recordUploaded(long bytes) {
+        uploaded.record(bytes);
+    }
+
+    public void recordDownloaded(long bytes) {
+        downloaded.record(bytes);
+    }
+
+    public MetricsSnapshot snapshot() {
+        final Map<JBlobOperation, OperationSnapshot> snapshots = new EnumMap<>(JBlobOperation.class);
+        for (OperationMetrics metrics : operations.values()) {
+            final OperationSnapshot snapshot = metrics.snapshot();
+            if (snapshot.getCount() > 0 || snapshot.getInFlight() > 0) {
+                snapshots.put(metrics.getOperation(), snapshot);
+            }
+        }
+        return new MetricsSnapshot(name, snapshots, uploaded.total(), downloaded.total(), uploaded.rate(), downloaded.rate());
+    }
+
+    /**
+     * Registers with the platform MBean server as com.devinrsmith.jblob:type=JBlobMetrics,name=(name)
+     */
+    public ObjectName registerMBean() throws JMException {
+        final ObjectName objectName = objectName();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public void unregisterMBean() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = objectName();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    @Override
+    public Map<String, OperationSnapshot> getOperations() {
+        final Map<String, OperationSnapshot> byName = new LinkedHashMap<>();
+        for (Map.Entry<JBlobOperation, OperationSnapshot> e : snapshot().getOperations().entrySet()) {
+            byName.put(e.getKey().name(), e.getValue());
+        }
+        return byName;
+    }
+
+    @Override
+    public long getBytesUploaded() {
+        return uploaded.total();
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return downloaded.total();
+    }
+
+    @Override
+    public double getUploadBytesPerSecond() {
+        return uploaded.rate();
+    }
+
+    @Override
+    public double getDownloadBytesPerSecond() {
+        return downloaded.rate();
+    }
+
+    private ObjectName objectName() throws JMException {
+        return new ObjectName("com.devinrsmith.jblob:type=JBlobMetrics,name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,21 @@
+package com.devinrsmith.jblob.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link JBlobMetrics}
+ */
+public interface JBlobMetricsMXBean {
+    /**
+     * By operation name, only the operations that were used
+     */
+    Map<String, OperationSnapshot> getOperations();
+
+    long getBytesUploaded();
+
+    long getBytesDownloaded();
+
+    double getUploadBytesPerSecond();
+
+    double getDownloadBytesPerSecond();
+}
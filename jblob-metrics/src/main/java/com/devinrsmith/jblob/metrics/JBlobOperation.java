@@ -0,0 +1,43 @@
+package com.devinrsmith.jblob.metrics;
+
+/**
+ * What {@link JBlobMetrics} keeps latencies and counts for. Besides the JBlob operations themselves, the
+ * steps of a keyless or URI upload are timed separately, so a slow upload can be pinned on one of them.
+ */
+public enum JBlobOperation {
+    UPLOAD,
+    DOWNLOAD,
+    DOWNLOAD_RANGE,
+    DOWNLOAD_METADATA,
+    DOWNLOAD_METADATA_BATCH,
+    DELETE,
+    DELETE_ALL,
+    COPY,
+    STATS,
+
+    /**
+     * JBlobKeyless.upload, end to end
+     */
+    KEYLESS_UPLOAD,
+    /**
+     * JBlobUri.upload, end to end
+     */
+    URI_UPLOAD,
+
+    /**
+     * JBlobHasher.computeHash
+     */
+    HASH,
+    /**
+     * JBlobDeduper.findExistingKey; not found means the content was new
+     */
+    DEDUP,
+    /**
+     * JBlobContentTyper.computeContentType; not found means no type was recognized
+     */
+    CONTENT_TYPE,
+    /**
+     * JBlobHttpClient.executeGet, until the response headers are in; not found means not modified
+     */
+    HTTP_GET
+}
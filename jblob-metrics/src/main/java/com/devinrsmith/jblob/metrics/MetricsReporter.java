@@ -0,0 +1,52 @@
+package com.devinrsmith.jblob.metrics;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands a snapshot of {@link JBlobMetrics} to a {@link MetricsSink} every period, on its own daemon thread,
+ * until closed
+ */
+public class MetricsReporter implements Closeable {
+    public static MetricsReporter start(JBlobMetrics metrics, MetricsSink sink, long period, TimeUnit unit) {
+        Preconditions.checkNotNull(metrics);
+        Preconditions.checkNotNull(sink);
+        Preconditions.checkArgument(period > 0, "period must be positive");
+        return new MetricsReporter(metrics, sink, period, unit);
+    }
+
+    private final JBlobMetrics metrics;
+    private final MetricsSink sink;
+    private final ScheduledExecutorService executor;
+
+    private MetricsReporter(JBlobMetrics metrics, MetricsSink sink, long period, TimeUnit unit) {
+        this.metrics = metrics;
+        this.sink = sink;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "jblob-metrics-" + metrics.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    /**
+     * Reports now, on the calling thread
+     */
+    public void report() {
+        try {
+            sink.report(metrics.snapshot());
+        } catch (RuntimeException e) {
+            // a failing sink mustn't cancel the schedule, the next period tries again
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,8 @@
+package com.devinrsmith.jblob.metrics;
+
+/**
+ * Where a {@link MetricsReporter} sends snapshots, an adapter to whatever metrics system is in use
+ */
+public interface MetricsSink {
+    void report(MetricsSnapshot snapshot);
+}
@@ -0,0 +1,58 @@
+package com.devinrsmith.jblob.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A point in time view of {@link JBlobMetrics}, what a {@link MetricsSink} is handed
+ */
+public class MetricsSnapshot {
+    private final String name;
+    private final Map<JBlobOperation, OperationSnapshot> operations;
+    private final long bytesUploaded;
+    private final long bytesDownloaded;
+    private final double uploadBytesPerSecond;
+    private final double downloadBytesPerSecond;
+
+    MetricsSnapshot(String name, Map<JBlobOperation, OperationSnapshot> operations, long bytesUploaded, long bytesDownloaded, double uploadBytesPerSecond, double downloadBytesPerSecond) {
+        this.name = name;
+        this.operations = Collections.unmodifiableMap(operations);
+        this.bytesUploaded = bytesUploaded;
+        this.bytesDownloaded = bytesDownloaded;
+        this.uploadBytesPerSecond = uploadBytesPerSecond;
+        this.downloadBytesPerSecond = downloadBytesPerSecond;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Only the operations that were used
+     */
+    public Map<JBlobOperation, OperationSnapshot> getOperations() {
+        return operations;
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    /**
+     * Averaged over the last 10 seconds
+     */
+    public double getUploadBytesPerSecond() {
+        return uploadBytesPerSecond;
+    }
+
+    /**
+     * Averaged over the last 10 seconds
+     */
+    public double getDownloadBytesPerSecond() {
+        return downloadBytesPerSecond;
+    }
+}
@@ -0,0 +1,64 @@
+package com.devinrsmith.jblob.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, outcome counts and the in-flight gauge of one operation.
+ *
+ * Each call is bracketed by {@link #start()} and exactly one of {@link #success(long)},
+ * {@link #notFound(long)} or {@link #error(long)}, given what start returned. None of them allocate.
+ */
+public class OperationMetrics {
+    private final JBlobOperation operation;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+
+    OperationMetrics(JBlobOperation operation) {
+        this.operation = operation;
+    }
+
+    public JBlobOperation getOperation() {
+        return operation;
+    }
+
+    public long start() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void success(long start) {
+        finish(start);
+    }
+
+    public void notFound(long start) {
+        notFound.increment();
+        finish(start);
+    }
+
+    public void error(long start) {
+        errors.increment();
+        finish(start);
+    }
+
+    public OperationSnapshot snapshot() {
+        final LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        return new OperationSnapshot(
+                snapshot.count(),
+                errors.sum(),
+                notFound.sum(),
+                inFlight.get(),
+                snapshot.mean(),
+                snapshot.percentile(0.5),
+                snapshot.percentile(0.99),
+                snapshot.percentile(0.999),
+                snapshot.max());
+    }
+
+    private void finish(long start) {
+        latencies.record(System.nanoTime() - start);
+        inFlight.decrementAndGet();
+    }
+}
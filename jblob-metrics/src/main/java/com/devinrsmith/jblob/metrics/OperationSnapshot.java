@@ -0,0 +1,65 @@
+package com.devinrsmith.jblob.metrics;
+
+/**
+ * A point in time view of {@link OperationMetrics}. Latencies are in nanoseconds, and count every finished
+ * call whatever its outcome.
+ */
+public class OperationSnapshot {
+    private final long count;
+    private final long errors;
+    private final long notFound;
+    private final long inFlight;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    OperationSnapshot(long count, long errors, long notFound, long inFlight, double meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+        this.count = count;
+        this.errors = errors;
+        this.notFound = notFound;
+        this.inFlight = inFlight;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getNotFound() {
+        return notFound;
+    }
+
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+}
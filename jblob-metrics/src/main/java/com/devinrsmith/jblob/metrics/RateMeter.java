@@ -0,0 +1,56 @@
+package com.devinrsmith.jblob.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts an amount (bytes) into one-second slots, so its rate over the last few complete seconds can be read.
+ *
+ * Recording doesn't allocate or lock. A slot is reset by the first recording of a new second, so a
+ * recording racing with that reset may be lost from the rate; the total is always exact.
+ */
+class RateMeter {
+    private static final int SLOTS = 16;
+    private static final int WINDOW_SECONDS = 10;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray amounts = new AtomicLongArray(SLOTS);
+    private final LongAdder total = new LongAdder();
+
+    RateMeter() {
+        for (int i = 0; i < SLOTS; ++i) {
+            seconds.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    void record(long amount) {
+        total.add(amount);
+        final long second = Math.floorDiv(System.nanoTime(), NANOS_PER_SECOND);
+        final int slot = (int) (second & (SLOTS - 1));
+        final long seen = seconds.get(slot);
+        if (seen != second && seconds.compareAndSet(slot, seen, second)) {
+            amounts.set(slot, 0);
+        }
+        amounts.addAndGet(slot, amount);
+    }
+
+    long total() {
+        return total.sum();
+    }
+
+    /**
+     * The average per second over the last WINDOW_SECONDS complete seconds
+     */
+    double rate() {
+        final long now = Math.floorDiv(System.nanoTime(), NANOS_PER_SECOND);
+        long sum = 0;
+        for (int i = 0; i < SLOTS; ++i) {
+            final long second = seconds.get(i);
+            if (second < now && second >= now - WINDOW_SECONDS) {
+                sum += amounts.get(i);
+            }
+        }
+        return (double) sum / WINDOW_SECONDS;
+    }
+}
@@ -0,0 +1,165 @@
+package com.devinrsmith.jblob.metrics;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.keyless.JBlobContentTyper;
+import com.devinrsmith.jblob.api.keyless.JBlobDeduper;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import junit.framework.TestCase;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class JBlobMetricsTest extends TestCase {
+    private JBlobMetrics metrics;
+    private JBlob jblob;
+
+    @Override
+    protected void setUp() {
+        metrics = JBlobMetrics.create("test");
+        jblob = new InstrumentedJBlob(new JBlobMemory(), metrics);
+    }
+
+    public void testHistogramBuckets() {
+        for (long v : new long[] {0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE}) {
+            final int index = LatencyHistogram.index(v);
+            // the bucket's middle is within its precision of every value in it
+            assertTrue(v + " " + LatencyHistogram.value(index), Math.abs(LatencyHistogram.value(index) - (double) v) <= Math.max(1, v / 32.0));
+            if (v > 0) {
+                assertTrue(LatencyHistogram.index(v - 1) <= index);
+            }
+        }
+    }
+
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100000; ++v) {
+            histogram.record(v * 1000);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100000, snapshot.count());
+        assertEquals(100000000, snapshot.max());
+        assertEquals(50000000, snapshot.percentile(0.5), 50000000 * 0.04);
+        assertEquals(99000000, snapshot.percentile(0.99), 99000000 * 0.04);
+        assertEquals(99900000, snapshot.percentile(0.999), 99900000 * 0.04);
+        assertEquals(50000500.0, snapshot.mean(), 1);
+        assertEquals(0, new LatencyHistogram().snapshot().percentile(0.99));
+    }
+
+    public void testOperations() throws Exception {
+        jblob.upload("key", new ByteArrayInputStream(new byte[1000]));
+        jblob.download("key", new ByteArrayOutputStream());
+        jblob.download("key", 100, 50, new ByteArrayOutputStream());
+        assertFalse(jblob.download("missing", new ByteArrayOutputStream()).isPresent());
+        assertTrue(jblob.downloadMetadata("key").isPresent());
+        jblob.delete("key");
+
+        final MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1000, snapshot.getBytesUploaded());
+        assertEquals(1050, snapshot.getBytesDownloaded());
+        final OperationSnapshot downloads = snapshot.getOperations().get(JBlobOperation.DOWNLOAD);
+        assertEquals(2, downloads.getCount());
+        assertEquals(1, downloads.getNotFound());
+        assertEquals(0, downloads.getErrors());
+        assertEquals(0, downloads.getInFlight());
+        assertTrue(downloads.getMaxNanos() >= downloads.getP50Nanos());
+        assertEquals(1, snapshot.getOperations().get(JBlobOperation.DOWNLOAD_RANGE).getCount());
+        assertEquals(1, snapshot.getOperations().get(JBlobOperation.DELETE).getCount());
+        assertFalse(snapshot.getOperations().containsKey(JBlobOperation.COPY));
+    }
+
+    public void testErrors() throws Exception {
+        final InputStream failing = new InputStream() {
+            private int reads;
+
+            @Override
+            public int read() throws IOException {
+                if (++reads > 10) {
+                    throw new IOException("broken");
+                }
+                return 0;
+            }
+        };
+        try {
+            jblob.upload("key", failing);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        final OperationSnapshot uploads = metrics.snapshot().getOperations().get(JBlobOperation.UPLOAD);
+        assertEquals(1, uploads.getCount());
+        assertEquals(1, uploads.getErrors());
+        assertEquals(0, uploads.getInFlight());
+        assertEquals(10, metrics.getBytesUploaded());
+    }
+
+    public void testKeylessParts() throws Exception {
+        final Map<HashCode, String> known = new ConcurrentHashMap<>();
+        final JBlobDeduper deduper = new JBlobDeduper() {
+            @Override
+            public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) {
+                return Optional.ofNullable(known.get(hashCode));
+            }
+
+            @Override
+            public void putNewKey(HashCode hashCode, String key) {
+                known.put(hashCode, key);
+            }
+        };
+        final InstrumentedJBlobKeyless keyless = Instrumentation.keyless(
+                new JBlobMemory(),
+                source -> source.hash(Hashing.sha256()),
+                deduper,
+                HashCode::toString,
+                JBlobContentTyper.Null.NULL,
+                metrics);
+        final ByteSource source = ByteSource.wrap(new byte[100]);
+        final String key = keyless.upload(source, new ConcurrentHashMap<>());
+        assertEquals(key, keyless.upload(source, new ConcurrentHashMap<>()));
+        assertTrue(keyless.downloadMetadata(key).isPresent());
+
+        final Map<JBlobOperation, OperationSnapshot> operations = metrics.snapshot().getOperations();
+        assertEquals(2, operations.get(JBlobOperation.KEYLESS_UPLOAD).getCount());
+        assertEquals(2, operations.get(JBlobOperation.HASH).getCount());
+        assertEquals(2, operations.get(JBlobOperation.DEDUP).getCount());
+        assertEquals(1, operations.get(JBlobOperation.DEDUP).getNotFound());
+        assertEquals(1, operations.get(JBlobOperation.CONTENT_TYPE).getNotFound());
+        assertEquals(1, operations.get(JBlobOperation.UPLOAD).getCount());
+        assertEquals(1, operations.get(JBlobOperation.DOWNLOAD_METADATA).getCount());
+        assertEquals(100, metrics.getBytesUploaded());
+    }
+
+    public void testJmxAndReporter() throws Exception {
+        jblob.upload("key", new ByteArrayInputStream(new byte[10]));
+        final ObjectName name = metrics.registerMBean();
+        try {
+            final Object bytes = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesUploaded");
+            assertEquals(10L, bytes);
+            final TabularData operations = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Operations");
+            assertEquals(1, operations.size());
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+        final List<MetricsSnapshot> reported = new ArrayList<>();
+        try (final MetricsReporter reporter = MetricsReporter.start(metrics, reported::add, 1, TimeUnit.HOURS)) {
+            reporter.report();
+        }
+        assertEquals(1, reported.size());
+        assertEquals(10, reported.get(0).getBytesUploaded());
+    }
+}
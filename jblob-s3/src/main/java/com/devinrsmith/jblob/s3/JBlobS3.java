@@ -3,19 +3,18 @@ package com.devinrsmith.jblob.s3;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
-import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.transfer.Download;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.Upload;
+import com.devinrsmith.jblob.api.BatchMetadata;
 import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.JBlobEntry;
 import com.devinrsmith.jblob.api.JBlobMeta;
+import com.devinrsmith.jblob.api.JBlobSizeHistogram;
 import com.devinrsmith.jblob.api.JBlobStatistics;
-import com.devinrsmith.jblob.common.LazyIterator;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.AbstractSequentialIterator;
-import com.google.common.collect.Iterators;
 import com.google.common.io.ByteStreams;
 import org.apache.http.HttpStatus;
 
@@ -39,15 +38,36 @@ public class JBlobS3 implements JBlob {
 
     private final String bucket;
     private final TransferManager tx;
+    private final S3Options options;
 
     public JBlobS3(String bucket, TransferManager tx) {
+        this(bucket, tx, S3Options.defaults());
+    }
+
+    public JBlobS3(String bucket, TransferManager tx, S3Options options) {
         this.bucket = Preconditions.checkNotNull(bucket);
         this.tx = Preconditions.checkNotNull(tx);
+        this.options = Preconditions.checkNotNull(options);
     }
 
     @Override
     public Stream<String> keys() {
-        return summariesStream(false).map(S3ObjectSummary::getKey);
+        return keys("");
+    }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        Preconditions.checkNotNull(prefix);
+        return summariesStream(prefix, false).map(S3ObjectSummary::getKey);
+    }
+
+    /**
+     * Served entirely from the listing, one request per page of keys
+     */
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        Preconditions.checkNotNull(prefix);
+        return summariesStream(prefix, false).map(JBlobS3::createEntry);
     }
 
     @Override
@@ -56,6 +76,12 @@ public class JBlobS3 implements JBlob {
         Preconditions.checkNotNull(in);
         Preconditions.checkNotNull(properties);
 
+        final ObjectMetadata m = createObjectMetadata(properties);
+        if (options.isStreamingUpload()) {
+            new S3StreamingUpload(tx.getAmazonS3Client(), bucket, key, m, options).upload(in);
+            return;
+        }
+
         // create temporary file from inputStream
         final Path tmp = Files.createTempFile("s3-" + bucket, null);
         try (final OutputStream out = Files.newOutputStream(tmp)) {
@@ -63,22 +89,7 @@ public class JBlobS3 implements JBlob {
         }
 
         // the length is the important part here
-        final ObjectMetadata m = new ObjectMetadata();
-
-        m.setUserMetadata(properties);
         m.setContentLength(tmp.toFile().length());
-        final String contentType = properties.get(Headers.CONTENT_TYPE);
-        if (contentType != null) {
-            m.setContentType(contentType);
-        }
-        final String encoding = properties.get(Headers.CONTENT_ENCODING);
-        if (encoding != null) {
-            m.setContentEncoding(encoding);
-        }
-        final String disposition = properties.get(Headers.CONTENT_DISPOSITION);
-        if (disposition != null) {
-            m.setContentDisposition(disposition);
-        }
 
         // read from temporary file, let the OS delete on close
         try (final InputStream localIn = Files.newInputStream(tmp, StandardOpenOption.DELETE_ON_CLOSE)) {
@@ -89,6 +100,17 @@ public class JBlobS3 implements JBlob {
         }
     }
 
+    /**
+     * Ranged GETs, the parts after the first fetched in parallel as in a streaming download
+     */
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(out);
+        Preconditions.checkArgument(offset >= 0 && length >= 0, "offset and length must not be negative");
+        return new S3RangedDownload(tx.getAmazonS3Client(), bucket, key, options).download(offset, length, out).map(JBlobS3::createBlobMeta);
+    }
+
     @Override
     public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
         Preconditions.checkNotNull(key);
@@ -105,11 +127,24 @@ public class JBlobS3 implements JBlob {
         return Optional.of(createBlobMeta(objectMetadata));
     }
 
+    /**
+     * Sent as concurrent HEAD requests, headsInFlight at a time
+     */
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        Preconditions.checkNotNull(keys);
+        return BatchMetadata.downloadMetadata(this, keys, options.getExecutor(), options.getHeadsInFlight());
+    }
+
     @Override
     public Optional<JBlobMeta> download(String key, OutputStream out) throws IOException, InterruptedException {
         Preconditions.checkNotNull(key);
         Preconditions.checkNotNull(out);
 
+        if (options.isStreamingDownload()) {
+            return new S3RangedDownload(tx.getAmazonS3Client(), bucket, key, options).download(out).map(JBlobS3::createBlobMeta);
+        }
+
         final Path tmp = Files.createTempFile("s3-" + bucket, null);
 
         final ObjectMetadata objectMetadata;
@@ -143,23 +178,47 @@ public class JBlobS3 implements JBlob {
         }
     }
 
+    /**
+     * Sent as multi-object deletes of up to 1000 keys, several at a time
+     */
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        Preconditions.checkNotNull(keys);
+        new S3BatchDelete(tx.getAmazonS3Client(), bucket, options).delete(keys);
+    }
+
+    /**
+     * When other is also a JBlobS3 the copy happens server-side (in parallel parts for large objects),
+     * otherwise the download is streamed into the upload.
+     */
+    @Override
+    public void copy(String key, String otherKey, JBlob other) throws IOException, InterruptedException {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(otherKey);
+        Preconditions.checkNotNull(other);
+
+        if (other instanceof JBlobS3) {
+            final JBlobS3 source = (JBlobS3) other;
+            new S3ServerSideCopy(source.tx.getAmazonS3Client(), source.bucket, otherKey, tx.getAmazonS3Client(), bucket, key, options).copy();
+            return;
+        }
+        JBlob.super.copy(key, otherKey, other);
+    }
+
     @Override
     public JBlobStatistics stats() throws IOException {
         final LongAdder count = new LongAdder();
         final LongAdder size = new LongAdder();
         final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
         final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+        final JBlobSizeHistogram.Recorder histogram = new JBlobSizeHistogram.Recorder();
         try {
-            // note: we are doing sequential here
-            // doesn't make much sense to parallelize it
-            // since we are doing chunked responses from the server anyways...
-            // (we could technically do it faster by spawning a new thread that grabs
-            // the new response as soon as the old ones comes in, but the summing isn't
-            // a very expensive operation as compared to the round trip [I think])
-            summariesStream(false).sequential().forEach(summary -> {
+            // the listing splits on common prefixes, so the partitions of the bucket are listed at the same time
+            summariesStream("", true).forEach(summary -> {
                 count.increment();
                 final long contentLength = summary.getSize();
                 size.add(contentLength);
+                histogram.add(contentLength);
 
                 // we could keep a thread local min around too to avoid unnecessary calls to get
                 long minn;
@@ -176,56 +235,58 @@ public class JBlobS3 implements JBlob {
         } catch (UncheckedIOException e) {
             throw e.getCause();
         }
-        return JBlobStatistics.of(count.sum(), size.sum(), min.get(), max.get());
+        return JBlobStatistics.of(count.sum(), size.sum(), min.get(), max.get(), histogram.snapshot(), Collections.emptyMap());
+    }
+
+    static boolean isNotFound(AmazonClientException e) {
+        return hasStatus(e, HttpStatus.SC_NOT_FOUND);
+    }
+
+    /**
+     * Unlike isNotFound, only true when the key is missing, not the bucket
+     */
+    static boolean isNoSuchKey(AmazonClientException e) {
+        return e instanceof AmazonS3Exception && "NoSuchKey".equals(((AmazonS3Exception) e).getErrorCode());
     }
 
-    private static boolean isNotFound(AmazonClientException e) {
+    static boolean hasStatus(AmazonClientException e, int status) {
         if (e instanceof AmazonS3Exception) {
-            if (((AmazonS3Exception)e).getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+            if (((AmazonS3Exception)e).getStatusCode() == status) {
                 return true;
             }
         }
         return false;
     }
 
-    private static JBlobMeta createBlobMeta(ObjectMetadata objectMetadata) {
-        return JBlobMeta.of(objectMetadata.getContentLength(), objectMetadata.getContentType(), objectMetadata.getUserMetadata());
+    static ObjectMetadata createObjectMetadata(Map<String, String> properties) {
+        final ObjectMetadata m = new ObjectMetadata();
+        m.setUserMetadata(properties);
+        final String contentType = properties.get(Headers.CONTENT_TYPE);
+        if (contentType != null) {
+            m.setContentType(contentType);
+        }
+        final String encoding = properties.get(Headers.CONTENT_ENCODING);
+        if (encoding != null) {
+            m.setContentEncoding(encoding);
+        }
+        final String disposition = properties.get(Headers.CONTENT_DISPOSITION);
+        if (disposition != null) {
+            m.setContentDisposition(disposition);
+        }
+        return m;
     }
 
-
-    private Stream<S3ObjectSummary> summariesStream(boolean parallel) {
-        return StreamSupport.stream(summariesSpliterator(), parallel);
+    static JBlobMeta createBlobMeta(ObjectMetadata objectMetadata) {
+        return JBlobMeta.of(objectMetadata.getContentLength(), objectMetadata.getContentType(), objectMetadata.getUserMetadata());
     }
 
-    private Spliterator<S3ObjectSummary> summariesSpliterator() {
-        return Spliterators.spliteratorUnknownSize(summariesIterator(), Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL);
-    }
 
-    private Iterator<S3ObjectSummary> summariesIterator() {
-        return new LazyIterator<>(() -> {
-            final ObjectListing objectListing;
-            try {
-                objectListing = tx.getAmazonS3Client().listObjects(bucket); // use the default chunking size
-            } catch (AmazonClientException e) {
-                throw new UncheckedIOException(new IOException(e));
-            }
+    private static JBlobEntry createEntry(S3ObjectSummary summary) {
+        final Date lastModified = summary.getLastModified();
+        return JBlobEntry.of(summary.getKey(), summary.getSize(), summary.getETag(), lastModified == null ? null : lastModified.toInstant());
+    }
 
-            final Iterator<ObjectListing> listingIterator = new AbstractSequentialIterator<ObjectListing>(objectListing) {
-                @Override
-                protected ObjectListing computeNext(ObjectListing previous) {
-                    if (!previous.isTruncated()) {
-                        return null;
-                    }
-                    try {
-                        return tx.getAmazonS3Client().listNextBatchOfObjects(previous);
-                    } catch (AmazonClientException e) {
-                        throw new UncheckedIOException(new IOException(e));
-                    }
-                }
-            };
-            // wish we could do this more fluently... but typing it out all here to make it "clear"er
-            final Iterator<Iterator<S3ObjectSummary>> toS3ObjectSummariesIterator = Iterators.transform(listingIterator, o -> o.getObjectSummaries().iterator());
-            return Iterators.concat(toS3ObjectSummariesIterator);
-        });
+    private Stream<S3ObjectSummary> summariesStream(String prefix, boolean parallel) {
+        return StreamSupport.stream(new S3ListingSpliterator(tx.getAmazonS3Client(), bucket, prefix, options.getListDelimiter()), parallel);
     }
 }
@@ -0,0 +1,238 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.event.ProgressEventType;
+import com.amazonaws.event.ProgressListener;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.transfer.Download;
+import com.amazonaws.services.s3.transfer.Transfer;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.devinrsmith.jblob.api.JBlobAsync;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * JBlobAsync over S3. Downloads, and uploads of files, are handed to the TransferManager, and their futures
+ * complete from its progress events, so no thread waits on a transfer while it is in flight.
+ *
+ * Streams still need a thread. An upload's InputStream is read on the executor and sent as it is read, in
+ * multipart parts of the options' partSize, without a temporary file. A finished download is copied from its
+ * temporary file to the OutputStream on the executor too; the Path overloads of download and upload leave
+ * the executor alone. Metadata and delete requests run on the executor as well, since the S3 client only
+ * offers them as blocking calls.
+ */
+public class JBlobS3Async implements JBlobAsync {
+    private final String bucket;
+    private final TransferManager tx;
+    private final S3Options options;
+    private final Executor executor;
+    private final JBlobAsync blocking;
+
+    public JBlobS3Async(String bucket, TransferManager tx, Executor executor) {
+        this(bucket, tx, S3Options.defaults(), executor);
+    }
+
+    public JBlobS3Async(String bucket, TransferManager tx, S3Options options, Executor executor) {
+        this.bucket = Preconditions.checkNotNull(bucket);
+        this.tx = Preconditions.checkNotNull(tx);
+        this.options = Preconditions.checkNotNull(options);
+        this.executor = Preconditions.checkNotNull(executor);
+        this.blocking = JBlobAsync.of(new JBlobS3(bucket, tx, options), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> upload(String key, InputStream in, Map<String, String> properties) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(in);
+        Preconditions.checkNotNull(properties);
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        execute(future, () -> {
+            try {
+                new S3StreamingUpload(tx.getAmazonS3Client(), bucket, key, JBlobS3.createObjectMetadata(properties), options).upload(in);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.completeExceptionally(e);
+                return;
+            }
+            future.complete(null);
+        });
+        return future;
+    }
+
+    /**
+     * Uploads file as it is, without spooling, so nothing runs on the executor until the transfer is done
+     */
+    public CompletableFuture<Void> upload(String key, Path file, Map<String, String> properties) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(properties);
+
+        final ObjectMetadata m = JBlobS3.createObjectMetadata(properties);
+        m.setContentLength(file.toFile().length());
+        try {
+            return whenDone(tx.upload(new PutObjectRequest(bucket, key, file.toFile()).withMetadata(m)));
+        } catch (AmazonClientException e) {
+            return failed(new IOException(e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<JBlobMeta>> download(String key, OutputStream out) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(out);
+
+        final Path tmp;
+        try {
+            tmp = Files.createTempFile("s3-" + bucket, null);
+        } catch (IOException e) {
+            return failed(e);
+        }
+        final CompletableFuture<Optional<JBlobMeta>> future = new CompletableFuture<>();
+        download(key, tmp).whenComplete((meta, e) -> {
+            if (e != null || !meta.isPresent()) {
+                delete(tmp);
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(meta);
+                }
+                return;
+            }
+            // the transfer settles on the executor, where blocking on out is fine
+            try (final InputStream localIn = Files.newInputStream(tmp, StandardOpenOption.DELETE_ON_CLOSE)) {
+                ByteStreams.copy(localIn, out);
+                future.complete(meta);
+            } catch (IOException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Downloads straight to file, replacing it, so nothing runs on the executor until the transfer is done.
+     * file is left in an unspecified state when the blob is missing or the download fails.
+     */
+    public CompletableFuture<Optional<JBlobMeta>> download(String key, Path file) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkNotNull(file);
+
+        final Download download;
+        try {
+            download = tx.download(bucket, key, file.toFile());
+        } catch (AmazonClientException e) {
+            return JBlobS3.isNotFound(e) ? CompletableFuture.completedFuture(Optional.empty()) : failed(new IOException(e));
+        }
+        return whenDone(download).handle((v, e) -> {
+            if (e == null) {
+                return Optional.of(JBlobS3.createBlobMeta(download.getObjectMetadata()));
+            }
+            if (e.getCause() instanceof AmazonClientException && JBlobS3.isNotFound((AmazonClientException) e.getCause())) {
+                return Optional.empty();
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<JBlobMeta>> downloadMetadata(String key) {
+        return blocking.downloadMetadata(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String key) {
+        return blocking.delete(key);
+    }
+
+    /**
+     * Completes on the executor once transfer has, failing with an IOException wrapping the transfer's
+     * AmazonClientException
+     */
+    private CompletableFuture<Void> whenDone(Transfer transfer) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final AtomicBoolean settled = new AtomicBoolean();
+        final Runnable settle = () -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            // the event can arrive just before the transfer's own future is done, so wait for it elsewhere
+            execute(future, () -> {
+                final AmazonClientException e;
+                try {
+                    e = transfer.waitForException();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(ie);
+                    return;
+                }
+                if (e == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(new IOException(e));
+                }
+            });
+        };
+        transfer.addProgressListener((ProgressListener) event -> {
+            final ProgressEventType type = event.getEventType();
+            if (type == ProgressEventType.TRANSFER_COMPLETED_EVENT
+                    || type == ProgressEventType.TRANSFER_FAILED_EVENT
+                    || type == ProgressEventType.TRANSFER_CANCELED_EVENT) {
+                settle.run();
+            }
+        });
+        if (transfer.isDone()) {
+            // finished before the listener was added
+            settle.run();
+        }
+        return future;
+    }
+
+    private interface Work {
+        void run() throws IOException;
+    }
+
+    private void execute(CompletableFuture<?> future, Work work) {
+        try {
+            executor.execute(() -> {
+                try {
+                    work.run();
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // rejected
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable t) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private static void delete(Path tmp) {
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            // left for the OS to clean up
+        }
+    }
+}
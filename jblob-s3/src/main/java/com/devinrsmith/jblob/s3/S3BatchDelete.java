@@ -0,0 +1,96 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.devinrsmith.jblob.api.JBlobDeleteException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Deletes keys with multi-object deletes of up to 1000 keys each, deletesInFlight of them at a time.
+ *
+ * Keys are pulled from the stream only as batches are sent, so a listing can be deleted as it is read.
+ * Keys S3 reports as failed, or whose whole batch failed, are collected into a {@link JBlobDeleteException}
+ * thrown once everything has been tried.
+ */
+class S3BatchDelete {
+    /**
+     * S3 deletes at most 1000 keys per request
+     */
+    static final int MAX_BATCH = 1000;
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final S3Options options;
+
+    S3BatchDelete(AmazonS3 s3, String bucket, S3Options options) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.options = options;
+    }
+
+    void delete(Stream<String> keys) throws IOException {
+        final Iterator<String> it = keys.sequential().iterator();
+        final Deque<Future<Map<String, IOException>>> window = new ArrayDeque<>();
+        final Map<String, IOException> failures = new LinkedHashMap<>();
+        try {
+            while (true) {
+                while (window.size() < options.getDeletesInFlight() && it.hasNext()) {
+                    final List<String> batch = new ArrayList<>(MAX_BATCH);
+                    while (batch.size() < MAX_BATCH && it.hasNext()) {
+                        batch.add(it.next());
+                    }
+                    window.add(options.getExecutor().submit(() -> deleteBatch(batch)));
+                }
+                if (window.isEmpty()) {
+                    break;
+                }
+                failures.putAll(window.remove().get());
+            }
+        } catch (UncheckedIOException e) {
+            window.forEach(f -> f.cancel(true));
+            throw e.getCause();
+        } catch (ExecutionException e) {
+            window.forEach(f -> f.cancel(true));
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            window.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (!failures.isEmpty()) {
+            throw new JBlobDeleteException(failures);
+        }
+    }
+
+    private Map<String, IOException> deleteBatch(List<String> batch) {
+        final Map<String, IOException> failures = new LinkedHashMap<>();
+        try {
+            s3.deleteObjects(new DeleteObjectsRequest(bucket)
+                    .withKeys(batch.toArray(new String[batch.size()]))
+                    .withQuiet(true));
+        } catch (MultiObjectDeleteException e) {
+            for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                failures.put(error.getKey(), new IOException(String.format("%s: %s", error.getCode(), error.getMessage())));
+            }
+        } catch (AmazonClientException e) {
+            final IOException failure = new IOException(e);
+            batch.forEach(key -> failures.put(key, failure));
+        }
+        return failures;
+    }
+}
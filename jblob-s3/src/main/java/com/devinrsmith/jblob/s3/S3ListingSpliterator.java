@@ -0,0 +1,132 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lists the objects under a prefix, splitting the key space on common prefixes so the partitions can be
+ * listed at the same time.
+ *
+ * Left alone, this is a plain flat listing, page after page. Asked to split, it lists with a delimiter
+ * instead, which turns the "directories" at that level into common prefixes; those prefixes are handed out
+ * to the split-off spliterators, each of which lists (or splits) its share independently. Keys that don't
+ * contain the delimiter can't be partitioned this way and are listed by whichever spliterator finds them.
+ */
+class S3ListingSpliterator implements Spliterator<S3ObjectSummary> {
+    // how many summaries splitting may buffer while looking for more prefixes
+    private static final int DISCOVERY_LIMIT = 10000;
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String delimiter;
+
+    // prefixes this spliterator is responsible for that nobody has started listing
+    private final Deque<String> pending;
+    private final Deque<S3ObjectSummary> buffer = new ArrayDeque<>();
+    // the listing in progress, if any; only delimited listings add prefixes to pending
+    private ObjectListing current;
+    private boolean currentDelimited;
+
+    S3ListingSpliterator(AmazonS3 s3, String bucket, String prefix, String delimiter) {
+        this(s3, bucket, delimiter, new ArrayDeque<>());
+        pending.add(prefix);
+    }
+
+    private S3ListingSpliterator(AmazonS3 s3, String bucket, String delimiter, Deque<String> pending) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.delimiter = delimiter;
+        this.pending = pending;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super S3ObjectSummary> action) {
+        while (buffer.isEmpty()) {
+            if (current != null && current.isTruncated()) {
+                fetch(listNext(current), currentDelimited);
+            } else if (!pending.isEmpty()) {
+                // nobody wants this one split, one flat listing covers everything under it in the fewest requests
+                fetch(list(pending.remove(), false), false);
+            } else {
+                return false;
+            }
+        }
+        action.accept(buffer.remove());
+        return true;
+    }
+
+    @Override
+    public Spliterator<S3ObjectSummary> trySplit() {
+        if (!isFlatListing()) {
+            // look for prefixes until there are enough to share, a flat listing in progress has none to give
+            while (pending.size() < 2 && buffer.size() < DISCOVERY_LIMIT) {
+                if (current != null && current.isTruncated()) {
+                    fetch(listNext(current), currentDelimited);
+                } else if (!pending.isEmpty()) {
+                    fetch(list(pending.remove(), true), true);
+                } else {
+                    break;
+                }
+            }
+        }
+        if (pending.size() < 2) {
+            return null;
+        }
+        final Deque<String> half = new ArrayDeque<>();
+        for (int i = pending.size() / 2; i > 0; --i) {
+            half.addFirst(pending.removeLast());
+        }
+        return new S3ListingSpliterator(s3, bucket, delimiter, half);
+    }
+
+    @Override
+    public long estimateSize() {
+        return buffer.isEmpty() && pending.isEmpty() && (current == null || !current.isTruncated()) ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.DISTINCT | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+    }
+
+    private boolean isFlatListing() {
+        return current != null && current.isTruncated() && !currentDelimited;
+    }
+
+    private void fetch(ObjectListing listing, boolean delimited) {
+        current = listing;
+        currentDelimited = delimited;
+        buffer.addAll(listing.getObjectSummaries());
+        pending.addAll(listing.getCommonPrefixes());
+    }
+
+    private ObjectListing list(String prefix, boolean delimited) {
+        final ListObjectsRequest request = new ListObjectsRequest()
+                .withBucketName(bucket)
+                .withPrefix(prefix.isEmpty() ? null : prefix)
+                .withDelimiter(delimited ? delimiter : null);
+        try {
+            return s3.listObjects(request);
+        } catch (AmazonClientException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+    private ObjectListing listNext(ObjectListing previous) {
+        try {
+            return s3.listNextBatchOfObjects(previous);
+        } catch (AmazonClientException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.devinrsmith.jblob.s3;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tuning knobs for {@link JBlobS3}.
+ *
+ * Streaming transfers move blobs in partSize pieces: multipart parts on the way up, byte ranges on the
+ * way down. Streaming uploads hold at most (partsInFlight + 1) * partSize bytes in memory per upload,
+ * streaming downloads at most partsInFlight * partSize bytes per download.
+ */
+public class S3Options {
+    /**
+     * S3 rejects multipart uploads whose (non-final) parts are smaller than 5MB
+     */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * S3 allows at most 10000 parts per multipart upload
+     */
+    public static final int MAX_PARTS = 10000;
+
+    /**
+     * S3 copies at most 5GB per request, whether that is a whole object or one part
+     */
+    public static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+
+    public static S3Options defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final boolean streamingUpload;
+    private final boolean streamingDownload;
+    private final int partSize;
+    private final int partsInFlight;
+    private final long copyPartSize;
+    private final String listDelimiter;
+    private final int deletesInFlight;
+    private final int headsInFlight;
+    private final ExecutorService executor;
+
+    private S3Options(Builder builder) {
+        this.streamingUpload = builder.streamingUpload;
+        this.streamingDownload = builder.streamingDownload;
+        this.partSize = builder.partSize;
+        this.partsInFlight = builder.partsInFlight;
+        this.copyPartSize = builder.copyPartSize;
+        this.listDelimiter = builder.listDelimiter;
+        this.deletesInFlight = builder.deletesInFlight;
+        this.headsInFlight = builder.headsInFlight;
+        this.executor = builder.executor == null ? DefaultExecutor.INSTANCE : builder.executor;
+    }
+
+    /**
+     * When true, uploads are cut into in-memory parts and sent as they are read. When false, uploads
+     * are spooled to a temporary file first and handed to the TransferManager.
+     */
+    public boolean isStreamingUpload() {
+        return streamingUpload;
+    }
+
+    /**
+     * When true, downloads are written straight to the caller's OutputStream while the following byte
+     * ranges are fetched in parallel. When false, downloads go through a temporary file via the TransferManager.
+     */
+    public boolean isStreamingDownload() {
+        return streamingDownload;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public int getPartsInFlight() {
+        return partsInFlight;
+    }
+
+    /**
+     * Server-side copies of objects larger than this are split into parts of this size and copied in parallel
+     */
+    public long getCopyPartSize() {
+        return copyPartSize;
+    }
+
+    /**
+     * Parallel listings partition the bucket on the common prefixes this delimiter produces
+     */
+    public String getListDelimiter() {
+        return listDelimiter;
+    }
+
+    /**
+     * How many multi-object delete requests, of up to 1000 keys each, a deleteAll sends at once
+     */
+    public int getDeletesInFlight() {
+        return deletesInFlight;
+    }
+
+    /**
+     * How many HEAD requests a batch metadata lookup sends at once. They share the client's connection pool,
+     * so this is best kept within its maxConnections.
+     */
+    public int getHeadsInFlight() {
+        return headsInFlight;
+    }
+
+    /**
+     * The executor that transfers parts and sends delete batches and metadata lookups. Tasks submitted here block
+     * on network I/O.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public static class Builder {
+        private boolean streamingUpload = true;
+        private boolean streamingDownload = true;
+        private int partSize = 8 * 1024 * 1024;
+        private int partsInFlight = 4;
+        private long copyPartSize = 128 * 1024 * 1024;
+        private String listDelimiter = "/";
+        private int deletesInFlight = 4;
+        private int headsInFlight = 16;
+        private ExecutorService executor;
+
+        private Builder() {}
+
+        public Builder streamingUpload(boolean streamingUpload) {
+            this.streamingUpload = streamingUpload;
+            return this;
+        }
+
+        public Builder streamingDownload(boolean streamingDownload) {
+            this.streamingDownload = streamingDownload;
+            return this;
+        }
+
+        public Builder partSize(int partSize) {
+            Preconditions.checkArgument(partSize >= MIN_PART_SIZE, "partSize must be at least %s", MIN_PART_SIZE);
+            this.partSize = partSize;
+            return this;
+        }
+
+        public Builder partsInFlight(int partsInFlight) {
+            Preconditions.checkArgument(partsInFlight > 0, "partsInFlight must be positive");
+            this.partsInFlight = partsInFlight;
+            return this;
+        }
+
+        public Builder copyPartSize(long copyPartSize) {
+            Preconditions.checkArgument(copyPartSize >= MIN_PART_SIZE && copyPartSize <= MAX_COPY_SIZE,
+                    "copyPartSize must be between %s and %s", MIN_PART_SIZE, MAX_COPY_SIZE);
+            this.copyPartSize = copyPartSize;
+            return this;
+        }
+
+        public Builder listDelimiter(String listDelimiter) {
+            Preconditions.checkArgument(!listDelimiter.isEmpty(), "listDelimiter must not be empty");
+            this.listDelimiter = listDelimiter;
+            return this;
+        }
+
+        public Builder deletesInFlight(int deletesInFlight) {
+            Preconditions.checkArgument(deletesInFlight > 0, "deletesInFlight must be positive");
+            this.deletesInFlight = deletesInFlight;
+            return this;
+        }
+
+        public Builder headsInFlight(int headsInFlight) {
+            Preconditions.checkArgument(headsInFlight > 0, "headsInFlight must be positive");
+            this.headsInFlight = headsInFlight;
+            return this;
+        }
+
+        public Builder executor(ExecutorService executor) {
+            this.executor = Preconditions.checkNotNull(executor);
+            return this;
+        }
+
+        public S3Options build() {
+            return new S3Options(this);
+        }
+    }
+
+    private static class DefaultExecutor {
+        // the concurrency is bounded per transfer (partsInFlight), so an unbounded pool of daemon threads is fine here
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("jblob-s3-%d")
+                .build());
+    }
+}
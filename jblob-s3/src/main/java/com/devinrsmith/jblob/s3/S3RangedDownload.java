@@ -0,0 +1,145 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.google.common.io.ByteStreams;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads an object, or a byte range of it, straight into an OutputStream without touching the local disk.
+ *
+ * The first partSize bytes are streamed to the caller as they arrive, while the following byte ranges are
+ * fetched in parallel into memory. Ranges are written out in order; at most partsInFlight of them are
+ * buffered at once. Every range after the first is pinned to the first response's ETag, so an object that
+ * is overwritten mid-download fails the download rather than producing a mix of versions.
+ */
+class S3RangedDownload {
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String key;
+    private final S3Options options;
+
+    S3RangedDownload(AmazonS3 s3, String bucket, String key, S3Options options) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.options = options;
+    }
+
+    Optional<ObjectMetadata> download(OutputStream out) throws IOException, InterruptedException {
+        return download(0, Long.MAX_VALUE, out);
+    }
+
+    /**
+     * Downloads length bytes starting at offset, fewer if the object ends first. Returns the metadata of the
+     * whole object (the content length is the full object length), or empty if the object does not exist.
+     */
+    Optional<ObjectMetadata> download(long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        if (length == 0) {
+            return head();
+        }
+        final long partSize = options.getPartSize();
+        final S3Object first;
+        try {
+            first = s3.getObject(new GetObjectRequest(bucket, key).withRange(offset, offset + Math.min(length, partSize) - 1));
+        } catch (AmazonClientException e) {
+            if (JBlobS3.isNotFound(e)) {
+                return Optional.empty();
+            }
+            if (JBlobS3.hasStatus(e, HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE)) {
+                // offset is past the end, which includes every offset of an empty object
+                return head();
+            }
+            throw new IOException(e);
+        }
+
+        final ObjectMetadata metadata = first.getObjectMetadata();
+        final long objectLength = metadata.getInstanceLength();
+        final long end = length > objectLength - offset ? objectLength : offset + length;
+        final String etag = metadata.getETag();
+        final long parts = (end - offset + partSize - 1) / partSize;
+
+        final Deque<Future<byte[]>> window = new ArrayDeque<>();
+        long nextPart = 1;
+        final S3ObjectInputStream firstIn = first.getObjectContent();
+        boolean firstDone = false;
+        try {
+            for (; nextPart < parts && window.size() < options.getPartsInFlight(); ++nextPart) {
+                window.add(fetch(nextPart, offset, end, etag));
+            }
+            ByteStreams.copy(firstIn, out);
+            firstIn.close();
+            firstDone = true;
+            while (!window.isEmpty()) {
+                out.write(window.remove().get());
+                if (nextPart < parts) {
+                    window.add(fetch(nextPart++, offset, end, etag));
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            window.forEach(f -> f.cancel(true));
+            if (!firstDone) {
+                // don't drain the rest of the first range just to reuse the connection
+                firstIn.abort();
+            }
+        }
+
+        // the metadata describes the first range, report the object as a whole
+        metadata.setContentLength(objectLength);
+        return Optional.of(metadata);
+    }
+
+    private Optional<ObjectMetadata> head() throws IOException {
+        try {
+            return Optional.of(s3.getObjectMetadata(bucket, key));
+        } catch (AmazonClientException e) {
+            if (JBlobS3.isNotFound(e)) {
+                return Optional.empty();
+            }
+            throw new IOException(e);
+        }
+    }
+
+    private Future<byte[]> fetch(long part, long offset, long rangeEnd, String etag) {
+        final long start = offset + part * options.getPartSize();
+        final long end = Math.min(start + options.getPartSize(), rangeEnd) - 1;
+        return options.getExecutor().submit(() -> {
+            final GetObjectRequest request = new GetObjectRequest(bucket, key)
+                    .withRange(start, end)
+                    .withMatchingETagConstraint(etag);
+            final S3Object object;
+            try {
+                object = s3.getObject(request);
+            } catch (AmazonClientException e) {
+                throw new IOException(e);
+            }
+            if (object == null) {
+                // the SDK returns null when the ETag constraint isn't met
+                throw new IOException(String.format("%s changed during download", key));
+            }
+            final byte[] bytes = new byte[(int) (end - start + 1)];
+            try (final InputStream in = object.getObjectContent()) {
+                ByteStreams.readFully(in, bytes);
+            }
+            return bytes;
+        });
+    }
+}
@@ -0,0 +1,190 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Copies an object between buckets (or within one) without the bytes leaving S3.
+ *
+ * The source is looked at with the source bucket's client, the copy itself is issued by the destination
+ * bucket's client, so buckets in different regions work too. Objects larger than copyPartSize are copied as
+ * a multipart upload whose parts are copied in parallel; this is also the only way to copy objects larger
+ * than 5GB. Every request is pinned to the source ETag that was looked at.
+ */
+class S3ServerSideCopy {
+    private final AmazonS3 sourceS3;
+    private final String sourceBucket;
+    private final String sourceKey;
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String key;
+    private final S3Options options;
+
+    S3ServerSideCopy(AmazonS3 sourceS3, String sourceBucket, String sourceKey, AmazonS3 s3, String bucket, String key, S3Options options) {
+        this.sourceS3 = sourceS3;
+        this.sourceBucket = sourceBucket;
+        this.sourceKey = sourceKey;
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.options = options;
+    }
+
+    void copy() throws IOException, InterruptedException {
+        if (sourceBucket.equals(bucket) && sourceKey.equals(key)) {
+            return;
+        }
+
+        final ObjectMetadata source;
+        try {
+            source = sourceS3.getObjectMetadata(sourceBucket, sourceKey);
+        } catch (AmazonClientException e) {
+            if (JBlobS3.isNotFound(e)) {
+                return;
+            }
+            throw new IOException(e);
+        }
+
+        if (source.getContentLength() <= options.getCopyPartSize()) {
+            final CopyObjectRequest request = new CopyObjectRequest(sourceBucket, sourceKey, bucket, key)
+                    .withMatchingETagConstraint(source.getETag());
+            try {
+                if (s3.copyObject(request) == null) {
+                    throw new IOException(String.format("%s changed during copy", sourceKey));
+                }
+            } catch (AmazonClientException e) {
+                // the source went away since it was looked at; a missing destination bucket is an error
+                if (JBlobS3.isNoSuchKey(e)) {
+                    return;
+                }
+                throw new IOException(e);
+            }
+            return;
+        }
+        copyMultipart(source);
+    }
+
+    private void copyMultipart(ObjectMetadata source) throws IOException, InterruptedException {
+        final String uploadId;
+        try {
+            uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, destinationMetadata(source))).getUploadId();
+        } catch (AmazonClientException e) {
+            throw new IOException(e);
+        }
+
+        final long length = source.getContentLength();
+        final long partSize = options.getCopyPartSize();
+        final long parts = (length + partSize - 1) / partSize;
+        if (parts > S3Options.MAX_PARTS) {
+            throw abort(uploadId, new IOException(String.format("Copy of %s exceeds %d parts, use a larger copyPartSize", sourceKey, S3Options.MAX_PARTS)));
+        }
+
+        final Deque<Future<PartETag>> window = new ArrayDeque<>();
+        final List<PartETag> etags = new ArrayList<>();
+        try {
+            int nextPart = 1;
+            for (; nextPart <= parts && window.size() < options.getPartsInFlight(); ++nextPart) {
+                window.add(copyPart(uploadId, nextPart, length, source.getETag()));
+            }
+            while (!window.isEmpty()) {
+                final PartETag etag = window.remove().get();
+                if (etag == null) {
+                    // the source went away mid-copy, like a single copy there is nothing left to copy
+                    window.forEach(f -> f.cancel(true));
+                    s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+                    return;
+                }
+                etags.add(etag);
+                if (nextPart <= parts) {
+                    window.add(copyPart(uploadId, nextPart++, length, source.getETag()));
+                }
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+        } catch (ExecutionException e) {
+            window.forEach(f -> f.cancel(true));
+            throw abort(uploadId, e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+        } catch (AmazonClientException e) {
+            throw abort(uploadId, new IOException(e));
+        } catch (InterruptedException e) {
+            window.forEach(f -> f.cancel(true));
+            throw abort(uploadId, e);
+        }
+    }
+
+    /**
+     * The part's ETag, or null if the source no longer exists
+     */
+    private Future<PartETag> copyPart(String uploadId, int partNumber, long length, String etag) {
+        final long first = (partNumber - 1) * options.getCopyPartSize();
+        final long last = Math.min(first + options.getCopyPartSize(), length) - 1;
+        return options.getExecutor().submit(() -> {
+            final CopyPartRequest request = new CopyPartRequest()
+                    .withSourceBucketName(sourceBucket)
+                    .withSourceKey(sourceKey)
+                    .withDestinationBucketName(bucket)
+                    .withDestinationKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withFirstByte(first)
+                    .withLastByte(last)
+                    .withMatchingETagConstraint(etag);
+            final CopyPartResult result;
+            try {
+                result = s3.copyPart(request);
+            } catch (AmazonClientException e) {
+                if (JBlobS3.isNoSuchKey(e)) {
+                    return null;
+                }
+                throw new IOException(e);
+            }
+            if (result == null) {
+                throw new IOException(String.format("%s changed during copy", sourceKey));
+            }
+            return result.getPartETag();
+        });
+    }
+
+    private <T extends Exception> T abort(String uploadId, T e) {
+        try {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (AmazonClientException abortException) {
+            e.addSuppressed(abortException);
+        }
+        return e;
+    }
+
+    // a single CopyObject carries the metadata over by itself, a multipart copy has to be told
+    private static ObjectMetadata destinationMetadata(ObjectMetadata source) {
+        final ObjectMetadata m = new ObjectMetadata();
+        m.setUserMetadata(source.getUserMetadata());
+        if (source.getContentType() != null) {
+            m.setContentType(source.getContentType());
+        }
+        if (source.getContentEncoding() != null) {
+            m.setContentEncoding(source.getContentEncoding());
+        }
+        if (source.getContentDisposition() != null) {
+            m.setContentDisposition(source.getContentDisposition());
+        }
+        if (source.getCacheControl() != null) {
+            m.setCacheControl(source.getCacheControl());
+        }
+        return m;
+    }
+}
@@ -0,0 +1,171 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Uploads an InputStream of unknown length without touching the local disk.
+ *
+ * The stream is cut into partSize buffers; each full buffer is uploaded as a multipart part on the executor
+ * while the next one is being read. Buffers are recycled, so at most partsInFlight + 1 of them exist at once.
+ * Streams that fit into a single part are sent with a plain PUT, from a buffer that only grows as large as
+ * they turn out to be.
+ */
+class S3StreamingUpload {
+    // where the first part's buffer starts, it doubles up to partSize as the stream keeps going
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final String key;
+    private final ObjectMetadata metadata;
+    private final S3Options options;
+
+    S3StreamingUpload(AmazonS3 s3, String bucket, String key, ObjectMetadata metadata, S3Options options) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.metadata = metadata;
+        this.options = options;
+    }
+
+    void upload(InputStream in) throws IOException, InterruptedException {
+        final int partSize = options.getPartSize();
+        byte[] first = new byte[Math.min(partSize, INITIAL_BUFFER)];
+        int firstLength = 0;
+        while (true) {
+            firstLength += ByteStreams.read(in, first, firstLength, first.length - firstLength);
+            if (firstLength < first.length || first.length == partSize) {
+                break;
+            }
+            first = Arrays.copyOf(first, (int) Math.min(partSize, 2L * first.length));
+        }
+        if (firstLength < partSize) {
+            metadata.setContentLength(firstLength);
+            try {
+                s3.putObject(bucket, key, new ByteArrayInputStream(first, 0, firstLength), metadata);
+            } catch (AmazonClientException e) {
+                throw new IOException(e);
+            }
+            return;
+        }
+
+        final String uploadId;
+        try {
+            uploadId = s3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+        } catch (AmazonClientException e) {
+            throw new IOException(e);
+        }
+
+        final List<Future<PartETag>> parts = new ArrayList<>();
+        try {
+            uploadParts(in, first, uploadId, parts);
+            final List<PartETag> etags = new ArrayList<>(parts.size());
+            for (Future<PartETag> part : parts) {
+                etags.add(part.get());
+            }
+            s3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, etags));
+        } catch (ExecutionException e) {
+            throw abort(uploadId, parts, new IOException(e.getCause()));
+        } catch (AmazonClientException e) {
+            throw abort(uploadId, parts, new IOException(e));
+        } catch (IOException e) {
+            throw abort(uploadId, parts, e);
+        } catch (InterruptedException e) {
+            throw abort(uploadId, parts, e);
+        } catch (RuntimeException e) {
+            throw abort(uploadId, parts, e);
+        }
+    }
+
+    private <T extends Exception> T abort(String uploadId, List<Future<PartETag>> parts, T e) {
+        parts.forEach(f -> f.cancel(true));
+        try {
+            s3.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (AmazonClientException abortException) {
+            e.addSuppressed(abortException);
+        }
+        return e;
+    }
+
+    private void uploadParts(InputStream in, byte[] first, String uploadId, List<Future<PartETag>> parts) throws IOException, InterruptedException, ExecutionException {
+        final int partSize = options.getPartSize();
+        final int maxBuffers = options.getPartsInFlight() + 1;
+        final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(maxBuffers);
+        final AtomicBoolean failed = new AtomicBoolean();
+        int allocated = 1;
+        byte[] buffer = first;
+        int length = partSize;
+        while (true) {
+            final int partNumber = parts.size() + 1;
+            if (partNumber > S3Options.MAX_PARTS) {
+                throw new IOException(String.format("Upload of %s exceeds %d parts, use a larger partSize", key, S3Options.MAX_PARTS));
+            }
+            parts.add(submitPart(uploadId, partNumber, buffer, length, free, failed));
+            if (length < partSize) {
+                return;
+            }
+
+            // recycle a buffer if one is free, allocate while under the limit, otherwise wait for a part to finish
+            byte[] next = free.poll();
+            if (next == null) {
+                if (allocated < maxBuffers) {
+                    next = new byte[partSize];
+                    ++allocated;
+                } else {
+                    next = free.take();
+                }
+            }
+            if (failed.get()) {
+                // surface the part failure now rather than reading the rest of the stream
+                for (Future<PartETag> part : parts) {
+                    part.get();
+                }
+            }
+            length = ByteStreams.read(in, next, 0, partSize);
+            if (length == 0) {
+                return;
+            }
+            buffer = next;
+        }
+    }
+
+    private Future<PartETag> submitPart(String uploadId, int partNumber, byte[] buffer, int length, BlockingQueue<byte[]> free, AtomicBoolean failed) {
+        return options.getExecutor().submit(() -> {
+            try {
+                final UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(bucket)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                        .withPartSize(length);
+                return s3.uploadPart(request).getPartETag();
+            } catch (RuntimeException e) {
+                failed.set(true);
+                throw e;
+            } finally {
+                free.offer(buffer);
+            }
+        });
+    }
+}
@@ -0,0 +1,585 @@
+package com.devinrsmith.jblob.s3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A small in-process S3 endpoint, good enough to drive JBlobS3 offline.
+ *
+ * Supports path-style put / get (with ranges) / head / delete, listing with prefix, delimiter and marker,
+ * multi-object delete, server-side copy, and multipart upload (including part copies). If-Match is honored on
+ * reads and copy sources. Requests are not authenticated and everything is kept on the heap.
+ */
+public class FakeS3 implements Closeable {
+    private static final Pattern PART = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+    private static final Pattern KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private static class Blob {
+        final byte[] data;
+        final String etag;
+        final Map<String, String> headers;
+        final Date lastModified = new Date();
+
+        Blob(byte[] data, String etag, Map<String, String> headers) {
+            this.data = data;
+            this.etag = etag;
+            this.headers = headers;
+        }
+    }
+
+    private static class MultipartUpload {
+        final String bucket;
+        final String key;
+        final Map<String, String> headers;
+        final ConcurrentNavigableMap<Integer, byte[]> parts = new ConcurrentSkipListMap<>();
+
+        MultipartUpload(String bucket, String key, Map<String, String> headers) {
+            this.bucket = bucket;
+            this.key = key;
+            this.headers = headers;
+        }
+    }
+
+    private final ServerSocket server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, ConcurrentNavigableMap<String, Blob>> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    public FakeS3() throws IOException {
+        server = new ServerSocket(0, 256, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "fake-s3");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::accept);
+    }
+
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getLocalPort();
+    }
+
+    public void createBucket(String bucket) {
+        buckets.putIfAbsent(bucket, new ConcurrentSkipListMap<>());
+    }
+
+    /**
+     * The number of requests served so far, handy for asserting round trips.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * The number of multipart uploads initiated but neither completed nor aborted.
+     */
+    public int getUploadsInProgress() {
+        return uploads.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            final Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            executor.execute(() -> serve(socket));
+        }
+    }
+
+    // a deliberately tiny HTTP/1.1 server: keep-alive, content-length bodies and "Expect: 100-continue";
+    // we don't use com.sun.net.httpserver since it normalizes header names, and the SDK is case sensitive
+    private void serve(Socket socket) {
+        try (final Socket s = socket) {
+            s.setTcpNoDelay(true);
+            final InputStream in = new BufferedInputStream(s.getInputStream(), 65536);
+            final OutputStream out = new BufferedOutputStream(s.getOutputStream(), 65536);
+            while (true) {
+                final String requestLine = readLine(in);
+                if (requestLine == null) {
+                    return;
+                }
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                final Exchange exchange = new Exchange(requestLine);
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    final int colon = line.indexOf(':');
+                    exchange.requestHeaders.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+                }
+                if ("100-continue".equalsIgnoreCase(exchange.requestHeaders.get("Expect"))) {
+                    out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                }
+                final String length = exchange.requestHeaders.get("Content-Length");
+                exchange.body = new byte[length == null ? 0 : Integer.parseInt(length)];
+                readFully(in, exchange.body);
+                handle(exchange);
+                exchange.respond(out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // connection closed
+        }
+    }
+
+    private static class Exchange {
+        final String method;
+        final String rawPath;
+        final String rawQuery;
+        final Map<String, String> requestHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        final Map<String, String> responseHeaders = new LinkedHashMap<>();
+        byte[] body;
+        int status = 200;
+        byte[] responseBody = new byte[0];
+        int responseOffset;
+        int responseLength;
+
+        Exchange(String requestLine) {
+            final String[] parts = requestLine.split(" ");
+            method = parts[0];
+            final int q = parts[1].indexOf('?');
+            rawPath = q < 0 ? parts[1] : parts[1].substring(0, q);
+            rawQuery = q < 0 ? null : parts[1].substring(q + 1);
+        }
+
+        void respond(OutputStream out) throws IOException {
+            final StringBuilder sb = new StringBuilder("HTTP/1.1 ").append(status).append(status < 300 ? " OK" : " Error").append("\r\n");
+            for (Map.Entry<String, String> e : responseHeaders.entrySet()) {
+                sb.append(e.getKey()).append(": ").append(e.getValue()).append("\r\n");
+            }
+            if (!responseHeaders.containsKey("Content-Length")) {
+                sb.append("Content-Length: ").append(responseLength).append("\r\n");
+            }
+            sb.append("\r\n");
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            if (!"HEAD".equals(method)) {
+                out.write(responseBody, responseOffset, responseLength);
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                final int len = sb.length();
+                return len > 0 && sb.charAt(len - 1) == '\r' ? sb.substring(0, len - 1) : sb.toString();
+            }
+            sb.append((char) c);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static void readFully(InputStream in, byte[] b) throws IOException {
+        int off = 0;
+        while (off < b.length) {
+            final int read = in.read(b, off, b.length - off);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            off += read;
+        }
+    }
+
+    private void handle(Exchange exchange) {
+        requests.incrementAndGet();
+        try {
+            final String path = exchange.rawPath;
+            final int slash = path.indexOf('/', 1);
+            final String bucket = decode(slash < 0 ? path.substring(1) : path.substring(1, slash));
+            final String key = slash < 0 || slash == path.length() - 1 ? null : decode(path.substring(slash + 1));
+            final Map<String, String> query = parseQuery(exchange.rawQuery);
+            final ConcurrentNavigableMap<String, Blob> objects = buckets.get(bucket);
+            if (objects == null) {
+                error(exchange, 404, "NoSuchBucket");
+                return;
+            }
+            final String method = exchange.method;
+            if (key == null) {
+                if ("GET".equals(method)) {
+                    list(exchange, bucket, objects, query);
+                } else if ("POST".equals(method) && query.containsKey("delete")) {
+                    deleteObjects(exchange, objects);
+                } else {
+                    error(exchange, 405, "MethodNotAllowed");
+                }
+                return;
+            }
+            switch (method) {
+                case "PUT":
+                    put(exchange, bucket, key, objects, query);
+                    break;
+                case "POST":
+                    post(exchange, bucket, key, objects, query);
+                    break;
+                case "GET":
+                case "HEAD":
+                    get(exchange, objects.get(key));
+                    break;
+                case "DELETE":
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.status = 204;
+                    break;
+                default:
+                    error(exchange, 405, "MethodNotAllowed");
+            }
+        } catch (RuntimeException e) {
+            exchange.responseHeaders.clear();
+            error(exchange, 500, "InternalError");
+        }
+    }
+
+    private void put(Exchange exchange, String bucket, String key, ConcurrentNavigableMap<String, Blob> objects, Map<String, String> query) {
+        final Map<String, String> headers = exchange.requestHeaders;
+        final String copySource = headers.get("x-amz-copy-source");
+        final byte[] data;
+        if (copySource != null) {
+            final String source = decode(copySource.startsWith("/") ? copySource.substring(1) : copySource);
+            final int slash = source.indexOf('/');
+            final ConcurrentNavigableMap<String, Blob> sourceObjects = buckets.get(source.substring(0, slash));
+            final Blob sourceBlob = sourceObjects == null ? null : sourceObjects.get(source.substring(slash + 1));
+            if (sourceBlob == null) {
+                error(exchange, 404, "NoSuchKey");
+                return;
+            }
+            final String ifMatch = headers.get("x-amz-copy-source-if-match");
+            if (ifMatch != null && !ifMatch.replace("\"", "").equals(sourceBlob.etag)) {
+                error(exchange, 412, "PreconditionFailed");
+                return;
+            }
+            final String range = headers.get("x-amz-copy-source-range");
+            if (range != null) {
+                final Matcher m = RANGE.matcher(range);
+                if (!m.matches()) {
+                    error(exchange, 400, "InvalidArgument");
+                    return;
+                }
+                data = Arrays.copyOfRange(sourceBlob.data, Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) + 1);
+            } else {
+                data = sourceBlob.data;
+            }
+            if (query.containsKey("uploadId")) {
+                final MultipartUpload upload = uploads.get(query.get("uploadId"));
+                if (upload == null) {
+                    error(exchange, 404, "NoSuchUpload");
+                    return;
+                }
+                upload.parts.put(Integer.parseInt(query.get("partNumber")), data);
+                xml(exchange, 200, "<CopyPartResult><ETag>\"" + md5(data) + "\"</ETag><LastModified>" + iso(new Date()) + "</LastModified></CopyPartResult>");
+                return;
+            }
+            final Map<String, String> metadata = "REPLACE".equals(headers.get("x-amz-metadata-directive")) ? objectHeaders(headers) : sourceBlob.headers;
+            final Blob blob = new Blob(data, md5(data), metadata);
+            objects.put(key, blob);
+            xml(exchange, 200, "<CopyObjectResult><ETag>\"" + blob.etag + "\"</ETag><LastModified>" + iso(blob.lastModified) + "</LastModified></CopyObjectResult>");
+            return;
+        }
+        data = exchange.body;
+        final String etag = md5(data);
+        if (query.containsKey("uploadId")) {
+            final MultipartUpload upload = uploads.get(query.get("uploadId"));
+            if (upload == null) {
+                error(exchange, 404, "NoSuchUpload");
+                return;
+            }
+            upload.parts.put(Integer.parseInt(query.get("partNumber")), data);
+        } else {
+            objects.put(key, new Blob(data, etag, objectHeaders(headers)));
+        }
+        exchange.responseHeaders.put("ETag", "\"" + etag + "\"");
+    }
+
+    private void post(Exchange exchange, String bucket, String key, ConcurrentNavigableMap<String, Blob> objects, Map<String, String> query) {
+        final byte[] body = exchange.body;
+        if (query.containsKey("uploads")) {
+            final String uploadId = "upload-" + ids.incrementAndGet();
+            uploads.put(uploadId, new MultipartUpload(bucket, key, objectHeaders(exchange.requestHeaders)));
+            xml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key)
+                    + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+            return;
+        }
+        final MultipartUpload upload = uploads.remove(query.get("uploadId"));
+        if (upload == null) {
+            error(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream digests = new ByteArrayOutputStream();
+        final Matcher m = PART.matcher(new String(body, StandardCharsets.UTF_8));
+        int count = 0;
+        while (m.find()) {
+            final byte[] part = upload.parts.get(Integer.parseInt(m.group(1)));
+            if (part == null) {
+                error(exchange, 400, "InvalidPart");
+                return;
+            }
+            out.write(part, 0, part.length);
+            final byte[] d = digest(part);
+            digests.write(d, 0, d.length);
+            ++count;
+        }
+        final Blob blob = new Blob(out.toByteArray(), hex(digest(digests.toByteArray())) + "-" + count, upload.headers);
+        objects.put(key, blob);
+        xml(exchange, 200, "<CompleteMultipartUploadResult><Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key)
+                + "</Key><ETag>\"" + blob.etag + "\"</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void get(Exchange exchange, Blob blob) {
+        if (blob == null) {
+            error(exchange, 404, "NoSuchKey");
+            return;
+        }
+        final Map<String, String> request = exchange.requestHeaders;
+        final String ifMatch = request.get("If-Match");
+        if (ifMatch != null && !ifMatch.replace("\"", "").equals(blob.etag)) {
+            error(exchange, 412, "PreconditionFailed");
+            return;
+        }
+        final Map<String, String> response = exchange.responseHeaders;
+        response.putAll(blob.headers);
+        response.put("ETag", "\"" + blob.etag + "\"");
+        response.put("Last-Modified", rfc1123(blob.lastModified));
+        response.put("Accept-Ranges", "bytes");
+        int from = 0;
+        int to = blob.data.length - 1;
+        int status = 200;
+        final String range = request.get("Range");
+        if (range != null) {
+            final Matcher m = RANGE.matcher(range);
+            if (m.matches()) {
+                from = Integer.parseInt(m.group(1));
+                if (!m.group(2).isEmpty()) {
+                    to = Math.min(to, Integer.parseInt(m.group(2)));
+                }
+                if (from >= blob.data.length) {
+                    error(exchange, 416, "InvalidRange");
+                    return;
+                }
+                status = 206;
+                response.put("Content-Range", "bytes " + from + "-" + to + "/" + blob.data.length);
+            }
+        }
+        exchange.status = status;
+        exchange.responseBody = blob.data;
+        exchange.responseOffset = from;
+        exchange.responseLength = to - from + 1;
+    }
+
+    private void list(Exchange exchange, String bucket, ConcurrentNavigableMap<String, Blob> objects, Map<String, String> query) {
+        final String prefix = query.getOrDefault("prefix", "");
+        final String delimiter = query.get("delimiter");
+        final String marker = query.getOrDefault("marker", "");
+        final int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        final StringBuilder contents = new StringBuilder();
+        final Set<String> prefixes = new LinkedHashSet<>();
+        int returned = 0;
+        boolean truncated = false;
+        String last = null;
+        for (Map.Entry<String, Blob> e : objects.tailMap(marker, false).entrySet()) {
+            final String key = e.getKey();
+            if (!key.startsWith(prefix)) {
+                if (key.compareTo(prefix) > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (delimiter != null && marker.endsWith(delimiter) && key.startsWith(marker)) {
+                // the marker was a common prefix, everything under it has been rolled up already
+                continue;
+            }
+            if (delimiter != null) {
+                final int idx = key.indexOf(delimiter, prefix.length());
+                if (idx >= 0) {
+                    final String common = key.substring(0, idx + delimiter.length());
+                    if (prefixes.contains(common)) {
+                        continue;
+                    }
+                    if (returned == maxKeys) {
+                        truncated = true;
+                        break;
+                    }
+                    prefixes.add(common);
+                    last = common;
+                    ++returned;
+                    continue;
+                }
+            }
+            if (returned == maxKeys) {
+                truncated = true;
+                break;
+            }
+            final Blob blob = e.getValue();
+            contents.append("<Contents><Key>").append(escape(key)).append("</Key><LastModified>").append(iso(blob.lastModified))
+                    .append("</LastModified><ETag>\"").append(blob.etag).append("\"</ETag><Size>").append(blob.data.length)
+                    .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+            last = key;
+            ++returned;
+        }
+        final StringBuilder xml = new StringBuilder("<ListBucketResult><Name>").append(escape(bucket)).append("</Name><Prefix>").append(escape(prefix))
+                .append("</Prefix><Marker>").append(escape(marker)).append("</Marker><MaxKeys>").append(maxKeys).append("</MaxKeys>");
+        if (delimiter != null) {
+            xml.append("<Delimiter>").append(escape(delimiter)).append("</Delimiter>");
+        }
+        xml.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated && last != null) {
+            xml.append("<NextMarker>").append(escape(last)).append("</NextMarker>");
+        }
+        xml.append(contents);
+        for (String p : prefixes) {
+            xml.append("<CommonPrefixes><Prefix>").append(escape(p)).append("</Prefix></CommonPrefixes>");
+        }
+        xml.append("</ListBucketResult>");
+        xml(exchange, 200, xml.toString());
+    }
+
+    private void deleteObjects(Exchange exchange, ConcurrentNavigableMap<String, Blob> objects) {
+        final String body = new String(exchange.body, StandardCharsets.UTF_8);
+        final boolean quiet = body.contains("<Quiet>true</Quiet>");
+        final StringBuilder xml = new StringBuilder("<DeleteResult>");
+        final Matcher m = KEY.matcher(body);
+        while (m.find()) {
+            final String key = unescape(m.group(1));
+            objects.remove(key);
+            if (!quiet) {
+                xml.append("<Deleted><Key>").append(escape(key)).append("</Key></Deleted>");
+            }
+        }
+        xml.append("</DeleteResult>");
+        xml(exchange, 200, xml.toString());
+    }
+
+    private static Map<String, String> objectHeaders(Map<String, String> headers) {
+        final Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            final String name = e.getKey().toLowerCase(Locale.ROOT);
+            if (name.startsWith("x-amz-meta-")) {
+                result.put(name, e.getValue());
+            } else if (name.equals("content-type")) {
+                result.put("Content-Type", e.getValue());
+            } else if (name.equals("content-encoding")) {
+                result.put("Content-Encoding", e.getValue());
+            } else if (name.equals("content-disposition")) {
+                result.put("Content-Disposition", e.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static void error(Exchange exchange, int status, String code) {
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message><RequestId>fake</RequestId></Error>");
+    }
+
+    private static void xml(Exchange exchange, int status, String body) {
+        final byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        exchange.status = status;
+        exchange.responseHeaders.put("Content-Type", "application/xml");
+        exchange.responseBody = bytes;
+        exchange.responseOffset = 0;
+        exchange.responseLength = bytes.length;
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        final Map<String, String> query = new HashMap<>();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int eq = pair.indexOf('=');
+            query.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s.replace("+", "%2B"), "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String md5(byte[] data) {
+        return hex(digest(data));
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String s) {
+        return s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&amp;", "&");
+    }
+
+    private static String iso(Date date) {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date);
+    }
+
+    private static String rfc1123(Date date) {
+        final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ROOT);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(date);
+    }
+}
@@ -0,0 +1,149 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.transfer.Download;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.Upload;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.collect.ImmutableMap;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JBlobS3AsyncTest extends TestCase {
+    private static final String BUCKET = "jblob-s3-async-test";
+
+    /**
+     * Counts the transfers it is handed, so the tests can tell which went through it
+     */
+    private static class CountingTransferManager extends TransferManager {
+        final AtomicInteger uploads = new AtomicInteger();
+        final AtomicInteger downloads = new AtomicInteger();
+
+        CountingTransferManager(AmazonS3Client client) {
+            super(client);
+        }
+
+        @Override
+        public Upload upload(PutObjectRequest putObjectRequest) {
+            uploads.incrementAndGet();
+            return super.upload(putObjectRequest);
+        }
+
+        @Override
+        public Download download(String bucket, String key, File file) {
+            downloads.incrementAndGet();
+            return super.download(bucket, key, file);
+        }
+    }
+
+    private FakeS3 s3;
+    private CountingTransferManager tx;
+    private ExecutorService executor;
+    private JBlobS3Async jblob;
+
+    @Override
+    protected void setUp() throws IOException {
+        s3 = new FakeS3();
+        s3.createBucket(BUCKET);
+        final AmazonS3Client client = new AmazonS3Client(new BasicAWSCredentials("test", "test"));
+        client.setEndpoint(s3.getEndpoint());
+        client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+        tx = new CountingTransferManager(client);
+        executor = Executors.newCachedThreadPool();
+        // the smallest parts S3 allows, so a few MB are enough to go multipart
+        jblob = new JBlobS3Async(BUCKET, tx, S3Options.builder().partSize(S3Options.MIN_PART_SIZE).build(), executor);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        tx.shutdownNow();
+        executor.shutdownNow();
+        s3.close();
+    }
+
+    public void testStreamRoundTrip() throws Exception {
+        // a plain PUT and a multipart upload, both streamed rather than handed to the TransferManager
+        for (int size : new int[] { 300000, S3Options.MIN_PART_SIZE * 2 + 3 }) {
+            final byte[] data = random(size);
+            jblob.upload("blob-" + size, new ByteArrayInputStream(data), ImmutableMap.of("Content-Type", "image/png", "foo", "bar"))
+                    .get(10, TimeUnit.SECONDS);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final JBlobMeta meta = jblob.download("blob-" + size, out).get(10, TimeUnit.SECONDS).get();
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+            assertEquals(data.length, meta.getContentLength());
+            assertEquals(Optional.of("image/png"), meta.getContentType());
+            assertEquals("bar", meta.getProperties().get("foo"));
+        }
+        assertEquals(0, tx.uploads.get());
+        assertEquals(2, tx.downloads.get());
+    }
+
+    public void testPathRoundTrip() throws Exception {
+        final byte[] data = random(100000);
+        final Path in = Files.createTempFile("jblob-s3-async-test", null);
+        final Path out = Files.createTempFile("jblob-s3-async-test", null);
+        try {
+            Files.write(in, data);
+            jblob.upload("blob", in, ImmutableMap.of("foo", "bar")).get(10, TimeUnit.SECONDS);
+
+            final JBlobMeta meta = jblob.download("blob", out).get(10, TimeUnit.SECONDS).get();
+            assertTrue(Arrays.equals(data, Files.readAllBytes(out)));
+            assertEquals(data.length, meta.getContentLength());
+            assertEquals("bar", meta.getProperties().get("foo"));
+            assertEquals(1, tx.uploads.get());
+            assertEquals(1, tx.downloads.get());
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+        }
+    }
+
+    public void testMissing() throws Exception {
+        assertFalse(jblob.download("missing", new ByteArrayOutputStream()).get(10, TimeUnit.SECONDS).isPresent());
+        assertFalse(jblob.downloadMetadata("missing").get(10, TimeUnit.SECONDS).isPresent());
+
+        final Path out = Files.createTempFile("jblob-s3-async-test", null);
+        try {
+            assertFalse(jblob.download("missing", out).get(10, TimeUnit.SECONDS).isPresent());
+        } finally {
+            Files.deleteIfExists(out);
+        }
+    }
+
+    public void testMetadataAndDelete() throws Exception {
+        final byte[] data = random(1000);
+        jblob.upload("blob", new ByteArrayInputStream(data), ImmutableMap.of("Content-Type", "text/plain"))
+                .get(10, TimeUnit.SECONDS);
+
+        final JBlobMeta meta = jblob.downloadMetadata("blob").get(10, TimeUnit.SECONDS).get();
+        assertEquals(data.length, meta.getContentLength());
+        assertEquals(Optional.of("text/plain"), meta.getContentType());
+
+        jblob.delete("blob").get(10, TimeUnit.SECONDS);
+        assertFalse(jblob.downloadMetadata("blob").get(10, TimeUnit.SECONDS).isPresent());
+        assertFalse(jblob.download("blob", new ByteArrayOutputStream()).get(10, TimeUnit.SECONDS).isPresent());
+    }
+
+    private static byte[] random(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
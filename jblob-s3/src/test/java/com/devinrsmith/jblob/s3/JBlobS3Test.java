@@ -0,0 +1,438 @@
+package com.devinrsmith.jblob.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.CopyObjectResult;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.devinrsmith.jblob.api.JBlobDeleteException;
+import com.devinrsmith.jblob.api.JBlobMeta;
+import com.google.common.collect.ImmutableMap;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * JBlobS3 against FakeS3, through a client that records the requests it is asked to send
+ */
+public class JBlobS3Test extends TestCase {
+    private static final String BUCKET = "jblob-s3-test";
+    private static final int PART = S3Options.MIN_PART_SIZE;
+
+    /**
+     * Counts calls by request type, and lets a test step in before some of them
+     */
+    private static class RecordingS3Client extends AmazonS3Client {
+        final ConcurrentMap<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        final AtomicInteger headsInFlight = new AtomicInteger();
+        final AtomicInteger maxHeadsInFlight = new AtomicInteger();
+        // run once, before the first request pinned to an ETag
+        volatile Runnable beforePinned;
+        volatile int failPart;
+        volatile String failDeleteOf;
+
+        RecordingS3Client() {
+            super(new BasicAWSCredentials("test", "test"));
+        }
+
+        int calls(String name) {
+            final AtomicInteger count = calls.get(name);
+            return count == null ? 0 : count.get();
+        }
+
+        private void record(String name) {
+            calls.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet();
+        }
+
+        private void pinned() {
+            final Runnable before = beforePinned;
+            beforePinned = null;
+            if (before != null) {
+                before.run();
+            }
+        }
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            record("putObject");
+            return super.putObject(request);
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            record("uploadPart");
+            if (request.getPartNumber() == failPart) {
+                throw new AmazonClientException("part " + failPart + " failed");
+            }
+            return super.uploadPart(request);
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            record("abortMultipartUpload");
+            super.abortMultipartUpload(request);
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            record("getObject");
+            if (request.getMatchingETagConstraints() != null && !request.getMatchingETagConstraints().isEmpty()) {
+                pinned();
+            }
+            return super.getObject(request);
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+            record("getObjectMetadata");
+            final int inFlight = headsInFlight.incrementAndGet();
+            maxHeadsInFlight.accumulateAndGet(inFlight, Math::max);
+            try {
+                return super.getObjectMetadata(request);
+            } finally {
+                headsInFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public CopyObjectResult copyObject(CopyObjectRequest request) {
+            record("copyObject");
+            return super.copyObject(request);
+        }
+
+        @Override
+        public CopyPartResult copyPart(CopyPartRequest request) {
+            record("copyPart");
+            pinned();
+            return super.copyPart(request);
+        }
+
+        @Override
+        public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+            record("deleteObjects");
+            final String fail = failDeleteOf;
+            if (fail != null && request.getKeys().stream().anyMatch(k -> k.getKey().equals(fail))) {
+                throw new AmazonClientException("batch with " + fail + " failed");
+            }
+            return super.deleteObjects(request);
+        }
+    }
+
+    private FakeS3 s3;
+    private RecordingS3Client client;
+    private TransferManager tx;
+    private JBlobS3 jblob;
+
+    @Override
+    protected void setUp() throws IOException {
+        s3 = new FakeS3();
+        s3.createBucket(BUCKET);
+        client = new RecordingS3Client();
+        client.setEndpoint(s3.getEndpoint());
+        client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+        tx = new TransferManager(client);
+        // the smallest parts S3 allows, so a few MB are enough to go multipart
+        jblob = new JBlobS3(BUCKET, tx, S3Options.builder()
+                .partSize(PART)
+                .copyPartSize(PART)
+                .headsInFlight(4)
+                .build());
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        tx.shutdownNow();
+        s3.close();
+    }
+
+    public void testStreamingUploadSinglePart() throws Exception {
+        final byte[] data = random(1000);
+        jblob.upload("blob", new ByteArrayInputStream(data), ImmutableMap.of("Content-Type", "text/plain", "foo", "bar"));
+        assertEquals(1, client.calls("putObject"));
+        assertEquals(0, client.calls("uploadPart"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JBlobMeta meta = jblob.download("blob", out).get();
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertEquals(Optional.of("text/plain"), meta.getContentType());
+        assertEquals("bar", meta.getProperties().get("foo"));
+    }
+
+    public void testStreamingUploadGrowsSinglePart() throws Exception {
+        // around where the first buffer starts and doubles
+        final int[] sizes = { 65535, 65536, 65537, 131073, 300000 };
+        for (int size : sizes) {
+            final byte[] data = random(size);
+            jblob.upload("blob-" + size, new ByteArrayInputStream(data));
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(size, jblob.download("blob-" + size, out).get().getContentLength());
+            assertTrue(Arrays.equals(data, out.toByteArray()));
+        }
+        assertEquals(sizes.length, client.calls("putObject"));
+        assertEquals(0, client.calls("uploadPart"));
+    }
+
+    public void testStreamingUploadMultipart() throws Exception {
+        final byte[] data = random(PART * 2 + 3);
+        jblob.upload("blob", new ByteArrayInputStream(data), ImmutableMap.of("foo", "bar"));
+        assertEquals(0, client.calls("putObject"));
+        assertEquals(3, client.calls("uploadPart"));
+        assertEquals(0, s3.getUploadsInProgress());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JBlobMeta meta = jblob.download("blob", out).get();
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertEquals(data.length, meta.getContentLength());
+        assertEquals("bar", meta.getProperties().get("foo"));
+    }
+
+    public void testStreamingUploadAbortsOnFailedPart() throws Exception {
+        client.failPart = 2;
+        try {
+            jblob.upload("blob", new ByteArrayInputStream(random(PART * 3)));
+            fail("expected the upload to fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, client.calls("abortMultipartUpload"));
+        assertEquals(0, s3.getUploadsInProgress());
+        assertFalse(jblob.downloadMetadata("blob").isPresent());
+    }
+
+    public void testStreamingDownloadRanges() throws Exception {
+        final byte[] data = random(PART * 2 + 3);
+        jblob.upload("blob", new ByteArrayInputStream(data));
+
+        final int before = client.calls("getObject");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, jblob.download("blob", out).get().getContentLength());
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        // one ranged GET per part
+        assertEquals(3, client.calls("getObject") - before);
+
+        // a range that straddles a part boundary, and one that runs past the end
+        for (long[] range : new long[][] { { PART - 10, PART + 20 }, { PART * 2, 100 } }) {
+            final ByteArrayOutputStream rangeOut = new ByteArrayOutputStream();
+            assertEquals(data.length, jblob.download("blob", range[0], range[1], rangeOut).get().getContentLength());
+            final int from = (int) range[0];
+            final int to = (int) Math.min(data.length, range[0] + range[1]);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, from, to), rangeOut.toByteArray()));
+        }
+        assertFalse(jblob.download("missing", new ByteArrayOutputStream()).isPresent());
+    }
+
+    public void testDownloadPinnedToETag() throws Exception {
+        jblob.upload("blob", new ByteArrayInputStream(random(PART * 2 + 3)));
+        // overwritten once the first range is in, before the rest are fetched
+        client.beforePinned = () -> s3Overwrite("blob", random(PART * 2 + 4));
+        try {
+            jblob.download("blob", new ByteArrayOutputStream());
+            fail("expected the download to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("changed during download"));
+        }
+    }
+
+    public void testServerSideCopy() throws Exception {
+        final byte[] data = random(1000);
+        jblob.upload("source", new ByteArrayInputStream(data), ImmutableMap.of("foo", "bar"));
+        jblob.copy("copied", "source", jblob);
+        assertEquals(1, client.calls("copyObject"));
+        assertEquals(0, client.calls("copyPart"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("bar", jblob.download("copied", out).get().getProperties().get("foo"));
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+
+        // a missing source copies nothing
+        jblob.copy("nothing", "missing", jblob);
+        assertFalse(jblob.downloadMetadata("nothing").isPresent());
+    }
+
+    public void testMultipartServerSideCopy() throws Exception {
+        final byte[] data = random(PART * 2 + 1000);
+        jblob.upload("source", new ByteArrayInputStream(data), ImmutableMap.of("Content-Type", "image/png", "foo", "bar"));
+        jblob.copy("copied", "source", jblob);
+        assertEquals(0, client.calls("copyObject"));
+        assertEquals(3, client.calls("copyPart"));
+        assertEquals(0, s3.getUploadsInProgress());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final JBlobMeta meta = jblob.download("copied", out).get();
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertEquals(Optional.of("image/png"), meta.getContentType());
+        assertEquals("bar", meta.getProperties().get("foo"));
+    }
+
+    public void testMultipartServerSideCopyPinnedToETag() throws Exception {
+        jblob.upload("source", new ByteArrayInputStream(random(PART * 2 + 1000)));
+        client.beforePinned = () -> s3Overwrite("source", random(PART * 2 + 1001));
+        try {
+            jblob.copy("copied", "source", jblob);
+            fail("expected the copy to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("changed during copy"));
+        }
+        assertEquals(0, s3.getUploadsInProgress());
+        assertFalse(jblob.downloadMetadata("copied").isPresent());
+    }
+
+    public void testMultipartServerSideCopyOfDeletedSource() throws Exception {
+        jblob.upload("source", new ByteArrayInputStream(random(PART * 2 + 1000)));
+        client.beforePinned = () -> other().deleteObject(BUCKET, "source");
+        jblob.copy("copied", "source", jblob);
+        assertEquals(0, s3.getUploadsInProgress());
+        assertFalse(jblob.downloadMetadata("copied").isPresent());
+    }
+
+    public void testServerSideCopyToMissingBucket() throws Exception {
+        jblob.upload("small", new ByteArrayInputStream(random(1000)));
+        jblob.upload("large", new ByteArrayInputStream(random(PART * 2 + 1000)));
+        final JBlobS3 missing = new JBlobS3("missing-bucket", tx, S3Options.builder().copyPartSize(PART).build());
+        for (String key : new String[] { "small", "large" }) {
+            try {
+                missing.copy("copied", key, jblob);
+                fail("expected the copy of " + key + " to fail");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testListingSplitsOnPrefixes() throws Exception {
+        final Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 40; ++i) {
+            keys.add(String.format("dir-%d/blob-%d", i % 4, i));
+        }
+        keys.add("top-level");
+        for (String key : keys) {
+            jblob.upload(key, new ByteArrayInputStream(new byte[1]));
+        }
+
+        final S3ListingSpliterator first = new S3ListingSpliterator(client, BUCKET, "", "/");
+        final Spliterator<S3ObjectSummary> second = first.trySplit();
+        assertNotNull(second);
+        final List<String> a = new ArrayList<>();
+        final List<String> b = new ArrayList<>();
+        first.forEachRemaining(s -> a.add(s.getKey()));
+        second.forEachRemaining(s -> b.add(s.getKey()));
+        assertFalse(a.isEmpty());
+        assertFalse(b.isEmpty());
+        assertTrue(Collections.disjoint(a, b));
+        assertEquals(keys.size(), a.size() + b.size());
+        a.addAll(b);
+        assertEquals(keys, new HashSet<>(a));
+
+        // and through the parallel stream behind stats
+        assertEquals(keys.size(), jblob.stats().count());
+        assertEquals(10, jblob.keys("dir-2/").count());
+    }
+
+    public void testDeleteAllBatches() throws Exception {
+        for (int i = 0; i < 30; ++i) {
+            jblob.upload(key(i * 80), new ByteArrayInputStream(new byte[1]));
+        }
+        // missing keys are fine, so most of the 2500 don't need to exist
+        jblob.deleteAll(IntStream.range(0, 2500).mapToObj(JBlobS3Test::key).collect(Collectors.toList()));
+        assertEquals(3, client.calls("deleteObjects"));
+        assertEquals(0, jblob.keys().count());
+    }
+
+    public void testDeleteAllReportsFailedBatch() throws Exception {
+        for (int i = 0; i < 1500; i += 100) {
+            jblob.upload(key(i), new ByteArrayInputStream(new byte[1]));
+        }
+        client.failDeleteOf = key(1200);
+        try {
+            jblob.deleteAll(IntStream.range(0, 1500).mapToObj(JBlobS3Test::key).collect(Collectors.toList()));
+            fail("expected the delete to fail");
+        } catch (JBlobDeleteException e) {
+            // the second batch as a whole
+            assertEquals(500, e.getFailures().size());
+            assertTrue(e.getFailures().containsKey(key(1000)));
+            assertTrue(e.getFailures().containsKey(key(1499)));
+        }
+        assertEquals(Arrays.asList(key(1000), key(1100), key(1200), key(1300), key(1400)), jblob.keys().collect(Collectors.toList()));
+    }
+
+    public void testBatchMetadata() throws Exception {
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 40; ++i) {
+            keys.add(key(i));
+            if (i % 2 == 0) {
+                jblob.upload(key(i), new ByteArrayInputStream(new byte[i]));
+            }
+        }
+        final int before = client.calls("getObjectMetadata");
+        final Map<String, Optional<JBlobMeta>> metas = jblob.downloadMetadata(keys);
+        assertEquals(40, client.calls("getObjectMetadata") - before);
+        assertTrue(client.maxHeadsInFlight.get() <= 4);
+
+        assertEquals(keys, new ArrayList<>(metas.keySet()));
+        for (int i = 0; i < 40; ++i) {
+            final Optional<JBlobMeta> meta = metas.get(key(i));
+            assertEquals(i % 2 == 0, meta.isPresent());
+            if (meta.isPresent()) {
+                assertEquals(i, meta.get().getContentLength());
+            }
+        }
+    }
+
+    // behind the recording client's back
+    private AmazonS3Client other() {
+        final AmazonS3Client other = new AmazonS3Client(new BasicAWSCredentials("test", "test"));
+        other.setEndpoint(s3.getEndpoint());
+        other.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+        return other;
+    }
+
+    private void s3Overwrite(String key, byte[] data) {
+        final ObjectMetadata m = new ObjectMetadata();
+        m.setContentLength(data.length);
+        other().putObject(BUCKET, key, new ByteArrayInputStream(data), m);
+    }
+
+    private static String key(int i) {
+        return String.format("key-%04d", i);
+    }
+
+    private static byte[] random(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
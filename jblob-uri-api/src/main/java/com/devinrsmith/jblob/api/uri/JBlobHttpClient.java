@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Created by dsmith on 2/24/15.
@@ -16,4 +17,12 @@ public interface JBlobHttpClient {
 
     // expected to throw IOException on 400+ statuses
     Results executeGet(URI uri) throws IOException;
+
+    /**
+     * A GET with the given request headers, empty when the server answers 304 Not Modified. The default
+     * ignores the headers, which is safe but always downloads.
+     */
+    default Optional<Results> executeGet(URI uri, Map<String, String> requestHeaders) throws IOException {
+        return Optional.of(executeGet(uri));
+    }
 }
@@ -0,0 +1,36 @@
+package com.devinrsmith.jblob.api.uri;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Thrown by a {@link JBlobHttpClient} for a 400+ response, so callers can tell a failure worth retrying
+ * from one that won't go away.
+ */
+public class JBlobHttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final URI uri;
+    private final int status;
+
+    public JBlobHttpStatusException(URI uri, int status) {
+        super(String.format("%s returned %d", uri, status));
+        this.uri = uri;
+        this.status = status;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * 408, 429 and 5xx responses may well succeed when tried again
+     */
+    public boolean isTransient() {
+        return status == 408 || status == 429 || status >= 500;
+    }
+}
@@ -4,8 +4,10 @@ import com.devinrsmith.jblob.api.keyless.JBlobKeyless;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This interface is a key-less uploader of blobs that can additionally come from a url
@@ -16,4 +18,12 @@ public interface JBlobUri extends JBlobKeyless {
     default String upload(URI uri) throws IOException, InterruptedException {
         return upload(uri, Collections.emptyMap());
     }
+
+    /**
+     * Uploads uris concurrently, through a {@link JBlobUriBatch} with its defaults; build one directly to
+     * tune its limits, or to share them between calls.
+     */
+    default Map<URI, CompletableFuture<String>> upload(Collection<URI> uris) throws InterruptedException {
+        return JBlobUriBatch.builder(this).build().upload(uris);
+    }
 }
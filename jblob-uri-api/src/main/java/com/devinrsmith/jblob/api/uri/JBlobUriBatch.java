@@ -0,0 +1,303 @@
+package com.devinrsmith.jblob.api.uri;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads many URIs through a {@link JBlobUri} at once, with a cap on the uploads in flight overall and
+ * per host, the hosts with waiting URIs taking turns. Each upload holds one thread and, depending on the
+ * keyless ingest mode, one temp file, so the cap is also what bounds the threads and temp space in use.
+ *
+ * Transient failures (refused connections, timeouts, unreachable hosts, and 408, 429 and 5xx statuses, see
+ * {@link JBlobHttpStatusException}) are retried with exponential backoff. A retrying upload keeps its host's
+ * slot through the backoff, so a host that is struggling gets no more traffic for it.
+ *
+ * An instance can be shared, the limits then hold across every batch given to it. Once maxQueued URIs
+ * are waiting for a slot, upload blocks until there is room.
+ */
+public class JBlobUriBatch {
+    public static Builder builder(JBlobUri uri) {
+        return new Builder(uri);
+    }
+
+    private final JBlobUri uri;
+    private final ExecutorService executor;
+    private final int concurrency;
+    private final int connectionsPerHost;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final int maxQueued;
+
+    private final Object lock = new Object();
+    // the hosts with URIs waiting, in the order they get their turn
+    private final LinkedHashMap<String, Deque<Task>> waiting = new LinkedHashMap<>();
+    private final Map<String, Integer> active = new HashMap<>();
+    private int queued;
+    private int running;
+
+    private JBlobUriBatch(Builder builder) {
+        this.uri = builder.uri;
+        this.executor = builder.executor;
+        this.concurrency = builder.concurrency;
+        this.connectionsPerHost = builder.connectionsPerHost;
+        this.maxAttempts = builder.maxAttempts;
+        this.backoffMillis = builder.backoffMillis;
+        this.maxQueued = builder.maxQueued;
+    }
+
+    public Map<URI, CompletableFuture<String>> upload(Collection<URI> uris) throws InterruptedException {
+        return upload(uris, Collections.emptyMap());
+    }
+
+    /**
+     * Queues uris for upload with properties, and returns the future key of each. A failed upload
+     * completes its future exceptionally and doesn't affect the others.
+     */
+    public Map<URI, CompletableFuture<String>> upload(Collection<URI> uris, Map<String, String> properties) throws InterruptedException {
+        Preconditions.checkNotNull(uris);
+        Preconditions.checkNotNull(properties);
+        final Map<URI, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        for (URI source : uris) {
+            Preconditions.checkNotNull(source);
+            if (futures.containsKey(source)) {
+                continue;
+            }
+            final Task task = new Task(source, properties);
+            futures.put(source, task.future);
+            final List<Task> ready;
+            synchronized (lock) {
+                while (queued >= maxQueued) {
+                    lock.wait();
+                }
+                waiting.computeIfAbsent(task.host, h -> new ArrayDeque<>()).add(task);
+                ++queued;
+                ready = dispatch();
+            }
+            start(ready);
+        }
+        return Collections.unmodifiableMap(futures);
+    }
+
+    /**
+     * Takes the tasks that may start now off the waiting queues, to be started once the lock is released
+     */
+    // called with lock held
+    private List<Task> dispatch() {
+        final List<Task> ready = new ArrayList<>();
+        while (running < concurrency) {
+            String host = null;
+            Task task = null;
+            final Iterator<Map.Entry<String, Deque<Task>>> it = waiting.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, Deque<Task>> e = it.next();
+                if (active.getOrDefault(e.getKey(), 0) < connectionsPerHost) {
+                    host = e.getKey();
+                    task = e.getValue().poll();
+                    it.remove();
+                    if (!e.getValue().isEmpty()) {
+                        // to the back of the line
+                        waiting.put(host, e.getValue());
+                    }
+                    break;
+                }
+            }
+            if (task == null) {
+                break;
+            }
+            --queued;
+            ++running;
+            active.merge(host, 1, Integer::sum);
+            lock.notifyAll();
+            ready.add(task);
+        }
+        return ready;
+    }
+
+    // called without lock held, so the executor may run tasks inline or block
+    private void start(List<Task> ready) {
+        final Deque<Task> pending = new ArrayDeque<>(ready);
+        Task next;
+        while ((next = pending.poll()) != null) {
+            final Task task = next;
+            try {
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                task.future.completeExceptionally(e);
+                // the slot it held goes to the next waiting task, which is likely rejected too
+                pending.addAll(release(task.host));
+            }
+        }
+    }
+
+    private void run(Task task) {
+        String key = null;
+        Throwable failure = null;
+        try {
+            key = uploadWithRetries(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (Throwable t) {
+            failure = t;
+        }
+        final List<Task> ready = release(task.host);
+        if (failure == null) {
+            task.future.complete(key);
+        } else {
+            task.future.completeExceptionally(failure);
+        }
+        start(ready);
+    }
+
+    private String uploadWithRetries(Task task) throws IOException, InterruptedException {
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                return uri.upload(task.uri, task.properties);
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                TimeUnit.MILLISECONDS.sleep(backoffMillis << Math.min(attempt - 1, 16));
+            }
+        }
+    }
+
+    private List<Task> release(String host) {
+        synchronized (lock) {
+            --running;
+            if (active.merge(host, -1, Integer::sum) == 0) {
+                active.remove(host);
+            }
+            return dispatch();
+        }
+    }
+
+    /**
+     * Only what is known to go away; anything else, a malformed response or a full disk say, fails straight
+     * away rather than being tried again maxAttempts times
+     */
+    private static boolean isTransient(IOException e) {
+        if (e instanceof JBlobHttpStatusException) {
+            return ((JBlobHttpStatusException) e).isTransient();
+        }
+        return e instanceof ConnectException || e instanceof SocketTimeoutException || e instanceof NoRouteToHostException;
+    }
+
+    private static String host(URI uri) {
+        return uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Task {
+        private final URI uri;
+        private final String host;
+        private final Map<String, String> properties;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        private Task(URI uri, Map<String, String> properties) {
+            this.uri = uri;
+            this.host = host(uri);
+            this.properties = properties;
+        }
+    }
+
+    public static class Builder {
+        private final JBlobUri uri;
+        private ExecutorService executor = DefaultExecutor.INSTANCE;
+        private int concurrency = 64;
+        private int connectionsPerHost = 4;
+        private int maxAttempts = 3;
+        private long backoffMillis = 100;
+        private int maxQueued = 1024;
+
+        private Builder(JBlobUri uri) {
+            this.uri = Preconditions.checkNotNull(uri);
+        }
+
+        /**
+         * The executor uploads run on, one task per upload; it is not shut down. Defaults to a shared pool
+         * of daemon threads. Any executor works, including one that starts a virtual thread per task.
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = Preconditions.checkNotNull(executor);
+            return this;
+        }
+
+        /**
+         * The maximum number of uploads in flight, over every host. 64 by default.
+         */
+        public Builder concurrency(int concurrency) {
+            Preconditions.checkArgument(concurrency > 0, "concurrency must be positive");
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * The maximum number of uploads in flight from any one host. 4 by default.
+         */
+        public Builder connectionsPerHost(int connectionsPerHost) {
+            Preconditions.checkArgument(connectionsPerHost > 0, "connectionsPerHost must be positive");
+            this.connectionsPerHost = connectionsPerHost;
+            return this;
+        }
+
+        /**
+         * How many times each URI is tried before its future fails
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * The pause before the first retry of a URI, doubled for every retry after that
+         */
+        public Builder backoff(long duration, TimeUnit unit) {
+            this.backoffMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * How many URIs may wait for a slot before upload blocks. 1024 by default.
+         */
+        public Builder maxQueued(int maxQueued) {
+            Preconditions.checkArgument(maxQueued > 0, "maxQueued must be positive");
+            this.maxQueued = maxQueued;
+            return this;
+        }
+
+        public JBlobUriBatch build() {
+            return new JBlobUriBatch(this);
+        }
+    }
+
+    private static class DefaultExecutor {
+        // the uploads in flight are bounded by each batch's concurrency, so the pool needn't be bounded
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("jblob-uri-batch-%d")
+                .build());
+    }
+}
@@ -0,0 +1,160 @@
+package com.devinrsmith.jblob.api.uri;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.net.HttpHeaders;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Remembers what was last ingested from each URI, so {@link JBlobUriImpl} can tell a source hasn't changed
+ * without downloading it again.
+ */
+public interface JBlobUriFingerprints {
+    static JBlobUriFingerprints none() {
+        return NoFingerprints.INSTANCE;
+    }
+
+    /**
+     * Keeps the fingerprints of up to maxEntries URIs, the least recently used going first
+     */
+    static JBlobUriFingerprints inMemory(long maxEntries) {
+        return new InMemoryFingerprints(maxEntries);
+    }
+
+    Optional<Fingerprint> get(URI uri) throws IOException;
+
+    void put(URI uri, Fingerprint fingerprint) throws IOException;
+
+    /**
+     * The validators of a response, and the key its content was stored under. A response is recognized by its
+     * ETag, or failing that by its Last-Modified and Content-Length together; a length alone says too little.
+     */
+    final class Fingerprint {
+        private final String etag;
+        private final String lastModified;
+        private final String contentLength;
+        private final String key;
+
+        private Fingerprint(String etag, String lastModified, String contentLength, String key) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentLength = contentLength;
+            this.key = Preconditions.checkNotNull(key);
+        }
+
+        /**
+         * Empty when the headers don't identify the response
+         */
+        public static Optional<Fingerprint> of(Map<String, String> headers, String key) {
+            final String etag = header(headers, HttpHeaders.ETAG);
+            final String lastModified = header(headers, HttpHeaders.LAST_MODIFIED);
+            final String contentLength = header(headers, HttpHeaders.CONTENT_LENGTH);
+            if (etag == null && (lastModified == null || contentLength == null)) {
+                return Optional.empty();
+            }
+            return Optional.of(new Fingerprint(etag, lastModified, contentLength, key));
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Whether a response with these headers is the one fingerprinted
+         */
+        public boolean matches(Map<String, String> headers) {
+            if (etag != null) {
+                return etag.equals(header(headers, HttpHeaders.ETAG));
+            }
+            return lastModified.equals(header(headers, HttpHeaders.LAST_MODIFIED)) &&
+                    contentLength.equals(header(headers, HttpHeaders.CONTENT_LENGTH));
+        }
+
+        /**
+         * The request headers of a GET that the server may answer with 304 Not Modified if this still holds
+         */
+        public Map<String, String> conditions() {
+            final Map<String, String> conditions = new HashMap<>();
+            if (etag != null) {
+                conditions.put(HttpHeaders.IF_NONE_MATCH, etag);
+            } else {
+                conditions.put(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+            return conditions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Fingerprint)) {
+                return false;
+            }
+            final Fingerprint other = (Fingerprint) o;
+            return Objects.equals(etag, other.etag) &&
+                    Objects.equals(lastModified, other.lastModified) &&
+                    Objects.equals(contentLength, other.contentLength) &&
+                    key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(etag, lastModified, contentLength, key);
+        }
+
+        // header names are case insensitive, and clients differ on how they hand them back
+        private static String header(Map<String, String> headers, String name) {
+            for (Map.Entry<String, String> e : headers.entrySet()) {
+                if (name.equalsIgnoreCase(e.getKey())) {
+                    return e.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    class NoFingerprints implements JBlobUriFingerprints {
+        private static final NoFingerprints INSTANCE = new NoFingerprints();
+
+        private NoFingerprints() {
+        }
+
+        @Override
+        public Optional<Fingerprint> get(URI uri) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void put(URI uri, Fingerprint fingerprint) {
+        }
+    }
+
+    class InMemoryFingerprints implements JBlobUriFingerprints {
+        private final Cache<URI, Fingerprint> fingerprints;
+
+        private InMemoryFingerprints(long maxEntries) {
+            Preconditions.checkArgument(maxEntries > 0, "maxEntries must be positive");
+            this.fingerprints = CacheBuilder.newBuilder()
+                    .maximumSize(maxEntries)
+                    .build();
+        }
+
+        @Override
+        public Optional<Fingerprint> get(URI uri) {
+            return Optional.ofNullable(fingerprints.getIfPresent(uri));
+        }
+
+        @Override
+        public void put(URI uri, Fingerprint fingerprint) {
+            fingerprints.put(uri, Preconditions.checkNotNull(fingerprint));
+        }
+    }
+}
@@ -1,21 +1,21 @@
 package com.devinrsmith.jblob.api.uri;
 
+import com.devinrsmith.jblob.api.JBlobEntry;
 import com.devinrsmith.jblob.api.JBlobMeta;
 import com.devinrsmith.jblob.api.keyless.*;
 import com.devinrsmith.jblob.api.uri.JBlobHttpClient.Results;
+import com.devinrsmith.jblob.api.uri.JBlobUriFingerprints.Fingerprint;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
-import com.google.common.io.ByteStreams;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -29,10 +29,20 @@ import java.util.stream.Stream;
 public class JBlobUriImpl implements JBlobUri {
     private final JBlobKeyless jblob;
     private final JBlobHttpClient client;
+    private final JBlobUriFingerprints fingerprints;
 
     public JBlobUriImpl(JBlobKeyless jblob, JBlobHttpClient client) {
+        this(jblob, client, JBlobUriFingerprints.none());
+    }
+
+    /**
+     * A URI ingested before is revalidated with a conditional GET against its fingerprint, and its key is
+     * returned without downloading it again when the server reports it unchanged
+     */
+    public JBlobUriImpl(JBlobKeyless jblob, JBlobHttpClient client, JBlobUriFingerprints fingerprints) {
         this.jblob = jblob;
         this.client = client;
+        this.fingerprints = Preconditions.checkNotNull(fingerprints);
     }
 
     @Override
@@ -40,21 +50,39 @@ public class JBlobUriImpl implements JBlobUri {
         Preconditions.checkNotNull(uri);
         Preconditions.checkNotNull(properties);
 
-        final Results results = client.executeGet(uri);
+        final Optional<Fingerprint> known = fingerprints.get(uri);
+        // the blob may have been deleted since
+        if (known.isPresent() && jblob.downloadMetadata(known.get().getKey()).isPresent()) {
+            final Optional<Results> results = client.executeGet(uri, known.get().conditions());
+            if (!results.isPresent()) {
+                return known.get().getKey();
+            }
+            if (known.get().matches(results.get().getHeaders())) {
+                // the server didn't honor the conditions, but the response is the same; leave the body unread
+                results.get().openStream().close();
+                return known.get().getKey();
+            }
+            return upload(uri, results.get(), properties);
+        }
+        return upload(uri, client.executeGet(uri), properties);
+    }
+
+    /**
+     * The response is streamed into the keyless upload, which hashes it as it goes by when its mode allows
+     */
+    private String upload(URI uri, Results results, Map<String, String> properties) throws IOException, InterruptedException {
         final Map<String, String> userProperties = combineProperties(properties, ImmutableMap.of("from", uri.toString()));
         final Map<String, String> combined = combineProperties(results.getHeaders(), userProperties);
 
-        return upload(results, combined);
-    }
-
-    private String upload(Results results, Map<String, String> properties) throws IOException, InterruptedException {
-        // note: we prefer to save the URL as a temporary file as opposed to created a URL ByteSource
-        final Path tmp = Files.createTempFile("jblob-upload-", null);
-        try {
-            return upload(asFileByteSource(results, tmp), properties);
-        } finally {
-            cleanDelete(tmp);
+        final String key;
+        try (final InputStream in = results.openStream()) {
+            key = upload(in, combined);
         }
+        final Optional<Fingerprint> fingerprint = Fingerprint.of(results.getHeaders(), key);
+        if (fingerprint.isPresent()) {
+            fingerprints.put(uri, fingerprint.get());
+        }
+        return key;
     }
 
     // note: when they overlap, we'll choose the primary key over the secondary key
@@ -67,29 +95,16 @@ public class JBlobUriImpl implements JBlobUri {
                         secondary.get(k))));
     }
 
-
-    private void cleanDelete(Path tmp) {
-        try {
-            Files.deleteIfExists(tmp);
-        } catch (IOException | SecurityException e) {
-            // don't care about these on trying to delete
-        }
-    }
-
-    private ByteSource asFileByteSource(Results results, Path outPath) throws IOException {
-        try (final InputStream in = results.openStream()) {
-            try (final OutputStream out = Files.newOutputStream(outPath)) {
-                ByteStreams.copy(in, out);
-            }
-        }
-        return com.google.common.io.Files.asByteSource(outPath.toFile());
-    }
-
     @Override
     public String upload(ByteSource source, Map<String, String> properties) throws IOException, InterruptedException {
         return jblob.upload(source, properties);
     }
 
+    @Override
+    public String upload(InputStream in, Map<String, String> properties) throws IOException, InterruptedException {
+        return jblob.upload(in, properties);
+    }
+
 
     @Override
     public void upload(String key, InputStream in, Map<String, String> properties) throws InterruptedException, IOException {
@@ -101,18 +116,43 @@ public class JBlobUriImpl implements JBlobUri {
         return jblob.download(key, out);
     }
 
+    @Override
+    public Optional<JBlobMeta> download(String key, long offset, long length, OutputStream out) throws IOException, InterruptedException {
+        return jblob.download(key, offset, length, out);
+    }
+
     @Override
     public Optional<JBlobMeta> downloadMetadata(String key) throws IOException {
         return jblob.downloadMetadata(key);
     }
 
+    @Override
+    public Map<String, Optional<JBlobMeta>> downloadMetadata(Collection<String> keys) throws IOException {
+        return jblob.downloadMetadata(keys);
+    }
+
     @Override
     public void delete(String key) throws IOException {
         jblob.delete(key);
     }
 
+    @Override
+    public void deleteAll(Stream<String> keys) throws IOException {
+        jblob.deleteAll(keys);
+    }
+
     @Override
     public Stream<String> keys() {
         return jblob.keys();
     }
+
+    @Override
+    public Stream<String> keys(String prefix) {
+        return jblob.keys(prefix);
+    }
+
+    @Override
+    public Stream<JBlobEntry> entries(String prefix) {
+        return jblob.entries(prefix);
+    }
 }
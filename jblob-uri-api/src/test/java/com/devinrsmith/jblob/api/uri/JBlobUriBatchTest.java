@@ -0,0 +1,298 @@
+package com.devinrsmith.jblob.api.uri;
+
+import com.devinrsmith.jblob.api.keyless.IngestMode;
+import com.devinrsmith.jblob.api.keyless.JBlobContentTyper;
+import com.devinrsmith.jblob.api.keyless.JBlobDeduper;
+import com.devinrsmith.jblob.api.keyless.JBlobHasher;
+import com.devinrsmith.jblob.api.keyless.JBlobKeylessImpl;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JBlobUriBatchTest extends TestCase {
+    private FakeClient client;
+    private JBlobUri uri;
+
+    @Override
+    protected void setUp() {
+        client = new FakeClient();
+        uri = new JBlobUriImpl(
+                new JBlobKeylessImpl(new JBlobMemory(), JBlobHasher.of(Hashing.sha256()), new MapDeduper(), HashCode::toString, JBlobContentTyper.Null.NULL, IngestMode.SPOOL),
+                client);
+    }
+
+    public void testConnectionsPerHost() throws Exception {
+        final List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < 30; ++i) {
+            uris.add(URI.create("http://a.example.com/" + i));
+            uris.add(URI.create("http://b.example.com/" + i));
+        }
+        final JBlobUriBatch batch = JBlobUriBatch.builder(uri)
+                .concurrency(100)
+                .connectionsPerHost(3)
+                .build();
+        final Map<URI, CompletableFuture<String>> keys = batch.upload(uris);
+        assertEquals(uris.size(), keys.size());
+        for (Map.Entry<URI, CompletableFuture<String>> e : keys.entrySet()) {
+            assertEquals(Hashing.sha256().hashString(e.getKey().toString(), StandardCharsets.UTF_8).toString(), e.getValue().get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(3, client.maxActive("a.example.com"));
+        assertEquals(3, client.maxActive("b.example.com"));
+    }
+
+    public void testRetriesTransientFailures() throws Exception {
+        final URI flaky = URI.create("http://a.example.com/flaky");
+        final URI missing = URI.create("http://a.example.com/missing");
+        client.failures.put(flaky, new AtomicInteger(2));
+        final JBlobUriBatch batch = JBlobUriBatch.builder(uri)
+                .maxAttempts(3)
+                .backoff(1, TimeUnit.MILLISECONDS)
+                .build();
+        final Map<URI, CompletableFuture<String>> keys = batch.upload(Arrays.asList(flaky, missing));
+        assertNotNull(keys.get(flaky).get(10, TimeUnit.SECONDS));
+        assertEquals(3, client.gets(flaky));
+        try {
+            keys.get(missing).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(404, ((JBlobHttpStatusException) e.getCause()).getStatus());
+        }
+        assertEquals(1, client.gets(missing));
+    }
+
+    public void testRetriesOnlyKnownTransientErrors() throws Exception {
+        final URI refused = URI.create("http://a.example.com/refused");
+        final URI timedOut = URI.create("http://a.example.com/timed-out");
+        final URI malformed = URI.create("http://a.example.com/malformed");
+        client.errors.put(refused, new ConnectException("refused"));
+        client.errors.put(timedOut, new SocketTimeoutException("timed out"));
+        client.errors.put(malformed, new IOException("malformed response"));
+        final JBlobUriBatch batch = JBlobUriBatch.builder(uri)
+                .maxAttempts(3)
+                .backoff(1, TimeUnit.MILLISECONDS)
+                .build();
+        final Map<URI, CompletableFuture<String>> keys = batch.upload(Arrays.asList(refused, timedOut, malformed));
+        for (CompletableFuture<String> key : keys.values()) {
+            try {
+                key.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                // expected
+            }
+        }
+        assertEquals(3, client.gets(refused));
+        assertEquals(3, client.gets(timedOut));
+        assertEquals(1, client.gets(malformed));
+    }
+
+    public void testBackpressure() throws Exception {
+        client.gate = new CountDownLatch(1);
+        final List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            uris.add(URI.create("http://a.example.com/" + i));
+        }
+        final JBlobUriBatch batch = JBlobUriBatch.builder(uri)
+                .concurrency(1)
+                .maxQueued(2)
+                .build();
+        final CompletableFuture<Map<URI, CompletableFuture<String>>> submitted = CompletableFuture.supplyAsync(() -> {
+            try {
+                return batch.upload(uris);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(submitted.isDone());
+        client.gate.countDown();
+        for (CompletableFuture<String> key : submitted.get(10, TimeUnit.SECONDS).values()) {
+            key.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, client.maxActive("a.example.com"));
+    }
+
+    public void testExecutorMayBlock() throws Exception {
+        // runs each task on another thread and waits for it, so the batch must not hold its lock in execute
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        final ExecutorService blocking = new AbstractExecutorService() {
+            @Override
+            public void execute(Runnable command) {
+                try {
+                    pool.submit(command).get();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RejectedExecutionException(e);
+                }
+            }
+
+            @Override
+            public void shutdown() {
+                pool.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return pool.shutdownNow();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return pool.isShutdown();
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return pool.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return pool.awaitTermination(timeout, unit);
+            }
+        };
+        try {
+            final List<URI> uris = new ArrayList<>();
+            for (int i = 0; i < 5; ++i) {
+                uris.add(URI.create("http://a.example.com/" + i));
+            }
+            final JBlobUriBatch batch = JBlobUriBatch.builder(uri)
+                    .executor(blocking)
+                    .concurrency(2)
+                    .build();
+            final CompletableFuture<Map<URI, CompletableFuture<String>>> submitted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return batch.upload(uris);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            for (CompletableFuture<String> key : submitted.get(10, TimeUnit.SECONDS).values()) {
+                key.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testRejectedUploadsFail() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        final List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            uris.add(URI.create("http://a.example.com/" + i));
+        }
+        final JBlobUriBatch batch = JBlobUriBatch.builder(uri)
+                .executor(executor)
+                .concurrency(1)
+                .build();
+        for (CompletableFuture<String> key : batch.upload(uris).values()) {
+            try {
+                key.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        assertTrue(client.gets.isEmpty());
+    }
+
+    public void testJBlobUriDefault() throws Exception {
+        final URI source = URI.create("http://a.example.com/x");
+        assertEquals(uri.upload(source), uri.upload(Collections.singleton(source)).get(source).get(10, TimeUnit.SECONDS));
+    }
+
+    private static class FakeClient implements JBlobHttpClient {
+        final Map<URI, AtomicInteger> failures = new ConcurrentHashMap<>();
+        final Map<URI, IOException> errors = new ConcurrentHashMap<>();
+        private final Map<URI, AtomicInteger> gets = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> maxActive = new ConcurrentHashMap<>();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        int gets(URI uri) {
+            return gets.get(uri).get();
+        }
+
+        int maxActive(String host) {
+            return maxActive.get(host).get();
+        }
+
+        @Override
+        public Results executeGet(URI uri) throws IOException {
+            gets.computeIfAbsent(uri, u -> new AtomicInteger()).incrementAndGet();
+            final AtomicInteger hostActive = active.computeIfAbsent(uri.getHost(), h -> new AtomicInteger());
+            final int now = hostActive.incrementAndGet();
+            maxActive.computeIfAbsent(uri.getHost(), h -> new AtomicInteger()).accumulateAndGet(now, Math::max);
+            try {
+                gate.await();
+                Thread.sleep(10);
+                final IOException error = errors.get(uri);
+                if (error != null) {
+                    throw error;
+                }
+                if (uri.getPath().equals("/missing")) {
+                    throw new JBlobHttpStatusException(uri, 404);
+                }
+                final AtomicInteger remaining = failures.get(uri);
+                if (remaining != null && remaining.getAndDecrement() > 0) {
+                    throw new JBlobHttpStatusException(uri, 503);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                hostActive.decrementAndGet();
+            }
+            final byte[] body = uri.toString().getBytes(StandardCharsets.UTF_8);
+            return new Results() {
+                @Override
+                public Map<String, String> getHeaders() {
+                    return Collections.emptyMap();
+                }
+
+                @Override
+                public InputStream openStream() {
+                    return new ByteArrayInputStream(body);
+                }
+            };
+        }
+    }
+
+    private static class MapDeduper implements JBlobDeduper {
+        private final Map<HashCode, String> keys = new ConcurrentHashMap<>();
+
+        @Override
+        public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) {
+            return Optional.ofNullable(keys.get(hashCode));
+        }
+
+        @Override
+        public void putNewKey(HashCode hashCode, String key) {
+            keys.put(hashCode, key);
+        }
+    }
+}
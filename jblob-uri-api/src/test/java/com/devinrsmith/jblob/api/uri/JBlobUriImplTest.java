@@ -0,0 +1,178 @@
+package com.devinrsmith.jblob.api.uri;
+
+import com.devinrsmith.jblob.api.JBlob;
+import com.devinrsmith.jblob.api.keyless.IngestMode;
+import com.devinrsmith.jblob.api.keyless.JBlobContentTyper;
+import com.devinrsmith.jblob.api.keyless.JBlobDeduper;
+import com.devinrsmith.jblob.api.keyless.JBlobHasher;
+import com.devinrsmith.jblob.api.keyless.JBlobKeylessImpl;
+import com.devinrsmith.jblob.memory.JBlobMemory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.net.HttpHeaders;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JBlobUriImplTest extends TestCase {
+    private static final URI SOURCE = URI.create("http://example.com/a");
+
+    private JBlob jblob;
+    private FakeClient client;
+    private JBlobUriImpl uri;
+
+    @Override
+    protected void setUp() {
+        jblob = new JBlobMemory();
+        client = new FakeClient();
+        uri = new JBlobUriImpl(
+                new JBlobKeylessImpl(jblob, JBlobHasher.of(Hashing.sha256()), new MapDeduper(), HashCode::toString, JBlobContentTyper.Null.NULL, IngestMode.SPOOL),
+                client,
+                JBlobUriFingerprints.inMemory(100));
+    }
+
+    public void testStreamsAndProperties() throws Exception {
+        final byte[] bytes = content(100000, 1);
+        client.serve(bytes, ImmutableMap.of(HttpHeaders.CONTENT_TYPE, "image/png"));
+        final String key = uri.upload(SOURCE, Collections.singletonMap("owner", "me"));
+        assertEquals(Hashing.sha256().hashBytes(bytes).toString(), key);
+        assertEquals(1, client.bodies.get());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Map<String, String> properties = jblob.download(key, out).get().getProperties();
+        assertTrue(Arrays.equals(bytes, out.toByteArray()));
+        assertEquals(SOURCE.toString(), properties.get("from"));
+        assertEquals("me", properties.get("owner"));
+    }
+
+    public void testNotModifiedSkipsDownload() throws Exception {
+        client.serve(content(5000, 1), ImmutableMap.of(HttpHeaders.ETAG, "\"v1\""));
+        final String key = uri.upload(SOURCE);
+        assertEquals(key, uri.upload(SOURCE));
+        assertEquals(key, uri.upload(SOURCE));
+        assertEquals(1, client.bodies.get());
+        assertEquals(2, client.notModified.get());
+
+        client.serve(content(5000, 2), ImmutableMap.of(HttpHeaders.ETAG, "\"v2\""));
+        final String changed = uri.upload(SOURCE);
+        assertFalse(key.equals(changed));
+        assertEquals(2, client.bodies.get());
+    }
+
+    public void testUnconditionalServerStillSkipsBody() throws Exception {
+        client.conditional = false;
+        client.serve(content(5000, 1), ImmutableMap.of(
+                HttpHeaders.LAST_MODIFIED, "Wed, 21 Oct 2015 07:28:00 GMT",
+                HttpHeaders.CONTENT_LENGTH, "5000"));
+        final String key = uri.upload(SOURCE);
+        assertEquals(key, uri.upload(SOURCE));
+        assertEquals(1, client.bodies.get());
+        assertEquals(2, client.gets.get());
+    }
+
+    public void testDeletedBlobIsIngestedAgain() throws Exception {
+        client.serve(content(5000, 1), ImmutableMap.of(HttpHeaders.ETAG, "\"v1\""));
+        final String key = uri.upload(SOURCE);
+        jblob.delete(key);
+        uri.upload(SOURCE);
+        // the fingerprint isn't trusted once its blob is gone
+        assertEquals(2, client.bodies.get());
+    }
+
+    public void testWithoutValidatorsAlwaysDownloads() throws Exception {
+        client.serve(content(5000, 1), ImmutableMap.of(HttpHeaders.CONTENT_LENGTH, "5000"));
+        uri.upload(SOURCE);
+        uri.upload(SOURCE);
+        assertEquals(2, client.bodies.get());
+    }
+
+    private static byte[] content(int size, int seed) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private static class FakeClient implements JBlobHttpClient {
+        final AtomicInteger gets = new AtomicInteger();
+        final AtomicInteger bodies = new AtomicInteger();
+        final AtomicInteger notModified = new AtomicInteger();
+        volatile boolean conditional = true;
+        private volatile byte[] body;
+        private volatile Map<String, String> headers;
+
+        void serve(byte[] body, Map<String, String> headers) {
+            this.body = body;
+            this.headers = headers;
+        }
+
+        @Override
+        public Results executeGet(URI uri) {
+            gets.incrementAndGet();
+            final byte[] body = this.body;
+            final Map<String, String> headers = this.headers;
+            return new Results() {
+                @Override
+                public Map<String, String> getHeaders() {
+                    return headers;
+                }
+
+                @Override
+                public InputStream openStream() {
+                    return new ByteArrayInputStream(body) {
+                        private boolean read;
+
+                        @Override
+                        public synchronized int read(byte[] b, int off, int len) {
+                            if (!read) {
+                                read = true;
+                                bodies.incrementAndGet();
+                            }
+                            return super.read(b, off, len);
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public Optional<Results> executeGet(URI uri, Map<String, String> requestHeaders) {
+            final Map<String, String> lower = new HashMap<>();
+            requestHeaders.forEach((k, v) -> lower.put(k.toLowerCase(), v));
+            final String etag = headers.get(HttpHeaders.ETAG);
+            if (conditional && etag != null && etag.equals(lower.get("if-none-match"))) {
+                gets.incrementAndGet();
+                notModified.incrementAndGet();
+                return Optional.empty();
+            }
+            return Optional.of(executeGet(uri));
+        }
+    }
+
+    private static class MapDeduper implements JBlobDeduper {
+        private final Map<HashCode, String> keys = new ConcurrentHashMap<>();
+
+        @Override
+        public Optional<String> findExistingKey(HashCode hashCode, ByteSource source) throws IOException {
+            return Optional.ofNullable(keys.get(hashCode));
+        }
+
+        @Override
+        public void putNewKey(HashCode hashCode, String key) {
+            keys.put(hashCode, key);
+        }
+    }
+}